@@ -0,0 +1,108 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность вычисления формулы по столбцам значений:
+ * построчный цикл, пакетное и параллельное пакетное вычисление, а также сумма и экстремумы
+ * формулы: пакетным вычислением с последующим проходом по результатам и агрегатным вычислением.
+ * Результат приводится к одной строке.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@OperationsPerInvocation(BatchBenchmark.ROWS)
+public class BatchBenchmark {
+
+    static final int ROWS = 1 << 20;
+
+    @Param({"x + y", "(x * 12 + 12) * 2 - y * 8 ^ 2 / (x + y + 1) + sqrt(y)"})
+    public String formula;
+
+    private CompiledExpression expression;
+    private double[][] columns;
+    private double[] out;
+    private final double[] row = new double[2];
+
+    @Setup
+    public void setUp() {
+        expression = MathExpression.compile(formula);
+        columns = new double[][] {new double[ROWS], new double[ROWS]};
+        for (int i = 0; i < ROWS; i++) {
+            columns[0][i] = i % 100;
+            columns[1][i] = i % 7 + 1;
+        }
+        out = new double[ROWS];
+    }
+
+    /** Вычисление каждой строки по отдельности */
+    @Benchmark
+    public double[] rowByRow() {
+        double[] x = columns[0];
+        double[] y = columns[1];
+        for (int i = 0; i < ROWS; i++) {
+            row[0] = x[i];
+            row[1] = y[i];
+            out[i] = expression.evaluate(row);
+        }
+        return out;
+    }
+
+    /** Пакетное вычисление в одном потоке */
+    @Benchmark
+    public double[] batch() {
+        expression.evaluateBatch(columns, out);
+        return out;
+    }
+
+    /** Параллельное пакетное вычисление в общем ForkJoinPool */
+    @Benchmark
+    public double[] parallel() {
+        expression.evaluateParallel(columns, out, RowErrorPolicy.FAIL_FAST);
+        return out;
+    }
+
+    /** Пакетное вычисление и отдельный проход по результатам для суммы и экстремумов */
+    @Benchmark
+    public double batchThenReduce() {
+        expression.evaluateBatch(columns, out);
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (double value : out) {
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        return sum + min + max;
+    }
+
+    /** Агрегатное вычисление без массива результатов */
+    @Benchmark
+    public BatchAggregate aggregate() {
+        return expression.aggregate(columns, ROWS);
+    }
+
+    /** Параллельное агрегатное вычисление в общем ForkJoinPool */
+    @Benchmark
+    public BatchAggregate aggregateParallel() {
+        return expression.aggregateParallel(columns, ROWS, ForkJoinPool.commonPool());
+    }
+}
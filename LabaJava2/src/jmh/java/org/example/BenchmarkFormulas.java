@@ -0,0 +1,71 @@
+package org.example;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Формулы и значения переменных, общие для бенчмарков.
+ */
+final class BenchmarkFormulas {
+
+    /** Пример из {@link App}, состоящий из одних констант */
+    static final String CONSTANT = "(sin(90)*12+12)*2-8*8^2";
+
+    /** Формула с переменными, операторами всех приоритетов и функцией */
+    static final String MIXED = "(x * 12 + 12) * 2 - y * 8 ^ 2 / (x + y + 1) + sqrt(y)";
+
+    private BenchmarkFormulas() {
+    }
+
+    /**
+     * Строит формулу с заданным количеством переменных {@code v0..vN}.
+     *
+     * @param variables количество переменных
+     * @return формула вида {@code 1.5 + v0 * 2 - v1 * 3 + ...}
+     */
+    static String withVariables(int variables) {
+        StringBuilder formula = new StringBuilder("1.5");
+        for (int i = 0; i < variables; i++) {
+            formula.append(i % 2 == 0 ? " + " : " - ").append(name(i)).append(" * ").append(i + 2);
+        }
+        return formula.toString();
+    }
+
+    /**
+     * Строит формулу с заданной глубиной вложенности скобок.
+     *
+     * @param depth глубина вложенности
+     * @return формула вида {@code ((x + 1) * 2 + 1) * 2 ...}
+     */
+    static String nested(int depth) {
+        StringBuilder formula = new StringBuilder("x");
+        for (int i = 0; i < depth; i++) {
+            formula.insert(0, '(').append(i % 2 == 0 ? " + 1)" : " * 0.5)");
+        }
+        return formula.toString();
+    }
+
+    /**
+     * Возвращает имя переменной с номером.
+     * Имена состоят только из букв, как того требует разбор выражений.
+     */
+    static String name(int index) {
+        StringBuilder name = new StringBuilder("v");
+        do {
+            name.append((char) ('a' + index % 26));
+            index /= 26;
+        } while (index > 0);
+        return name.toString();
+    }
+
+    /**
+     * Возвращает значения переменных выражения в виде карты.
+     */
+    static Map<String, Double> variableMap(CompiledExpression expression, double[] values) {
+        Map<String, Double> variables = new HashMap<>();
+        for (int slot = 0; slot < values.length; slot++) {
+            variables.put(expression.getVariableNames().get(slot), values[slot]);
+        }
+        return variables;
+    }
+}
@@ -0,0 +1,76 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость вычисления скомпилированного выражения в зависимости от количества переменных
+ * и глубины вложенности. Значение параметра {@code jit} задаёт порог компиляции в класс JVM:
+ * при {@code false} выражение выполняет интерпретатор.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluateBenchmark {
+
+    @Param({"vars0", "vars5", "vars50", "nested10", "nested100", "nested1000"})
+    public String formula;
+
+    @Param({"true", "false"})
+    public boolean jit;
+
+    private CompiledExpression expression;
+    private VariableFrame frame;
+    private double[] values;
+    private Map<String, Double> variables;
+
+    @Setup
+    public void setUp() {
+        String source = formula.startsWith("vars")
+                ? BenchmarkFormulas.withVariables(Integer.parseInt(formula.substring(4)))
+                : BenchmarkFormulas.nested(Integer.parseInt(formula.substring(6)));
+        expression = MathExpression.compile(source);
+        if (jit) {
+            expression.getProgram().compileBytecode();
+        }
+        frame = expression.newFrame();
+        values = new double[expression.getVariableNames().size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i + 0.5;
+        }
+        variables = BenchmarkFormulas.variableMap(expression, values);
+    }
+
+    /** Значения переменных в порядке слотов */
+    @Benchmark
+    public double slots() {
+        return expression.evaluate(values);
+    }
+
+    /** Значения переменных через фрейм с собственным стеком */
+    @Benchmark
+    public double frame() {
+        return frame.evaluate(values);
+    }
+
+    /** Значения переменных в карте */
+    @Benchmark
+    public double map() {
+        return expression.evaluate(variables);
+    }
+}
@@ -0,0 +1,70 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Вычисление набора связанных выражений с общими подвыражениями:
+ * одной программой набора и каждым выражением по отдельности.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpressionSetBenchmark {
+
+    @Param({"20", "200"})
+    public int formulas;
+
+    private ExpressionSet set;
+    private CompiledExpression[] separate;
+    private double[] values;
+    private double[] out;
+
+    @Setup
+    public void setUp() {
+        Map<String, String> sources = new LinkedHashMap<>();
+        for (int i = 0; i < formulas; i++) {
+            sources.put("f" + i, "(x*x+y*y) * " + (i + 1) + " + (x*y - z) / (z*z + 1) - " + i);
+        }
+        set = MathExpression.compileSet(sources);
+        separate = new CompiledExpression[formulas];
+        int i = 0;
+        for (String source : sources.values()) {
+            separate[i++] = MathExpression.compile(source);
+        }
+        values = new double[] {1.5, 2.5, 3.5};
+        out = new double[formulas];
+    }
+
+    /** Все выражения одной программой набора */
+    @Benchmark
+    public double[] set() {
+        set.evaluate(values, out);
+        return out;
+    }
+
+    /** Каждое выражение своей программой */
+    @Benchmark
+    public double[] separate() {
+        for (int i = 0; i < separate.length; i++) {
+            out[i] = separate[i].evaluate(values);
+        }
+        return out;
+    }
+}
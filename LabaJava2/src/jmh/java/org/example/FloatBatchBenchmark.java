@@ -0,0 +1,76 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность пакетного вычисления по столбцам double и float
+ * в режимах {@link FloatPrecision}. Столбцы занимают десятки мегабайт и не помещаются в кэш,
+ * поэтому для простой формулы скорость ограничена памятью. Результат приводится к одной строке.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@OperationsPerInvocation(FloatBatchBenchmark.ROWS)
+public class FloatBatchBenchmark {
+
+    static final int ROWS = 1 << 22;
+
+    @Param({"x + y", "(x * 12 + 12) * 2 - y * 8 ^ 2 / (x + y + 1) + sqrt(y)"})
+    public String formula;
+
+    private CompiledExpression expression;
+    private double[][] columns;
+    private double[] out;
+    private float[][] floatColumns;
+    private float[] floatOut;
+
+    @Setup
+    public void setUp() {
+        expression = MathExpression.compile(formula);
+        columns = new double[][] {new double[ROWS], new double[ROWS]};
+        floatColumns = new float[][] {new float[ROWS], new float[ROWS]};
+        for (int i = 0; i < ROWS; i++) {
+            columns[0][i] = floatColumns[0][i] = i % 100;
+            columns[1][i] = floatColumns[1][i] = i % 7 + 1;
+        }
+        out = new double[ROWS];
+        floatOut = new float[ROWS];
+    }
+
+    /** Вычисление по столбцам double */
+    @Benchmark
+    public double[] doubles() {
+        expression.evaluateBatch(columns, out);
+        return out;
+    }
+
+    /** Вычисление по столбцам float в float */
+    @Benchmark
+    public float[] floats() {
+        expression.evaluateBatch(floatColumns, floatOut, FloatPrecision.FLOAT);
+        return floatOut;
+    }
+
+    /** Вычисление по столбцам float в double */
+    @Benchmark
+    public float[] floatsDoubleAccumulate() {
+        expression.evaluateBatch(floatColumns, floatOut, FloatPrecision.DOUBLE_ACCUMULATE);
+        return floatOut;
+    }
+}
@@ -0,0 +1,69 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость каждой функции {@link MathOperations}: прямой вызов, вызов внутри выражения
+ * и поиск имени в {@link FunctionRegistry}, в том числе имени, не являющегося функцией.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FunctionBenchmark {
+
+    @Param({"sin", "cos", "tan", "sqrt", "log"})
+    public String function;
+
+    private MathOperations operation;
+    private CompiledExpression expression;
+    private final double[] values = new double[1];
+    private double argument;
+
+    @Setup
+    public void setUp() {
+        operation = MathOperations.getOperationByUserInput(function);
+        expression = MathExpression.compile(function + "(x)");
+    }
+
+    /** Прямой вызов функции */
+    @Benchmark
+    public double direct() {
+        argument = argument < 359 ? argument + 1.25 : 1.25;
+        return operation.calculate(argument);
+    }
+
+    /** Вызов функции внутри скомпилированного выражения */
+    @Benchmark
+    public double expression() {
+        argument = argument < 359 ? argument + 1.25 : 1.25;
+        values[0] = argument;
+        return expression.evaluate(values);
+    }
+
+    /** Поиск имени функции */
+    @Benchmark
+    public boolean lookup() {
+        return MathExpression.isFunction(function);
+    }
+
+    /** Поиск имени переменной, которое функцией не является */
+    @Benchmark
+    public boolean lookupMissing() {
+        return MathExpression.isFunction("rate");
+    }
+}
@@ -0,0 +1,88 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость градиента {@link GradientEvaluator} по сравнению с конечными разностями,
+ * для которых нужно N + 1 вычислений выражения с N переменными.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GradientBenchmark {
+
+    @Param({"2", "20", "200"})
+    public int variables;
+
+    private CompiledExpression expression;
+    private GradientEvaluator evaluator;
+    private double[] values;
+    private double[] shifted;
+    private double[] gradient;
+    private double[][] columns;
+    private double[] out;
+    private double[][] gradients;
+
+    @Setup
+    public void setUp() {
+        StringBuilder formula = new StringBuilder(BenchmarkFormulas.withVariables(variables));
+        formula.append(" + sqrt(").append(BenchmarkFormulas.name(0)).append(" * ")
+                .append(BenchmarkFormulas.name(variables - 1)).append(" + 1)");
+        expression = MathExpression.compile(formula.toString());
+        evaluator = expression.gradient();
+        values = new double[variables];
+        for (int i = 0; i < variables; i++) {
+            values[i] = i * 0.5 + 1;
+        }
+        shifted = values.clone();
+        gradient = new double[variables];
+        columns = new double[variables][1024];
+        for (int i = 0; i < variables; i++) {
+            Arrays.fill(columns[i], values[i]);
+        }
+        out = new double[1024];
+        gradients = new double[variables][1024];
+    }
+
+    /** Значение и градиент обратным проходом */
+    @Benchmark
+    public double[] gradient() {
+        evaluator.evaluate(values, gradient);
+        return gradient;
+    }
+
+    /** Значение и градиент прямыми разностями: N + 1 вычислений */
+    @Benchmark
+    public double[] differences() {
+        double value = expression.evaluate(values);
+        for (int i = 0; i < variables; i++) {
+            shifted[i] = values[i] + 1e-7;
+            gradient[i] = (expression.evaluate(shifted) - value) / 1e-7;
+            shifted[i] = values[i];
+        }
+        return gradient;
+    }
+
+    /** Значения и градиенты пакета из 1024 строк */
+    @Benchmark
+    public double[][] batch() {
+        evaluator.evaluateBatch(columns, out, gradients);
+        return gradients;
+    }
+}
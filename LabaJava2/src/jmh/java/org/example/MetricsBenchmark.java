@@ -0,0 +1,88 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость метрик {@link ExpressionMetrics}. Бенчмарк {@code program} вызывает программу
+ * выражения в обход точек измерения и служит нижней границей: при {@code enabled=false}
+ * вычисления через {@link CompiledExpression} и {@link VariableFrame} не должны быть
+ * заметно медленнее него.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+
+    @Param({"false", "true"})
+    public boolean enabled;
+
+    private CompiledExpression expression;
+    private Program program;
+    private VariableFrame frame;
+    private double[] values;
+    private double[][] columns;
+    private double[] out;
+
+    @Setup
+    public void setUp() {
+        ExpressionMetrics.getInstance().setEnabled(enabled);
+        expression = MathExpression.compile(BenchmarkFormulas.MIXED);
+        program = expression.getProgram();
+        program.compileBytecode();
+        frame = expression.newFrame();
+        values = new double[] {1.5, 2.5};
+        columns = new double[2][1024];
+        for (int row = 0; row < 1024; row++) {
+            columns[0][row] = row * 0.5;
+            columns[1][row] = row + 1;
+        }
+        out = new double[1024];
+    }
+
+    @TearDown
+    public void tearDown() {
+        ExpressionMetrics.getInstance().setEnabled(false);
+        ExpressionMetrics.getInstance().reset();
+    }
+
+    /** Программа выражения без точек измерения */
+    @Benchmark
+    public double program() {
+        return program.execute(values);
+    }
+
+    /** Значения переменных в порядке слотов */
+    @Benchmark
+    public double slots() {
+        return expression.evaluate(values);
+    }
+
+    /** Значения переменных через фрейм */
+    @Benchmark
+    public double frame() {
+        return frame.evaluate(values);
+    }
+
+    /** Пакет из 1024 строк */
+    @Benchmark
+    public double[] batch() {
+        expression.evaluateBatch(columns, out);
+        return out;
+    }
+}
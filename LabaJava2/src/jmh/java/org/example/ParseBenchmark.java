@@ -0,0 +1,77 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость разбора выражения и вычисления строки через {@link MathExpression#calculate(String, Map)}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"constant", "mixed", "vars50", "nested100", "vars1000"})
+    public String formula;
+
+    private String source;
+    private Map<String, Double> variables;
+
+    @Setup
+    public void setUp() {
+        switch (formula) {
+            case "constant": source = BenchmarkFormulas.CONSTANT; break;
+            case "mixed": source = BenchmarkFormulas.MIXED; break;
+            case "vars50": source = BenchmarkFormulas.withVariables(50); break;
+            case "vars1000": source = BenchmarkFormulas.withVariables(1000); break;
+            case "nested100": source = BenchmarkFormulas.nested(100); break;
+            default: throw new IllegalArgumentException(formula);
+        }
+        CompiledExpression expression = MathExpression.compile(source);
+        double[] values = new double[expression.getVariableNames().size()];
+        Arrays.fill(values, 3);
+        variables = values.length == 0 ? Collections.emptyMap() : BenchmarkFormulas.variableMap(expression, values);
+    }
+
+    /** Только построение дерева выражения */
+    @Benchmark
+    public ExpressionNode tree() {
+        return MathExpression.parse(source, new LinkedHashMap<>());
+    }
+
+    /** Только разбор, оптимизация и построение программы */
+    @Benchmark
+    public CompiledExpression parse() {
+        return MathExpression.compile(source);
+    }
+
+    /** Разбор и однократное вычисление без кэша */
+    @Benchmark
+    public double parseAndEvaluate() {
+        return MathExpression.compile(source).evaluate(variables);
+    }
+
+    /** Вычисление строки через calculate с общим кэшем выражений */
+    @Benchmark
+    public double calculate() {
+        return MathExpression.calculate(source, variables);
+    }
+}
@@ -0,0 +1,72 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Время подготовки 1000 формул к первому вычислению: разбор строк
+ * по сравнению с загрузкой из файла {@link ExpressionSnapshot}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotBenchmark {
+
+    private static final int FORMULAS = 1000;
+
+    private List<String> formulas;
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        formulas = new ArrayList<>(FORMULAS);
+        List<CompiledExpression> expressions = new ArrayList<>(FORMULAS);
+        for (int i = 0; i < FORMULAS; i++) {
+            String formula = BenchmarkFormulas.withVariables(i % 20 + 1) + " + sqrt(va * " + i + " + 1) * sin(vb)";
+            formulas.add(formula);
+            expressions.add(MathExpression.compile(formula));
+        }
+        file = Files.createTempFile("formulas", ".snapshot");
+        ExpressionSnapshot.write(file, expressions);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /** Разбор всех формул */
+    @Benchmark
+    public List<CompiledExpression> parse() {
+        List<CompiledExpression> expressions = new ArrayList<>(FORMULAS);
+        for (String formula : formulas) {
+            expressions.add(MathExpression.compile(formula));
+        }
+        return expressions;
+    }
+
+    /** Загрузка всех формул из снимка */
+    @Benchmark
+    public List<CompiledExpression> snapshot() throws IOException {
+        return ExpressionSnapshot.read(file);
+    }
+}
@@ -0,0 +1,128 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Время прохождения одной записи через обработчик {@link Flow}: вычисляющий каждую запись
+ * в момент получения и передающий её результат по сравнению с {@link StreamingEvaluator},
+ * вычисляющим и передающим записи пакетами. Записи публикуются из потока бенчмарка с ожиданием
+ * при заполнении буфера, поэтому результат включает обратное давление.
+ * Оба варианта используют один пул потоков.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@OperationsPerInvocation(StreamingBenchmark.RECORDS)
+public class StreamingBenchmark {
+
+    static final int RECORDS = 100_000;
+
+    private CompiledExpression expression;
+    private double[][] records;
+    private ExecutorService executor;
+
+    @Setup
+    public void setUp() {
+        expression = MathExpression.compile("(x * 12 + 12) * 2 - y * 8 ^ 2 / (x + y + 1) + sqrt(y)");
+        records = new double[RECORDS][];
+        for (int i = 0; i < RECORDS; i++) {
+            records[i] = new double[] {i % 100, i % 7 + 1};
+        }
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Обработчик, вычисляющий каждую запись в {@link #onNext} и сразу передающий результат
+     * пакетом из одной записи. Обратное давление обеспечивается ожиданием в {@link #submit}.
+     */
+    private static final class PerRecordProcessor extends SubmissionPublisher<EvaluatedBatch>
+            implements Flow.Processor<double[], EvaluatedBatch> {
+        private final CompiledExpression expression;
+        PerRecordProcessor(CompiledExpression expression, ExecutorService executor) {
+            super(executor, Flow.defaultBufferSize());
+            this.expression = expression;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(double[] record) {
+            double[][] records = {record};
+            try {
+                submit(new EvaluatedBatch(records, new double[] {expression.evaluate(record)}, null));
+            } catch (ArithmeticException e) {
+                submit(new EvaluatedBatch(records, new double[] {Double.NaN}, new RuntimeException[] {e}));
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            closeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            close();
+        }
+    }
+
+    private <P extends SubmissionPublisher<EvaluatedBatch> & Flow.Subscriber<double[]>> double run(P processor) {
+        DoubleAdder sum = new DoubleAdder();
+        CompletableFuture<Void> done = processor.consume(batch -> {
+            for (int i = 0; i < batch.size(); i++) {
+                sum.add(batch.getValue(i));
+            }
+        });
+        try (SubmissionPublisher<double[]> source = new SubmissionPublisher<>(executor, Flow.defaultBufferSize())) {
+            source.subscribe(processor);
+            for (double[] record : records) {
+                source.submit(record);
+            }
+        }
+        done.join();
+        return sum.sum();
+    }
+
+    /** Вычисление каждой записи при получении */
+    @Benchmark
+    public double perRecord() {
+        return run(new PerRecordProcessor(expression, executor));
+    }
+
+    /** Вычисление пакетами в {@link StreamingEvaluator} */
+    @Benchmark
+    public double batched() {
+        return run(new StreamingEvaluator(expression, executor, BatchKernel.CHUNK, Duration.ofMillis(1)));
+    }
+}
@@ -0,0 +1,201 @@
+package org.example;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Агрегатное вычисление программы по диапазону строк без массива результатов:
+ * каждый блок строк вычисляется {@link BatchKernel} и сразу учитывается в частичном итоге
+ * {@link Aggregator} потока. Строки делятся на участки по {@link BatchJob#LEAF_ROWS};
+ * суммы участков складываются в порядке номеров участков, поэтому последовательное
+ * и параллельное вычисление дают одинаковый результат.
+ * Строки с математической ошибкой подсчитываются и не прерывают вычисление.
+ */
+final class AggregateJob {
+
+    private final Program program;
+    private final double[][] columns;
+    private final int slotCount;
+    private final int rows;
+    private final double low;
+    private final double high;
+    private final int binCount;
+    private final int leaves;
+    /** Суммы участков: сумма, поправка и сумма без поправки для каждого участка */
+    private final double[] sums;
+    /** Все созданные вычислители, для объединения их частичных итогов */
+    private final Queue<Worker> workers = new ConcurrentLinkedQueue<>();
+    /** Вычислители, свободные для следующего участка */
+    private final Queue<Worker> idle = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Конструктор агрегатного вычисления.
+     *
+     * @param program вычисляемая программа
+     * @param columns столбцы значений переменных по номерам слотов
+     * @param slotCount количество слотов программы
+     * @param rows количество строк
+     * @param low нижняя граница гистограммы
+     * @param high верхняя граница гистограммы
+     * @param binCount количество интервалов гистограммы; 0, если гистограмма не нужна
+     */
+    AggregateJob(Program program, double[][] columns, int slotCount, int rows, double low, double high, int binCount) {
+        this.program = program;
+        this.columns = columns;
+        this.slotCount = slotCount;
+        this.rows = rows;
+        this.low = low;
+        this.high = high;
+        this.binCount = binCount;
+        this.leaves = (rows + BatchJob.LEAF_ROWS - 1) / BatchJob.LEAF_ROWS;
+        this.sums = new double[3 * leaves];
+    }
+
+    /**
+     * Вычисляет все строки в текущем потоке.
+     * @return итог вычисления
+     */
+    BatchAggregate run() {
+        Worker worker = new Worker();
+        for (int leaf = 0; leaf < leaves; leaf++) {
+            worker.evaluateLeaf(leaf);
+        }
+        return result();
+    }
+
+    /**
+     * Вычисляет все строки параллельно. Для {@link ForkJoinPool} участки делятся рекурсивно,
+     * а задачи берут свободный вычислитель из общей очереди; для прочих исполнителей
+     * у каждой задачи свой вычислитель, и задачи по очереди забирают следующие участки.
+     * Программа с функцией, не допускающей пакетного вычисления, вычисляется в текущем потоке.
+     *
+     * @param executor исполнитель задач
+     * @return итог вычисления
+     */
+    BatchAggregate run(Executor executor) {
+        if (!program.vectorizable || leaves <= 1) {
+            return run();
+        }
+        if (executor instanceof ForkJoinPool) {
+            ((ForkJoinPool) executor).invoke(new LeafTask(0, leaves));
+            return result();
+        }
+
+        int count = Math.min(leaves, Runtime.getRuntime().availableProcessors());
+        AtomicInteger nextLeaf = new AtomicInteger();
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[count];
+        for (int i = 0; i < count; i++) {
+            tasks[i] = CompletableFuture.runAsync(() -> {
+                Worker worker = new Worker();
+                for (int leaf = nextLeaf.getAndIncrement(); leaf < leaves; leaf = nextLeaf.getAndIncrement()) {
+                    worker.evaluateLeaf(leaf);
+                }
+            }, executor);
+        }
+        try {
+            CompletableFuture.allOf(tasks).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return result();
+    }
+
+    private BatchAggregate result() {
+        Aggregator total = new Aggregator(low, high, binCount);
+        for (Worker worker : workers) {
+            total.combine(worker.aggregator);
+        }
+        for (int leaf = 0; leaf < leaves; leaf++) {
+            total.addSum(sums[3 * leaf], sums[3 * leaf + 1], sums[3 * leaf + 2]);
+        }
+        return total.result(rows);
+    }
+
+    /**
+     * Вычислитель одного потока: буферы {@link BatchKernel} и частичный итог.
+     */
+    private final class Worker {
+        private final BatchKernel kernel = new BatchKernel(program);
+        private final Aggregator aggregator = new Aggregator(low, high, binCount);
+        private final double[] slots = new double[slotCount];
+        private final double[] values = new double[BatchKernel.CHUNK];
+
+        Worker() {
+            workers.add(this);
+        }
+
+        /**
+         * Вычисляет участок по блокам; блок с ошибкой вычисляется по строкам.
+         */
+        void evaluateLeaf(int leaf) {
+            int from = leaf * BatchJob.LEAF_ROWS;
+            int to = Math.min(rows, from + BatchJob.LEAF_ROWS);
+            for (int start = from; start < to; start += BatchKernel.CHUNK) {
+                int end = Math.min(to, start + BatchKernel.CHUNK);
+                try {
+                    kernel.aggregate(columns, start, end, aggregator);
+                    continue;
+                } catch (ArithmeticException e) {
+                    // ошибка где-то в блоке: вычисляем его строки по отдельности
+                }
+                int failed = 0;
+                for (int row = start; row < end; row++) {
+                    for (int slot = 0; slot < slotCount; slot++) {
+                        slots[slot] = columns[slot][row];
+                    }
+                    try {
+                        values[row - start] = program.execute(slots);
+                    } catch (ArithmeticException e) {
+                        values[row - start] = Double.NaN;
+                        failed++;
+                    }
+                }
+                aggregator.accept(values, 0, end - start, start);
+                aggregator.countErrors(failed);
+            }
+            aggregator.takeSum(sums, leaf);
+        }
+    }
+
+    /**
+     * Задача вычисления диапазона участков, делящая его пополам до одного участка.
+     */
+    private final class LeafTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        LeafTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                Worker worker = idle.poll();
+                if (worker == null) {
+                    worker = new Worker();
+                }
+                try {
+                    worker.evaluateLeaf(from);
+                } finally {
+                    idle.add(worker);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new LeafTask(from, middle), new LeafTask(middle, to));
+        }
+    }
+}
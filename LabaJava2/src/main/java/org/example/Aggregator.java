@@ -0,0 +1,245 @@
+package org.example;
+
+/**
+ * Частичный итог агрегатного вычисления, накапливаемый одним потоком.
+ * Количества, экстремумы и гистограмма не зависят от порядка объединения частичных итогов.
+ * Сумма накапливается отдельно для каждого участка строк и забирается методом
+ * {@link #takeSum(double[], int)}, чтобы суммы участков складывались всегда в одном порядке
+ * и результат не зависел от количества потоков.
+ */
+final class Aggregator {
+
+    /** Количество независимых сумм в цикле суммирования блока */
+    private static final int LANES = 4;
+
+    private final double low;
+    private final double scale;
+    private final long[] bins;
+
+    private int count;
+    private int nanCount;
+    private int errorCount;
+    private double min = Double.POSITIVE_INFINITY;
+    private int minRow = -1;
+    private double max = Double.NEGATIVE_INFINITY;
+    private int maxRow = -1;
+
+    /** Сумма по Кэхэну и её поправка */
+    private double sum;
+    private double compensation;
+    /** Сумма без поправки, нужная при переполнении и бесконечных значениях */
+    private double simpleSum;
+
+    /**
+     * Конструктор частичного итога.
+     *
+     * @param low нижняя граница гистограммы
+     * @param high верхняя граница гистограммы
+     * @param binCount количество интервалов гистограммы; 0, если гистограмма не нужна
+     */
+    Aggregator(double low, double high, int binCount) {
+        this.low = low;
+        this.scale = binCount == 0 ? 0 : binCount / (high - low);
+        this.bins = new long[binCount];
+    }
+
+    /**
+     * Учитывает блок значений. Значения NaN только подсчитываются.
+     * Основной цикл находит экстремумы блока и складывает значения по Кэхэну в {@link #LANES}
+     * независимых суммах, чтобы цепочка зависимых сложений не ограничивала скорость.
+     * Номер строки экстремума ищется, только если блок его улучшил или повторил. Значение NaN или
+     * бесконечность делают сумму полосы NaN; тогда блок суммируется заново с проверкой каждого значения.
+     *
+     * @param values массив, содержащий значения
+     * @param offset индекс первого значения
+     * @param length количество значений
+     * @param firstRow номер строки первого значения
+     */
+    void accept(double[] values, int offset, int length, int firstRow) {
+        double low = Double.POSITIVE_INFINITY;
+        double high = Double.NEGATIVE_INFINITY;
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        double c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+        int end = offset + length - length % LANES;
+        for (int i = offset; i < end; i += LANES) {
+            double v0 = values[i];
+            double v1 = values[i + 1];
+            double v2 = values[i + 2];
+            double v3 = values[i + 3];
+            if (v0 < low) low = v0;
+            if (v1 < low) low = v1;
+            if (v2 < low) low = v2;
+            if (v3 < low) low = v3;
+            if (v0 > high) high = v0;
+            if (v1 > high) high = v1;
+            if (v2 > high) high = v2;
+            if (v3 > high) high = v3;
+            double y0 = v0 - c0, t0 = s0 + y0;
+            double y1 = v1 - c1, t1 = s1 + y1;
+            double y2 = v2 - c2, t2 = s2 + y2;
+            double y3 = v3 - c3, t3 = s3 + y3;
+            c0 = (t0 - s0) - y0;
+            c1 = (t1 - s1) - y1;
+            c2 = (t2 - s2) - y2;
+            c3 = (t3 - s3) - y3;
+            s0 = t0;
+            s1 = t1;
+            s2 = t2;
+            s3 = t3;
+        }
+        int nans = 0;
+        if (Double.isNaN(s0 + s1 + s2 + s3)) {
+            nans = sumChecked(values, offset, end);
+        } else {
+            addSum(s0, c0, s0 - c0);
+            addSum(s1, c1, s1 - c1);
+            addSum(s2, c2, s2 - c2);
+            addSum(s3, c3, s3 - c3);
+        }
+        for (int i = end; i < offset + length; i++) {
+            if (values[i] < low) low = values[i];
+            if (values[i] > high) high = values[i];
+        }
+        nans += sumChecked(values, end, offset + length);
+        count += length - nans;
+        nanCount += nans;
+
+        // экстремумы ищутся среди значений, отличных от NaN, поэтому low <= high, если такие значения есть;
+        // участки могут поступать не по порядку строк, поэтому при равенстве остаётся меньший номер строки
+        if (low <= high) {
+            if (minRow < 0 || low <= min) {
+                int row = firstRow + indexOf(values, offset, length, low);
+                if (minRow < 0 || low < min || row < minRow) {
+                    min = low;
+                    minRow = row;
+                }
+            }
+            if (maxRow < 0 || high >= max) {
+                int row = firstRow + indexOf(values, offset, length, high);
+                if (maxRow < 0 || high > max || row < maxRow) {
+                    max = high;
+                    maxRow = row;
+                }
+            }
+        }
+
+        if (bins.length > 0) {
+            int last = bins.length - 1;
+            for (int i = offset; i < offset + length; i++) {
+                double value = values[i];
+                if (value == value) {
+                    bins[Math.max(0, Math.min(last, (int) ((value - this.low) * scale)))]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Складывает значения участка массива по одному, пропуская NaN.
+     * @return количество значений NaN
+     */
+    private int sumChecked(double[] values, int from, int to) {
+        int nans = 0;
+        for (int i = from; i < to; i++) {
+            double value = values[i];
+            if (value != value) {
+                nans++;
+                continue;
+            }
+            add(value);
+            simpleSum += value;
+        }
+        return nans;
+    }
+
+    private static int indexOf(double[] values, int offset, int length, double value) {
+        int i = 0;
+        while (values[offset + i] != value) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Учитывает строки с ошибкой, переданные в {@link #accept} как NaN.
+     * @param failed количество строк с ошибкой
+     */
+    void countErrors(int failed) {
+        nanCount -= failed;
+        errorCount += failed;
+    }
+
+    /**
+     * Передаёт сумму текущего участка строк и начинает новую.
+     *
+     * @param sums массив сумм участков: сумма, поправка и сумма без поправки для каждого
+     * @param leaf номер участка
+     */
+    void takeSum(double[] sums, int leaf) {
+        sums[3 * leaf] = sum;
+        sums[3 * leaf + 1] = compensation;
+        sums[3 * leaf + 2] = simpleSum;
+        sum = 0;
+        compensation = 0;
+        simpleSum = 0;
+    }
+
+    /**
+     * Добавляет к сумме другую сумму по Кэхэну вместе с её поправкой.
+     *
+     * @param otherSum сумма
+     * @param otherCompensation поправка суммы
+     * @param otherSimpleSum сумма без поправки
+     */
+    void addSum(double otherSum, double otherCompensation, double otherSimpleSum) {
+        add(otherSum);
+        add(-otherCompensation);
+        simpleSum += otherSimpleSum;
+    }
+
+    private void add(double value) {
+        double y = value - compensation;
+        double t = sum + y;
+        compensation = (t - sum) - y;
+        sum = t;
+    }
+
+    /**
+     * Объединяет с частичным итогом другого потока всё, кроме суммы.
+     * При равных экстремумах выбирается строка с меньшим номером.
+     *
+     * @param other частичный итог
+     */
+    void combine(Aggregator other) {
+        count += other.count;
+        nanCount += other.nanCount;
+        errorCount += other.errorCount;
+        if (other.minRow >= 0 && (minRow < 0 || other.min < min || other.min == min && other.minRow < minRow)) {
+            min = other.min;
+            minRow = other.minRow;
+        }
+        if (other.maxRow >= 0 && (maxRow < 0 || other.max > max || other.max == max && other.maxRow < maxRow)) {
+            max = other.max;
+            maxRow = other.maxRow;
+        }
+        for (int bin = 0; bin < bins.length; bin++) {
+            bins[bin] += other.bins[bin];
+        }
+    }
+
+    /**
+     * Создаёт итог из накопленных значений.
+     * @param rows количество вычисленных строк
+     * @return итог агрегатного вычисления
+     */
+    BatchAggregate result(int rows) {
+        double total = sum - compensation;
+        if (Double.isNaN(total) && Double.isInfinite(simpleSum)) {
+            // поправка Кэхэна не определена при бесконечных слагаемых
+            total = simpleSum;
+        }
+        return new BatchAggregate(rows, count, count == 0 ? 0 : total,
+                minRow < 0 ? Double.NaN : min, minRow, maxRow < 0 ? Double.NaN : max, maxRow,
+                nanCount, errorCount, bins.clone());
+    }
+}
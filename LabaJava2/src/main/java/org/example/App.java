@@ -1,23 +1,41 @@
 package org.example;
 
-import java.util.HashMap;
-import java.util.Map;
+import javax.management.JMException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
 import java.util.Scanner;
 
 /**
  * Главный класс приложения - консольный математический калькулятор.
  * Позволяет вычислять выражения с переменными и функциями.
+ * С аргументами {@code --batch <csv|binary> <выражение> <входной файл> <выходной файл>}
+ * вычисляет выражение для всех записей файла без диалога с пользователем,
+ * а с аргументами {@code --server [порт]} запускает {@link EvaluationServer} на локальном адресе.
  */
 public class App {
 
     /**
      * Точка входа в приложение.
-     * @param args аргументы командной строки (не используются)
+     * @param args аргументы командной строки: пусто для диалогового режима
+     *             или {@code --batch <csv|binary> <выражение> <входной файл> <выходной файл>}
+     *             или {@code --server [порт]}
      */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            runBatch(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--server")) {
+            runServer(args);
+            return;
+        }
         Scanner cin = new Scanner(System.in);
         System.out.println("Математический калькулятор");
-        System.out.println("Доступные функции: sin, cos, tan, sqrt, log");
+        System.out.println("Доступные функции: " + String.join(", ", FunctionRegistry.getNames()));
         System.out.println("Пример: (sin(90)*12+12)*2-8*8^2");
         System.out.println("Пример: x+12+y*2");
         System.out.print("Введите выражение: ");
@@ -25,8 +43,9 @@ public class App {
         String userExpression = cin.nextLine().trim();
 
         try {
-            Map<String, Double> userVariables = requestVariableValues(userExpression, cin);
-            double result = MathExpression.calculate(userExpression, userVariables);
+            CompiledExpression expression = MathExpression.compile(userExpression);
+            double[] userVariables = requestVariableValues(expression, cin);
+            double result = expression.evaluate(userVariables);
             System.out.printf("Результат вычисления: %.4f%n", result);
         } catch (IllegalArgumentException e) {
             System.out.println("Ошибка ввода");
@@ -36,42 +55,73 @@ public class App {
         cin.close();
     }
 
+    /**
+     * Вычисляет выражение для всех записей файла.
+     * @param args аргументы командной строки, начинающиеся с {@code --batch}
+     */
+    private static void runBatch(String[] args) {
+        if (args.length != 5) {
+            System.out.println("Использование: --batch <csv|binary> <выражение> <входной файл> <выходной файл>");
+            return;
+        }
+        try {
+            RecordFileEvaluator.Format format = RecordFileEvaluator.Format.valueOf(args[1].toUpperCase(Locale.ROOT));
+            CompiledExpression expression = MathExpression.compile(args[2].trim());
+            RecordFileResult result = new RecordFileEvaluator(expression, format)
+                    .evaluate(Path.of(args[3]), Path.of(args[4]));
+            System.out.printf("Обработано записей: %d, с ошибками: %d%n", result.getRowCount(), result.getErrorCount());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Ошибка ввода: " + e.getMessage());
+        } catch (IOException e) {
+            System.out.println("Ошибка чтения или записи файла: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Запускает сервер вычисления выражений на локальном адресе.
+     * @param args аргументы командной строки, начинающиеся с {@code --server}
+     */
+    private static void runServer(String[] args) {
+        try {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+            EvaluationServer server = new EvaluationServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            server.start();
+            ExpressionMetrics.getInstance().registerMBean();
+            System.out.printf("Сервер запущен на порту %d%n", server.getPort());
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+            Thread.currentThread().join();
+        } catch (NumberFormatException e) {
+            System.out.println("Ошибка ввода: некорректный порт");
+        } catch (IOException | JMException e) {
+            System.out.println("Ошибка запуска сервера: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Запрашивает значения переменных у пользователя.
      *
-     * @param expression строка с математическим выражением
+     * @param expression скомпилированное выражение
      * @param input сканер для ввода значений
-     * @return map значений переменных
+     * @return значения переменных в порядке слотов выражения
      */
-    private static Map<String, Double> requestVariableValues(String expression, Scanner input) {
-        Map<String, Double> variables = new HashMap<>();
-        char[] expressionChars = expression.toCharArray();
-
-        for (int i = 0; i < expressionChars.length; i++) {
-            if (Character.isLetter(expressionChars[i])) {
-                StringBuilder varNameBuilder = new StringBuilder();
-
-                while (i < expressionChars.length && Character.isLetter(expressionChars[i])) {
-                    varNameBuilder.append(expressionChars[i++]);
-                }
-                i--;
-
-                String variableName = varNameBuilder.toString();
+    private static double[] requestVariableValues(CompiledExpression expression, Scanner input) {
+        List<String> variableNames = expression.getVariableNames();
+        double[] variables = new double[variableNames.size()];
 
-                if (!variables.containsKey(variableName) &&
-                        !MathExpression.isFunction(variableName)) {
+        for (int slot = 0; slot < variables.length; slot++) {
+            String variableName = variableNames.get(slot);
 
-                    System.out.printf("Введите значение для '%s': ", variableName);
-                    while (!input.hasNextDouble()) {
-                        System.out.println("Ошибка: введите числовое значение");
-                        input.next();
-                        System.out.printf("Введите значение для '%s': ", variableName);
-                    }
-                    variables.put(variableName, input.nextDouble());
-                    input.nextLine();
-                }
+            System.out.printf("Введите значение для '%s': ", variableName);
+            while (!input.hasNextDouble()) {
+                System.out.println("Ошибка: введите числовое значение");
+                input.next();
+                System.out.printf("Введите значение для '%s': ", variableName);
             }
+            variables[slot] = input.nextDouble();
+            input.nextLine();
         }
         return variables;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,145 @@
+package org.example;
+
+/**
+ * Итог агрегатного вычисления выражения по столбцам значений: сумма, среднее,
+ * минимум и максимум с номерами строк, количество значений NaN и строк с ошибкой,
+ * а также гистограмма, если она была запрошена.
+ * Значения NaN и строки с ошибкой не участвуют в сумме, экстремумах и гистограмме.
+ */
+public final class BatchAggregate {
+
+    private final int rowCount;
+    private final int count;
+    private final double sum;
+    private final double min;
+    private final int minRow;
+    private final double max;
+    private final int maxRow;
+    private final int nanCount;
+    private final int errorCount;
+    private final long[] histogram;
+
+    /**
+     * Конструктор итога.
+     *
+     * @param rowCount количество вычисленных строк
+     * @param count количество значений, участвующих в агрегатах
+     * @param sum сумма значений
+     * @param min наименьшее значение
+     * @param minRow номер строки с наименьшим значением или -1
+     * @param max наибольшее значение
+     * @param maxRow номер строки с наибольшим значением или -1
+     * @param nanCount количество строк со значением NaN
+     * @param errorCount количество строк с математической ошибкой
+     * @param histogram количества значений по интервалам гистограммы
+     */
+    BatchAggregate(int rowCount, int count, double sum, double min, int minRow, double max, int maxRow,
+                   int nanCount, int errorCount, long[] histogram) {
+        this.rowCount = rowCount;
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.minRow = minRow;
+        this.max = max;
+        this.maxRow = maxRow;
+        this.nanCount = nanCount;
+        this.errorCount = errorCount;
+        this.histogram = histogram;
+    }
+
+    /**
+     * Возвращает количество вычисленных строк.
+     * @return количество строк
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Возвращает количество значений, участвующих в агрегатах, то есть строк
+     * без ошибки со значением, отличным от NaN.
+     * @return количество значений
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Возвращает сумму значений, вычисленную с компенсацией погрешности (алгоритм Кэхэна).
+     * @return сумма или 0, если значений нет
+     */
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * Возвращает среднее значение.
+     * @return среднее или NaN, если значений нет
+     */
+    public double getMean() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    /**
+     * Возвращает наименьшее значение.
+     * @return наименьшее значение или NaN, если значений нет
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Возвращает номер первой строки с наименьшим значением.
+     * @return номер строки или -1, если значений нет
+     */
+    public int getMinRow() {
+        return minRow;
+    }
+
+    /**
+     * Возвращает наибольшее значение.
+     * @return наибольшее значение или NaN, если значений нет
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Возвращает номер первой строки с наибольшим значением.
+     * @return номер строки или -1, если значений нет
+     */
+    public int getMaxRow() {
+        return maxRow;
+    }
+
+    /**
+     * Возвращает количество строк, значение выражения в которых равно NaN.
+     * @return количество строк
+     */
+    public int getNanCount() {
+        return nanCount;
+    }
+
+    /**
+     * Возвращает количество строк, вычисление которых завершилось математической ошибкой.
+     * @return количество строк
+     */
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * Возвращает гистограмму значений. Значения меньше нижней границы учитываются
+     * в первом интервале, не меньше верхней - в последнем.
+     * @return копия массива количеств по интервалам; пустой, если гистограмма не запрашивалась
+     */
+    public long[] getHistogram() {
+        return histogram.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "строк: " + rowCount + ", значений: " + count + ", сумма: " + sum + ", среднее: " + getMean()
+                + ", минимум: " + min + ", максимум: " + max + ", NaN: " + nanCount + ", ошибок: " + errorCount;
+    }
+}
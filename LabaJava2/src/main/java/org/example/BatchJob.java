@@ -0,0 +1,189 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Пакетное вычисление программы по диапазону строк, последовательно или параллельно.
+ * Диапазон делится на участки по {@link #LEAF_ROWS} строк; каждый участок вычисляется
+ * собственным {@link BatchKernel} и пишет только в свою часть массива результатов,
+ * поэтому потоки не конкурируют между собой.
+ */
+final class BatchJob {
+
+    /** Количество строк в участке, вычисляемом одной задачей */
+    static final int LEAF_ROWS = 8 * BatchKernel.CHUNK;
+
+    private final Program program;
+    private final double[][] columns;
+    private final int slotCount;
+    private final double[] out;
+    private final RowErrorPolicy policy;
+    private final Queue<int[]> failures = new ConcurrentLinkedQueue<>();
+    private volatile boolean cancelled;
+
+    /**
+     * Конструктор пакетного вычисления.
+     *
+     * @param program вычисляемая программа
+     * @param columns столбцы значений переменных по номерам слотов
+     * @param slotCount количество слотов программы
+     * @param out массив результатов, его длина задаёт количество строк
+     * @param policy способ обработки ошибок в строках
+     */
+    BatchJob(Program program, double[][] columns, int slotCount, double[] out, RowErrorPolicy policy) {
+        this.program = program;
+        this.columns = columns;
+        this.slotCount = slotCount;
+        this.out = out;
+        this.policy = policy;
+    }
+
+    /**
+     * Вычисляет все строки в текущем потоке.
+     * @return итог вычисления
+     */
+    BatchResult run() {
+        evaluateRange(0, out.length);
+        return result();
+    }
+
+    /**
+     * Вычисляет все строки параллельно.
+     * Для {@link ForkJoinPool} диапазон делится рекурсивно, для прочих исполнителей
+     * задачи по очереди забирают следующие участки из общего счётчика.
+     * Программа с функцией, не допускающей пакетного вычисления, вычисляется в текущем потоке.
+     *
+     * @param executor исполнитель задач
+     * @return итог вычисления
+     */
+    BatchResult run(Executor executor) {
+        if (!program.vectorizable) {
+            return run();
+        }
+        if (executor instanceof ForkJoinPool) {
+            ((ForkJoinPool) executor).invoke(new RangeTask(0, out.length));
+            return result();
+        }
+
+        int leaves = (out.length + LEAF_ROWS - 1) / LEAF_ROWS;
+        int workers = Math.min(leaves, Runtime.getRuntime().availableProcessors());
+        AtomicInteger nextLeaf = new AtomicInteger();
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[workers];
+
+        for (int i = 0; i < workers; i++) {
+            tasks[i] = CompletableFuture.runAsync(() -> {
+                for (int leaf = nextLeaf.getAndIncrement(); leaf < leaves; leaf = nextLeaf.getAndIncrement()) {
+                    int from = leaf * LEAF_ROWS;
+                    evaluateRange(from, Math.min(out.length, from + LEAF_ROWS));
+                }
+            }, executor);
+        }
+        try {
+            CompletableFuture.allOf(tasks).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return result();
+    }
+
+    /**
+     * Вычисляет диапазон строк. Если в диапазоне произошла ошибка, а политика
+     * допускает продолжение, диапазон пересчитывается по блокам, а блоки с ошибками - по строкам.
+     */
+    private void evaluateRange(int from, int to) {
+        if (cancelled) {
+            return;
+        }
+        BatchKernel kernel = new BatchKernel(program);
+        try {
+            kernel.evaluate(columns, out, from, to);
+            return;
+        } catch (ArithmeticException e) {
+            if (policy == RowErrorPolicy.FAIL_FAST) {
+                cancelled = true;
+                throw e;
+            }
+        }
+
+        int[] failed = new int[4];
+        int failedCount = 0;
+        double[] slots = new double[slotCount];
+        for (int start = from; start < to; start += BatchKernel.CHUNK) {
+            int end = Math.min(to, start + BatchKernel.CHUNK);
+            try {
+                kernel.evaluate(columns, out, start, end);
+                continue;
+            } catch (ArithmeticException e) {
+                // ошибка где-то в блоке: вычисляем его строки по отдельности
+            }
+            for (int row = start; row < end; row++) {
+                for (int slot = 0; slot < slotCount; slot++) {
+                    slots[slot] = columns[slot][row];
+                }
+                try {
+                    out[row] = program.execute(slots);
+                } catch (ArithmeticException e) {
+                    out[row] = Double.NaN;
+                    if (failedCount == failed.length) {
+                        failed = Arrays.copyOf(failed, failedCount * 2);
+                    }
+                    failed[failedCount++] = row;
+                }
+            }
+        }
+        if (failedCount > 0) {
+            failures.add(Arrays.copyOf(failed, failedCount));
+        }
+    }
+
+    private BatchResult result() {
+        int total = 0;
+        for (int[] rows : failures) {
+            total += rows.length;
+        }
+        int[] failedRows = new int[total];
+        int position = 0;
+        for (int[] rows : failures) {
+            System.arraycopy(rows, 0, failedRows, position, rows.length);
+            position += rows.length;
+        }
+        Arrays.sort(failedRows);
+        return new BatchResult(failedRows);
+    }
+
+    /**
+     * Задача вычисления диапазона строк, делящая его пополам до размера участка.
+     */
+    private final class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        RangeTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_ROWS) {
+                evaluateRange(from, to);
+                return;
+            }
+            int middle = from + (to - from) / 2 / BatchKernel.CHUNK * BatchKernel.CHUNK;
+            invokeAll(new RangeTask(from, middle), new RangeTask(middle, to));
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Вычисление программы по столбцам значений.
+ * Строки обрабатываются блоками по {@link #CHUNK}: каждая операция программы выполняется
+ * сразу для всего блока простым циклом по массивам, который JIT может векторизовать.
+ * Буферы блоков принадлежат объекту, поэтому один объект не должен
+ * использоваться из нескольких потоков одновременно.
+ */
+final class BatchKernel {
+
+    /** Количество строк в блоке */
+    static final int CHUNK = 1024;
+
+    private final Program program;
+    private final double[][] buffers;
+    private final double[][] arrays;
+    private final int[] offsets;
+    private final double[][] temps;
+    /** Аргументы одной строки для вызова функции с тремя и более аргументами */
+    private double[] arguments = new double[0];
+
+    /**
+     * Конструктор вычислителя.
+     * @param program вычисляемая программа
+     */
+    BatchKernel(Program program) {
+        this.program = program;
+        this.buffers = new double[program.maxDepth][CHUNK];
+        this.arrays = new double[program.maxDepth][];
+        this.offsets = new int[program.maxDepth];
+        this.temps = new double[program.temps][CHUNK];
+    }
+
+    /**
+     * Вычисляет программу для строк из диапазона.
+     *
+     * @param columns столбцы значений переменных по номерам слотов
+     * @param out массив результатов
+     * @param from первая строка диапазона
+     * @param to строка, следующая за последней строкой диапазона
+     * @throws ArithmeticException при математических ошибках в любой строке диапазона
+     */
+    void evaluate(double[][] columns, double[] out, int from, int to) {
+        for (int start = from; start < to; start += CHUNK) {
+            int length = Math.min(CHUNK, to - start);
+            int top = execute(columns, null, start, length);
+            System.arraycopy(arrays[top], offsets[top], out, start, length);
+        }
+    }
+
+    /**
+     * Вычисляет программу для одного блока строк и округляет результаты до float.
+     *
+     * @param columns столбцы значений переменных по номерам слотов, блок начинается с нулевой строки
+     * @param out массив результатов
+     * @param start строка массива результатов, соответствующая первой строке блока
+     * @param length количество строк блока, не больше {@link #CHUNK}
+     * @throws ArithmeticException при математических ошибках в любой строке блока
+     */
+    void evaluateChunk(double[][] columns, float[] out, int start, int length) {
+        int top = execute(columns, null, 0, length);
+        double[] result = arrays[top];
+        int offset = offsets[top];
+        for (int i = 0; i < length; i++) out[start + i] = (float) result[offset + i];
+    }
+
+    /**
+     * Вычисляет программу с несколькими результатами для строк из диапазона.
+     *
+     * @param columns столбцы значений переменных по номерам слотов
+     * @param outs столбцы результатов по номерам результатов
+     * @param from первая строка диапазона
+     * @param to строка, следующая за последней строкой диапазона
+     * @throws ArithmeticException при математических ошибках в любой строке диапазона
+     */
+    void evaluateAll(double[][] columns, double[][] outs, int from, int to) {
+        for (int start = from; start < to; start += CHUNK) {
+            execute(columns, outs, start, Math.min(CHUNK, to - start));
+        }
+    }
+
+    /**
+     * Вычисляет программу для строк из диапазона и учитывает результаты в частичном итоге,
+     * не записывая их в массив. Результаты блока учитываются только после того,
+     * как весь блок вычислен без ошибок.
+     *
+     * @param columns столбцы значений переменных по номерам слотов
+     * @param from первая строка диапазона
+     * @param to строка, следующая за последней строкой диапазона
+     * @param aggregator частичный итог
+     * @throws ArithmeticException при математических ошибках в любой строке блока
+     */
+    void aggregate(double[][] columns, int from, int to, Aggregator aggregator) {
+        for (int start = from; start < to; start += CHUNK) {
+            int length = Math.min(CHUNK, to - start);
+            int top = execute(columns, null, start, length);
+            aggregator.accept(arrays[top], offsets[top], length, start);
+        }
+    }
+
+    /**
+     * Выполняет программу для одного блока строк.
+     * Операнд на стеке - массив и смещение в нём: загрузка переменной ссылается
+     * на столбец без копирования, результаты операций пишутся в буфер своей глубины.
+     *
+     * @param outs столбцы результатов для операций {@link Program#OUTPUT} или null
+     * @return индекс вершины стека с результатом
+     */
+    private int execute(double[][] columns, double[][] outs, int start, int length) {
+        int[] code = program.code;
+        int top = -1;
+
+        for (int pc = 0; pc < code.length; pc++) {
+            int opcode = code[pc];
+            switch (opcode) {
+                case Program.CONST: {
+                    top++;
+                    Arrays.fill(buffers[top], 0, length, program.constants[code[++pc]]);
+                    arrays[top] = buffers[top];
+                    offsets[top] = 0;
+                    break;
+                }
+                case Program.LOAD:
+                    top++;
+                    arrays[top] = columns[code[++pc]];
+                    offsets[top] = start;
+                    break;
+                case Program.STORE:
+                    System.arraycopy(arrays[top], offsets[top], temps[code[++pc]], 0, length);
+                    break;
+                case Program.OUTPUT:
+                    System.arraycopy(arrays[top], offsets[top], outs[code[++pc]], start, length);
+                    top--;
+                    break;
+                case Program.RECALL:
+                    top++;
+                    arrays[top] = temps[code[++pc]];
+                    offsets[top] = 0;
+                    break;
+                case Program.ADD:
+                case Program.SUB:
+                case Program.MUL:
+                case Program.DIV:
+                case Program.POW:
+                    top--;
+                    binary(opcode, arrays[top], offsets[top], arrays[top + 1], offsets[top + 1],
+                            buffers[top], length);
+                    arrays[top] = buffers[top];
+                    offsets[top] = 0;
+                    break;
+                case Program.CALL: {
+                    FunctionRegistry.Definition function = program.functions[code[++pc]];
+                    top -= function.arity - 1;
+                    call(function, top, length);
+                    arrays[top] = buffers[top];
+                    offsets[top] = 0;
+                    break;
+                }
+                default:
+                    unary(opcode, program.trigPrecision, arrays[top], offsets[top], buffers[top], length);
+                    arrays[top] = buffers[top];
+                    offsets[top] = 0;
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Вызывает функцию для блока строк. Аргументы занимают стек начиная с {@code first},
+     * результат пишется в буфер той же глубины. Функции одного и двух аргументов вызываются
+     * простым циклом по массивам, аргументы остальных собираются построчно во вспомогательный массив.
+     */
+    private void call(FunctionRegistry.Definition function, int first, int length) {
+        double[] r = buffers[first];
+        double[] a = arrays[first];
+        int ao = offsets[first];
+        if (function.unary != null) {
+            DoubleUnaryOperator operator = function.unary;
+            for (int i = 0; i < length; i++) r[i] = operator.applyAsDouble(a[ao + i]);
+            return;
+        }
+        if (function.binary != null) {
+            DoubleBinaryOperator operator = function.binary;
+            double[] b = arrays[first + 1];
+            int bo = offsets[first + 1];
+            for (int i = 0; i < length; i++) r[i] = operator.applyAsDouble(a[ao + i], b[bo + i]);
+            return;
+        }
+        if (arguments.length < function.arity) {
+            arguments = new double[function.arity];
+        }
+        for (int i = 0; i < length; i++) {
+            for (int argument = 0; argument < function.arity; argument++) {
+                arguments[argument] = arrays[first + argument][offsets[first + argument] + i];
+            }
+            r[i] = function.function.apply(arguments, 0);
+        }
+    }
+
+    private static void binary(int opcode, double[] a, int ao, double[] b, int bo, double[] r, int length) {
+        switch (opcode) {
+            case Program.ADD:
+                for (int i = 0; i < length; i++) r[i] = a[ao + i] + b[bo + i];
+                break;
+            case Program.SUB:
+                for (int i = 0; i < length; i++) r[i] = a[ao + i] - b[bo + i];
+                break;
+            case Program.MUL:
+                for (int i = 0; i < length; i++) r[i] = a[ao + i] * b[bo + i];
+                break;
+            case Program.DIV:
+                for (int i = 0; i < length; i++) {
+                    if (b[bo + i] == 0) throw new ArithmeticException("Деление на ноль");
+                }
+                for (int i = 0; i < length; i++) r[i] = a[ao + i] / b[bo + i];
+                break;
+            case Program.POW:
+                for (int i = 0; i < length; i++) r[i] = Math.pow(a[ao + i], b[bo + i]);
+                break;
+            default:
+                throw new IllegalStateException("Неизвестный код операции " + opcode);
+        }
+    }
+
+    private static void unary(int opcode, TrigPrecision trig, double[] a, int ao, double[] r, int length) {
+        switch (opcode) {
+            case Program.NEG:
+                for (int i = 0; i < length; i++) r[i] = -a[ao + i];
+                break;
+            case Program.SIN:
+                for (int i = 0; i < length; i++) r[i] = trig.sin(a[ao + i]);
+                break;
+            case Program.COS:
+                for (int i = 0; i < length; i++) r[i] = trig.cos(a[ao + i]);
+                break;
+            case Program.TAN:
+                for (int i = 0; i < length; i++) r[i] = trig.tan(a[ao + i]);
+                break;
+            case Program.SQRT:
+                for (int i = 0; i < length; i++) r[i] = MathOperations.SQRT.calculate(a[ao + i]);
+                break;
+            case Program.LOG:
+                for (int i = 0; i < length; i++) r[i] = MathOperations.LOG.calculate(a[ao + i]);
+                break;
+            default:
+                throw new IllegalStateException("Неизвестный код операции " + opcode);
+        }
+    }
+}
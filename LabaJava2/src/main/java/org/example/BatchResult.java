@@ -0,0 +1,42 @@
+package org.example;
+
+/**
+ * Итог пакетного вычисления: номера строк, вычисление которых завершилось ошибкой.
+ * Заполняется только при {@link RowErrorPolicy#WRITE_NAN}.
+ */
+public final class BatchResult {
+
+    private final int[] failedRows;
+
+    /**
+     * Конструктор итога.
+     * @param failedRows номера строк с ошибками в порядке возрастания
+     */
+    BatchResult(int[] failedRows) {
+        this.failedRows = failedRows;
+    }
+
+    /**
+     * Возвращает номера строк, в которых произошла ошибка.
+     * @return копия массива номеров строк в порядке возрастания
+     */
+    public int[] getFailedRows() {
+        return failedRows.clone();
+    }
+
+    /**
+     * Возвращает количество строк с ошибками.
+     * @return количество строк
+     */
+    public int getErrorCount() {
+        return failedRows.length;
+    }
+
+    /**
+     * Проверяет, что все строки вычислены без ошибок.
+     * @return true если ошибок не было
+     */
+    public boolean isSuccessful() {
+        return failedRows.length == 0;
+    }
+}
@@ -0,0 +1,367 @@
+package org.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Компилятор постфиксной программы в класс JVM.
+ * Для программы генерируется скрытый класс ({@link MethodHandles.Lookup#defineHiddenClass})
+ * с методом {@link ScalarEvaluator#evaluate(double[])} или, для программы с несколькими
+ * результатами, {@link OutputEvaluator#evaluate(double[], double[])}, в котором операции записаны
+ * подряд без цикла и ветвлений, поэтому JIT виртуальной машины компилирует его
+ * как обычный написанный вручную метод. Скрытый класс не привязан к загрузчику
+ * и выгружается вместе с программой, когда та становится недостижимой.
+ */
+final class BytecodeCompiler {
+
+    /**
+     * Количество вычислений программы интерпретатором, после которого она компилируется.
+     * Задаётся свойством {@code org.example.jit.threshold}; отрицательное значение отключает компиляцию.
+     */
+    static final int THRESHOLD = Integer.getInteger("org.example.jit.threshold", 10_000);
+
+    /** Наибольший размер кода метода, допустимый форматом class-файла */
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    /** Первая локальная переменная временных ячеек: после {@code this} и массива слотов */
+    private static final int FIRST_TEMP = 2;
+    /** Вспомогательная переменная для записи результата: после {@code this} и двух массивов */
+    private static final int SCRATCH = 3;
+    /** Первая локальная переменная временных ячеек в методе с несколькими результатами */
+    private static final int FIRST_OUTPUT_TEMP = 5;
+
+    private static final String CLASS_NAME = "org/example/GeneratedEvaluator";
+    private static final String HELPERS = "org/example/BytecodeCompiler";
+    private static final String TRIG_PRECISION = "org/example/TrigPrecision";
+
+    private BytecodeCompiler() {
+    }
+
+    /**
+     * Компилирует программу в скрытый класс.
+     *
+     * @param program программа выражения
+     * @return сгенерированный вычислитель или null, если программа не может быть скомпилирована
+     */
+    static ScalarEvaluator compile(Program program) {
+        return (ScalarEvaluator) instantiate(generate(program));
+    }
+
+    /**
+     * Компилирует программу с несколькими результатами в скрытый класс.
+     *
+     * @param program программа набора выражений
+     * @return сгенерированный вычислитель или null, если программа не может быть скомпилирована
+     */
+    static OutputEvaluator compileOutputs(Program program) {
+        return (OutputEvaluator) instantiate(generate(program));
+    }
+
+    private static Object instantiate(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            return lookup.lookupClass().getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Генерирует class-файл для программы. Для программы с несколькими результатами
+     * метод получает вторым аргументом массив результатов, а значение перед записью
+     * в массив сохраняется во вспомогательной локальной переменной.
+     *
+     * @param program программа выражения
+     * @return содержимое class-файла или null, если метод превышает ограничения формата class-файла
+     *         или программа вызывает функцию, зарегистрированную как {@link ExpressionFunction}
+     */
+    static byte[] generate(Program program) {
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.classRef(CLASS_NAME);
+        int superClass = pool.classRef("java/lang/Object");
+        boolean multiple = program.outputs > 0;
+        int evaluatorInterface = pool.classRef(multiple ? "org/example/OutputEvaluator" : "org/example/ScalarEvaluator");
+        int objectInit = pool.methodRef("java/lang/Object", "<init>", "()V");
+        int initName = pool.utf8("<init>");
+        int initType = pool.utf8("()V");
+        int evaluateName = pool.utf8("evaluate");
+        int evaluateType = pool.utf8(multiple ? "([D[D)V" : "([D)D");
+        int firstTemp = multiple ? FIRST_OUTPUT_TEMP : FIRST_TEMP;
+        int codeName = pool.utf8("Code");
+
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        int[] words = program.code;
+        for (int pc = 0; pc < words.length; pc++) {
+            switch (words[pc]) {
+                case Program.CONST:
+                    code.write(0x14); // ldc2_w
+                    writeShort(code, pool.doubleConstant(program.constants[words[++pc]]));
+                    break;
+                case Program.LOAD:
+                    code.write(0x2B); // aload_1
+                    pushInt(code, words[++pc], pool);
+                    code.write(0x31); // daload
+                    break;
+                case Program.NEG: code.write(0x77); break; // dneg
+                case Program.ADD: code.write(0x63); break; // dadd
+                case Program.SUB: code.write(0x67); break; // dsub
+                case Program.MUL: code.write(0x6B); break; // dmul
+                case Program.DIV: invokeStatic(code, pool.methodRef(HELPERS, "divide", "(DD)D")); break;
+                case Program.POW: invokeStatic(code, pool.methodRef("java/lang/Math", "pow", "(DD)D")); break;
+                case Program.SIN: trigonometry(code, pool, program.trigPrecision, "sin"); break;
+                case Program.COS: trigonometry(code, pool, program.trigPrecision, "cos"); break;
+                case Program.TAN: trigonometry(code, pool, program.trigPrecision, "tan"); break;
+                case Program.SQRT: invokeStatic(code, pool.methodRef(HELPERS, "sqrt", "(D)D")); break;
+                case Program.LOG: invokeStatic(code, pool.methodRef(HELPERS, "log", "(D)D")); break;
+                case Program.CALL: {
+                    FunctionRegistry.Definition function = program.functions[words[++pc]];
+                    if (function.unary == null && function.binary == null) {
+                        return null;
+                    }
+                    pushInt(code, function.id, pool);
+                    invokeStatic(code, pool.methodRef(HELPERS, "call", function.unary != null ? "(DI)D" : "(DDI)D"));
+                    break;
+                }
+                case Program.STORE:
+                    code.write(0x5C); // dup2
+                    localVariable(code, 0x39, firstTemp + 2 * words[++pc]); // dstore
+                    break;
+                case Program.RECALL:
+                    localVariable(code, 0x18, firstTemp + 2 * words[++pc]); // dload
+                    break;
+                case Program.OUTPUT:
+                    localVariable(code, 0x39, SCRATCH); // dstore
+                    code.write(0x2C); // aload_2
+                    pushInt(code, words[++pc], pool);
+                    localVariable(code, 0x18, SCRATCH); // dload
+                    code.write(0x52); // dastore
+                    break;
+                default: return null;
+            }
+        }
+        code.write(multiple ? 0xB1 : 0xAF); // return или dreturn
+        int maxLocals = firstTemp + 2 * program.temps;
+        if (code.size() > MAX_CODE_LENGTH || pool.size() > 0xFFFF || maxLocals > 0xFFFF) {
+            return null;
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(52);
+            pool.writeTo(out);
+            out.writeShort(0x0011); // public final
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(evaluatorInterface);
+            out.writeShort(0); // поля
+
+            out.writeShort(2); // методы
+            byte[] init = {0x2A, (byte) 0xB7, (byte) (objectInit >> 8), (byte) objectInit, (byte) 0xB1};
+            writeMethod(out, 0x0001, initName, initType, codeName, 1, 1, init);
+            writeMethod(out, 0x0001, evaluateName, evaluateType, codeName,
+                    2 * program.maxDepth + 2, maxLocals, code.toByteArray());
+
+            out.writeShort(0); // атрибуты класса
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeMethod(DataOutputStream out, int flags, int name, int type, int codeName,
+                                    int maxStack, int maxLocals, byte[] code) throws IOException {
+        out.writeShort(flags);
+        out.writeShort(name);
+        out.writeShort(type);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0); // таблица исключений
+        out.writeShort(0); // атрибуты кода
+    }
+
+    private static void pushInt(ByteArrayOutputStream code, int value, ConstantPool pool) {
+        if (value <= 5) {
+            code.write(0x03 + value); // iconst_<n>
+        } else if (value <= Byte.MAX_VALUE) {
+            code.write(0x10); // bipush
+            code.write(value);
+        } else if (value <= Short.MAX_VALUE) {
+            code.write(0x11); // sipush
+            writeShort(code, value);
+        } else {
+            code.write(0x13); // ldc_w
+            writeShort(code, pool.intConstant(value));
+        }
+    }
+
+    /**
+     * Записывает обращение к локальной переменной типа double.
+     */
+    private static void localVariable(ByteArrayOutputStream code, int opcode, int index) {
+        if (index <= 0xFF) {
+            code.write(opcode);
+            code.write(index);
+        } else {
+            code.write(0xC4); // wide
+            code.write(opcode);
+            writeShort(code, index);
+        }
+    }
+
+    /**
+     * Записывает вызов тригонометрической функции: способ вычисления загружается
+     * из статического поля перечисления и передаётся вспомогательному методу
+     * вторым аргументом, поэтому JIT видит постоянного получателя и встраивает вызов.
+     */
+    private static void trigonometry(ByteArrayOutputStream code, ConstantPool pool,
+                                     TrigPrecision trig, String function) {
+        code.write(0xB2); // getstatic
+        writeShort(code, pool.fieldRef(TRIG_PRECISION, trig.name(), "L" + TRIG_PRECISION + ";"));
+        invokeStatic(code, pool.methodRef(HELPERS, function, "(DL" + TRIG_PRECISION + ";)D"));
+    }
+
+    private static void invokeStatic(ByteArrayOutputStream code, int method) {
+        code.write(0xB8);
+        writeShort(code, method);
+    }
+
+    private static void writeShort(ByteArrayOutputStream code, int value) {
+        code.write(value >> 8);
+        code.write(value);
+    }
+
+    /*
+     * Операции, вызываемые из сгенерированного кода. Скрытый класс принадлежит
+     * пакету org.example, поэтому методы доступны ему без модификатора public.
+     */
+
+    static double divide(double firstArg, double secondArg) {
+        if (secondArg == 0) throw new ArithmeticException("Деление на ноль");
+        return firstArg / secondArg;
+    }
+
+    static double sin(double x, TrigPrecision trig) { return trig.sin(x); }
+
+    static double cos(double x, TrigPrecision trig) { return trig.cos(x); }
+
+    static double tan(double x, TrigPrecision trig) { return trig.tan(x); }
+
+    static double sqrt(double x) { return MathOperations.SQRT.calculate(x); }
+
+    static double log(double x) { return MathOperations.LOG.calculate(x); }
+
+    static double call(double x, int function) { return FunctionRegistry.get(function).unary.applyAsDouble(x); }
+
+    static double call(double x, double y, int function) {
+        return FunctionRegistry.get(function).binary.applyAsDouble(x, y);
+    }
+
+    /**
+     * Пул констант class-файла с устранением повторов.
+     */
+    private static final class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> entries = new HashMap<>();
+        private int next = 1;
+
+        int size() {
+            return next;
+        }
+
+        int utf8(String value) {
+            return entry("U" + value, 1, () -> {
+                out.writeByte(1);
+                out.writeUTF(value);
+            });
+        }
+
+        int classRef(String name) {
+            int nameIndex = utf8(name);
+            return entry("C" + name, 1, () -> {
+                out.writeByte(7);
+                out.writeShort(nameIndex);
+            });
+        }
+
+        int methodRef(String owner, String name, String type) {
+            return memberRef(10, "M", owner, name, type);
+        }
+
+        int fieldRef(String owner, String name, String type) {
+            return memberRef(9, "F", owner, name, type);
+        }
+
+        private int memberRef(int tag, String prefix, String owner, String name, String type) {
+            int ownerIndex = classRef(owner);
+            int nameIndex = utf8(name);
+            int typeIndex = utf8(type);
+            int nameAndType = entry("N" + name + ':' + type, 1, () -> {
+                out.writeByte(12);
+                out.writeShort(nameIndex);
+                out.writeShort(typeIndex);
+            });
+            return entry(prefix + owner + '.' + name + type, 1, () -> {
+                out.writeByte(tag);
+                out.writeShort(ownerIndex);
+                out.writeShort(nameAndType);
+            });
+        }
+
+        int intConstant(int value) {
+            return entry("I" + value, 1, () -> {
+                out.writeByte(3);
+                out.writeInt(value);
+            });
+        }
+
+        int doubleConstant(double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            return entry("D" + bits, 2, () -> {
+                out.writeByte(6);
+                out.writeLong(bits);
+            });
+        }
+
+        void writeTo(DataOutputStream target) throws IOException {
+            target.writeShort(next);
+            bytes.writeTo(target);
+        }
+
+        private int entry(String key, int width, Writer writer) {
+            Integer index = entries.get(key);
+            if (index != null) {
+                return index;
+            }
+            try {
+                writer.write();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            index = next;
+            next += width;
+            entries.put(key, index);
+            return index;
+        }
+
+        private interface Writer {
+            void write() throws IOException;
+        }
+    }
+}
@@ -0,0 +1,513 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Разобранное математическое выражение, готовое к многократному вычислению.
+ * Разбор строки выполняется один раз в {@link MathExpression#compile(String)},
+ * переменные при этом заменяются номерами слотов, а дерево выражения
+ * переводится в постфиксную программу для {@link Program}.
+ * Выражение и программа объекта неизменяемы; единственное изменяемое поле - ссылка
+ * на счётчики метрик, которая задаётся при первом измерении и публикуется через volatile,
+ * поэтому объект может использоваться из нескольких потоков одновременно.
+ */
+public final class CompiledExpression {
+
+    private final String source;
+    private final Program program;
+    private final String[] variableNames;
+    /**
+     * Счётчики метрик, создаются при первом измерении. Потоки могут задать поле одновременно,
+     * но {@link ExpressionMetrics#statsFor(String)} возвращает для строки одни и те же счётчики.
+     */
+    private volatile ExpressionStats stats;
+
+    /**
+     * Конструктор скомпилированного выражения.
+     *
+     * @param source исходная строка выражения
+     * @param root корень дерева выражения
+     * @param variableNames имена переменных, упорядоченные по номерам слотов
+     * @param trigPrecision способ вычисления тригонометрических функций
+     */
+    CompiledExpression(String source, ExpressionNode root, String[] variableNames, TrigPrecision trigPrecision) {
+        this(source, build(root, trigPrecision), variableNames);
+    }
+
+    /**
+     * Конструктор выражения из готовой программы, например загруженной из {@link ExpressionSnapshot}.
+     *
+     * @param source исходная строка выражения
+     * @param program программа вычисления с одним результатом
+     * @param variableNames имена переменных, упорядоченные по номерам слотов
+     */
+    CompiledExpression(String source, Program program, String[] variableNames) {
+        this.source = source;
+        this.program = program;
+        this.variableNames = variableNames;
+    }
+
+    private static Program build(ExpressionNode root, TrigPrecision trigPrecision) {
+        Program.Builder builder = new Program.Builder();
+        builder.emitRoot(root);
+        return builder.build(trigPrecision);
+    }
+
+    /**
+     * Возвращает исходную строку выражения.
+     * @return строка выражения
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Возвращает способ вычисления тригонометрических функций, выбранный при компиляции.
+     * @return способ вычисления тригонометрических функций
+     */
+    public TrigPrecision getTrigPrecision() {
+        return program.trigPrecision;
+    }
+
+    /**
+     * Возвращает имена переменных выражения в порядке их слотов.
+     * @return неизменяемый список имён переменных
+     */
+    public List<String> getVariableNames() {
+        return Collections.unmodifiableList(Arrays.asList(variableNames));
+    }
+
+    /**
+     * Возвращает номер слота переменной.
+     *
+     * @param name имя переменной
+     * @return номер слота или -1, если переменная в выражении не используется
+     */
+    public int getSlot(String name) {
+        for (int slot = 0; slot < variableNames.length; slot++) {
+            if (variableNames[slot].equals(name)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Привязывает позиционные значения к переменным выражения.
+     * Имена, которые в выражении не используются, пропускаются,
+     * а отсутствие имени какой-либо переменной выражения обнаруживается сразу.
+     *
+     * @param names имена значений в порядке их следования в строке
+     * @return фрейм для вычисления по строкам значений
+     * @throws IllegalArgumentException если имя повторяется или переменной выражения нет среди имён
+     */
+    public VariableFrame bind(String... names) {
+        int[] columnSlots = new int[names.length];
+        boolean[] bound = new boolean[variableNames.length];
+
+        for (int column = 0; column < names.length; column++) {
+            int slot = getSlot(names[column]);
+            if (slot >= 0) {
+                if (bound[slot]) {
+                    throw new IllegalArgumentException("Повторное имя переменной: " + names[column]);
+                }
+                bound[slot] = true;
+            }
+            columnSlots[column] = slot;
+        }
+        for (int slot = 0; slot < variableNames.length; slot++) {
+            if (!bound[slot]) {
+                throw new IllegalArgumentException("Переменная не найдена: " + variableNames[slot]);
+            }
+        }
+        return new VariableFrame(this, columnSlots, variableNames.length);
+    }
+
+    /**
+     * Создаёт фрейм, значения которого следуют в порядке слотов выражения.
+     * @return фрейм для вычисления
+     */
+    public VariableFrame newFrame() {
+        return bind(variableNames);
+    }
+
+    /**
+     * Создаёт вычислитель значения выражения вместе с частными производными
+     * по заданным переменным. Переменная, не входящая в выражение, получает производную 0.
+     *
+     * @param names имена переменных в порядке производных; если не заданы - все переменные
+     *              выражения в порядке слотов
+     * @return вычислитель производных
+     * @throws IllegalArgumentException если имя повторяется или выражение вызывает функцию
+     *                                  из {@link FunctionRegistry}, зарегистрированную без производных
+     */
+    public GradientEvaluator gradient(String... names) {
+        if (names.length == 0) {
+            names = variableNames;
+        }
+        int[] slots = new int[names.length];
+        for (int direction = 0; direction < names.length; direction++) {
+            for (int previous = 0; previous < direction; previous++) {
+                if (names[previous].equals(names[direction])) {
+                    throw new IllegalArgumentException("Повторное имя переменной: " + names[direction]);
+                }
+            }
+            slots[direction] = getSlot(names[direction]);
+        }
+        return new GradientEvaluator(program, names.clone(), slots, variableNames.length);
+    }
+
+    /**
+     * Вычисляет значение выражения.
+     *
+     * @param variables карта значений переменных
+     * @return результат вычисления
+     * @throws IllegalArgumentException если значение какой-либо переменной не задано
+     * @throws ArithmeticException при математических ошибках (деление на ноль и т.д.)
+     */
+    public double evaluate(Map<String, Double> variables) {
+        double[] slots = new double[variableNames.length];
+        for (int slot = 0; slot < variableNames.length; slot++) {
+            Double value = variables.get(variableNames[slot]);
+            if (value == null) {
+                throw ExpressionMetrics.recordError(this, new IllegalArgumentException("Переменная не найдена"));
+            }
+            slots[slot] = value;
+        }
+        return execute(slots);
+    }
+
+    /**
+     * Вычисляет значение выражения по значениям переменных в порядке слотов
+     * (см. {@link #getVariableNames()}). Вычисление не создаёт объектов.
+     *
+     * @param values значения переменных в порядке слотов
+     * @return результат вычисления
+     * @throws IllegalArgumentException если значений меньше, чем переменных
+     * @throws ArithmeticException при математических ошибках (деление на ноль и т.д.)
+     */
+    public double evaluate(double... values) {
+        if (values.length < variableNames.length) {
+            throw ExpressionMetrics.recordError(this, new IllegalArgumentException("Переменная не найдена"));
+        }
+        return execute(values);
+    }
+
+    private double execute(double[] values) {
+        if (!ExpressionMetrics.enabled) {
+            return program.execute(values);
+        }
+        ExpressionStats stats = stats();
+        long start = stats.startEvaluation();
+        try {
+            double result = program.execute(values);
+            ExpressionMetrics.endEvaluation(stats, start);
+            return result;
+        } catch (ArithmeticException e) {
+            throw ExpressionMetrics.recordError(this, e);
+        }
+    }
+
+    /**
+     * Вычисляет выражение для каждой строки столбцов значений.
+     * Операции выполняются сразу над блоками строк, что значительно быстрее
+     * вычисления каждой строки по отдельности.
+     *
+     * @param columns столбцы значений переменных в порядке слотов
+     * @param out массив результатов, его длина задаёт количество строк
+     * @throws IllegalArgumentException если столбцов меньше, чем переменных, или столбец короче результата
+     * @throws ArithmeticException при математических ошибках в любой строке
+     */
+    public void evaluateBatch(double[][] columns, double[] out) {
+        checkColumns(columns, variableNames.length, out.length);
+        if (!ExpressionMetrics.enabled) {
+            new BatchKernel(program).evaluate(columns, out, 0, out.length);
+            return;
+        }
+        measureBatch(out.length, () -> {
+            new BatchKernel(program).evaluate(columns, out, 0, out.length);
+            return null;
+        });
+    }
+
+    /**
+     * Вычисляет выражение для каждой строки столбцов значений с заданной обработкой ошибок.
+     *
+     * @param columns столбцы значений переменных в порядке слотов
+     * @param out массив результатов, его длина задаёт количество строк
+     * @param policy способ обработки математических ошибок в строках
+     * @return итог вычисления с номерами строк, в которых произошла ошибка
+     * @throws IllegalArgumentException если столбцов меньше, чем переменных, или столбец короче результата
+     * @throws ArithmeticException при ошибке в строке и политике {@link RowErrorPolicy#FAIL_FAST}
+     */
+    public BatchResult evaluateBatch(double[][] columns, double[] out, RowErrorPolicy policy) {
+        checkColumns(columns, variableNames.length, out.length);
+        BatchJob job = new BatchJob(program, columns, variableNames.length, out, policy);
+        return ExpressionMetrics.enabled ? measureBatch(out.length, job::run) : job.run();
+    }
+
+    /**
+     * Вычисляет выражение для каждой строки столбцов значений {@code float}.
+     * Столбцы и результаты занимают вдвое меньше памяти, чем в double, поэтому на больших
+     * пакетах, скорость которых ограничена памятью, вычисление заметно быстрее.
+     * Погрешность относительно вычисления в double описана в {@link FloatPrecision}.
+     *
+     * @param columns столбцы значений переменных в порядке слотов
+     * @param out массив результатов, его длина задаёт количество строк
+     * @param precision точность промежуточных вычислений
+     * @throws IllegalArgumentException если столбцов меньше, чем переменных, или столбец короче результата
+     * @throws ArithmeticException при математических ошибках в любой строке
+     */
+    public void evaluateBatch(float[][] columns, float[] out, FloatPrecision precision) {
+        evaluateBatch(columns, out, precision, RowErrorPolicy.FAIL_FAST);
+    }
+
+    /**
+     * Вычисляет выражение для каждой строки столбцов значений {@code float}
+     * с заданной обработкой ошибок. При {@link RowErrorPolicy#WRITE_NAN} в результат строки
+     * с ошибкой записывается {@link Float#NaN}.
+     *
+     * @param columns столбцы значений переменных в порядке слотов
+     * @param out массив результатов, его длина задаёт количество строк
+     * @param precision точность промежуточных вычислений
+     * @param policy способ обработки математических ошибок в строках
+     * @return итог вычисления с номерами строк, в которых произошла ошибка
+     * @throws IllegalArgumentException если столбцов меньше, чем переменных, или столбец короче результата
+     * @throws ArithmeticException при ошибке в строке и политике {@link RowErrorPolicy#FAIL_FAST}
+     */
+    public BatchResult evaluateBatch(float[][] columns, float[] out, FloatPrecision precision,
+                                     RowErrorPolicy policy) {
+        checkColumns(columns, variableNames.length, out.length);
+        FloatBatchKernel kernel = new FloatBatchKernel(program, variableNames.length, precision);
+        return ExpressionMetrics.enabled
+                ? measureBatch(out.length, () -> kernel.run(columns, out, policy))
+                : kernel.run(columns, out, policy);
+    }
+
+    /**
+     * Вычисляет выражение для каждой строки столбцов значений параллельно
+     * в общем {@link ForkJoinPool}.
+     *
+     * @param columns столбцы значений переменных в порядке слотов
+     * @param out массив результатов, его длина задаёт количество строк
+     * @param policy способ обработки математических ошибок в строках
+     * @return итог вычисления с номерами строк, в которых произошла ошибка
+     * @throws IllegalArgumentException если столбцов меньше, чем переменных, или столбец короче результата
+     * @throws ArithmeticException при ошибке в строке и политике {@link RowErrorPolicy#FAIL_FAST}
+     */
+    public BatchResult evaluateParallel(double[][] columns, double[] out, RowErrorPolicy policy) {
+        return evaluateParallel(columns, out, policy, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Вычисляет выражение для каждой строки столбцов значений параллельно
+     * с помощью заданного исполнителя. Строки делятся на участки, каждый из которых
+     * пишет только в свою часть массива результатов.
+     *
+     * @param columns столбцы значений переменных в порядке слотов
+     * @param out массив результатов, его длина задаёт количество строк
+     * @param policy способ обработки математических ошибок в строках
+     * @param executor исполнитель задач
+     * @return итог вычисления с номерами строк, в которых произошла ошибка
+     * @throws IllegalArgumentException если столбцов меньше, чем переменных, или столбец короче результата
+     * @throws ArithmeticException при ошибке в строке и политике {@link RowErrorPolicy#FAIL_FAST}
+     */
+    public BatchResult evaluateParallel(double[][] columns, double[] out, RowErrorPolicy policy, Executor executor) {
+        checkColumns(columns, variableNames.length, out.length);
+        BatchJob job = new BatchJob(program, columns, variableNames.length, out, policy);
+        return ExpressionMetrics.enabled ? measureBatch(out.length, () -> job.run(executor)) : job.run(executor);
+    }
+
+    /**
+     * Вычисляет сумму, среднее, минимум и максимум выражения по строкам столбцов значений,
+     * не сохраняя результаты строк. Сумма вычисляется с компенсацией погрешности (алгоритм Кэхэна).
+     * Строки с математической ошибкой и значением NaN подсчитываются отдельно и в агрегаты не входят.
+     *
+     * @param columns столбцы значений переменных в порядке слотов
+     * @param rows количество строк
+     * @return итог вычисления
+     * @throws IllegalArgumentException если столбцов меньше, чем переменных, столбец короче
+     *                                  количества строк или оно отрицательно
+     */
+    public BatchAggregate aggregate(double[][] columns, int rows) {
+        return aggregate(newAggregateJob(columns, rows, 0, 1, 0), rows, null);
+    }
+
+    /**
+     * Вычисляет агрегаты выражения по строкам столбцов значений вместе с гистограммой
+     * из равных интервалов между границами.
+     *
+     * @param columns столбцы значений переменных в порядке слотов
+     * @param rows количество строк
+     * @param low нижняя граница первого интервала
+     * @param high верхняя граница последнего интервала
+     * @param bins количество интервалов
+     * @return итог вычисления
+     * @throws IllegalArgumentException если столбцов меньше, чем переменных, столбец короче
+     *                                  количества строк, оно отрицательно или границы гистограммы некорректны
+     * @see #aggregate(double[][], int)
+     */
+    public BatchAggregate aggregate(double[][] columns, int rows, double low, double high, int bins) {
+        checkHistogram(low, high, bins);
+        return aggregate(newAggregateJob(columns, rows, low, high, bins), rows, null);
+    }
+
+    /**
+     * Вычисляет агрегаты выражения по строкам столбцов значений параллельно.
+     * Каждый поток накапливает собственный частичный итог, которые объединяются в конце;
+     * результат совпадает с последовательным вычислением.
+     *
+     * @param columns столбцы значений переменных в порядке слотов
+     * @param rows количество строк
+     * @param executor исполнитель задач
+     * @return итог вычисления
+     * @throws IllegalArgumentException если столбцов меньше, чем переменных, столбец короче
+     *                                  количества строк или оно отрицательно
+     * @see #aggregate(double[][], int)
+     */
+    public BatchAggregate aggregateParallel(double[][] columns, int rows, Executor executor) {
+        return aggregate(newAggregateJob(columns, rows, 0, 1, 0), rows, executor);
+    }
+
+    /**
+     * Вычисляет агрегаты выражения вместе с гистограммой параллельно.
+     *
+     * @param columns столбцы значений переменных в порядке слотов
+     * @param rows количество строк
+     * @param low нижняя граница первого интервала
+     * @param high верхняя граница последнего интервала
+     * @param bins количество интервалов
+     * @param executor исполнитель задач
+     * @return итог вычисления
+     * @throws IllegalArgumentException если столбцов меньше, чем переменных, столбец короче
+     *                                  количества строк, оно отрицательно или границы гистограммы некорректны
+     * @see #aggregateParallel(double[][], int, Executor)
+     */
+    public BatchAggregate aggregateParallel(double[][] columns, int rows, double low, double high, int bins,
+                                            Executor executor) {
+        checkHistogram(low, high, bins);
+        return aggregate(newAggregateJob(columns, rows, low, high, bins), rows, executor);
+    }
+
+    private AggregateJob newAggregateJob(double[][] columns, int rows, double low, double high, int bins) {
+        if (rows < 0) {
+            throw new IllegalArgumentException("Количество строк не может быть отрицательным");
+        }
+        checkColumns(columns, variableNames.length, rows);
+        return new AggregateJob(program, columns, variableNames.length, rows, low, high, bins);
+    }
+
+    private static void checkHistogram(double low, double high, int bins) {
+        if (bins < 1) {
+            throw new IllegalArgumentException("Количество интервалов гистограммы должно быть положительным");
+        }
+        if (!(low < high) || !Double.isFinite(high - low)) {
+            throw new IllegalArgumentException("Некорректные границы гистограммы: " + low + ", " + high);
+        }
+    }
+
+    /**
+     * Выполняет агрегатное вычисление, при включённых метриках записывая его
+     * как пакетное вычисление.
+     *
+     * @param executor исполнитель задач или null для вычисления в текущем потоке
+     */
+    private BatchAggregate aggregate(AggregateJob job, int rows, Executor executor) {
+        if (!ExpressionMetrics.enabled) {
+            return executor == null ? job.run() : job.run(executor);
+        }
+        long start = System.nanoTime();
+        BatchAggregate result = executor == null ? job.run() : job.run(executor);
+        ExpressionMetrics.recordBatch(stats(), System.nanoTime() - start, rows, result.getErrorCount());
+        return result;
+    }
+
+    /**
+     * Выполняет пакетное вычисление, записывая его длительность и количество строк с ошибкой.
+     *
+     * @param rows количество строк
+     * @param batch пакетное вычисление; результат null означает отсутствие сведений об ошибках
+     * @return результат пакетного вычисления
+     */
+    BatchResult measureBatch(int rows, Supplier<BatchResult> batch) {
+        long start = System.nanoTime();
+        try {
+            BatchResult result = batch.get();
+            ExpressionMetrics.recordBatch(stats(), System.nanoTime() - start, rows,
+                    result == null ? 0 : result.getErrorCount());
+            return result;
+        } catch (ArithmeticException e) {
+            throw ExpressionMetrics.recordError(this, e);
+        }
+    }
+
+    /**
+     * Возвращает счётчики метрик выражения.
+     * @return счётчики, общие для всех скомпилированных копий той же строки
+     */
+    ExpressionStats stats() {
+        ExpressionStats current = stats;
+        if (current == null) {
+            current = ExpressionMetrics.getInstance().statsFor(source);
+            stats = current;
+        }
+        return current;
+    }
+
+    /**
+     * Проверяет столбцы значений перед пакетным вычислением.
+     *
+     * @param columns столбцы значений
+     * @param count требуемое количество столбцов
+     * @param rows количество строк
+     * @throws IllegalArgumentException если столбцов меньше требуемого или столбец короче строк
+     */
+    static void checkColumns(double[][] columns, int count, int rows) {
+        if (columns.length < count) {
+            throw new IllegalArgumentException("Переменная не найдена");
+        }
+        for (int column = 0; column < count; column++) {
+            if (columns[column].length < rows) {
+                throw new IllegalArgumentException("Столбец короче количества строк");
+            }
+        }
+    }
+
+    /**
+     * Проверяет столбцы значений {@code float} перед пакетным вычислением.
+     *
+     * @param columns столбцы значений
+     * @param count требуемое количество столбцов
+     * @param rows количество строк
+     * @throws IllegalArgumentException если столбцов меньше требуемого или столбец короче строк
+     */
+    static void checkColumns(float[][] columns, int count, int rows) {
+        if (columns.length < count) {
+            throw new IllegalArgumentException("Переменная не найдена");
+        }
+        for (int column = 0; column < count; column++) {
+            if (columns[column].length < rows) {
+                throw new IllegalArgumentException("Столбец короче количества строк");
+            }
+        }
+    }
+
+    /**
+     * Возвращает программу вычисления выражения.
+     * @return постфиксная программа
+     */
+    Program getProgram() {
+        return program;
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+}
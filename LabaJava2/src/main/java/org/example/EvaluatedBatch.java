@@ -0,0 +1,98 @@
+package org.example;
+
+/**
+ * Результаты вычисления пакета записей, переданного {@link StreamingEvaluator}:
+ * для каждой записи — её значения переменных, значение выражения или ошибка.
+ * Записи пакета идут в порядке поступления в обработчик.
+ */
+public final class EvaluatedBatch {
+
+    private final double[][] records;
+    private final double[] values;
+    private final RuntimeException[] errors;
+    private final int errorCount;
+
+    /**
+     * Конструктор результатов.
+     * @param records записи пакета
+     * @param values значения выражения, NaN для записей с ошибкой
+     * @param errors ошибки записей или null, если ошибок не было
+     */
+    EvaluatedBatch(double[][] records, double[] values, RuntimeException[] errors) {
+        this.records = records;
+        this.values = values;
+        this.errors = errors;
+        int count = 0;
+        if (errors != null) {
+            for (RuntimeException error : errors) {
+                count += error == null ? 0 : 1;
+            }
+        }
+        this.errorCount = count;
+    }
+
+    /**
+     * Возвращает количество записей в пакете.
+     * @return количество записей
+     */
+    public int size() {
+        return records.length;
+    }
+
+    /**
+     * Возвращает значения переменных записи в том виде, в котором она была получена.
+     * @param index номер записи в пакете
+     * @return значения переменных
+     */
+    public double[] getRecord(int index) {
+        return records[index];
+    }
+
+    /**
+     * Возвращает значение выражения для записи.
+     * @param index номер записи в пакете
+     * @return значение выражения или NaN, если вычисление завершилось ошибкой
+     */
+    public double getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * Возвращает значения выражения для всех записей пакета.
+     * @return копия массива значений
+     */
+    public double[] getValues() {
+        return values.clone();
+    }
+
+    /**
+     * Возвращает ошибку вычисления записи.
+     * @param index номер записи в пакете
+     * @return ошибка или null, если запись вычислена успешно
+     */
+    public RuntimeException getError(int index) {
+        return errors == null ? null : errors[index];
+    }
+
+    /**
+     * Проверяет, что вычисление записи завершилось ошибкой.
+     * @param index номер записи в пакете
+     * @return true если произошла ошибка
+     */
+    public boolean isFailed(int index) {
+        return getError(index) != null;
+    }
+
+    /**
+     * Возвращает количество записей с ошибками.
+     * @return количество записей
+     */
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    @Override
+    public String toString() {
+        return "EvaluatedBatch{size=" + records.length + ", errors=" + errorCount + "}";
+    }
+}
@@ -0,0 +1,247 @@
+package org.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * HTTP-сервер вычисления выражений.
+ * <ul>
+ *     <li>{@code PUT /formulas/<id>} с выражением в теле регистрирует выражение под именем {@code id}
+ *     и возвращает имена его переменных через запятую - в этом порядке передаются значения;</li>
+ *     <li>{@code POST /evaluate/<id>} с одной или несколькими строками значений через запятую
+ *     возвращает по строке на каждую строку запроса: результат или {@code error}
+ *     при математической ошибке. Пустые строки пропускаются; для выражения без переменных
+ *     каждая непустая строка задаёт одно вычисление;</li>
+ *     <li>{@code GET /metrics} возвращает отчёт {@link ExpressionMetrics#dump()}.</li>
+ * </ul>
+ * Выражения компилируются через общий кэш {@link MathExpression#getCache()}, поэтому
+ * одинаковые выражения под разными именами разбираются один раз. Одновременные запросы
+ * к одному имени объединяются в пакеты {@link MicroBatcher}; объединитель заменяется
+ * вместе с выражением при повторной регистрации имени. Каждое соединение
+ * обрабатывается виртуальным потоком, если среда выполнения их поддерживает,
+ * иначе - потоком из кэширующего пула.
+ */
+public final class EvaluationServer {
+
+    /** Наибольший размер тела запроса в байтах */
+    static final int MAX_BODY_SIZE = 1 << 20;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    /** Объединители по именам выражений */
+    private final ConcurrentHashMap<String, MicroBatcher> formulas = new ConcurrentHashMap<>();
+
+    /**
+     * Создаёт сервер, ещё не принимающий соединения.
+     *
+     * @param address адрес и порт; порт 0 выбирает свободный порт
+     * @throws IOException если адрес недоступен
+     */
+    public EvaluationServer(InetSocketAddress address) throws IOException {
+        this.server = HttpServer.create(address, 0);
+        this.executor = newExecutor();
+        server.setExecutor(executor);
+        server.createContext("/formulas/", this::register);
+        server.createContext("/evaluate/", this::evaluate);
+        server.createContext("/metrics", this::metrics);
+    }
+
+    /**
+     * Начинает принимать соединения.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Останавливает сервер, дождавшись завершения текущих запросов не дольше заданного времени.
+     * @param delaySeconds наибольшее время ожидания в секундах
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    /**
+     * Возвращает порт, на котором сервер принимает соединения.
+     * @return номер порта
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Возвращает объединитель запросов зарегистрированного выражения.
+     *
+     * @param id имя выражения
+     * @return объединитель или null, если выражение не зарегистрировано
+     */
+    MicroBatcher getBatcher(String id) {
+        return formulas.get(id);
+    }
+
+    /**
+     * Создаёт исполнитель с виртуальным потоком на задачу. Метод ищется по имени,
+     * так как проект собирается для версии Java без виртуальных потоков.
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "evaluation-server");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private void register(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("PUT")) {
+                respond(exchange, 405, "Метод не поддерживается");
+                return;
+            }
+            String id = identifier(exchange, "/formulas/");
+            String body = readBody(exchange);
+            if (id.isEmpty() || body == null) {
+                respond(exchange, 400, "Некорректный запрос");
+                return;
+            }
+            CompiledExpression expression;
+            try {
+                expression = MathExpression.getCache().get(body.trim());
+            } catch (IllegalArgumentException e) {
+                respond(exchange, 400, e.getMessage());
+                return;
+            }
+            formulas.compute(id, (key, batcher) ->
+                    batcher != null && batcher.getExpression() == expression ? batcher : new MicroBatcher(expression));
+            respond(exchange, 200, String.join(",", expression.getVariableNames()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void evaluate(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                respond(exchange, 405, "Метод не поддерживается");
+                return;
+            }
+            MicroBatcher batcher = formulas.get(identifier(exchange, "/evaluate/"));
+            if (batcher == null) {
+                respond(exchange, 404, "Выражение не найдено");
+                return;
+            }
+            String body = readBody(exchange);
+            if (body == null) {
+                respond(exchange, 400, "Некорректный запрос");
+                return;
+            }
+
+            int width = batcher.getWidth();
+            String[] lines = body.split("\n");
+            double[] values = new double[lines.length * width];
+            int count = 0;
+            for (String line : lines) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (width > 0 && fields.length != width) {
+                    respond(exchange, 400, "Неверное количество значений в строке " + (count + 1));
+                    return;
+                }
+                try {
+                    for (int slot = 0; slot < width; slot++) {
+                        values[count * width + slot] = Double.parseDouble(fields[slot].trim());
+                    }
+                } catch (NumberFormatException e) {
+                    respond(exchange, 400, "Некорректное число в строке " + (count + 1));
+                    return;
+                }
+                count++;
+            }
+
+            MicroBatcher.Request request;
+            try {
+                request = batcher.evaluate(values, count);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                respond(exchange, 503, "Вычисление прервано");
+                return;
+            }
+            if (request.error != null) {
+                respond(exchange, 500, String.valueOf(request.error.getMessage()));
+                return;
+            }
+            StringBuilder response = new StringBuilder(count * 20);
+            for (int row = 0; row < count; row++) {
+                if (request.failed[row]) {
+                    response.append("error");
+                } else {
+                    response.append(request.results[row]);
+                }
+                response.append('\n');
+            }
+            respond(exchange, 200, response.toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void metrics(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                respond(exchange, 405, "Метод не поддерживается");
+                return;
+            }
+            respond(exchange, 200, ExpressionMetrics.getInstance().dump());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static String identifier(HttpExchange exchange, String prefix) {
+        return exchange.getRequestURI().getPath().substring(prefix.length());
+    }
+
+    /**
+     * Читает тело запроса.
+     * @return тело запроса или null, если оно больше {@link #MAX_BODY_SIZE}
+     */
+    private static String readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = exchange.getRequestBody()) {
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                body.write(buffer, 0, read);
+                if (body.size() > MAX_BODY_SIZE) {
+                    return null;
+                }
+            }
+        }
+        return body.toString(StandardCharsets.UTF_8);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] bytes = (text.endsWith("\n") ? text : text + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,453 @@
+package org.example;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Сеанс инкрементального вычисления набора выражений.
+ * Сеанс хранит значения переменных и всех узлов общего графа {@link ExpressionSet}.
+ * При изменении переменной пересчитываются только зависящие от неё узлы в порядке
+ * от листьев к корням; если новое значение узла совпало с прежним, его родители
+ * не пересчитываются. Поэтому стоимость обновления пропорциональна тому, что
+ * действительно изменилось, а не размеру набора. Вызов нечистой функции
+ * из {@link FunctionRegistry} также пересчитывается только при изменении аргументов.
+ * Математическая ошибка в узле запоминается и переходит к зависящим от него результатам,
+ * не мешая вычислению остальных. Объект не предназначен для использования
+ * из нескольких потоков одновременно.
+ */
+public final class EvaluationSession {
+
+    private static final int[] NONE = new int[0];
+
+    private final ExpressionSet set;
+    private final TrigPrecision trigPrecision;
+
+    /** Код операции узла из {@link Program} */
+    private final int[] opcodes;
+    /** Первый дочерний узел или номер слота для переменной */
+    private final int[] firstOperands;
+    private final int[] secondOperands;
+    /** Функция и узлы аргументов для вызова {@link Program#CALL}, иначе null */
+    private final FunctionRegistry.Definition[] functions;
+    private final int[][] arguments;
+    private final double[] callArguments;
+    private final double[] constants;
+    private final int[][] parents;
+    /** Результаты, корнем которых является узел */
+    private final int[][] nodeOutputs;
+    /** Узел переменной по номеру слота или -1, если переменная не влияет на результаты */
+    private final int[] variableNodes;
+    private final int[] outputNodes;
+
+    private final double[] slots;
+    private final double[] values;
+    /** Сообщение об ошибке вычисления узла или null */
+    private final String[] errors;
+
+    /** Очередь узлов на пересчёт - двоичная куча по номерам узлов */
+    private final int[] heap;
+    private final boolean[] queued;
+    private int heapSize;
+    private final boolean[] outputChanged;
+    private final int[] changedOutputs;
+
+    /** Количество пересчитанных узлов с момента создания сеанса */
+    long recomputations;
+
+    /**
+     * Конструктор сеанса. Узлы графа нумеруются в порядке обхода в глубину,
+     * поэтому номер узла всегда больше номеров его дочерних узлов и очередь
+     * по возрастанию номеров пересчитывает узлы после всех их зависимостей.
+     *
+     * @param set набор выражений
+     * @param roots корни выражений набора
+     * @param values начальные значения переменных в порядке слотов
+     */
+    EvaluationSession(ExpressionSet set, ExpressionNode[] roots, double[] values) {
+        this.set = set;
+        this.trigPrecision = set.getTrigPrecision();
+        Map<ExpressionNode, Integer> index = new IdentityHashMap<>();
+        List<ExpressionNode> order = new ArrayList<>();
+        for (ExpressionNode root : roots) {
+            number(root, index, order);
+        }
+
+        int count = order.size();
+        opcodes = new int[count];
+        firstOperands = new int[count];
+        secondOperands = new int[count];
+        functions = new FunctionRegistry.Definition[count];
+        arguments = new int[count][];
+        constants = new double[count];
+        variableNodes = new int[values.length];
+        Arrays.fill(variableNodes, -1);
+        int[] parentCounts = new int[count];
+        for (int node = 0; node < count; node++) {
+            describe(node, order.get(node), index);
+            for (ExpressionNode child : order.get(node).children()) {
+                parentCounts[index.get(child)]++;
+            }
+        }
+        parents = new int[count][];
+        for (int node = 0; node < count; node++) {
+            parents[node] = parentCounts[node] == 0 ? NONE : new int[parentCounts[node]];
+            parentCounts[node] = 0;
+        }
+        for (int node = 0; node < count; node++) {
+            for (ExpressionNode child : order.get(node).children()) {
+                int childIndex = index.get(child);
+                parents[childIndex][parentCounts[childIndex]++] = node;
+            }
+        }
+
+        outputNodes = new int[roots.length];
+        int[] outputCounts = new int[count];
+        for (int output = 0; output < roots.length; output++) {
+            outputNodes[output] = index.get(roots[output]);
+            outputCounts[outputNodes[output]]++;
+        }
+        nodeOutputs = new int[count][];
+        for (int node = 0; node < count; node++) {
+            nodeOutputs[node] = outputCounts[node] == 0 ? NONE : new int[outputCounts[node]];
+            outputCounts[node] = 0;
+        }
+        for (int output = 0; output < roots.length; output++) {
+            int node = outputNodes[output];
+            nodeOutputs[node][outputCounts[node]++] = output;
+        }
+
+        int maxArity = 0;
+        for (FunctionRegistry.Definition function : functions) {
+            maxArity = function != null ? Math.max(maxArity, function.arity) : maxArity;
+        }
+        this.callArguments = new double[maxArity];
+        this.slots = values.clone();
+        this.values = new double[count];
+        this.errors = new String[count];
+        this.heap = new int[count];
+        this.queued = new boolean[count];
+        this.outputChanged = new boolean[roots.length];
+        this.changedOutputs = new int[roots.length];
+        for (int node = 0; node < count; node++) {
+            recompute(node);
+        }
+    }
+
+    /**
+     * Нумерует узлы графа в обратном порядке обхода, так что дочерние узлы получают меньшие номера.
+     * Обход выполняется с явным стеком, поэтому глубина графа не ограничена размером стека потока.
+     */
+    private static void number(ExpressionNode root, Map<ExpressionNode, Integer> index, List<ExpressionNode> order) {
+        Deque<ExpressionNode> stack = new ArrayDeque<>();
+        Deque<Boolean> expanded = new ArrayDeque<>();
+        stack.push(root);
+        expanded.push(false);
+        while (!stack.isEmpty()) {
+            ExpressionNode node = stack.pop();
+            boolean childrenNumbered = expanded.pop();
+            if (index.containsKey(node)) {
+                continue;
+            }
+            if (childrenNumbered) {
+                index.put(node, order.size());
+                order.add(node);
+                continue;
+            }
+            stack.push(node);
+            expanded.push(true);
+            ExpressionNode[] children = node.children();
+            for (int i = children.length - 1; i >= 0; i--) {
+                stack.push(children[i]);
+                expanded.push(false);
+            }
+        }
+    }
+
+    private void describe(int node, ExpressionNode source, Map<ExpressionNode, Integer> index) {
+        if (source instanceof ExpressionNode.Constant) {
+            opcodes[node] = Program.CONST;
+            constants[node] = ((ExpressionNode.Constant) source).value;
+        } else if (source instanceof ExpressionNode.Variable) {
+            int slot = ((ExpressionNode.Variable) source).slot;
+            opcodes[node] = Program.LOAD;
+            firstOperands[node] = slot;
+            variableNodes[slot] = node;
+        } else if (source instanceof ExpressionNode.Negation) {
+            opcodes[node] = Program.NEG;
+            firstOperands[node] = index.get(((ExpressionNode.Negation) source).operand);
+        } else if (source instanceof ExpressionNode.Binary) {
+            ExpressionNode.Binary binary = (ExpressionNode.Binary) source;
+            opcodes[node] = Program.binaryOpcode(binary.operation);
+            firstOperands[node] = index.get(binary.left);
+            secondOperands[node] = index.get(binary.right);
+        } else if (source instanceof ExpressionNode.Call) {
+            ExpressionNode.Call call = (ExpressionNode.Call) source;
+            opcodes[node] = Program.CALL;
+            functions[node] = call.function;
+            arguments[node] = new int[call.arguments.length];
+            for (int argument = 0; argument < call.arguments.length; argument++) {
+                arguments[node][argument] = index.get(call.arguments[argument]);
+            }
+        } else {
+            ExpressionNode.Function function = (ExpressionNode.Function) source;
+            opcodes[node] = Program.functionOpcode(function.function);
+            firstOperands[node] = index.get(function.argument);
+        }
+    }
+
+    /**
+     * Возвращает набор выражений сеанса.
+     * @return набор выражений
+     */
+    public ExpressionSet getExpressionSet() {
+        return set;
+    }
+
+    /**
+     * Изменяет значение переменной и пересчитывает зависящие от неё узлы.
+     *
+     * @param name имя переменной
+     * @param value новое значение
+     * @return номера результатов, значение или ошибка которых изменились, в порядке возрастания
+     * @throws IllegalArgumentException если переменная в наборе не используется
+     */
+    public int[] set(String name, double value) {
+        int slot = set.getSlot(name);
+        if (slot < 0) {
+            throw new IllegalArgumentException("Переменная не найдена: " + name);
+        }
+        return set(slot, value);
+    }
+
+    /**
+     * Изменяет значение переменной по номеру слота и пересчитывает зависящие от неё узлы.
+     *
+     * @param slot номер слота переменной
+     * @param value новое значение
+     * @return номера результатов, значение или ошибка которых изменились, в порядке возрастания
+     * @throws IllegalArgumentException если слота нет в наборе
+     */
+    public int[] set(int slot, double value) {
+        assign(slot, value);
+        return propagate();
+    }
+
+    /**
+     * Изменяет значения нескольких переменных и пересчитывает зависящие от них узлы за один проход.
+     * Узел, зависящий от нескольких изменённых переменных, пересчитывается один раз.
+     *
+     * @param variables новые значения переменных по именам
+     * @return номера результатов, значение или ошибка которых изменились, в порядке возрастания
+     * @throws IllegalArgumentException если какая-либо переменная в наборе не используется
+     */
+    public int[] set(Map<String, Double> variables) {
+        for (String name : variables.keySet()) {
+            if (set.getSlot(name) < 0) {
+                throw new IllegalArgumentException("Переменная не найдена: " + name);
+            }
+        }
+        for (Map.Entry<String, Double> variable : variables.entrySet()) {
+            assign(set.getSlot(variable.getKey()), variable.getValue());
+        }
+        return propagate();
+    }
+
+    /**
+     * Возвращает текущее значение результата.
+     *
+     * @param output номер результата
+     * @return значение результата
+     * @throws ArithmeticException если при вычислении результата произошла математическая ошибка
+     */
+    public double get(int output) {
+        int node = outputNodes[output];
+        if (errors[node] != null) {
+            throw new ArithmeticException(errors[node]);
+        }
+        return values[node];
+    }
+
+    /**
+     * Возвращает текущее значение результата по имени.
+     *
+     * @param name имя результата
+     * @return значение результата
+     * @throws IllegalArgumentException если результата с таким именем нет
+     * @throws ArithmeticException если при вычислении результата произошла математическая ошибка
+     */
+    public double get(String name) {
+        int output = set.getOutputIndex(name);
+        if (output < 0) {
+            throw new IllegalArgumentException("Результат не найден: " + name);
+        }
+        return get(output);
+    }
+
+    /**
+     * Проверяет, завершилось ли вычисление результата ошибкой.
+     *
+     * @param output номер результата
+     * @return true если значение результата не определено из-за математической ошибки
+     */
+    public boolean isFailed(int output) {
+        return errors[outputNodes[output]] != null;
+    }
+
+    /**
+     * Возвращает текущее значение переменной.
+     *
+     * @param slot номер слота переменной
+     * @return значение переменной
+     */
+    public double getVariable(int slot) {
+        return slots[slot];
+    }
+
+    private void assign(int slot, double value) {
+        if (slot < 0 || slot >= slots.length) {
+            throw new IllegalArgumentException("Переменная не найдена");
+        }
+        if (Double.doubleToRawLongBits(slots[slot]) == Double.doubleToRawLongBits(value)) {
+            return;
+        }
+        slots[slot] = value;
+        if (variableNodes[slot] >= 0) {
+            enqueue(variableNodes[slot]);
+        }
+    }
+
+    /**
+     * Пересчитывает узлы из очереди и отмечает изменившиеся результаты.
+     */
+    private int[] propagate() {
+        int changed = 0;
+        while (heapSize > 0) {
+            int node = poll();
+            long previousValue = Double.doubleToRawLongBits(values[node]);
+            String previousError = errors[node];
+            recompute(node);
+            if (Double.doubleToRawLongBits(values[node]) == previousValue && Objects.equals(errors[node], previousError)) {
+                continue;
+            }
+            for (int parent : parents[node]) {
+                enqueue(parent);
+            }
+            for (int output : nodeOutputs[node]) {
+                if (!outputChanged[output]) {
+                    outputChanged[output] = true;
+                    changedOutputs[changed++] = output;
+                }
+            }
+        }
+        int[] result = Arrays.copyOf(changedOutputs, changed);
+        for (int output : result) {
+            outputChanged[output] = false;
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    private void recompute(int node) {
+        recomputations++;
+        int first = firstOperands[node];
+        int second = secondOperands[node];
+        int opcode = opcodes[node];
+        if (opcode == Program.CALL) {
+            for (int argument : arguments[node]) {
+                if (errors[argument] != null) {
+                    values[node] = Double.NaN;
+                    errors[node] = errors[argument];
+                    return;
+                }
+            }
+        } else if (opcode != Program.CONST && opcode != Program.LOAD) {
+            String error = errors[first] != null ? errors[first]
+                    : opcode >= Program.ADD && opcode <= Program.POW ? errors[second] : null;
+            if (error != null) {
+                values[node] = Double.NaN;
+                errors[node] = error;
+                return;
+            }
+        }
+        try {
+            values[node] = compute(opcode, node, first, second);
+            errors[node] = null;
+        } catch (ArithmeticException e) {
+            values[node] = Double.NaN;
+            errors[node] = e.getMessage();
+        }
+    }
+
+    private double compute(int opcode, int node, int first, int second) {
+        switch (opcode) {
+            case Program.CONST: return constants[node];
+            case Program.LOAD: return slots[first];
+            case Program.NEG: return -values[first];
+            case Program.ADD: return values[first] + values[second];
+            case Program.SUB: return values[first] - values[second];
+            case Program.MUL: return values[first] * values[second];
+            case Program.DIV:
+                if (values[second] == 0) throw new ArithmeticException("Деление на ноль");
+                return values[first] / values[second];
+            case Program.POW: return Math.pow(values[first], values[second]);
+            case Program.SIN: return trigPrecision.sin(values[first]);
+            case Program.COS: return trigPrecision.cos(values[first]);
+            case Program.TAN: return trigPrecision.tan(values[first]);
+            case Program.SQRT: return MathOperations.SQRT.calculate(values[first]);
+            case Program.LOG: return MathOperations.LOG.calculate(values[first]);
+            case Program.CALL:
+                int[] operands = arguments[node];
+                for (int argument = 0; argument < operands.length; argument++) {
+                    callArguments[argument] = values[operands[argument]];
+                }
+                return functions[node].apply(callArguments, 0);
+            default: throw new IllegalStateException("Неизвестный код операции " + opcode);
+        }
+    }
+
+    private void enqueue(int node) {
+        if (queued[node]) {
+            return;
+        }
+        queued[node] = true;
+        int position = heapSize++;
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (heap[parent] <= node) {
+                break;
+            }
+            heap[position] = heap[parent];
+            position = parent;
+        }
+        heap[position] = node;
+    }
+
+    private int poll() {
+        int result = heap[0];
+        queued[result] = false;
+        int last = heap[--heapSize];
+        int position = 0;
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= last) {
+                break;
+            }
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = last;
+        return result;
+    }
+}
@@ -0,0 +1,351 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ограниченный по размеру потокобезопасный кэш скомпилированных выражений.
+ * Ключ - строка выражения без незначащих пробелов, поэтому {@code "5 + 3"} и {@code "5+3"}
+ * используют одну запись. Кэш разделён на сегменты с собственными блокировками;
+ * вытеснение внутри сегмента выполняется по выбранной политике {@link Eviction}.
+ * Выражения компилируются с текущим значением {@link MathExpression#getDefaultTrigPrecision()};
+ * запись, скомпилированная с другим значением, компилируется заново.
+ */
+public final class ExpressionCache {
+
+    /**
+     * Политика вытеснения записей.
+     */
+    public enum Eviction {
+
+        /** Вытесняется запись, к которой дольше всего не обращались */
+        LRU,
+
+        /**
+         * Новая запись сначала попадает в небольшое окно LRU, а при вытеснении из окна
+         * заменяет запись основной области, только если встречалась чаще неё.
+         * Частота оценивается приближённо и периодически уменьшается вдвое.
+         */
+        TINY_LFU
+    }
+
+    private static final int MAX_SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final Eviction eviction;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Конструктор кэша.
+     *
+     * @param maximumSize максимальное количество записей
+     * @param eviction политика вытеснения
+     * @throws IllegalArgumentException если размер не положителен
+     */
+    public ExpressionCache(int maximumSize, Eviction eviction) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Размер кэша должен быть положительным");
+        }
+        this.eviction = eviction;
+        int count = Math.min(MAX_SEGMENTS, Integer.highestOneBit(maximumSize));
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            int capacity = maximumSize / count + (i < maximumSize % count ? 1 : 0);
+            segments[i] = new Segment(capacity);
+        }
+    }
+
+    /**
+     * Возвращает скомпилированное выражение, компилируя его при отсутствии в кэше.
+     * Выражение без незначащих пробелов служит только ключом: компилируется строка вызывающего,
+     * поэтому смещения в {@link ExpressionParseException} и {@link CompiledExpression#getSource()}
+     * относятся к ней. Выражения, отличающиеся только пробелами, получают общую запись
+     * с исходной строкой того вызова, который её создал.
+     *
+     * @param expression строка с математическим выражением
+     * @return скомпилированное выражение
+     * @throws IllegalArgumentException при некорректном выражении или неизвестной функции
+     */
+    public CompiledExpression get(String expression) {
+        String key = normalize(expression);
+        Segment segment = segmentFor(key);
+
+        TrigPrecision trigPrecision = MathExpression.getDefaultTrigPrecision();
+        CompiledExpression compiled = segment.get(key);
+        if (compiled != null && compiled.getTrigPrecision() == trigPrecision) {
+            hits.increment();
+            return compiled;
+        }
+        misses.increment();
+        compiled = MathExpression.compile(expression, trigPrecision);
+        return segment.put(key, compiled);
+    }
+
+    /**
+     * Добавляет в кэш уже скомпилированные выражения, например загруженные
+     * из {@link ExpressionSnapshot}. Ключом служит исходная строка выражения;
+     * счётчики обращений не меняются.
+     *
+     * @param expressions скомпилированные выражения
+     */
+    public void putAll(Collection<CompiledExpression> expressions) {
+        for (CompiledExpression compiled : expressions) {
+            String key = normalize(compiled.getSource());
+            segmentFor(key).put(key, compiled);
+        }
+    }
+
+    /**
+     * Возвращает текущие записи кэша, например для сохранения в {@link ExpressionSnapshot}.
+     * @return список скомпилированных выражений
+     */
+    public List<CompiledExpression> values() {
+        List<CompiledExpression> values = new ArrayList<>();
+        for (Segment segment : segments) {
+            segment.addValuesTo(values);
+        }
+        return values;
+    }
+
+    /**
+     * Возвращает количество обращений, найденных в кэше.
+     * @return количество попаданий
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Возвращает количество обращений, потребовавших компиляции.
+     * @return количество промахов
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Возвращает количество записей, вытесненных или не принятых в кэш из-за ограничения размера.
+     * @return количество вытеснений
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Возвращает текущее количество записей.
+     * @return количество записей
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Удаляет все записи. Счётчики обращений не сбрасываются.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Удаляет пробелы, не влияющие на разбор выражения.
+     * Пробел между двумя символами имени или числа, а также между именем и скобкой
+     * сохраняется, так как разделяет лексемы.
+     *
+     * @param expression строка с математическим выражением
+     * @return выражение без незначащих пробелов
+     */
+    static String normalize(String expression) {
+        if (expression.indexOf(' ') < 0) {
+            return expression;
+        }
+        StringBuilder result = new StringBuilder(expression.length());
+        for (int i = 0; i < expression.length(); i++) {
+            char symbol = expression.charAt(i);
+            if (symbol != ' ') {
+                result.append(symbol);
+                continue;
+            }
+            int next = i;
+            while (next < expression.length() && expression.charAt(next) == ' ') {
+                next++;
+            }
+            if (result.length() > 0 && next < expression.length()
+                    && isWordPart(result.charAt(result.length() - 1))
+                    && (isWordPart(expression.charAt(next)) || expression.charAt(next) == '(')) {
+                result.append(' ');
+            }
+            i = next - 1;
+        }
+        return result.toString();
+    }
+
+    private static boolean isWordPart(char symbol) {
+        return Character.isLetterOrDigit(symbol) || symbol == '.';
+    }
+
+    private Segment segmentFor(String key) {
+        return segments[(spread(key.hashCode()) & Integer.MAX_VALUE) % segments.length];
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Сегмент кэша. Записи хранятся в порядке обращений; для {@link Eviction#TINY_LFU}
+     * дополнительно ведутся окно новых записей и оценка частоты обращений.
+     */
+    private final class Segment {
+        private final int capacity;
+        private final int windowCapacity;
+        private final LinkedHashMap<String, CompiledExpression> main = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<String, CompiledExpression> window = new LinkedHashMap<>(16, 0.75f, true);
+        private final FrequencySketch frequencies;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            this.windowCapacity = eviction == Eviction.TINY_LFU && capacity > 1 ? Math.max(1, capacity / 100) : 0;
+            this.frequencies = eviction == Eviction.TINY_LFU ? new FrequencySketch(capacity) : null;
+        }
+
+        synchronized CompiledExpression get(String key) {
+            if (frequencies != null) {
+                frequencies.increment(key.hashCode());
+            }
+            CompiledExpression compiled = main.get(key);
+            return compiled != null ? compiled : window.get(key);
+        }
+
+        synchronized CompiledExpression put(String key, CompiledExpression compiled) {
+            CompiledExpression existing = main.get(key);
+            if (existing == null) {
+                existing = window.get(key);
+            }
+            if (existing != null && existing.getTrigPrecision() == compiled.getTrigPrecision()) {
+                return existing;
+            }
+            if (existing != null) {
+                // запись скомпилирована с прежним способом вычисления тригонометрии
+                if (main.containsKey(key)) {
+                    main.put(key, compiled);
+                } else {
+                    window.put(key, compiled);
+                }
+                return compiled;
+            }
+
+            if (frequencies == null) {
+                main.put(key, compiled);
+                if (main.size() > capacity) {
+                    removeEldest(main);
+                    evictions.increment();
+                }
+                return compiled;
+            }
+
+            window.put(key, compiled);
+            if (window.size() <= windowCapacity) {
+                return compiled;
+            }
+            Map.Entry<String, CompiledExpression> candidate = removeEldest(window);
+            if (main.size() < capacity - windowCapacity) {
+                main.put(candidate.getKey(), candidate.getValue());
+                return compiled;
+            }
+            Map.Entry<String, CompiledExpression> victim = main.entrySet().iterator().next();
+            if (frequencies.frequency(candidate.getKey().hashCode()) > frequencies.frequency(victim.getKey().hashCode())) {
+                main.remove(victim.getKey());
+                main.put(candidate.getKey(), candidate.getValue());
+            }
+            evictions.increment();
+            return compiled;
+        }
+
+        synchronized int size() {
+            return main.size() + window.size();
+        }
+
+        synchronized void addValuesTo(List<CompiledExpression> values) {
+            values.addAll(main.values());
+            values.addAll(window.values());
+        }
+
+        synchronized void clear() {
+            main.clear();
+            window.clear();
+        }
+
+        private Map.Entry<String, CompiledExpression> removeEldest(Map<String, CompiledExpression> map) {
+            Iterator<Map.Entry<String, CompiledExpression>> iterator = map.entrySet().iterator();
+            Map.Entry<String, CompiledExpression> eldest = iterator.next();
+            Map.Entry<String, CompiledExpression> removed = Map.entry(eldest.getKey(), eldest.getValue());
+            iterator.remove();
+            return removed;
+        }
+    }
+
+    /**
+     * Приближённая оценка частоты обращений: четыре строки четырёхбитных счётчиков
+     * с разными хэш-функциями, оценка - минимум из них. После количества обращений,
+     * в десять раз большего ёмкости, все счётчики уменьшаются вдвое,
+     * чтобы старая популярность постепенно забывалась.
+     */
+    private static final class FrequencySketch {
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final byte[][] counters;
+        private final int mask;
+        private final int resetThreshold;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int width = Integer.highestOneBit(Math.max(16, capacity * 2 - 1)) << 1;
+            this.counters = new byte[SEEDS.length][width];
+            this.mask = width - 1;
+            this.resetThreshold = Math.max(10, capacity * 10);
+        }
+
+        void increment(int hash) {
+            for (int row = 0; row < SEEDS.length; row++) {
+                int index = index(hash, row);
+                if (counters[row][index] < 15) {
+                    counters[row][index]++;
+                }
+            }
+            if (++additions >= resetThreshold) {
+                for (byte[] row : counters) {
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] >>= 1;
+                    }
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(int hash) {
+            int frequency = Integer.MAX_VALUE;
+            for (int row = 0; row < SEEDS.length; row++) {
+                frequency = Math.min(frequency, counters[row][index(hash, row)]);
+            }
+            return frequency;
+        }
+
+        private int index(int hash, int row) {
+            int mixed = hash * SEEDS[row];
+            return (mixed ^ (mixed >>> 15)) & mask;
+        }
+    }
+}
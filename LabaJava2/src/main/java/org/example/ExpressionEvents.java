@@ -0,0 +1,163 @@
+package org.example;
+
+import jdk.jfr.AnnotationElement;
+import jdk.jfr.Category;
+import jdk.jfr.EventFactory;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.ValueDescriptor;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * События JDK Flight Recorder, записываемые при включённых {@link ExpressionMetrics}.
+ * События отдельных вычислений не записываются - их слишком много;
+ * записываются разбор, пакетные вычисления и исключения при вычислении.
+ * <p>
+ * Типы событий создаются {@link EventFactory}, а методы событий вызываются через
+ * {@link MethodHandle}: при сборке для Java 15 компилятор не видит внутреннего
+ * суперкласса {@code jdk.jfr.Event} и не позволяет ни наследовать его, ни вызывать его методы.
+ * Если модуль {@code jdk.jfr} недоступен, события не записываются.
+ */
+final class ExpressionEvents {
+
+    /** Разбор выражения: выражение, сообщение об ошибке или null */
+    static final EventType PARSE = EventType.create("org.example.ExpressionParse", "Разбор выражения",
+            "expression", "Выражение", String.class,
+            "error", "Ошибка", String.class);
+
+    /** Пакетное вычисление: выражение, количество строк, количество строк с ошибкой */
+    static final EventType BATCH = EventType.create("org.example.ExpressionBatch", "Пакетное вычисление",
+            "expression", "Выражение", String.class,
+            "rows", "Строк", int.class,
+            "failedRows", "Строк с ошибкой", int.class);
+
+    /** Исключение при вычислении: выражение, класс исключения, сообщение */
+    static final EventType FAILURE = EventType.create("org.example.ExpressionError", "Ошибка вычисления",
+            "expression", "Выражение", String.class,
+            "exception", "Исключение", String.class,
+            "message", "Сообщение", String.class);
+
+    private ExpressionEvents() {
+    }
+
+    /**
+     * Тип события с полями, заполняемыми по порядку объявления.
+     */
+    static final class EventType {
+
+        private static final MethodHandle BEGIN;
+        private static final MethodHandle SHOULD_COMMIT;
+        private static final MethodHandle SET;
+        private static final MethodHandle COMMIT;
+
+        static {
+            MethodHandle begin = null;
+            MethodHandle shouldCommit = null;
+            MethodHandle set = null;
+            MethodHandle commit = null;
+            try {
+                Class<?> event = Class.forName("jdk.jfr.Event");
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                begin = lookup.findVirtual(event, "begin", MethodType.methodType(void.class))
+                        .asType(MethodType.methodType(void.class, Object.class));
+                shouldCommit = lookup.findVirtual(event, "shouldCommit", MethodType.methodType(boolean.class))
+                        .asType(MethodType.methodType(boolean.class, Object.class));
+                set = lookup.findVirtual(event, "set", MethodType.methodType(void.class, int.class, Object.class))
+                        .asType(MethodType.methodType(void.class, Object.class, int.class, Object.class));
+                commit = lookup.findVirtual(event, "commit", MethodType.methodType(void.class))
+                        .asType(MethodType.methodType(void.class, Object.class));
+            } catch (ReflectiveOperationException | LinkageError e) {
+                begin = null;
+            }
+            BEGIN = begin;
+            SHOULD_COMMIT = shouldCommit;
+            SET = set;
+            COMMIT = commit;
+        }
+
+        private final EventFactory factory;
+
+        private EventType(EventFactory factory) {
+            this.factory = factory;
+        }
+
+        /**
+         * Создаёт и регистрирует тип события.
+         *
+         * @param name имя типа
+         * @param label название типа
+         * @param fields тройки: имя поля, название поля, класс значения
+         * @return тип события; события не записываются, если JFR недоступен
+         */
+        static EventType create(String name, String label, Object... fields) {
+            if (BEGIN == null) {
+                return new EventType(null);
+            }
+            try {
+                List<AnnotationElement> annotations = List.of(
+                        new AnnotationElement(Name.class, name),
+                        new AnnotationElement(Label.class, label),
+                        new AnnotationElement(Category.class, new String[] {"Math Expression"}));
+                List<ValueDescriptor> descriptors = new ArrayList<>();
+                for (int i = 0; i < fields.length; i += 3) {
+                    descriptors.add(new ValueDescriptor((Class<?>) fields[i + 2], (String) fields[i],
+                            List.of(new AnnotationElement(Label.class, fields[i + 1]))));
+                }
+                return new EventType(EventFactory.create(annotations, descriptors));
+            } catch (RuntimeException | LinkageError e) {
+                return new EventType(null);
+            }
+        }
+
+        /**
+         * Начинает событие, длительность которого измеряется до {@link #commit(Object, Object...)}.
+         * @return событие или null, если события не записываются
+         */
+        Object begin() {
+            if (factory == null) {
+                return null;
+            }
+            Object event = factory.newEvent();
+            try {
+                BEGIN.invokeExact(event);
+            } catch (Throwable e) {
+                throw failure(e);
+            }
+            return event;
+        }
+
+        /**
+         * Заполняет поля события и записывает его, если тип события включён в записи.
+         *
+         * @param event событие из {@link #begin()} или null
+         * @param values значения полей в порядке объявления
+         */
+        void commit(Object event, Object... values) {
+            if (event == null) {
+                return;
+            }
+            try {
+                if ((boolean) SHOULD_COMMIT.invokeExact(event)) {
+                    for (int i = 0; i < values.length; i++) {
+                        SET.invokeExact(event, i, values[i]);
+                    }
+                    COMMIT.invokeExact(event);
+                }
+            } catch (Throwable e) {
+                throw failure(e);
+            }
+        }
+
+        private static RuntimeException failure(Throwable e) {
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+            return e instanceof RuntimeException ? (RuntimeException) e : new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.example;
+
+/**
+ * Функция, вызываемая из выражения, с произвольным количеством аргументов.
+ * Регистрируется в {@link FunctionRegistry}; функции одного и двух аргументов
+ * удобнее регистрировать в виде {@link java.util.function.DoubleUnaryOperator}
+ * и {@link java.util.function.DoubleBinaryOperator}.
+ */
+@FunctionalInterface
+public interface ExpressionFunction {
+
+    /**
+     * Вычисляет функцию. Аргументы передаются без создания массива - частью стека
+     * операндов выражения, поэтому изменять массив нельзя.
+     *
+     * @param arguments массив, содержащий аргументы
+     * @param offset индекс первого аргумента; остальные следуют за ним по порядку
+     * @return результат вычисления
+     * @throws ArithmeticException при недопустимых значениях аргументов
+     */
+    double apply(double[] arguments, int offset);
+}
@@ -0,0 +1,312 @@
+package org.example;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Метрики разбора и вычисления выражений: счётчики и гистограммы длительностей
+ * по каждому выражению и по всем выражениям вместе, количество исключений по сообщениям
+ * и события JDK Flight Recorder ({@link ExpressionEvents}).
+ * <p>
+ * По умолчанию метрики выключены, и каждая точка измерения сводится к чтению одного
+ * флага; включаются они методом {@link #setEnabled(boolean)}, через JMX
+ * или системным свойством {@code org.example.metrics=true}.
+ * Одиночные вычисления скомпилированного выражения и фрейма считаются все, а их длительность
+ * измеряется выборочно ({@link ExpressionStats#SAMPLE_INTERVAL}); разбор и пакетные
+ * вычисления измеряются целиком. Вычисления наборов выражений и сеансов не измеряются.
+ */
+public final class ExpressionMetrics implements ExpressionMetricsMBean {
+
+    /** Имя, под которым регистрируется MBean */
+    public static final String OBJECT_NAME = "org.example:type=ExpressionMetrics";
+
+    /** Наибольшее количество выражений с отдельными счётчиками; остальные учитываются вместе */
+    static final int MAX_EXPRESSIONS = 1024;
+
+    /** Наибольшее количество различных сообщений об ошибках; остальные учитываются вместе */
+    static final int MAX_ERROR_MESSAGES = 256;
+
+    /** Наибольшее количество выражений в текстовом отчёте */
+    private static final int MAX_DUMP_EXPRESSIONS = 50;
+
+    private static final String OTHER = "(прочие)";
+
+    private static final ExpressionMetrics INSTANCE = new ExpressionMetrics();
+
+    /** Признак сбора метрик, проверяемый в каждой точке измерения */
+    static volatile boolean enabled = Boolean.getBoolean("org.example.metrics");
+
+    private final ExpressionStats total = new ExpressionStats("");
+    private final ConcurrentHashMap<String, ExpressionStats> expressions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    private ExpressionMetrics() {
+    }
+
+    /**
+     * Возвращает единственный объект метрик.
+     * @return метрики выражений
+     */
+    public static ExpressionMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Регистрирует метрики в платформенном MBean-сервере под именем {@link #OBJECT_NAME}.
+     * Повторная регистрация ничего не делает.
+     *
+     * @throws JMException если регистрация не удалась
+     */
+    public void registerMBean() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        synchronized (this) {
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        ExpressionMetrics.enabled = enabled;
+    }
+
+    @Override
+    public long getParseCount() {
+        return total.parse.getCount() + total.parseErrors.sum();
+    }
+
+    @Override
+    public long getParseErrorCount() {
+        return total.parseErrors.sum();
+    }
+
+    @Override
+    public long getEvaluationCount() {
+        long count = total.batchRows.sum();
+        for (ExpressionStats stats : expressions.values()) {
+            count += stats.evaluations.sum();
+        }
+        return count;
+    }
+
+    @Override
+    public long getEvaluationErrorCount() {
+        return total.evaluationErrors.sum() + total.failedRows.sum();
+    }
+
+    @Override
+    public long getEvaluationP50Nanos() {
+        return total.evaluate.getPercentile(50);
+    }
+
+    @Override
+    public long getEvaluationP99Nanos() {
+        return total.evaluate.getPercentile(99);
+    }
+
+    /**
+     * Возвращает количество вычисленных строк выражения, одиночных и пакетных.
+     *
+     * @param expression строка выражения в том виде, в котором она компилировалась
+     * @return количество строк или 0, если выражение не вычислялось при включённых метриках
+     */
+    public long getEvaluationCount(String expression) {
+        ExpressionStats stats = expressions.get(expression);
+        return stats == null ? 0 : stats.getEvaluationCount();
+    }
+
+    /**
+     * Возвращает количество исключений с заданным сообщением.
+     *
+     * @param type простое имя класса исключения, например {@code ArithmeticException}
+     * @param message сообщение исключения
+     * @return количество исключений
+     */
+    public long getErrorCount(String type, String message) {
+        LongAdder counter = errors.get(type + ": " + message);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder text = new StringBuilder();
+        text.append("Метрики выражений: ").append(enabled ? "включены" : "выключены").append('\n');
+        appendPhase(text, "parse", total.parse.getCount(), total.parseErrors.sum(), total.parse);
+        appendPhase(text, "evaluate", getEvaluationCount() - total.batchRows.sum(), total.evaluationErrors.sum(),
+                total.evaluate);
+        appendPhase(text, "batch", total.batch.getCount(), total.failedRows.sum(), total.batch);
+        text.append("  строк в пакетах: ").append(total.batchRows.sum()).append('\n');
+
+        Map<String, Long> sortedErrors = new TreeMap<>();
+        errors.forEach((message, counter) -> sortedErrors.put(message, counter.sum()));
+        if (!sortedErrors.isEmpty()) {
+            text.append("Исключения:\n");
+            sortedErrors.forEach((message, count) ->
+                    text.append("  ").append(message).append(" = ").append(count).append('\n'));
+        }
+
+        List<ExpressionStats> hot = new ArrayList<>(expressions.values());
+        hot.sort(Comparator.comparingLong(ExpressionStats::getEvaluationCount).reversed());
+        if (!hot.isEmpty()) {
+            text.append("Выражения по количеству вычислений:\n");
+        }
+        for (int i = 0; i < hot.size() && i < MAX_DUMP_EXPRESSIONS; i++) {
+            ExpressionStats stats = hot.get(i);
+            text.append("  ").append(stats.getSource()).append('\n');
+            appendPhase(text, "  evaluate", stats.evaluations.sum(), stats.evaluationErrors.sum(), stats.evaluate);
+            if (stats.batch.getCount() > 0) {
+                appendPhase(text, "  batch", stats.batch.getCount(), stats.failedRows.sum(), stats.batch);
+                text.append("    строк в пакетах: ").append(stats.batchRows.sum()).append('\n');
+            }
+        }
+        if (hot.size() > MAX_DUMP_EXPRESSIONS) {
+            text.append("  ... ещё ").append(hot.size() - MAX_DUMP_EXPRESSIONS).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static void appendPhase(StringBuilder text, String phase, long count, long errors,
+                                    LatencyHistogram histogram) {
+        text.append(String.format(Locale.ROOT,
+                "  %s: count=%d errors=%d mean=%.0fns p50=%dns p90=%dns p99=%dns max=%dns%n",
+                phase, count, errors, histogram.getMean(), histogram.getPercentile(50),
+                histogram.getPercentile(90), histogram.getPercentile(99), histogram.getMax()));
+    }
+
+    @Override
+    public void reset() {
+        total.reset();
+        expressions.values().forEach(ExpressionStats::reset);
+        errors.clear();
+    }
+
+    /**
+     * Возвращает счётчики выражения, создавая их при первом обращении.
+     * Сверх {@link #MAX_EXPRESSIONS} выражений все новые выражения получают общие счётчики.
+     *
+     * @param source строка выражения
+     * @return счётчики выражения
+     */
+    ExpressionStats statsFor(String source) {
+        ExpressionStats stats = expressions.get(source);
+        if (stats != null) {
+            return stats;
+        }
+        if (expressions.size() >= MAX_EXPRESSIONS) {
+            return expressions.computeIfAbsent(OTHER, ExpressionStats::new);
+        }
+        return expressions.computeIfAbsent(source, ExpressionStats::new);
+    }
+
+    /**
+     * Разбирает выражение, измеряя длительность разбора и записывая событие {@link ExpressionEvents#PARSE}.
+     * Вызывается только при включённых метриках.
+     *
+     * @param source строка выражения
+     * @param compiler разбор выражения
+     * @return скомпилированное выражение
+     * @throws IllegalArgumentException при некорректном выражении
+     */
+    static CompiledExpression measureParse(String source, Supplier<CompiledExpression> compiler) {
+        Object event = ExpressionEvents.PARSE.begin();
+        long start = System.nanoTime();
+        String error = null;
+        try {
+            CompiledExpression compiled = compiler.get();
+            long elapsed = System.nanoTime() - start;
+            compiled.stats().parse.record(elapsed);
+            INSTANCE.total.parse.record(elapsed);
+            return compiled;
+        } catch (IllegalArgumentException e) {
+            INSTANCE.total.parseErrors.increment();
+            INSTANCE.countError(e);
+            error = e.getMessage();
+            throw e;
+        } finally {
+            ExpressionEvents.PARSE.commit(event, source, error);
+        }
+    }
+
+    /**
+     * Записывает длительность одиночного вычисления, если она измерялась.
+     *
+     * @param stats счётчики выражения
+     * @param start время начала из {@link ExpressionStats#startEvaluation()}
+     */
+    static void endEvaluation(ExpressionStats stats, long start) {
+        if (start != ExpressionStats.NOT_SAMPLED) {
+            long nanos = System.nanoTime() - start;
+            stats.evaluate.record(nanos);
+            INSTANCE.total.evaluate.record(nanos);
+        }
+    }
+
+    /**
+     * Записывает пакетное вычисление.
+     *
+     * @param stats счётчики выражения
+     * @param nanos длительность в наносекундах
+     * @param rows количество строк
+     * @param failedRows количество строк с ошибкой
+     */
+    static void recordBatch(ExpressionStats stats, long nanos, int rows, int failedRows) {
+        stats.batch.record(nanos);
+        stats.batchRows.add(rows);
+        stats.failedRows.add(failedRows);
+        ExpressionStats all = INSTANCE.total;
+        all.batch.record(nanos);
+        all.batchRows.add(rows);
+        all.failedRows.add(failedRows);
+
+        ExpressionEvents.BATCH.commit(ExpressionEvents.BATCH.begin(), stats.getSource(), rows, failedRows);
+    }
+
+    /**
+     * Записывает исключение, выброшенное при вычислении, если метрики включены.
+     *
+     * @param expression вычисляемое выражение
+     * @param error исключение
+     * @param <E> тип исключения
+     * @return то же исключение, чтобы выбросить его в месте вызова
+     */
+    static <E extends RuntimeException> E recordError(CompiledExpression expression, E error) {
+        if (!enabled) {
+            return error;
+        }
+        ExpressionStats stats = expression.stats();
+        stats.evaluationErrors.increment();
+        INSTANCE.total.evaluationErrors.increment();
+        INSTANCE.countError(error);
+
+        ExpressionEvents.FAILURE.commit(ExpressionEvents.FAILURE.begin(), stats.getSource(),
+                error.getClass().getSimpleName(), error.getMessage());
+        return error;
+    }
+
+    private void countError(RuntimeException error) {
+        String key = error.getClass().getSimpleName() + ": " + error.getMessage();
+        LongAdder counter = errors.get(key);
+        if (counter == null) {
+            counter = errors.computeIfAbsent(errors.size() < MAX_ERROR_MESSAGES ? key : OTHER, k -> new LongAdder());
+        }
+        counter.increment();
+    }
+}
@@ -0,0 +1,67 @@
+package org.example;
+
+/**
+ * Интерфейс управления метриками выражений через JMX.
+ * Регистрируется методом {@link ExpressionMetrics#registerMBean()}.
+ */
+public interface ExpressionMetricsMBean {
+
+    /**
+     * Проверяет, собираются ли метрики.
+     * @return true если метрики включены
+     */
+    boolean isEnabled();
+
+    /**
+     * Включает или выключает сбор метрик.
+     * @param enabled true чтобы включить
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Возвращает количество разборов выражений.
+     * @return количество разборов, включая ошибочные
+     */
+    long getParseCount();
+
+    /**
+     * Возвращает количество ошибок разбора.
+     * @return количество ошибок
+     */
+    long getParseErrorCount();
+
+    /**
+     * Возвращает количество вычисленных строк значений, одиночных и пакетных.
+     * @return количество строк
+     */
+    long getEvaluationCount();
+
+    /**
+     * Возвращает количество исключений и строк пакетов с ошибкой при вычислении.
+     * @return количество ошибок
+     */
+    long getEvaluationErrorCount();
+
+    /**
+     * Возвращает медиану длительности одиночного вычисления.
+     * @return длительность в наносекундах
+     */
+    long getEvaluationP50Nanos();
+
+    /**
+     * Возвращает 99-й процентиль длительности одиночного вычисления.
+     * @return длительность в наносекундах
+     */
+    long getEvaluationP99Nanos();
+
+    /**
+     * Возвращает текстовый отчёт по всем метрикам.
+     * @return отчёт
+     */
+    String dump();
+
+    /**
+     * Обнуляет все метрики.
+     */
+    void reset();
+}
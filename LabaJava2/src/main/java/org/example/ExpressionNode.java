@@ -0,0 +1,149 @@
+package org.example;
+
+/**
+ * Узел дерева разобранного математического выражения.
+ * Переменные в дереве уже заменены номерами слотов, поэтому
+ * построенная по дереву программа не обращается к именам.
+ * После {@link ExpressionOptimizer} одинаковые поддеревья представлены одним объектом,
+ * и дерево становится ациклическим графом с общими узлами.
+ */
+abstract class ExpressionNode {
+
+    private static final ExpressionNode[] NO_CHILDREN = new ExpressionNode[0];
+
+    /**
+     * Добавляет в программу операцию узла. Операции дочерних узлов к этому моменту
+     * уже добавлены построителем, и их результаты лежат на стеке.
+     *
+     * @param program построитель программы
+     */
+    abstract void emit(Program.Builder program);
+
+    /**
+     * Возвращает непосредственные дочерние узлы.
+     * @return массив дочерних узлов, пустой для листьев
+     */
+    abstract ExpressionNode[] children();
+
+    /** Числовая константа */
+    static final class Constant extends ExpressionNode {
+        final double value;
+
+        Constant(double value) {
+            this.value = value;
+        }
+
+        @Override
+        void emit(Program.Builder program) {
+            program.constant(value);
+        }
+
+        @Override
+        ExpressionNode[] children() {
+            return NO_CHILDREN;
+        }
+    }
+
+    /** Ссылка на переменную по номеру слота */
+    static final class Variable extends ExpressionNode {
+        final int slot;
+
+        Variable(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        void emit(Program.Builder program) {
+            program.load(slot);
+        }
+
+        @Override
+        ExpressionNode[] children() {
+            return NO_CHILDREN;
+        }
+    }
+
+    /** Унарный минус */
+    static final class Negation extends ExpressionNode {
+        final ExpressionNode operand;
+
+        Negation(ExpressionNode operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        void emit(Program.Builder program) {
+            program.unary(Program.NEG);
+        }
+
+        @Override
+        ExpressionNode[] children() {
+            return new ExpressionNode[] {operand};
+        }
+    }
+
+    /** Бинарная операция (+, -, *, /, ^) */
+    static final class Binary extends ExpressionNode {
+        final char operation;
+        final ExpressionNode left;
+        final ExpressionNode right;
+
+        Binary(char operation, ExpressionNode left, ExpressionNode right) {
+            this.operation = operation;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        void emit(Program.Builder program) {
+            program.binary(Program.binaryOpcode(operation));
+        }
+
+        @Override
+        ExpressionNode[] children() {
+            return new ExpressionNode[] {left, right};
+        }
+    }
+
+    /** Вызов функции из {@link MathOperations} */
+    static final class Function extends ExpressionNode {
+        final MathOperations function;
+        final ExpressionNode argument;
+
+        Function(MathOperations function, ExpressionNode argument) {
+            this.function = function;
+            this.argument = argument;
+        }
+
+        @Override
+        void emit(Program.Builder program) {
+            program.unary(Program.functionOpcode(function));
+        }
+
+        @Override
+        ExpressionNode[] children() {
+            return new ExpressionNode[] {argument};
+        }
+    }
+
+    /** Вызов функции из {@link FunctionRegistry} без собственного кода операции */
+    static final class Call extends ExpressionNode {
+        final FunctionRegistry.Definition function;
+        final ExpressionNode[] arguments;
+
+        Call(FunctionRegistry.Definition function, ExpressionNode[] arguments) {
+            this.function = function;
+            this.arguments = arguments;
+        }
+
+        @Override
+        void emit(Program.Builder program) {
+            program.call(function);
+        }
+
+        @Override
+        ExpressionNode[] children() {
+            return arguments;
+        }
+    }
+}
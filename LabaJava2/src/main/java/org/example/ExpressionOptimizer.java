@@ -0,0 +1,214 @@
+package org.example;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Оптимизация дерева выражения перед построением программы.
+ * <ul>
+ *     <li>поддеревья из одних констант, в том числе вызовы функций от констант, заменяются значением;
+ *     вызовы нечистых функций из {@link FunctionRegistry} не сворачиваются и не объединяются;
+ *     поддерево, вычисление которого завершается ошибкой, остаётся, чтобы ошибка возникла при вычислении;</li>
+ *     <li>применяются тождества, точные для всех значений IEEE 754, включая NaN и -0:
+ *     {@code x*1}, {@code 1*x}, {@code x/1}, {@code x-0}, {@code x+(-0)}, {@code x^1} дают {@code x},
+ *     {@code x^0} даёт 1, {@code --x} даёт {@code x}, а {@code x^2} заменяется на {@code x*x};
+ *     тождества {@code x+0} и {@code x*0} не применяются, так как неверны для -0, NaN и бесконечностей;</li>
+ *     <li>одинаковые поддеревья заменяются одним узлом, и при построении программы
+ *     такой узел вычисляется один раз.</li>
+ * </ul>
+ */
+final class ExpressionOptimizer {
+
+    private final Map<List<Object>, ExpressionNode> nodes = new HashMap<>();
+    private final TrigPrecision trigPrecision;
+
+    /**
+     * Конструктор оптимизатора. Узлы, полученные одним оптимизатором из разных деревьев,
+     * также единственны, поэтому общие подвыражения нескольких выражений совпадают по ссылке.
+     *
+     * @param trigPrecision способ вычисления тригонометрических функций при свёртке констант
+     */
+    ExpressionOptimizer(TrigPrecision trigPrecision) {
+        this.trigPrecision = trigPrecision;
+    }
+
+    /**
+     * Оптимизирует дерево выражения.
+     *
+     * @param root корень исходного дерева
+     * @param trigPrecision способ вычисления тригонометрических функций при свёртке констант
+     * @return корень оптимизированного графа
+     */
+    static ExpressionNode optimize(ExpressionNode root, TrigPrecision trigPrecision) {
+        return new ExpressionOptimizer(trigPrecision).rewrite(root);
+    }
+
+    /**
+     * Оптимизирует дерево с корнем в узле. Узлы обходятся в обратном порядке
+     * с явным стеком, поэтому глубина дерева не ограничена размером стека потока:
+     * узел оптимизируется после того, как оптимизированы все его дочерние узлы.
+     *
+     * @param root корень исходного дерева
+     * @return единственный экземпляр оптимизированного узла
+     */
+    ExpressionNode rewrite(ExpressionNode root) {
+        Deque<ExpressionNode> stack = new ArrayDeque<>();
+        Deque<Boolean> expanded = new ArrayDeque<>();
+        List<ExpressionNode> results = new ArrayList<>();
+        stack.push(root);
+        expanded.push(false);
+        while (!stack.isEmpty()) {
+            ExpressionNode node = stack.pop();
+            ExpressionNode[] children = node.children();
+            if (expanded.pop() || children.length == 0) {
+                int first = results.size() - children.length;
+                ExpressionNode result = rewrite(node, results.subList(first, results.size()));
+                results.subList(first, results.size()).clear();
+                results.add(result);
+                continue;
+            }
+            stack.push(node);
+            expanded.push(true);
+            for (int i = children.length - 1; i >= 0; i--) {
+                stack.push(children[i]);
+                expanded.push(false);
+            }
+        }
+        return results.get(0);
+    }
+
+    /**
+     * Оптимизирует узел по уже оптимизированным дочерним узлам.
+     *
+     * @param node исходный узел
+     * @param children оптимизированные дочерние узлы в порядке {@link ExpressionNode#children()}
+     * @return единственный экземпляр оптимизированного узла
+     */
+    private ExpressionNode rewrite(ExpressionNode node, List<ExpressionNode> children) {
+        if (node instanceof ExpressionNode.Negation) {
+            return negation(children.get(0));
+        }
+        if (node instanceof ExpressionNode.Binary) {
+            return binary(((ExpressionNode.Binary) node).operation, children.get(0), children.get(1));
+        }
+        if (node instanceof ExpressionNode.Function) {
+            return function(((ExpressionNode.Function) node).function, children.get(0));
+        }
+        if (node instanceof ExpressionNode.Call) {
+            return call(((ExpressionNode.Call) node).function, children.toArray(new ExpressionNode[0]));
+        }
+        if (node instanceof ExpressionNode.Variable) {
+            return intern(node, "V", ((ExpressionNode.Variable) node).slot);
+        }
+        return constant(((ExpressionNode.Constant) node).value);
+    }
+
+    private ExpressionNode negation(ExpressionNode operand) {
+        if (operand instanceof ExpressionNode.Constant) {
+            return constant(-((ExpressionNode.Constant) operand).value);
+        }
+        if (operand instanceof ExpressionNode.Negation) {
+            return ((ExpressionNode.Negation) operand).operand;
+        }
+        return intern(new ExpressionNode.Negation(operand), "-", operand);
+    }
+
+    private ExpressionNode binary(char operation, ExpressionNode left, ExpressionNode right) {
+        if (left instanceof ExpressionNode.Constant && right instanceof ExpressionNode.Constant) {
+            try {
+                return constant(MathExpression.operationResult(operation,
+                        ((ExpressionNode.Constant) right).value, ((ExpressionNode.Constant) left).value));
+            } catch (ArithmeticException e) {
+                // ошибка должна возникнуть при вычислении выражения, а не при компиляции
+            }
+        }
+        switch (operation) {
+            case '*':
+                if (is(right, 1.0)) return left;
+                if (is(left, 1.0)) return right;
+                break;
+            case '/':
+                if (is(right, 1.0)) return left;
+                break;
+            case '-':
+                if (is(right, 0.0)) return left;
+                break;
+            case '+':
+                if (is(right, -0.0)) return left;
+                if (is(left, -0.0)) return right;
+                break;
+            case '^':
+                if (is(right, 1.0)) return left;
+                if (is(right, 0.0) || is(right, -0.0)) return constant(1.0);
+                if (is(right, 2.0)) return binary('*', left, left);
+                break;
+            default:
+                break;
+        }
+        return intern(new ExpressionNode.Binary(operation, left, right), operation, left, right);
+    }
+
+    private ExpressionNode function(MathOperations function, ExpressionNode argument) {
+        if (argument instanceof ExpressionNode.Constant) {
+            try {
+                return constant(trigPrecision.calculate(function, ((ExpressionNode.Constant) argument).value));
+            } catch (ArithmeticException e) {
+                // ошибка должна возникнуть при вычислении выражения, а не при компиляции
+            }
+        }
+        return intern(new ExpressionNode.Function(function, argument), function, argument);
+    }
+
+    /**
+     * Сворачивает вызов чистой функции от констант и объединяет одинаковые вызовы.
+     * Вызов нечистой функции остаётся отдельным узлом.
+     */
+    private ExpressionNode call(FunctionRegistry.Definition function, ExpressionNode[] arguments) {
+        ExpressionNode call = new ExpressionNode.Call(function, arguments);
+        if (!function.pure) {
+            return call;
+        }
+        double[] values = new double[arguments.length];
+        boolean constant = true;
+        for (int i = 0; i < arguments.length && constant; i++) {
+            constant = arguments[i] instanceof ExpressionNode.Constant;
+            values[i] = constant ? ((ExpressionNode.Constant) arguments[i]).value : 0;
+        }
+        if (constant) {
+            try {
+                return constant(function.apply(values, 0));
+            } catch (ArithmeticException e) {
+                // ошибка должна возникнуть при вычислении выражения, а не при компиляции
+            }
+        }
+        Object[] key = new Object[arguments.length + 1];
+        key[0] = function;
+        System.arraycopy(arguments, 0, key, 1, arguments.length);
+        return intern(call, key);
+    }
+
+    private ExpressionNode constant(double value) {
+        return intern(new ExpressionNode.Constant(value), "C", Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Проверяет, что узел - константа с точно таким значением, включая знак нуля.
+     */
+    private static boolean is(ExpressionNode node, double value) {
+        return node instanceof ExpressionNode.Constant
+                && Double.doubleToRawLongBits(((ExpressionNode.Constant) node).value) == Double.doubleToRawLongBits(value);
+    }
+
+    /**
+     * Возвращает ранее созданный узел с тем же ключом либо запоминает новый.
+     * Дочерние узлы в ключе уже единственны, поэтому сравниваются по ссылке.
+     */
+    private ExpressionNode intern(ExpressionNode node, Object... key) {
+        return nodes.computeIfAbsent(Arrays.asList(key), k -> node);
+    }
+}
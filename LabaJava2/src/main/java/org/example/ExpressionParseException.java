@@ -0,0 +1,42 @@
+package org.example;
+
+/**
+ * Исключение при разборе некорректного выражения.
+ * Содержит причину ошибки и смещение символа, на котором она обнаружена.
+ */
+public class ExpressionParseException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String reason;
+    private final int offset;
+
+    /**
+     * Конструктор исключения.
+     *
+     * @param reason причина ошибки
+     * @param offset смещение символа от начала выражения, начиная с 0;
+     *               равно длине выражения, если ошибка обнаружена в его конце
+     */
+    public ExpressionParseException(String reason, int offset) {
+        super("Некорректное выражение: " + reason + " (символ " + (offset + 1) + ")");
+        this.reason = reason;
+        this.offset = offset;
+    }
+
+    /**
+     * Возвращает причину ошибки.
+     * @return причина ошибки без смещения
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * Возвращает смещение символа, на котором обнаружена ошибка.
+     * @return смещение от начала выражения, начиная с 0
+     */
+    public int getOffset() {
+        return offset;
+    }
+}
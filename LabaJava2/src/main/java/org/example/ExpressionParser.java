@@ -0,0 +1,416 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Разбор выражения в дерево за один проход с явными стеками операций и операндов,
+ * поэтому вложенность скобок и функций ограничена только памятью, а не стеком потока.
+ * Текст читается непосредственно из {@link CharSequence}: числа переводятся в значения
+ * по символам, а имена переменных и функций сравниваются с уже известными без создания строк,
+ * поэтому время разбора линейно по длине выражения. Строка создаётся только для имени
+ * новой переменной и для чисел, которые нельзя перевести точно (более 15 значащих цифр).
+ * <p>
+ * Приоритеты операций: {@code + -}, затем {@code * /}, затем унарный минус, затем {@code ^};
+ * все бинарные операции, включая {@code ^}, левоассоциативны. Аргументы функции -
+ * произвольные выражения через запятую, их количество проверяется по {@link FunctionRegistry};
+ * имя функции должно стоять непосредственно перед скобкой.
+ */
+final class ExpressionParser {
+
+    /** Приоритет унарного минуса: выше умножения, ниже возведения в степень */
+    private static final int NEGATION_PRIORITY = 3;
+
+    /** Обозначения на стеке операций, отличные от символов бинарных операций */
+    private static final char NEGATION = '~';
+    private static final char PARENTHESIS = '(';
+    private static final char CALL = 'f';
+
+    /** Наибольшее количество значащих цифр числа, переводимого без {@link Double#parseDouble(String)} */
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    /** Точно представимые степени десяти для быстрого разбора чисел */
+    static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final CharSequence text;
+    private final int length;
+    private final Map<String, Integer> slots;
+    private int position;
+
+    /** Стек операций; для вызова функции - её описание и количество разобранных аргументов */
+    private char[] operations = new char[16];
+    private FunctionRegistry.Definition[] calls = new FunctionRegistry.Definition[16];
+    private int[] callArguments = new int[16];
+    private int operationCount;
+    private ExpressionNode[] operands = new ExpressionNode[16];
+    private int operandCount;
+
+    /** Открытая адресация: имена переменных и их слоты, заполняются при первом имени */
+    private String[] names;
+    private int[] nameSlots;
+    private int nameCount;
+
+    /**
+     * Конструктор разбора.
+     *
+     * @param text текст выражения
+     * @param slots номера слотов переменных; новые переменные добавляются в конец
+     */
+    ExpressionParser(CharSequence text, Map<String, Integer> slots) {
+        this.text = text;
+        this.length = text.length();
+        this.slots = slots;
+    }
+
+    /**
+     * Разбирает всё выражение. Разбор чередует чтение операнда и чтение операции:
+     * открывающая скобка, имя функции со скобкой и унарный минус кладутся на стек операций
+     * и снова ожидают операнд; бинарная операция сначала сворачивает операции стека
+     * с приоритетом не ниже своего. Символ, не являющийся операцией, сворачивает стек
+     * до ближайшей скобки или вызова функции, которые он должен закрыть или продолжить.
+     *
+     * @return корень дерева выражения
+     * @throws ExpressionParseException при некорректном выражении или неизвестной функции
+     */
+    ExpressionNode parse() {
+        while (true) {
+            operand();
+            if (operation()) {
+                return operands[0];
+            }
+        }
+    }
+
+    /**
+     * Читает операнд. Открывающие скобки, вызовы функций и унарные минусы перед ним
+     * кладутся на стек операций.
+     */
+    private void operand() {
+        while (true) {
+            skipSpaces();
+            if (position == length) {
+                throw error("ожидается число, переменная или '('");
+            }
+            char symbol = text.charAt(position);
+            if (symbol == '-') {
+                pushOperation(NEGATION, null);
+                position++;
+            } else if (symbol == '(') {
+                pushOperation(PARENTHESIS, null);
+                position++;
+            } else if (isDigit(symbol) || symbol == '.') {
+                pushOperand(new ExpressionNode.Constant(number()));
+                return;
+            } else if (Character.isLetter(symbol)) {
+                if (identifier()) {
+                    return;
+                }
+            } else if (symbol == ')' || symbol == ',' || priority(symbol) != 0) {
+                throw error("ожидается число, переменная или '('");
+            } else {
+                throw unexpected();
+            }
+        }
+    }
+
+    /**
+     * Читает операции после операнда: закрывающие скобки и запятые между аргументами
+     * сворачивают стек, бинарная операция кладётся на стек.
+     *
+     * @return true если выражение разобрано полностью, false если ожидается следующий операнд
+     */
+    private boolean operation() {
+        while (true) {
+            skipSpaces();
+            char symbol = position < length ? text.charAt(position) : 0;
+            int priority = priority(symbol);
+            if (priority != 0) {
+                reduce(priority);
+                pushOperation(symbol, null);
+                position++;
+                return false;
+            }
+            reduce(1);
+            if (operationCount == 0) {
+                if (position < length) {
+                    if (symbol == ')') {
+                        throw error("лишняя ')'");
+                    }
+                    throw isOperandStart(symbol) ? error("ожидается оператор") : unexpected();
+                }
+                return true;
+            }
+            if (operations[operationCount - 1] == PARENTHESIS) {
+                expectClosing();
+                operationCount--;
+                continue;
+            }
+            FunctionRegistry.Definition function = calls[operationCount - 1];
+            int argument = ++callArguments[operationCount - 1];
+            if (argument < function.arity) {
+                if (position == length || symbol != ',') {
+                    throw symbol == ')' ? error(arityMessage(function)) : error("ожидается ','");
+                }
+                position++;
+                return false;
+            }
+            closeCall(function);
+            operationCount--;
+            ExpressionNode call;
+            if (function.arity == 1 && function.operation != null) {
+                call = new ExpressionNode.Function(function.operation, operands[operandCount - 1]);
+            } else {
+                ExpressionNode[] arguments = new ExpressionNode[function.arity];
+                System.arraycopy(operands, operandCount - arguments.length, arguments, 0, arguments.length);
+                call = new ExpressionNode.Call(function, arguments);
+            }
+            operandCount -= function.arity;
+            pushOperand(call);
+        }
+    }
+
+    /**
+     * Сворачивает бинарные операции и унарные минусы на вершине стека с приоритетом
+     * не ниже заданного. Скобки и вызовы функций имеют нулевой приоритет и останавливают свёртку.
+     */
+    private void reduce(int minPriority) {
+        while (operationCount > 0) {
+            char operation = operations[operationCount - 1];
+            if (operation == NEGATION) {
+                if (NEGATION_PRIORITY < minPriority) {
+                    return;
+                }
+                operands[operandCount - 1] = new ExpressionNode.Negation(operands[operandCount - 1]);
+            } else {
+                int priority = priority(operation);
+                if (priority == 0 || priority < minPriority) {
+                    return;
+                }
+                ExpressionNode right = operands[--operandCount];
+                operands[operandCount - 1] = new ExpressionNode.Binary(operation, operands[operandCount - 1], right);
+            }
+            operationCount--;
+        }
+    }
+
+    /**
+     * Читает имя переменной или функции. Вызов функции кладётся на стек операций.
+     *
+     * @return true если прочитана переменная, false если вызов функции ожидает аргумент
+     */
+    private boolean identifier() {
+        int start = position;
+        int hash = 0;
+        while (position < length && Character.isLetter(text.charAt(position))) {
+            hash = 31 * hash + text.charAt(position++);
+        }
+        if (position < length && text.charAt(position) == '(') {
+            pushOperation(CALL, function(start, hash));
+            position++;
+            return false;
+        }
+        pushOperand(new ExpressionNode.Variable(slot(start, position, hash)));
+        return true;
+    }
+
+    private FunctionRegistry.Definition function(int start, int hash) {
+        FunctionRegistry.Definition function = FunctionRegistry.find(text, start, position, hash);
+        if (function == null) {
+            throw new ExpressionParseException("неизвестная функция '" + text.subSequence(start, position) + "'", start);
+        }
+        return function;
+    }
+
+    private void closeCall(FunctionRegistry.Definition function) {
+        skipSpaces();
+        if (position < length && text.charAt(position) == ',') {
+            throw error(arityMessage(function));
+        }
+        expectClosing();
+    }
+
+    private void pushOperation(char operation, FunctionRegistry.Definition function) {
+        if (operationCount == operations.length) {
+            operations = Arrays.copyOf(operations, operationCount * 2);
+            calls = Arrays.copyOf(calls, operationCount * 2);
+            callArguments = Arrays.copyOf(callArguments, operationCount * 2);
+        }
+        operations[operationCount] = operation;
+        calls[operationCount] = function;
+        callArguments[operationCount] = 0;
+        operationCount++;
+    }
+
+    private void pushOperand(ExpressionNode operand) {
+        if (operandCount == operands.length) {
+            operands = Arrays.copyOf(operands, operandCount * 2);
+        }
+        operands[operandCount++] = operand;
+    }
+
+    private static String arityMessage(FunctionRegistry.Definition function) {
+        int arity = function.arity;
+        String count;
+        if (arity == 1) {
+            count = "один аргумент";
+        } else if (arity % 10 >= 2 && arity % 10 <= 4 && (arity % 100 < 12 || arity % 100 > 14)) {
+            count = arity + " аргумента";
+        } else {
+            count = arity + (arity % 10 == 1 && arity % 100 != 11 ? " аргумент" : " аргументов");
+        }
+        return "функция " + function.name + " принимает " + count;
+    }
+
+    /**
+     * Возвращает слот переменной, назначая его при первом появлении имени.
+     * Хэш имени совпадает с {@link String#hashCode()}.
+     */
+    private int slot(int start, int end, int hash) {
+        if (names == null) {
+            names = new String[Integer.highestOneBit(Math.max(8, slots.size() * 2)) * 2];
+            nameSlots = new int[names.length];
+            for (Map.Entry<String, Integer> entry : slots.entrySet()) {
+                insert(entry.getKey(), entry.getKey().hashCode(), entry.getValue());
+            }
+        }
+        int mask = names.length - 1;
+        for (int index = spread(hash) & mask; names[index] != null; index = (index + 1) & mask) {
+            if (matches(names[index], start, end)) {
+                return nameSlots[index];
+            }
+        }
+        String name = text.subSequence(start, end).toString();
+        int slot = slots.size();
+        slots.put(name, slot);
+        insert(name, hash, slot);
+        return slot;
+    }
+
+    private void insert(String name, int hash, int slot) {
+        if (2 * (nameCount + 1) > names.length) {
+            String[] oldNames = names;
+            int[] oldSlots = nameSlots;
+            names = new String[oldNames.length * 2];
+            nameSlots = new int[names.length];
+            nameCount = 0;
+            for (int i = 0; i < oldNames.length; i++) {
+                if (oldNames[i] != null) {
+                    insert(oldNames[i], oldNames[i].hashCode(), oldSlots[i]);
+                }
+            }
+        }
+        int mask = names.length - 1;
+        int index = spread(hash) & mask;
+        while (names[index] != null) {
+            index = (index + 1) & mask;
+        }
+        names[index] = name;
+        nameSlots[index] = slot;
+        nameCount++;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private boolean matches(String name, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Переводит запись числа из цифр и одной точки в значение.
+     * Числа не длиннее {@link #MAX_EXACT_DIGITS} значащих цифр переводятся точно
+     * одним делением на степень десяти.
+     */
+    private double number() {
+        int start = position;
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean point = false;
+        boolean anyDigit = false;
+        for (; position < length; position++) {
+            char symbol = text.charAt(position);
+            if (isDigit(symbol)) {
+                anyDigit = true;
+                if (mantissa != 0 || symbol != '0') {
+                    digits++;
+                    mantissa = digits <= MAX_EXACT_DIGITS ? mantissa * 10 + (symbol - '0') : mantissa;
+                }
+                if (point) {
+                    scale++;
+                }
+            } else if (symbol == '.') {
+                if (point) {
+                    throw new ExpressionParseException("некорректное число", start);
+                }
+                point = true;
+            } else {
+                break;
+            }
+        }
+        if (!anyDigit) {
+            throw new ExpressionParseException("некорректное число", start);
+        }
+        if (digits <= MAX_EXACT_DIGITS && scale < POWERS_OF_TEN.length) {
+            return mantissa / POWERS_OF_TEN[scale];
+        }
+        return Double.parseDouble(text.subSequence(start, position).toString());
+    }
+
+    private void expectClosing() {
+        skipSpaces();
+        if (position == length || text.charAt(position) != ')') {
+            throw error("ожидается ')'");
+        }
+        position++;
+    }
+
+    private void skipSpaces() {
+        while (position < length && text.charAt(position) == ' ') {
+            position++;
+        }
+    }
+
+    /**
+     * Возвращает приоритет бинарной операции.
+     * @return 1 для {@code + -}, 2 для {@code * /}, 4 для {@code ^}, 0 если символ не операция
+     */
+    private static int priority(char operation) {
+        switch (operation) {
+            case '+':
+            case '-': return 1;
+            case '*':
+            case '/': return 2;
+            case '^': return 4;
+            default: return 0;
+        }
+    }
+
+    private static boolean isDigit(char symbol) {
+        return symbol >= '0' && symbol <= '9';
+    }
+
+    private static boolean isOperandStart(char symbol) {
+        return isDigit(symbol) || symbol == '.' || symbol == '(' || Character.isLetter(symbol);
+    }
+
+    private ExpressionParseException unexpected() {
+        return error("недопустимый символ '" + text.charAt(position) + "'");
+    }
+
+    private ExpressionParseException error(String reason) {
+        return new ExpressionParseException(reason, position);
+    }
+}
@@ -0,0 +1,229 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Набор связанных выражений, вычисляемых за один проход.
+ * Выражения компилируются в {@link MathExpression#compileSet(Map)} в одну программу:
+ * переменные всех выражений имеют общие слоты, а подвыражение, встречающееся
+ * в нескольких выражениях (например, {@code x*x+y*y}), вычисляется один раз
+ * на строку. Математическая ошибка в любом из выражений прерывает вычисление всей строки.
+ * Объект неизменяем и может использоваться из нескольких потоков одновременно.
+ */
+public final class ExpressionSet {
+
+    private final String[] outputNames;
+    private final String[] sources;
+    private final String[] variableNames;
+    private final ExpressionNode[] roots;
+    private final Program program;
+
+    /**
+     * Конструктор набора выражений.
+     *
+     * @param outputNames имена результатов
+     * @param sources исходные строки выражений в порядке результатов
+     * @param roots корни выражений в порядке результатов, полученные одним оптимизатором
+     * @param variableNames имена переменных, упорядоченные по номерам слотов
+     * @param trigPrecision способ вычисления тригонометрических функций
+     */
+    ExpressionSet(String[] outputNames, String[] sources, ExpressionNode[] roots, String[] variableNames,
+                  TrigPrecision trigPrecision) {
+        Program.Builder builder = new Program.Builder();
+        builder.emitOutputs(roots);
+        this.outputNames = outputNames;
+        this.sources = sources;
+        this.variableNames = variableNames;
+        this.roots = roots;
+        this.program = builder.build(trigPrecision);
+    }
+
+    /**
+     * Возвращает имена результатов в порядке их следования в массиве результатов.
+     * @return неизменяемый список имён результатов
+     */
+    public List<String> getOutputNames() {
+        return Collections.unmodifiableList(Arrays.asList(outputNames));
+    }
+
+    /**
+     * Возвращает номер результата.
+     *
+     * @param name имя результата
+     * @return номер результата или -1, если результата с таким именем нет
+     */
+    public int getOutputIndex(String name) {
+        for (int output = 0; output < outputNames.length; output++) {
+            if (outputNames[output].equals(name)) {
+                return output;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Возвращает имена переменных всех выражений набора в порядке их слотов.
+     * @return неизменяемый список имён переменных
+     */
+    public List<String> getVariableNames() {
+        return Collections.unmodifiableList(Arrays.asList(variableNames));
+    }
+
+    /**
+     * Возвращает номер слота переменной.
+     *
+     * @param name имя переменной
+     * @return номер слота или -1, если переменная в наборе не используется
+     */
+    public int getSlot(String name) {
+        for (int slot = 0; slot < variableNames.length; slot++) {
+            if (variableNames[slot].equals(name)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Возвращает способ вычисления тригонометрических функций, выбранный при компиляции.
+     * @return способ вычисления тригонометрических функций
+     */
+    public TrigPrecision getTrigPrecision() {
+        return program.trigPrecision;
+    }
+
+    /**
+     * Вычисляет все выражения набора.
+     *
+     * @param variables карта значений переменных
+     * @return результаты в порядке {@link #getOutputNames()}
+     * @throws IllegalArgumentException если значение какой-либо переменной не задано
+     * @throws ArithmeticException при математических ошибках в любом из выражений
+     */
+    public double[] evaluate(Map<String, Double> variables) {
+        double[] slots = new double[variableNames.length];
+        for (int slot = 0; slot < variableNames.length; slot++) {
+            Double value = variables.get(variableNames[slot]);
+            if (value == null) {
+                throw new IllegalArgumentException("Переменная не найдена");
+            }
+            slots[slot] = value;
+        }
+        double[] out = new double[outputNames.length];
+        program.executeAll(slots, out);
+        return out;
+    }
+
+    /**
+     * Вычисляет все выражения набора по значениям переменных в порядке слотов.
+     *
+     * @param values значения переменных в порядке слотов
+     * @return результаты в порядке {@link #getOutputNames()}
+     * @throws IllegalArgumentException если значений меньше, чем переменных
+     * @throws ArithmeticException при математических ошибках в любом из выражений
+     */
+    public double[] evaluate(double... values) {
+        double[] out = new double[outputNames.length];
+        evaluate(values, out);
+        return out;
+    }
+
+    /**
+     * Вычисляет все выражения набора в заданный массив. Вычисление не создаёт объектов.
+     *
+     * @param values значения переменных в порядке слотов
+     * @param out массив для результатов в порядке {@link #getOutputNames()}
+     * @throws IllegalArgumentException если значений меньше, чем переменных, или массив результатов короче набора
+     * @throws ArithmeticException при математических ошибках в любом из выражений
+     */
+    public void evaluate(double[] values, double[] out) {
+        if (values.length < variableNames.length) {
+            throw new IllegalArgumentException("Переменная не найдена");
+        }
+        if (out.length < outputNames.length) {
+            throw new IllegalArgumentException("Массив результатов короче набора выражений");
+        }
+        program.executeAll(values, out);
+    }
+
+    /**
+     * Вычисляет все выражения набора для каждой строки столбцов значений.
+     * Операции выполняются сразу над блоками строк.
+     *
+     * @param columns столбцы значений переменных в порядке слотов
+     * @param outs столбцы результатов в порядке {@link #getOutputNames()};
+     *             длина первого столбца задаёт количество строк
+     * @throws IllegalArgumentException если столбцов меньше, чем переменных или результатов,
+     *                                  или столбец короче количества строк
+     * @throws ArithmeticException при математических ошибках в любой строке
+     */
+    public void evaluateBatch(double[][] columns, double[][] outs) {
+        if (outs.length < outputNames.length) {
+            throw new IllegalArgumentException("Столбцов результатов меньше, чем выражений");
+        }
+        int rows = outs[0].length;
+        for (int output = 1; output < outputNames.length; output++) {
+            if (outs[output].length < rows) {
+                throw new IllegalArgumentException("Столбец короче количества строк");
+            }
+        }
+        CompiledExpression.checkColumns(columns, variableNames.length, rows);
+        new BatchKernel(program).evaluateAll(columns, outs, 0, rows);
+    }
+
+    /**
+     * Создаёт сеанс инкрементального вычисления набора.
+     *
+     * @param values начальные значения переменных в порядке слотов
+     * @return сеанс с вычисленными результатами
+     * @throws IllegalArgumentException если значений меньше, чем переменных
+     */
+    public EvaluationSession newSession(double... values) {
+        if (values.length < variableNames.length) {
+            throw new IllegalArgumentException("Переменная не найдена");
+        }
+        return new EvaluationSession(this, roots, Arrays.copyOf(values, variableNames.length));
+    }
+
+    /**
+     * Создаёт сеанс инкрементального вычисления набора.
+     *
+     * @param variables начальные значения переменных по именам
+     * @return сеанс с вычисленными результатами
+     * @throws IllegalArgumentException если значение какой-либо переменной не задано
+     */
+    public EvaluationSession newSession(Map<String, Double> variables) {
+        double[] values = new double[variableNames.length];
+        for (int slot = 0; slot < variableNames.length; slot++) {
+            Double value = variables.get(variableNames[slot]);
+            if (value == null) {
+                throw new IllegalArgumentException("Переменная не найдена");
+            }
+            values[slot] = value;
+        }
+        return new EvaluationSession(this, roots, values);
+    }
+
+    /**
+     * Возвращает программу вычисления набора.
+     * @return постфиксная программа с несколькими результатами
+     */
+    Program getProgram() {
+        return program;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (int output = 0; output < outputNames.length; output++) {
+            if (output > 0) {
+                result.append("; ");
+            }
+            result.append(outputNames[output]).append(" = ").append(sources[output]);
+        }
+        return result.toString();
+    }
+}
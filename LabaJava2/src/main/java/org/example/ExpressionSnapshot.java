@@ -0,0 +1,224 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Сохранение скомпилированных выражений в файл снимка и загрузка из него без разбора строк.
+ * <p>
+ * Файл записывается и читается через отображение в память ({@link FileChannel#map}).
+ * Все числа записываются в порядке little-endian:
+ * <ul>
+ *     <li>заголовок: сигнатура {@code LJEX}, версия формата, количество выражений
+ *     и CRC32 всех следующих байтов;</li>
+ *     <li>исходные строки: для каждого выражения - имя {@link TrigPrecision} и строка выражения;
+ *     этот раздел одинаков во всех версиях формата;</li>
+ *     <li>программы: для каждого выражения - признак скомпилированности в байт-код,
+ *     глубина стека, количество временных ячеек, коды операций, константы, имена переменных
+ *     по слотам и имена с количеством аргументов функций {@link FunctionRegistry},
+ *     вызываемых операцией {@link Program#CALL}.</li>
+ * </ul>
+ * Строки записываются как длина в байтах и байты UTF-8. Если версия файла отличается
+ * от {@link #VERSION}, выражения разбираются заново из исходных строк. Программы, которые
+ * при сохранении уже выполнялись сгенерированным кодом, компилируются при первом вычислении
+ * после загрузки, не дожидаясь порога {@link BytecodeCompiler#THRESHOLD}.
+ * Функции, зарегистрированные пользователем, должны быть зарегистрированы до загрузки снимка.
+ */
+public final class ExpressionSnapshot {
+
+    /** Сигнатура файла снимка, байты {@code LJEX} */
+    static final int MAGIC = 0x58454A4C;
+
+    /** Текущая версия формата */
+    static final int VERSION = 2;
+
+    /** Размер заголовка: сигнатура, версия, количество выражений и контрольная сумма */
+    static final int HEADER_SIZE = 16;
+
+    private static final byte HOT = 1;
+
+    private ExpressionSnapshot() {
+    }
+
+    /**
+     * Записывает выражения в файл снимка. Файл сначала записывается рядом под временным именем
+     * и затем заменяет прежний, поэтому читатели не видят частично записанный снимок.
+     *
+     * @param file путь к файлу снимка
+     * @param expressions скомпилированные выражения
+     * @throws IOException при ошибке записи
+     */
+    public static void write(Path file, Collection<CompiledExpression> expressions) throws IOException {
+        int count = expressions.size();
+        byte[][] strings = new byte[count * 2][];
+        byte[][][] names = new byte[count][][];
+        byte[][][] functions = new byte[count][][];
+        long size = HEADER_SIZE;
+        int index = 0;
+        for (CompiledExpression expression : expressions) {
+            Program program = expression.getProgram();
+            strings[2 * index] = program.trigPrecision.name().getBytes(StandardCharsets.UTF_8);
+            strings[2 * index + 1] = expression.getSource().getBytes(StandardCharsets.UTF_8);
+            List<String> variables = expression.getVariableNames();
+            names[index] = new byte[variables.size()][];
+            size += 8 + strings[2 * index].length + strings[2 * index + 1].length;
+            size += 1 + 4 * 3 + 4L * program.code.length + 4 + 8L * program.constants.length + 4;
+            for (int slot = 0; slot < variables.size(); slot++) {
+                names[index][slot] = variables.get(slot).getBytes(StandardCharsets.UTF_8);
+                size += 4 + names[index][slot].length;
+            }
+            functions[index] = new byte[program.functions.length][];
+            size += 4;
+            for (int function = 0; function < program.functions.length; function++) {
+                functions[index][function] = program.functions[function].name.getBytes(StandardCharsets.UTF_8);
+                size += 8 + functions[index][function].length;
+            }
+            index++;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Снимок слишком велик: " + size + " байт");
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(0);
+            for (byte[] string : strings) {
+                buffer.putInt(string.length).put(string);
+            }
+            index = 0;
+            for (CompiledExpression expression : expressions) {
+                Program program = expression.getProgram();
+                buffer.put(program.isCompiled() ? HOT : 0);
+                buffer.putInt(program.maxDepth).putInt(program.temps);
+                buffer.putInt(program.code.length);
+                buffer.asIntBuffer().put(program.code);
+                buffer.position(buffer.position() + 4 * program.code.length);
+                buffer.putInt(program.constants.length);
+                buffer.asDoubleBuffer().put(program.constants);
+                buffer.position(buffer.position() + 8 * program.constants.length);
+                buffer.putInt(names[index].length);
+                for (byte[] name : names[index]) {
+                    buffer.putInt(name.length).put(name);
+                }
+                buffer.putInt(functions[index].length);
+                for (int function = 0; function < functions[index].length; function++) {
+                    buffer.putInt(functions[index][function].length).put(functions[index][function]);
+                    buffer.putInt(program.functions[function].arity);
+                }
+                index++;
+            }
+            buffer.putInt(12, checksum(buffer));
+            buffer.force();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Загружает выражения из файла снимка в порядке их записи.
+     *
+     * @param file путь к файлу снимка
+     * @return скомпилированные выражения
+     * @throws IOException при ошибке чтения, если файл не является снимком,
+     *                     его контрольная сумма не совпадает или вызываемая функция не зарегистрирована
+     * @throws IllegalArgumentException если при повторном разборе выражения другой версии
+     *                                  оно оказалось некорректным
+     */
+    public static List<CompiledExpression> read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Файл не является снимком выражений: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Файл не является снимком выражений: " + file);
+            }
+            int version = buffer.getInt(4);
+            int count = buffer.getInt(8);
+            if (checksum(buffer) != buffer.getInt(12)) {
+                throw new IOException("Контрольная сумма снимка не совпадает: " + file);
+            }
+
+            buffer.position(HEADER_SIZE);
+            TrigPrecision[] trigPrecisions = new TrigPrecision[count];
+            String[] sources = new String[count];
+            for (int index = 0; index < count; index++) {
+                String trigPrecision = readString(buffer);
+                try {
+                    trigPrecisions[index] = TrigPrecision.valueOf(trigPrecision);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Неизвестный способ вычисления тригонометрических функций: "
+                            + trigPrecision, e);
+                }
+                sources[index] = readString(buffer);
+            }
+
+            List<CompiledExpression> expressions = new ArrayList<>(count);
+            for (int index = 0; index < count; index++) {
+                expressions.add(version == VERSION
+                        ? readExpression(buffer, sources[index], trigPrecisions[index])
+                        : MathExpression.compile(sources[index], trigPrecisions[index]));
+            }
+            return expressions;
+        }
+    }
+
+    private static CompiledExpression readExpression(ByteBuffer buffer, String source, TrigPrecision trigPrecision)
+            throws IOException {
+        boolean hot = buffer.get() == HOT;
+        int maxDepth = buffer.getInt();
+        int temps = buffer.getInt();
+        int[] code = new int[buffer.getInt()];
+        buffer.asIntBuffer().get(code);
+        buffer.position(buffer.position() + 4 * code.length);
+        double[] constants = new double[buffer.getInt()];
+        buffer.asDoubleBuffer().get(constants);
+        buffer.position(buffer.position() + 8 * constants.length);
+        String[] variableNames = new String[buffer.getInt()];
+        for (int slot = 0; slot < variableNames.length; slot++) {
+            variableNames[slot] = readString(buffer);
+        }
+        FunctionRegistry.Definition[] functions = new FunctionRegistry.Definition[buffer.getInt()];
+        for (int function = 0; function < functions.length; function++) {
+            String name = readString(buffer);
+            int arity = buffer.getInt();
+            functions[function] = FunctionRegistry.find(name, 0, name.length(), name.hashCode());
+            if (functions[function] == null || functions[function].arity != arity) {
+                throw new IOException("Функция не зарегистрирована: " + name + " (аргументов: " + arity + ")");
+            }
+        }
+        Program program = new Program(code, constants, maxDepth, temps, 0, trigPrecision, functions);
+        if (hot) {
+            program.markHot();
+        }
+        return new CompiledExpression(source, program, variableNames);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int checksum(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(HEADER_SIZE).limit(buffer.capacity()));
+        return (int) crc.getValue();
+    }
+}
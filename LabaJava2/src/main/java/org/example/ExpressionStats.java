@@ -0,0 +1,81 @@
+package org.example;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики и гистограммы длительностей одного выражения или всех выражений вместе
+ * по фазам: разбор, вычисление одной строки значений и пакетное вычисление.
+ * Заполняются через {@link ExpressionMetrics} только при включённых метриках.
+ * Одиночные вычисления считаются все, а длительность измеряется у случайно выбранного
+ * вызова из {@link #SAMPLE_INTERVAL}: два вызова {@link System#nanoTime()} дороже
+ * самого вычисления простого выражения.
+ */
+final class ExpressionStats {
+
+    /** Длительность измеряется в среднем у одного из стольких одиночных вычислений */
+    static final int SAMPLE_INTERVAL = 16;
+
+    /** Значение {@link #startEvaluation()} для вызова, длительность которого не измеряется */
+    static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    private final String source;
+    final LatencyHistogram parse = new LatencyHistogram();
+    final LatencyHistogram evaluate = new LatencyHistogram();
+    final LatencyHistogram batch = new LatencyHistogram();
+    final LongAdder evaluations = new LongAdder();
+    final LongAdder parseErrors = new LongAdder();
+    final LongAdder evaluationErrors = new LongAdder();
+    final LongAdder batchRows = new LongAdder();
+    final LongAdder failedRows = new LongAdder();
+
+    /**
+     * Конструктор счётчиков.
+     * @param source строка выражения
+     */
+    ExpressionStats(String source) {
+        this.source = source;
+    }
+
+    /**
+     * Возвращает строку выражения.
+     * @return строка выражения
+     */
+    String getSource() {
+        return source;
+    }
+
+    /**
+     * Возвращает количество вычислений: одиночных строк и строк пакетов.
+     * @return количество вычисленных строк
+     */
+    long getEvaluationCount() {
+        return evaluations.sum() + batchRows.sum();
+    }
+
+    /**
+     * Учитывает начало одиночного вычисления.
+     * @return время начала для измеряемого вызова или {@link #NOT_SAMPLED}
+     */
+    long startEvaluation() {
+        evaluations.increment();
+        if ((ThreadLocalRandom.current().nextInt() & (SAMPLE_INTERVAL - 1)) != 0) {
+            return NOT_SAMPLED;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Обнуляет все счётчики.
+     */
+    void reset() {
+        parse.reset();
+        evaluate.reset();
+        batch.reset();
+        evaluations.reset();
+        parseErrors.reset();
+        evaluationErrors.reset();
+        batchRows.reset();
+        failedRows.reset();
+    }
+}
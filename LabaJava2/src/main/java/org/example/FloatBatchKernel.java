@@ -0,0 +1,283 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Вычисление программы по столбцам значений {@code float} с заданной {@link FloatPrecision}.
+ * В режиме {@link FloatPrecision#FLOAT} операции выполняются над блоками {@code float}
+ * так же, как в {@link BatchKernel}; в режиме {@link FloatPrecision#DOUBLE_ACCUMULATE} блок
+ * столбцов расширяется до double, вычисляется {@link BatchKernel} и результат округляется.
+ * Блок, вычисление которого во float завершилось математической ошибкой (например, делитель
+ * обратился в ноль из-за потери значимости), пересчитывается в double, поэтому ошибками
+ * строк считаются только ошибки вычисления в double. Потеря значимости может и убрать
+ * ошибку: такой блок во float вычисляется без пересчёта.
+ * Буферы блоков принадлежат объекту, поэтому один объект не должен
+ * использоваться из нескольких потоков одновременно.
+ */
+final class FloatBatchKernel {
+
+    private final Program program;
+    private final int slotCount;
+
+    /** Буферы режима {@link FloatPrecision#FLOAT} */
+    private final float[][] buffers;
+    private final float[][] arrays;
+    private final int[] offsets;
+    private final float[][] temps;
+    /** Аргументы одной строки для вызова функции с тремя и более аргументами */
+    private double[] arguments = new double[0];
+
+    /**
+     * Вычислитель и буферы в double: в режиме {@link FloatPrecision#DOUBLE_ACCUMULATE} - для всех
+     * блоков, в режиме {@link FloatPrecision#FLOAT} создаются при первом пересчёте блока с ошибкой
+     */
+    private BatchKernel wide;
+    private double[][] wideColumns;
+
+    /**
+     * Конструктор вычислителя.
+     * @param program вычисляемая программа
+     * @param slotCount количество слотов программы
+     * @param precision точность промежуточных вычислений
+     */
+    FloatBatchKernel(Program program, int slotCount, FloatPrecision precision) {
+        this.program = program;
+        this.slotCount = slotCount;
+        if (precision == FloatPrecision.FLOAT) {
+            this.buffers = new float[program.maxDepth][BatchKernel.CHUNK];
+            this.arrays = new float[program.maxDepth][];
+            this.offsets = new int[program.maxDepth];
+            this.temps = new float[program.temps][BatchKernel.CHUNK];
+        } else {
+            this.buffers = null;
+            this.arrays = null;
+            this.offsets = null;
+            this.temps = null;
+            this.wide = new BatchKernel(program);
+            this.wideColumns = new double[slotCount][BatchKernel.CHUNK];
+        }
+    }
+
+    /**
+     * Вычисляет все строки с заданной обработкой ошибок. Если произошла ошибка, а политика
+     * допускает продолжение, строки пересчитываются по блокам, а блоки с ошибками - по строкам.
+     *
+     * @param columns столбцы значений переменных по номерам слотов
+     * @param out массив результатов, его длина задаёт количество строк
+     * @param policy способ обработки ошибок в строках
+     * @return итог вычисления
+     * @throws ArithmeticException при ошибке в строке и политике {@link RowErrorPolicy#FAIL_FAST}
+     */
+    BatchResult run(float[][] columns, float[] out, RowErrorPolicy policy) {
+        try {
+            evaluate(columns, out, 0, out.length);
+            return new BatchResult(new int[0]);
+        } catch (ArithmeticException e) {
+            if (policy == RowErrorPolicy.FAIL_FAST) {
+                throw e;
+            }
+        }
+
+        int[] failed = new int[4];
+        int failedCount = 0;
+        for (int start = 0; start < out.length; start += BatchKernel.CHUNK) {
+            int end = Math.min(out.length, start + BatchKernel.CHUNK);
+            try {
+                evaluate(columns, out, start, end);
+                continue;
+            } catch (ArithmeticException e) {
+                // ошибка где-то в блоке: вычисляем его строки по отдельности
+            }
+            for (int row = start; row < end; row++) {
+                try {
+                    evaluate(columns, out, row, row + 1);
+                } catch (ArithmeticException e) {
+                    out[row] = Float.NaN;
+                    if (failedCount == failed.length) {
+                        failed = Arrays.copyOf(failed, failedCount * 2);
+                    }
+                    failed[failedCount++] = row;
+                }
+            }
+        }
+        return new BatchResult(Arrays.copyOf(failed, failedCount));
+    }
+
+    /**
+     * Вычисляет программу для строк из диапазона.
+     *
+     * @param columns столбцы значений переменных по номерам слотов
+     * @param out массив результатов
+     * @param from первая строка диапазона
+     * @param to строка, следующая за последней строкой диапазона
+     * @throws ArithmeticException при математических ошибках в любой строке диапазона
+     */
+    void evaluate(float[][] columns, float[] out, int from, int to) {
+        for (int start = from; start < to; start += BatchKernel.CHUNK) {
+            int length = Math.min(BatchKernel.CHUNK, to - start);
+            if (buffers != null) {
+                try {
+                    int top = execute(columns, start, length);
+                    System.arraycopy(arrays[top], offsets[top], out, start, length);
+                    continue;
+                } catch (ArithmeticException e) {
+                    // ошибка могла появиться из-за диапазона float: пересчитываем блок в double
+                }
+                if (wide == null) {
+                    wide = new BatchKernel(program);
+                    wideColumns = new double[slotCount][BatchKernel.CHUNK];
+                }
+            }
+            for (int slot = 0; slot < slotCount; slot++) {
+                float[] column = columns[slot];
+                double[] widened = wideColumns[slot];
+                for (int i = 0; i < length; i++) widened[i] = column[start + i];
+            }
+            wide.evaluateChunk(wideColumns, out, start, length);
+        }
+    }
+
+    /**
+     * Выполняет программу для одного блока строк в {@code float}.
+     * Операнд на стеке - массив и смещение в нём, как в {@link BatchKernel}.
+     *
+     * @return индекс вершины стека с результатом
+     */
+    private int execute(float[][] columns, int start, int length) {
+        int[] code = program.code;
+        int top = -1;
+
+        for (int pc = 0; pc < code.length; pc++) {
+            int opcode = code[pc];
+            switch (opcode) {
+                case Program.CONST: {
+                    top++;
+                    Arrays.fill(buffers[top], 0, length, (float) program.constants[code[++pc]]);
+                    arrays[top] = buffers[top];
+                    offsets[top] = 0;
+                    break;
+                }
+                case Program.LOAD:
+                    top++;
+                    arrays[top] = columns[code[++pc]];
+                    offsets[top] = start;
+                    break;
+                case Program.STORE:
+                    System.arraycopy(arrays[top], offsets[top], temps[code[++pc]], 0, length);
+                    break;
+                case Program.RECALL:
+                    top++;
+                    arrays[top] = temps[code[++pc]];
+                    offsets[top] = 0;
+                    break;
+                case Program.ADD:
+                case Program.SUB:
+                case Program.MUL:
+                case Program.DIV:
+                case Program.POW:
+                    top--;
+                    binary(opcode, arrays[top], offsets[top], arrays[top + 1], offsets[top + 1],
+                            buffers[top], length);
+                    arrays[top] = buffers[top];
+                    offsets[top] = 0;
+                    break;
+                case Program.CALL: {
+                    FunctionRegistry.Definition function = program.functions[code[++pc]];
+                    top -= function.arity - 1;
+                    call(function, top, length);
+                    arrays[top] = buffers[top];
+                    offsets[top] = 0;
+                    break;
+                }
+                default:
+                    unary(opcode, program.trigPrecision, arrays[top], offsets[top], buffers[top], length);
+                    arrays[top] = buffers[top];
+                    offsets[top] = 0;
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Вызывает функцию для блока строк: аргументы расширяются до double,
+     * результат округляется до float.
+     */
+    private void call(FunctionRegistry.Definition function, int first, int length) {
+        float[] r = buffers[first];
+        float[] a = arrays[first];
+        int ao = offsets[first];
+        if (function.unary != null) {
+            DoubleUnaryOperator operator = function.unary;
+            for (int i = 0; i < length; i++) r[i] = (float) operator.applyAsDouble(a[ao + i]);
+            return;
+        }
+        if (function.binary != null) {
+            DoubleBinaryOperator operator = function.binary;
+            float[] b = arrays[first + 1];
+            int bo = offsets[first + 1];
+            for (int i = 0; i < length; i++) r[i] = (float) operator.applyAsDouble(a[ao + i], b[bo + i]);
+            return;
+        }
+        if (arguments.length < function.arity) {
+            arguments = new double[function.arity];
+        }
+        for (int i = 0; i < length; i++) {
+            for (int argument = 0; argument < function.arity; argument++) {
+                arguments[argument] = arrays[first + argument][offsets[first + argument] + i];
+            }
+            r[i] = (float) function.function.apply(arguments, 0);
+        }
+    }
+
+    private static void binary(int opcode, float[] a, int ao, float[] b, int bo, float[] r, int length) {
+        switch (opcode) {
+            case Program.ADD:
+                for (int i = 0; i < length; i++) r[i] = a[ao + i] + b[bo + i];
+                break;
+            case Program.SUB:
+                for (int i = 0; i < length; i++) r[i] = a[ao + i] - b[bo + i];
+                break;
+            case Program.MUL:
+                for (int i = 0; i < length; i++) r[i] = a[ao + i] * b[bo + i];
+                break;
+            case Program.DIV:
+                for (int i = 0; i < length; i++) {
+                    if (b[bo + i] == 0) throw new ArithmeticException("Деление на ноль");
+                }
+                for (int i = 0; i < length; i++) r[i] = a[ao + i] / b[bo + i];
+                break;
+            case Program.POW:
+                for (int i = 0; i < length; i++) r[i] = (float) Math.pow(a[ao + i], b[bo + i]);
+                break;
+            default:
+                throw new IllegalStateException("Неизвестный код операции " + opcode);
+        }
+    }
+
+    private static void unary(int opcode, TrigPrecision trig, float[] a, int ao, float[] r, int length) {
+        switch (opcode) {
+            case Program.NEG:
+                for (int i = 0; i < length; i++) r[i] = -a[ao + i];
+                break;
+            case Program.SIN:
+                for (int i = 0; i < length; i++) r[i] = (float) trig.sin(a[ao + i]);
+                break;
+            case Program.COS:
+                for (int i = 0; i < length; i++) r[i] = (float) trig.cos(a[ao + i]);
+                break;
+            case Program.TAN:
+                for (int i = 0; i < length; i++) r[i] = (float) trig.tan(a[ao + i]);
+                break;
+            case Program.SQRT:
+                for (int i = 0; i < length; i++) r[i] = MathOperations.SQRT.calculate(a[ao + i]);
+                break;
+            case Program.LOG:
+                for (int i = 0; i < length; i++) r[i] = MathOperations.LOG.calculate(a[ao + i]);
+                break;
+            default:
+                throw new IllegalStateException("Неизвестный код операции " + opcode);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.example;
+
+/**
+ * Точность промежуточных вычислений при пакетном вычислении по столбцам {@code float}
+ * ({@link CompiledExpression#evaluateBatch(float[][], float[], FloatPrecision, RowErrorPolicy)}).
+ * В обоих режимах значения читаются и результаты пишутся как {@code float}, поэтому
+ * объём читаемой и записываемой памяти вдвое меньше, чем у столбцов {@code double}.
+ */
+public enum FloatPrecision {
+
+    /**
+     * Все промежуточные значения - {@code float}. Сложение, вычитание, умножение, деление
+     * и квадратный корень округляются корректно, возведение в степень, логарифм,
+     * тригонометрические функции и функции пользователя вычисляются в double и округляются
+     * до float ({@link MathOperations#calculate(float)}). Каждая операция вносит относительную
+     * погрешность не больше 2^-24 (около 6e-8), поэтому для выражения из n операций без вычитания
+     * близких значений отличие от вычисления в double не превышает примерно n * 2^-24.
+     * Вычитание близких значений и функции с большой производной (тангенс около 90 градусов,
+     * логарифм около 1, степень с большим показателем) усиливают погрешность, как в любой
+     * арифметике float. Промежуточные значения больше 3.4e38 по модулю становятся бесконечностью,
+     * а меньше 1.4e-45 - нулём. Блок строк, в котором при этом возникла математическая ошибка
+     * (например, делитель {@code y * y} при {@code y = 1e-23} обратился в ноль), пересчитывается
+     * как в режиме {@link #DOUBLE_ACCUMULATE}, поэтому ошибками строк остаются только ошибки
+     * вычисления в double, а результаты такого блока имеют погрешность этого режима.
+     * Обратное не гарантируется: если потеря значимости убирает ошибку (например, в
+     * {@code sqrt(x * y)} при {@code x = -1e-30}, {@code y = 1e-30} произведение становится
+     * {@code -0.0}), строка вычисляется без ошибки, хотя вычисление в double её сообщает.
+     */
+    FLOAT,
+
+    /**
+     * Значения расширяются до {@code double} блоками по {@link BatchKernel#CHUNK} строк,
+     * выражение вычисляется так же, как в {@link CompiledExpression#evaluateBatch(double[][], double[])},
+     * и только результат округляется до {@code float}. Отличие от вычисления в double
+     * тех же значений - не больше половины единицы последнего разряда float
+     * (относительная погрешность 2^-24), кроме результатов вне диапазона float:
+     * больше 3.4e38 по модулю становятся бесконечностью, меньше 1.2e-38 теряют точность.
+     */
+    DOUBLE_ACCUMULATE
+}
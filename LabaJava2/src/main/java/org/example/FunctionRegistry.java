@@ -0,0 +1,284 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Реестр функций, которые можно вызывать из выражений.
+ * Кроме функций {@link MathOperations} реестр содержит {@code abs}, {@code exp},
+ * {@code min} и {@code max}, а также функции, зарегистрированные пользователем.
+ * <p>
+ * Имена хранятся в хэш-таблице с открытой адресацией, поэтому поиск при разборе выражения
+ * не зависит от количества функций и не создаёт строк. Функция связывается с выражением
+ * при компиляции: программа хранит ссылку на её описание, а не имя.
+ * Для чистой функции от констант выполняется свёртка, а одинаковые вызовы вычисляются
+ * один раз, как и для встроенных функций. Функции одного и двух аргументов,
+ * зарегистрированные как {@link DoubleUnaryOperator} и {@link DoubleBinaryOperator},
+ * вызываются и из сгенерированного байт-кода ({@link BytecodeCompiler}).
+ * Функцию, зарегистрированную вместе с производными, можно дифференцировать
+ * ({@link CompiledExpression#gradient(String...)}); встроенные {@code abs}, {@code exp},
+ * {@code min} и {@code max} зарегистрированы с производными.
+ * <p>
+ * Регистрация потокобезопасна; функцию нельзя удалить или заменить.
+ */
+public final class FunctionRegistry {
+
+    /**
+     * Описание зарегистрированной функции.
+     */
+    static final class Definition {
+        final String name;
+        final int arity;
+        /** Результат зависит только от аргументов, а вызов не имеет побочных эффектов */
+        final boolean pure;
+        /** Функцию можно вызывать для строк в любом порядке и из нескольких потоков одновременно */
+        final boolean vectorizable;
+        /** Встроенная функция с собственным кодом операции или null */
+        final MathOperations operation;
+        final DoubleUnaryOperator unary;
+        final DoubleBinaryOperator binary;
+        final ExpressionFunction function;
+        /** Частные производные по аргументам в порядке аргументов или null, если производная не задана */
+        final ExpressionFunction[] partials;
+        /** Номер функции в реестре, по которому её вызывает сгенерированный байт-код */
+        final int id;
+
+        Definition(String name, int arity, boolean pure, boolean vectorizable, MathOperations operation,
+                   DoubleUnaryOperator unary, DoubleBinaryOperator binary, ExpressionFunction function,
+                   ExpressionFunction[] partials, int id) {
+            this.name = name;
+            this.arity = arity;
+            this.pure = pure;
+            this.vectorizable = vectorizable;
+            this.operation = operation;
+            this.unary = unary;
+            this.binary = binary;
+            this.function = function;
+            this.partials = partials;
+            this.id = id;
+        }
+
+        /**
+         * Вычисляет функцию от аргументов, расположенных в массиве подряд.
+         *
+         * @param arguments массив, содержащий аргументы
+         * @param offset индекс первого аргумента
+         * @return результат вычисления
+         * @throws ArithmeticException при недопустимых значениях аргументов
+         */
+        double apply(double[] arguments, int offset) {
+            if (unary != null) {
+                return unary.applyAsDouble(arguments[offset]);
+            }
+            if (binary != null) {
+                return binary.applyAsDouble(arguments[offset], arguments[offset + 1]);
+            }
+            return function.apply(arguments, offset);
+        }
+    }
+
+    /** Хэш-таблица имён: длина - степень двойки, заполнена не более чем наполовину */
+    private static volatile Definition[] table = new Definition[16];
+    /** Функции по номерам */
+    private static volatile Definition[] definitions = new Definition[0];
+
+    static {
+        for (MathOperations operation : MathOperations.values()) {
+            add(operation.getOperation(), 1, true, true, operation, operation::calculate, null, null, null);
+        }
+        // в точке излома и при равных аргументах берётся производная того аргумента,
+        // значение которого возвращает функция
+        register("abs", Math::abs, Math::signum);
+        register("exp", Math::exp, Math::exp);
+        register("min", Math::min, (a, b) -> a <= b ? 1 : 0, (a, b) -> a <= b ? 0 : 1);
+        register("max", Math::max, (a, b) -> a >= b ? 1 : 0, (a, b) -> a >= b ? 0 : 1);
+    }
+
+    private FunctionRegistry() {
+    }
+
+    /**
+     * Регистрирует чистую функцию одного аргумента, допускающую пакетное вычисление.
+     *
+     * @param name имя функции из букв
+     * @param function функция
+     * @throws IllegalArgumentException если имя некорректно или уже занято
+     */
+    public static void register(String name, DoubleUnaryOperator function) {
+        add(name, 1, true, true, null, function, null, null, null);
+    }
+
+    /**
+     * Регистрирует чистую функцию одного аргумента вместе с её производной.
+     *
+     * @param name имя функции из букв
+     * @param function функция
+     * @param derivative производная функции
+     * @throws IllegalArgumentException если имя некорректно или уже занято
+     */
+    public static void register(String name, DoubleUnaryOperator function, DoubleUnaryOperator derivative) {
+        add(name, 1, true, true, null, function, null, null, new ExpressionFunction[] {
+                (arguments, offset) -> derivative.applyAsDouble(arguments[offset])});
+    }
+
+    /**
+     * Регистрирует чистую функцию двух аргументов, допускающую пакетное вычисление.
+     *
+     * @param name имя функции из букв
+     * @param function функция
+     * @throws IllegalArgumentException если имя некорректно или уже занято
+     */
+    public static void register(String name, DoubleBinaryOperator function) {
+        add(name, 2, true, true, null, null, function, null, null);
+    }
+
+    /**
+     * Регистрирует чистую функцию двух аргументов вместе с её частными производными.
+     *
+     * @param name имя функции из букв
+     * @param function функция
+     * @param first частная производная по первому аргументу
+     * @param second частная производная по второму аргументу
+     * @throws IllegalArgumentException если имя некорректно или уже занято
+     */
+    public static void register(String name, DoubleBinaryOperator function,
+                                DoubleBinaryOperator first, DoubleBinaryOperator second) {
+        add(name, 2, true, true, null, null, function, null, new ExpressionFunction[] {
+                (arguments, offset) -> first.applyAsDouble(arguments[offset], arguments[offset + 1]),
+                (arguments, offset) -> second.applyAsDouble(arguments[offset], arguments[offset + 1])});
+    }
+
+    /**
+     * Регистрирует функцию с заданным количеством аргументов.
+     * Для нечистой функции не выполняется свёртка констант, а каждый вызов в выражении
+     * вычисляется отдельно. Функция, не допускающая пакетного вычисления,
+     * при пакетном вычислении выражения вызывается только из вызывающего потока.
+     *
+     * @param name имя функции из букв
+     * @param arity количество аргументов, не меньше одного
+     * @param pure результат зависит только от аргументов, а вызов не имеет побочных эффектов
+     * @param vectorizable функцию можно вызывать для строк в любом порядке
+     *                     и из нескольких потоков одновременно
+     * @param function функция
+     * @throws IllegalArgumentException если имя некорректно или уже занято, либо аргументов меньше одного
+     */
+    public static void register(String name, int arity, boolean pure, boolean vectorizable,
+                                ExpressionFunction function) {
+        if (arity < 1) {
+            throw new IllegalArgumentException("Функция должна принимать хотя бы один аргумент");
+        }
+        add(name, arity, pure, vectorizable, null, null, null, function, null);
+    }
+
+    /**
+     * Проверяет, является ли строка именем функции.
+     *
+     * @param name проверяемая строка
+     * @return true если функция с таким именем зарегистрирована
+     */
+    public static boolean isFunction(String name) {
+        return find(name, 0, name.length(), name.hashCode()) != null;
+    }
+
+    /**
+     * Возвращает имена всех функций в порядке регистрации.
+     * @return неизменяемый список имён
+     */
+    public static List<String> getNames() {
+        List<String> names = new ArrayList<>();
+        for (Definition definition : definitions) {
+            names.add(definition.name);
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Находит функцию по имени, заданному участком текста.
+     *
+     * @param text текст, содержащий имя
+     * @param start начало имени
+     * @param end конец имени
+     * @param hash хэш имени, совпадающий с {@link String#hashCode()}
+     * @return описание функции или null
+     */
+    static Definition find(CharSequence text, int start, int end, int hash) {
+        Definition[] table = FunctionRegistry.table;
+        int mask = table.length - 1;
+        for (int index = spread(hash) & mask; table[index] != null; index = (index + 1) & mask) {
+            if (matches(table[index].name, text, start, end)) {
+                return table[index];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Возвращает функцию по номеру.
+     * @param id номер функции
+     * @return описание функции
+     */
+    static Definition get(int id) {
+        return definitions[id];
+    }
+
+    private static synchronized void add(String name, int arity, boolean pure, boolean vectorizable,
+                                         MathOperations operation, DoubleUnaryOperator unary,
+                                         DoubleBinaryOperator binary, ExpressionFunction function,
+                                         ExpressionFunction[] partials) {
+        if (unary == null && binary == null && function == null) {
+            throw new IllegalArgumentException("Функция не задана");
+        }
+        if (name.isEmpty() || !name.chars().allMatch(Character::isLetter)) {
+            throw new IllegalArgumentException("Имя функции должно состоять из букв: " + name);
+        }
+        if (isFunction(name)) {
+            throw new IllegalArgumentException("Функция уже зарегистрирована: " + name);
+        }
+        Definition definition = new Definition(name, arity, pure, vectorizable, operation,
+                unary, binary, function, partials, definitions.length);
+
+        Definition[] current = table;
+        Definition[] next = Arrays.copyOf(current, 2 * (definitions.length + 1) > current.length
+                ? current.length * 2 : current.length);
+        if (next.length != current.length) {
+            Arrays.fill(next, null);
+            for (Definition existing : definitions) {
+                insert(next, existing);
+            }
+        }
+        insert(next, definition);
+        Definition[] nextDefinitions = Arrays.copyOf(definitions, definitions.length + 1);
+        nextDefinitions[definition.id] = definition;
+        definitions = nextDefinitions;
+        table = next;
+    }
+
+    private static void insert(Definition[] table, Definition definition) {
+        int mask = table.length - 1;
+        int index = spread(definition.name.hashCode()) & mask;
+        while (table[index] != null) {
+            index = (index + 1) & mask;
+        }
+        table[index] = definition;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String name, CharSequence text, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
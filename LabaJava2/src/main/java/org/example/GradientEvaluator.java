@@ -0,0 +1,502 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Вычисление значения выражения вместе с точными частными производными
+ * по выбранным переменным (обратный режим автоматического дифференцирования).
+ * <p>
+ * Постфиксная программа выражения один раз переводится в список узлов, в котором
+ * общие подвыражения, сохранённые во временных ячейках, представлены одним узлом.
+ * Прямой проход вычисляет значения узлов, обратный - производные результата по каждому узлу,
+ * поэтому стоимость градиента - примерно два вычисления выражения независимо
+ * от количества переменных. Тригонометрические функции принимают градусы,
+ * поэтому их производные умножаются на π/180; значения тригонометрических функций
+ * вычисляются тем же способом {@link TrigPrecision}, что и при обычном вычислении.
+ * Функции из {@link FunctionRegistry} дифференцируются по зарегистрированным вместе с ними
+ * частным производным.
+ * <p>
+ * Объект хранит собственные буферы и не должен использоваться из нескольких потоков одновременно.
+ */
+public final class GradientEvaluator {
+
+    /** Количество строк, обрабатываемых за один проход пакетного вычисления */
+    static final int LANES = 64;
+
+    private static final double DEGREE = Math.PI / 180;
+
+    private final TrigPrecision trig;
+    private final String[] names;
+    private final int slotCount;
+    /** Номер производной для каждого слота или -1, если производная по переменной не нужна */
+    private final int[] directions;
+
+    private final int[] opcodes;
+    private final int[] firstOperands;
+    private final int[] secondOperands;
+    private final double[] constants;
+    /** Вызываемая функция и номера узлов её аргументов для узлов {@link Program#CALL} */
+    private final FunctionRegistry.Definition[] functions;
+    private final int[][] callOperands;
+    /** Аргументы одного вызова функции */
+    private final double[] callArguments;
+    private final int root;
+
+    private final double[][] values;
+    private final double[][] adjoints;
+    /** Значения и производные узлов для одной строки */
+    private final double[] nodeValues;
+    private final double[] nodeAdjoints;
+
+    /**
+     * Конструктор вычислителя.
+     *
+     * @param program программа выражения с одним результатом
+     * @param names имена переменных, по которым вычисляются производные
+     * @param slots номера слотов этих переменных или -1 для переменных, не входящих в выражение
+     * @param slotCount количество переменных выражения
+     * @throws IllegalArgumentException если выражение вызывает функцию из {@link FunctionRegistry},
+     *                                  зарегистрированную без производных
+     */
+    GradientEvaluator(Program program, String[] names, int[] slots, int slotCount) {
+        this.trig = program.trigPrecision;
+        this.names = names;
+        this.slotCount = slotCount;
+        this.directions = new int[slotCount];
+        Arrays.fill(directions, -1);
+        for (int direction = 0; direction < slots.length; direction++) {
+            if (slots[direction] >= 0) {
+                directions[slots[direction]] = direction;
+            }
+        }
+
+        int[] code = program.code;
+        int[] opcodes = new int[code.length];
+        int[] firstOperands = new int[code.length];
+        int[] secondOperands = new int[code.length];
+        FunctionRegistry.Definition[] functions = new FunctionRegistry.Definition[code.length];
+        int[][] callOperands = new int[code.length][];
+        int maxArity = 0;
+        int[] stack = new int[Math.max(program.maxDepth, 1)];
+        int[] temps = new int[program.temps];
+        int top = -1;
+        int count = 0;
+        for (int pc = 0; pc < code.length; pc++) {
+            int opcode = code[pc];
+            switch (opcode) {
+                case Program.CONST:
+                case Program.LOAD:
+                    firstOperands[count] = code[++pc];
+                    break;
+                case Program.STORE:
+                    temps[code[++pc]] = stack[top];
+                    continue;
+                case Program.RECALL:
+                    stack[++top] = temps[code[++pc]];
+                    continue;
+                case Program.ADD:
+                case Program.SUB:
+                case Program.MUL:
+                case Program.DIV:
+                case Program.POW:
+                    secondOperands[count] = stack[top--];
+                    firstOperands[count] = stack[top--];
+                    break;
+                case Program.NEG:
+                case Program.SIN:
+                case Program.COS:
+                case Program.TAN:
+                case Program.SQRT:
+                case Program.LOG:
+                    firstOperands[count] = stack[top--];
+                    break;
+                case Program.CALL: {
+                    FunctionRegistry.Definition function = program.functions[code[++pc]];
+                    if (function.partials == null) {
+                        throw new IllegalArgumentException("Производная функции " + function.name + " не определена");
+                    }
+                    int[] operands = new int[function.arity];
+                    for (int argument = operands.length - 1; argument >= 0; argument--) {
+                        operands[argument] = stack[top--];
+                    }
+                    functions[count] = function;
+                    callOperands[count] = operands;
+                    firstOperands[count] = operands[0];
+                    maxArity = Math.max(maxArity, operands.length);
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Неизвестный код операции " + opcode);
+            }
+            opcodes[count] = opcode;
+            stack[++top] = count++;
+        }
+        this.opcodes = Arrays.copyOf(opcodes, count);
+        this.firstOperands = Arrays.copyOf(firstOperands, count);
+        this.secondOperands = Arrays.copyOf(secondOperands, count);
+        this.constants = program.constants;
+        this.functions = Arrays.copyOf(functions, count);
+        this.callOperands = Arrays.copyOf(callOperands, count);
+        this.callArguments = new double[maxArity];
+        this.root = stack[top];
+        this.values = new double[count][LANES];
+        this.adjoints = new double[count][LANES];
+        this.nodeValues = new double[count];
+        this.nodeAdjoints = new double[count];
+    }
+
+    /**
+     * Возвращает имена переменных в порядке производных.
+     * @return неизменяемый список имён
+     */
+    public List<String> getVariableNames() {
+        return Collections.unmodifiableList(Arrays.asList(names));
+    }
+
+    /**
+     * Вычисляет значение выражения и производные по выбранным переменным.
+     *
+     * @param values значения переменных в порядке слотов выражения
+     *               (см. {@link CompiledExpression#getVariableNames()})
+     * @param gradient массив для производных в порядке {@link #getVariableNames()}
+     * @return значение выражения
+     * @throws IllegalArgumentException если значений меньше, чем переменных, или массив производных короче
+     * @throws ArithmeticException при математических ошибках (деление на ноль и т.д.)
+     */
+    public double evaluate(double[] values, double[] gradient) {
+        if (values.length < slotCount) {
+            throw new IllegalArgumentException("Переменная не найдена");
+        }
+        if (gradient.length < names.length) {
+            throw new IllegalArgumentException("Массив производных короче количества переменных");
+        }
+        forward(values);
+        backward();
+        Arrays.fill(gradient, 0, names.length, 0);
+        for (int node = 0; node <= root; node++) {
+            if (opcodes[node] == Program.LOAD) {
+                int direction = directions[firstOperands[node]];
+                if (direction >= 0) {
+                    gradient[direction] += nodeAdjoints[node];
+                }
+            }
+        }
+        return nodeValues[root];
+    }
+
+    /**
+     * Вычисляет значение выражения и производные для каждой строки столбцов значений.
+     *
+     * @param columns столбцы значений переменных в порядке слотов выражения
+     * @param out массив значений, его длина задаёт количество строк
+     * @param gradients столбцы производных в порядке {@link #getVariableNames()}
+     * @throws IllegalArgumentException если столбцов меньше, чем переменных или производных,
+     *                                  или столбец короче количества строк
+     * @throws ArithmeticException при математических ошибках в любой строке
+     */
+    public void evaluateBatch(double[][] columns, double[] out, double[][] gradients) {
+        CompiledExpression.checkColumns(columns, slotCount, out.length);
+        if (gradients.length < names.length) {
+            throw new IllegalArgumentException("Массив производных короче количества переменных");
+        }
+        CompiledExpression.checkColumns(gradients, names.length, out.length);
+        for (int start = 0; start < out.length; start += LANES) {
+            int length = Math.min(LANES, out.length - start);
+            forward(columns, start, length);
+            backward(length);
+            for (double[] gradient : gradients) {
+                Arrays.fill(gradient, start, start + length, 0);
+            }
+            collect(gradients, start, length);
+            System.arraycopy(values[root], 0, out, start, length);
+        }
+    }
+
+    private void forward(double[] variables) {
+        double[] values = nodeValues;
+        for (int node = 0; node < opcodes.length; node++) {
+            int operand = firstOperands[node];
+            double result;
+            switch (opcodes[node]) {
+                case Program.CONST: result = constants[operand]; break;
+                case Program.LOAD: result = variables[operand]; break;
+                case Program.NEG: result = -values[operand]; break;
+                case Program.ADD: result = values[operand] + values[secondOperands[node]]; break;
+                case Program.SUB: result = values[operand] - values[secondOperands[node]]; break;
+                case Program.MUL: result = values[operand] * values[secondOperands[node]]; break;
+                case Program.DIV:
+                    double divisor = values[secondOperands[node]];
+                    if (divisor == 0) {
+                        throw new ArithmeticException("Деление на ноль");
+                    }
+                    result = values[operand] / divisor;
+                    break;
+                case Program.POW: result = Math.pow(values[operand], values[secondOperands[node]]); break;
+                case Program.SIN: result = trig.sin(values[operand]); break;
+                case Program.COS: result = trig.cos(values[operand]); break;
+                case Program.TAN: result = trig.tan(values[operand]); break;
+                case Program.SQRT: result = MathOperations.SQRT.calculate(values[operand]); break;
+                case Program.LOG: result = MathOperations.LOG.calculate(values[operand]); break;
+                case Program.CALL: result = functions[node].apply(arguments(node, values, 0), 0); break;
+                default: throw new IllegalStateException("Неизвестный код операции " + opcodes[node]);
+            }
+            values[node] = result;
+        }
+    }
+
+    /**
+     * Вычисляет производные результата по всем узлам для одной строки,
+     * см. {@link #backward(int)}.
+     */
+    private void backward() {
+        double[] values = nodeValues;
+        double[] adjoints = nodeAdjoints;
+        Arrays.fill(adjoints, 0, root, 0);
+        adjoints[root] = 1;
+        for (int node = root; node >= 0; node--) {
+            double a = adjoints[node];
+            int x = firstOperands[node];
+            int y = secondOperands[node];
+            switch (opcodes[node]) {
+                case Program.CONST:
+                case Program.LOAD:
+                    break;
+                case Program.NEG: adjoints[x] -= a; break;
+                case Program.ADD: adjoints[x] += a; adjoints[y] += a; break;
+                case Program.SUB: adjoints[x] += a; adjoints[y] -= a; break;
+                case Program.MUL: adjoints[x] += a * values[y]; adjoints[y] += a * values[x]; break;
+                case Program.DIV:
+                    adjoints[x] += a / values[y];
+                    adjoints[y] -= a * values[node] / values[y];
+                    break;
+                case Program.POW:
+                    if (a != 0) {
+                        adjoints[x] += a * values[y] * Math.pow(values[x], values[y] - 1);
+                        if (opcodes[y] != Program.CONST && values[node] != 0) {
+                            adjoints[y] += a * values[node] * Math.log(values[x]);
+                        }
+                    }
+                    break;
+                case Program.SIN: adjoints[x] += a * trig.cos(values[x]) * DEGREE; break;
+                case Program.COS: adjoints[x] -= a * trig.sin(values[x]) * DEGREE; break;
+                case Program.TAN: adjoints[x] += a * (1 + values[node] * values[node]) * DEGREE; break;
+                case Program.SQRT:
+                    if (a != 0) {
+                        adjoints[x] += a / (2 * values[node]);
+                    }
+                    break;
+                case Program.LOG: adjoints[x] += a / values[x]; break;
+                case Program.CALL:
+                    if (a != 0) {
+                        accumulate(node, a, arguments(node, values, 0), adjoints, 0);
+                    }
+                    break;
+                default: throw new IllegalStateException("Неизвестный код операции " + opcodes[node]);
+            }
+        }
+    }
+
+    private void forward(double[][] columns, int start, int length) {
+        for (int node = 0; node < opcodes.length; node++) {
+            double[] result = values[node];
+            if (opcodes[node] == Program.CONST) {
+                Arrays.fill(result, 0, length, constants[firstOperands[node]]);
+                continue;
+            }
+            if (opcodes[node] == Program.LOAD) {
+                System.arraycopy(columns[firstOperands[node]], start, result, 0, length);
+                continue;
+            }
+            double[] x = values[firstOperands[node]];
+            double[] y = values[secondOperands[node]];
+            switch (opcodes[node]) {
+                case Program.NEG:
+                    for (int i = 0; i < length; i++) result[i] = -x[i];
+                    break;
+                case Program.ADD:
+                    for (int i = 0; i < length; i++) result[i] = x[i] + y[i];
+                    break;
+                case Program.SUB:
+                    for (int i = 0; i < length; i++) result[i] = x[i] - y[i];
+                    break;
+                case Program.MUL:
+                    for (int i = 0; i < length; i++) result[i] = x[i] * y[i];
+                    break;
+                case Program.DIV:
+                    for (int i = 0; i < length; i++) {
+                        if (y[i] == 0) throw new ArithmeticException("Деление на ноль");
+                        result[i] = x[i] / y[i];
+                    }
+                    break;
+                case Program.POW:
+                    for (int i = 0; i < length; i++) result[i] = Math.pow(x[i], y[i]);
+                    break;
+                case Program.SIN:
+                    for (int i = 0; i < length; i++) result[i] = trig.sin(x[i]);
+                    break;
+                case Program.COS:
+                    for (int i = 0; i < length; i++) result[i] = trig.cos(x[i]);
+                    break;
+                case Program.TAN:
+                    for (int i = 0; i < length; i++) result[i] = trig.tan(x[i]);
+                    break;
+                case Program.SQRT:
+                    for (int i = 0; i < length; i++) result[i] = MathOperations.SQRT.calculate(x[i]);
+                    break;
+                case Program.LOG:
+                    for (int i = 0; i < length; i++) result[i] = MathOperations.LOG.calculate(x[i]);
+                    break;
+                case Program.CALL:
+                    for (int i = 0; i < length; i++) {
+                        result[i] = functions[node].apply(arguments(node, null, i), 0);
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Неизвестный код операции " + opcodes[node]);
+            }
+        }
+    }
+
+    /**
+     * Вычисляет производные результата по всем узлам в обратном порядке.
+     * Для корня и степени строки с нулевой производной по узлу пропускаются: иначе бесконечная
+     * производная операции (например, корня в нуле) дала бы NaN вместо нуля.
+     */
+    private void backward(int length) {
+        for (int node = 0; node < root; node++) {
+            Arrays.fill(adjoints[node], 0, length, 0);
+        }
+        Arrays.fill(adjoints[root], 0, length, 1);
+        for (int node = root; node >= 0; node--) {
+            int opcode = opcodes[node];
+            if (opcode == Program.CONST || opcode == Program.LOAD) {
+                continue;
+            }
+            double[] adjoint = adjoints[node];
+            double[] result = values[node];
+            double[] x = values[firstOperands[node]];
+            double[] y = values[secondOperands[node]];
+            double[] dx = adjoints[firstOperands[node]];
+            double[] dy = adjoints[secondOperands[node]];
+            switch (opcode) {
+                case Program.NEG:
+                    for (int i = 0; i < length; i++) dx[i] -= adjoint[i];
+                    break;
+                case Program.ADD:
+                    for (int i = 0; i < length; i++) {
+                        dx[i] += adjoint[i];
+                        dy[i] += adjoint[i];
+                    }
+                    break;
+                case Program.SUB:
+                    for (int i = 0; i < length; i++) {
+                        dx[i] += adjoint[i];
+                        dy[i] -= adjoint[i];
+                    }
+                    break;
+                case Program.MUL:
+                    for (int i = 0; i < length; i++) {
+                        dx[i] += adjoint[i] * y[i];
+                        dy[i] += adjoint[i] * x[i];
+                    }
+                    break;
+                case Program.DIV:
+                    for (int i = 0; i < length; i++) {
+                        dx[i] += adjoint[i] / y[i];
+                        dy[i] -= adjoint[i] * result[i] / y[i];
+                    }
+                    break;
+                case Program.POW:
+                    boolean constantExponent = opcodes[secondOperands[node]] == Program.CONST;
+                    for (int i = 0; i < length; i++) {
+                        double a = adjoint[i];
+                        if (a != 0) {
+                            dx[i] += a * y[i] * Math.pow(x[i], y[i] - 1);
+                            if (!constantExponent && result[i] != 0) {
+                                dy[i] += a * result[i] * Math.log(x[i]);
+                            }
+                        }
+                    }
+                    break;
+                case Program.SIN:
+                    for (int i = 0; i < length; i++) dx[i] += adjoint[i] * trig.cos(x[i]) * DEGREE;
+                    break;
+                case Program.COS:
+                    for (int i = 0; i < length; i++) dx[i] -= adjoint[i] * trig.sin(x[i]) * DEGREE;
+                    break;
+                case Program.TAN:
+                    for (int i = 0; i < length; i++) dx[i] += adjoint[i] * (1 + result[i] * result[i]) * DEGREE;
+                    break;
+                case Program.SQRT:
+                    for (int i = 0; i < length; i++) {
+                        if (adjoint[i] != 0) dx[i] += adjoint[i] / (2 * result[i]);
+                    }
+                    break;
+                case Program.LOG:
+                    for (int i = 0; i < length; i++) dx[i] += adjoint[i] / x[i];
+                    break;
+                case Program.CALL:
+                    for (int i = 0; i < length; i++) {
+                        if (adjoint[i] != 0) {
+                            accumulate(node, adjoint[i], arguments(node, null, i), null, i);
+                        }
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Неизвестный код операции " + opcode);
+            }
+        }
+    }
+
+    /**
+     * Собирает аргументы вызова функции в узле.
+     *
+     * @param nodeValues значения узлов одной строки или null для строки {@code lane} пакета
+     * @return массив аргументов, действительный до следующего вызова
+     */
+    private double[] arguments(int node, double[] nodeValues, int lane) {
+        int[] operands = callOperands[node];
+        for (int argument = 0; argument < operands.length; argument++) {
+            int operand = operands[argument];
+            callArguments[argument] = nodeValues != null ? nodeValues[operand] : values[operand][lane];
+        }
+        return callArguments;
+    }
+
+    /**
+     * Добавляет к производным аргументов вызова функции в узле их вклад.
+     *
+     * @param adjoint производная результата по узлу
+     * @param arguments аргументы вызова
+     * @param nodeAdjoints производные узлов одной строки или null для строки {@code lane} пакета
+     */
+    private void accumulate(int node, double adjoint, double[] arguments, double[] nodeAdjoints, int lane) {
+        int[] operands = callOperands[node];
+        ExpressionFunction[] partials = functions[node].partials;
+        for (int argument = 0; argument < operands.length; argument++) {
+            double partial = adjoint * partials[argument].apply(arguments, 0);
+            if (nodeAdjoints != null) {
+                nodeAdjoints[operands[argument]] += partial;
+            } else {
+                adjoints[operands[argument]][lane] += partial;
+            }
+        }
+    }
+
+    private void collect(double[][] gradients, int start, int length) {
+        for (int node = 0; node <= root; node++) {
+            if (opcodes[node] == Program.LOAD) {
+                int direction = directions[firstOperands[node]];
+                if (direction >= 0) {
+                    double[] gradient = gradients[direction];
+                    double[] adjoint = adjoints[node];
+                    for (int i = 0; i < length; i++) {
+                        gradient[start + i] += adjoint[i];
+                    }
+                }
+            }
+        }
+    }
+}
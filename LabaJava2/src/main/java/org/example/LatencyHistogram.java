@@ -0,0 +1,135 @@
+package org.example;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Потокобезопасная гистограмма длительностей в наносекундах с логарифмически-линейными
+ * интервалами: каждый отрезок от 2^k до 2^(k+1) разбит на {@link #SUB_BUCKETS} равных интервалов,
+ * поэтому относительная погрешность процентилей не превышает 1/{@link #SUB_BUCKETS}
+ * при постоянном размере гистограммы. Значения больше 2^{@link #MAX_MAGNITUDE} нс
+ * попадают в последний интервал.
+ * Запись не создаёт объектов; чтение не блокирует запись и может не учитывать
+ * одновременно записываемые значения.
+ */
+final class LatencyHistogram {
+
+    /** Количество двоичных разрядов номера интервала внутри отрезка */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /** Количество интервалов в отрезке от 2^k до 2^(k+1) */
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** Показатель степени двойки наибольшего различимого значения (около 18 минут) */
+    private static final int MAX_MAGNITUDE = 40;
+
+    private static final int BUCKETS = index((1L << (MAX_MAGNITUDE + 1)) - 1) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Записывает длительность.
+     * @param nanos длительность в наносекундах; отрицательные значения считаются нулём
+     */
+    void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(index(Math.min(value, (1L << (MAX_MAGNITUDE + 1)) - 1)));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Возвращает количество записанных значений.
+     * @return количество значений
+     */
+    long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Возвращает среднее значение.
+     * @return среднее в наносекундах или 0, если значений нет
+     */
+    double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Возвращает наибольшее записанное значение.
+     * @return наибольшее значение в наносекундах
+     */
+    long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Возвращает значение, не меньше которого не более заданной доли записанных значений.
+     * Результат - верхняя граница интервала, в который попал процентиль.
+     *
+     * @param percentile процентиль от 0 до 100
+     * @return значение в наносекундах или 0, если значений нет
+     */
+    long getPercentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * Math.min(percentile, 100) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Обнуляет гистограмму.
+     */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    /**
+     * Возвращает номер интервала значения. Значения меньше {@link #SUB_BUCKETS}
+     * имеют собственные интервалы, остальные - по {@link #SUB_BUCKETS} на степень двойки.
+     */
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Возвращает наибольшее значение, попадающее в интервал.
+     */
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long lower = (long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1))) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -1,7 +1,7 @@
 package org.example;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Stack;
 
 /**
  * Класс для вычисления математических выражений.
@@ -9,33 +9,11 @@ import java.util.Stack;
  */
 public class MathExpression {
 
-    /**
-     * Проверяет, является ли символ математическим оператором.
-     *
-     * @param c проверяемый символ
-     * @return true если символ является оператором (+, -, *, /, ^), иначе false
-     */
-    private static boolean isOperator(char c) {
-        return c == '+' || c == '-' || c == '*' || c == '/' || c == '^';
-    }
+    /** Кэш выражений, используемый {@link #calculate(String, Map)} */
+    private static final ExpressionCache CACHE = new ExpressionCache(4096, ExpressionCache.Eviction.TINY_LFU);
 
-    /**
-     * Определяет приоритет оператора для правильного вычисления выражений.
-     *
-     * @param operation символ оператора
-     *@return числовой приоритет (1 для +/-, 2 для * и /, 3 для ^ )
-    */
-
-    private static int priorityOfOperator(char operation) {
-        switch (operation) {
-            case '+':
-            case '-': return 1;
-            case '*':
-            case '/': return 2;
-            case '^': return 3;
-            default: return 0;
-        }
-    }
+    /** Способ вычисления тригонометрических функций для {@link #compile(String)} */
+    private static volatile TrigPrecision defaultTrigPrecision = TrigPrecision.STRICT;
 
     /**
      * Выполняет математическую операцию над двумя числами.
@@ -47,7 +25,7 @@ public class MathExpression {
      * @throws ArithmeticException при делении на ноль
      * @throws IllegalArgumentException при неизвестном операторе
      */
-    private static double operationResult(char operation, double secondArg, double firstArg) {
+    static double operationResult(char operation, double secondArg, double firstArg) {
         switch (operation) {
             case '+': return firstArg + secondArg;
             case '-': return firstArg - secondArg;
@@ -60,33 +38,10 @@ public class MathExpression {
         }
     }
 
-    /**
-     * Проверяет корректность математического выражения.
-     *
-     * @param input массив символов выражения
-     * @return true если выражение синтаксически корректно, иначе false
-     */
-    private static boolean validate(char[] input) {
-        Stack<Character> stack = new Stack<>();
-
-        for (char symbol : input) {
-            if (symbol == ' ') continue;
-            if (symbol == '(') {
-                stack.push(symbol);
-            } else if (symbol == ')') {
-                if (stack.isEmpty() || stack.pop() != '(') {
-                    return false;
-                }
-            } else if (!Character.isDigit(symbol) && !isOperator(symbol) &&
-                    symbol != '.' && !Character.isLetter(symbol)) {
-                return false;
-            }
-        }
-        return stack.isEmpty();
-    }
-
     /**
      * Вычисляет значение математического выражения.
+     * Разобранные выражения сохраняются в общем кэше (см. {@link #getCache()}),
+     * поэтому повторное вычисление той же строки не разбирает её заново.
      *
      * @param expression строка с математическим выражением
      * @param variables карта значений переменных
@@ -95,103 +50,156 @@ public class MathExpression {
      * @throws ArithmeticException при математических ошибках (деление на ноль и т.д.)
      */
     public static double calculate(String expression, Map<String, Double> variables) {
-        char[] tokens = expression.toCharArray();
+        return CACHE.get(expression).evaluate(variables);
+    }
+
+    /**
+     * Возвращает общий кэш выражений, используемый {@link #calculate(String, Map)}.
+     * @return кэш выражений
+     */
+    public static ExpressionCache getCache() {
+        return CACHE;
+    }
+
+    /**
+     * Возвращает способ вычисления тригонометрических функций,
+     * используемый {@link #compile(String)} и {@link #calculate(String, Map)}.
+     * @return способ вычисления тригонометрических функций
+     */
+    public static TrigPrecision getDefaultTrigPrecision() {
+        return defaultTrigPrecision;
+    }
 
-        if (!validate(tokens)) {
-            throw new IllegalArgumentException("Некорректное выражение");
+    /**
+     * Задаёт способ вычисления тригонометрических функций для выражений,
+     * компилируемых после вызова. Уже скомпилированные выражения не меняются.
+     *
+     * @param trigPrecision способ вычисления тригонометрических функций
+     * @throws IllegalArgumentException если значение равно null
+     */
+    public static void setDefaultTrigPrecision(TrigPrecision trigPrecision) {
+        if (trigPrecision == null) {
+            throw new IllegalArgumentException("Способ вычисления тригонометрических функций не задан");
         }
-        Stack<Double> numbers = new Stack<>();
-        Stack<Character> operations = new Stack<>();
-
-        for (int i = 0; i < tokens.length; i++) {
-            if (tokens[i] == ' ') continue;
-
-            if (Character.isDigit(tokens[i])) {
-                StringBuilder numStr = new StringBuilder();
-                while (i < tokens.length && (Character.isDigit(tokens[i]) || tokens[i] == '.')) {
-                    numStr.append(tokens[i++]);
-                }
-                numbers.push(Double.parseDouble(numStr.toString()));
-                i--;
-            }
-            else if (Character.isLetter(tokens[i])) {
-                StringBuilder name = new StringBuilder();
-                boolean isFunction = false;
-
-                while (i < tokens.length && (Character.isLetter(tokens[i]) || tokens[i] == '(')) {
-                    if (tokens[i] == '(') {
-                        isFunction = true;
-                        i++;
-                        break;
-                    }
-                    name.append(tokens[i++]);
-                }
-
-                if (isFunction) {
-                    String func = name.toString();
-                    StringBuilder argStr = new StringBuilder();
-
-                    while (i < tokens.length && tokens[i] != ')') {
-                        argStr.append(tokens[i++]);
-                    }
-
-                    String argument = argStr.toString();
-                    MathOperations function = MathOperations.getOperationByUserInput(func);
-
-                    try {
-                        double val = Double.parseDouble(argument);
-                        numbers.push(function.calculate(val));
-                    } catch (NumberFormatException e) {
-                        if (!variables.containsKey(argument)) {
-                            throw new IllegalArgumentException("Переменная не найдена");
-                        }
-                        numbers.push(function.calculate(variables.get(argument)));
-                    }
-                } else {
-                    String var = name.toString();
-                    if (!variables.containsKey(var)) {
-                        throw new IllegalArgumentException("Переменная не найдена");
-                    }
-                    numbers.push(variables.get(var));
-                    i--;
-                }
-            }
-            else if (tokens[i] == '(') {
-                operations.push(tokens[i]);
-            }
-            else if (tokens[i] == ')') {
-                while (operations.peek() != '(') {
-                    numbers.push(operationResult(operations.pop(), numbers.pop(), numbers.pop()));
-                }
-                operations.pop();
-            }
-            else if (isOperator(tokens[i])) {
-                while (!operations.empty() && priorityOfOperator(tokens[i]) <= priorityOfOperator(operations.peek())) {
-                    numbers.push(operationResult(operations.pop(), numbers.pop(), numbers.pop()));
-                }
-                operations.push(tokens[i]);
+        defaultTrigPrecision = trigPrecision;
+    }
+
+    /**
+     * Разбирает математическое выражение для последующего многократного вычисления
+     * с текущим способом вычисления тригонометрических функций.
+     *
+     * @param expression строка с математическим выражением
+     * @return скомпилированное выражение
+     * @throws ExpressionParseException при некорректном выражении или неизвестной функции
+     * @see #compile(String, TrigPrecision)
+     */
+    public static CompiledExpression compile(String expression) {
+        return compile(expression, defaultTrigPrecision);
+    }
+
+    /**
+     * Разбирает математическое выражение для последующего многократного вычисления.
+     * Переменные заменяются номерами слотов в порядке их первого появления,
+     * а дерево выражения упрощается {@link ExpressionOptimizer}.
+     * Об ошибке в выражении сообщает {@link ExpressionParseException} со смещением
+     * символа, на котором она обнаружена.
+     *
+     * @param expression строка с математическим выражением
+     * @param trigPrecision способ вычисления тригонометрических функций
+     * @return скомпилированное выражение
+     * @throws IllegalArgumentException при некорректном выражении, неизвестной функции
+     * или незаданном способе вычисления тригонометрических функций
+     */
+    public static CompiledExpression compile(String expression, TrigPrecision trigPrecision) {
+        checkTrigPrecision(trigPrecision);
+        if (ExpressionMetrics.enabled) {
+            return ExpressionMetrics.measureParse(expression, () -> build(expression, trigPrecision));
+        }
+        return build(expression, trigPrecision);
+    }
+
+    private static CompiledExpression build(String expression, TrigPrecision trigPrecision) {
+        Map<String, Integer> slots = new LinkedHashMap<>();
+        ExpressionNode root = parse(expression, slots);
+        return new CompiledExpression(expression, ExpressionOptimizer.optimize(root, trigPrecision),
+                slots.keySet().toArray(new String[0]), trigPrecision);
+    }
+
+    /**
+     * Разбирает набор связанных выражений для вычисления всех результатов за один проход.
+     * Используется текущий способ вычисления тригонометрических функций.
+     *
+     * @param formulas выражения по именам результатов в порядке результатов
+     * @return скомпилированный набор выражений
+     * @throws IllegalArgumentException при пустом наборе, некорректном выражении или неизвестной функции
+     * @see #compileSet(Map, TrigPrecision)
+     */
+    public static ExpressionSet compileSet(Map<String, String> formulas) {
+        return compileSet(formulas, defaultTrigPrecision);
+    }
+
+    /**
+     * Разбирает набор связанных выражений для вычисления всех результатов за один проход.
+     * Переменные всех выражений получают общие слоты, а одинаковые подвыражения
+     * разных формул после {@link ExpressionOptimizer} представлены одним узлом
+     * и вычисляются один раз для всего набора.
+     *
+     * @param formulas выражения по именам результатов в порядке результатов
+     * @param trigPrecision способ вычисления тригонометрических функций
+     * @return скомпилированный набор выражений
+     * @throws IllegalArgumentException при пустом наборе, некорректном выражении, неизвестной функции
+     * или незаданном способе вычисления тригонометрических функций
+     */
+    public static ExpressionSet compileSet(Map<String, String> formulas, TrigPrecision trigPrecision) {
+        checkTrigPrecision(trigPrecision);
+        if (formulas.isEmpty()) {
+            throw new IllegalArgumentException("Набор выражений пуст");
+        }
+        Map<String, Integer> slots = new LinkedHashMap<>();
+        ExpressionOptimizer optimizer = new ExpressionOptimizer(trigPrecision);
+        String[] names = new String[formulas.size()];
+        String[] sources = new String[names.length];
+        ExpressionNode[] roots = new ExpressionNode[names.length];
+        int output = 0;
+        for (Map.Entry<String, String> formula : formulas.entrySet()) {
+            names[output] = formula.getKey();
+            sources[output] = formula.getValue();
+            try {
+                roots[output++] = optimizer.rewrite(parse(formula.getValue(), slots));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Выражение " + formula.getKey() + ": " + e.getMessage(), e);
             }
         }
+        return new ExpressionSet(names, sources, roots, slots.keySet().toArray(new String[0]), trigPrecision);
+    }
 
-        while (!operations.empty()) {
-            numbers.push(operationResult(operations.pop(), numbers.pop(), numbers.pop()));
+    private static void checkTrigPrecision(TrigPrecision trigPrecision) {
+        if (trigPrecision == null) {
+            throw new IllegalArgumentException("Способ вычисления тригонометрических функций не задан");
         }
+    }
 
-        return numbers.pop();
+    /**
+     * Разбирает выражение в дерево.
+     *
+     * @param expression строка с математическим выражением
+     * @param slots номера слотов переменных; новые переменные добавляются в конец
+     * @return корень дерева выражения
+     * @throws ExpressionParseException при некорректном выражении или неизвестной функции
+     * @see ExpressionParser
+     */
+    static ExpressionNode parse(CharSequence expression, Map<String, Integer> slots) {
+        return new ExpressionParser(expression, slots).parse();
     }
 
     /**
      * Проверяет, является ли строка именем поддерживаемой функции.
      *
      * @param name проверяемая строка
-     * @return true если имя соответствует поддерживаемой функции, иначе false
+     * @return true если имя соответствует встроенной или зарегистрированной функции, иначе false
+     * @see FunctionRegistry
      */
     public static boolean isFunction(String name) {
-        try {
-            MathOperations.getOperationByUserInput(name);
-            return true;
-        } catch (IllegalArgumentException e) {
-            return false;
-        }
+        return FunctionRegistry.isFunction(name);
     }
 }
\ No newline at end of file
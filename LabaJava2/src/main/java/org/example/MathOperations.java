@@ -45,6 +45,19 @@ enum MathOperations {
      */
     public abstract double calculate(double x);
 
+    /**
+     * Вычисляет результат математической операции для значения float.
+     * Операция вычисляется в double и округляется до float: результат отличается от точного
+     * не больше чем на половину единицы последнего разряда float и погрешность double,
+     * которая на 29 двоичных разрядов меньше. Для квадратного корня результат округлён корректно.
+     * @param x входное значение
+     * @return результат вычисления
+     * @throws ArithmeticException при недопустимых входных значениях
+     */
+    public float calculate(float x) {
+        return (float) calculate((double) x);
+    }
+
     private final String operation;
 
     /**
@@ -64,17 +77,17 @@ enum MathOperations {
     }
 
     /**
-     * Возвращает операцию по её имени.
+     * Возвращает операцию по её имени. Имя ищется в хэш-таблице {@link FunctionRegistry}.
      * @param operation имя операции
      * @return объект операции
      * @throws IllegalArgumentException если операция не найдена
      */
     public static MathOperations getOperationByUserInput(String operation) {
-        for (MathOperations mathOp : MathOperations.values()) {
-            if (mathOp.operation.equals(operation)) {
-                return mathOp;
-            }
+        FunctionRegistry.Definition definition = FunctionRegistry.find(operation, 0, operation.length(),
+                operation.hashCode());
+        if (definition == null || definition.operation == null) {
+            throw new IllegalArgumentException("Математическая операция не найдена");
         }
-        throw new IllegalArgumentException("Математическая операция не найдена");
+        return definition.operation;
     }
-}
\ No newline at end of file
+}
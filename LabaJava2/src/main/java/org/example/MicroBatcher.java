@@ -0,0 +1,203 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Объединение одновременных запросов к одному выражению в пакеты.
+ * Поток запроса ставит строки в очередь и пытается захватить блокировку;
+ * захвативший поток забирает из очереди строки всех ожидающих запросов,
+ * вычисляет их одним вызовом пакетного вычисления и раздаёт результаты.
+ * Остальные потоки ждут сигнала, который подаётся после каждого пакета и после
+ * освобождения блокировки: получив его, поток либо находит свой запрос вычисленным,
+ * либо снова пытается захватить блокировку, поэтому очередь не остаётся без обработчика.
+ */
+final class MicroBatcher {
+
+    /** Наибольшее количество строк в одном пакете, если запрос не больше */
+    static final int MAX_BATCH_ROWS = 4 * BatchKernel.CHUNK;
+
+    /** Наибольшее количество пакетов подряд, вычисляемых одним потоком */
+    private static final int MAX_ROUNDS = 4;
+
+    private final CompiledExpression expression;
+    private final int width;
+    private final ConcurrentLinkedQueue<Request> queue = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    /** Блокировка и условие ожидания сигналов о вычисленных пакетах и освобождении {@link #lock} */
+    private final ReentrantLock signal = new ReentrantLock();
+    private final Condition progress = signal.newCondition();
+    /** Номер сигнала: ожидающий поток спит, только пока номер не изменился */
+    private volatile long generation;
+    private final double[][] columns;
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+
+    /**
+     * Конструктор объединителя.
+     * @param expression вычисляемое выражение
+     */
+    MicroBatcher(CompiledExpression expression) {
+        this.expression = expression;
+        this.width = expression.getVariableNames().size();
+        this.columns = new double[width][MAX_BATCH_ROWS];
+    }
+
+    /**
+     * Вычисляет выражение для строк запроса вместе с одновременными запросами других потоков.
+     *
+     * @param values значения переменных построчно, по {@code width} значений в порядке слотов
+     * @param count количество строк
+     * @return вычисленные строки с отметками об ошибках
+     * @throws InterruptedException если ожидание результата прервано
+     */
+    Request evaluate(double[] values, int count) throws InterruptedException {
+        Request request = new Request(values, count);
+        queue.add(request);
+        while (request.done.getCount() != 0) {
+            // номер читается до попытки захвата: освобождение блокировки после неудачной
+            // попытки изменит его, и сигнал не будет пропущен
+            long observed = generation;
+            if (lock.tryLock()) {
+                try {
+                    combine();
+                } finally {
+                    lock.unlock();
+                    advance();
+                }
+                continue;
+            }
+            signal.lockInterruptibly();
+            try {
+                while (generation == observed && request.done.getCount() != 0) {
+                    progress.await();
+                }
+            } finally {
+                signal.unlock();
+            }
+        }
+        return request;
+    }
+
+    /**
+     * Сообщает ожидающим потокам о вычисленном пакете или освобождении блокировки.
+     */
+    private void advance() {
+        signal.lock();
+        try {
+            generation++;
+            progress.signalAll();
+        } finally {
+            signal.unlock();
+        }
+    }
+
+    /**
+     * Возвращает вычисляемое выражение.
+     * @return скомпилированное выражение
+     */
+    CompiledExpression getExpression() {
+        return expression;
+    }
+
+    /**
+     * Возвращает количество значений в строке запроса.
+     * @return количество переменных выражения
+     */
+    int getWidth() {
+        return width;
+    }
+
+    /**
+     * Возвращает количество вычисленных пакетов.
+     * @return количество пакетов
+     */
+    long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * Возвращает количество вычисленных строк.
+     * @return количество строк
+     */
+    long getRowCount() {
+        return rows.sum();
+    }
+
+    private void combine() {
+        List<Request> batch = new ArrayList<>();
+        for (int round = 0; round < MAX_ROUNDS && !queue.isEmpty(); round++) {
+            int total = 0;
+            Request next;
+            while ((next = queue.peek()) != null
+                    && (batch.isEmpty() || total + next.count <= MAX_BATCH_ROWS)) {
+                batch.add(queue.poll());
+                total += next.count;
+            }
+            evaluateBatch(batch, total);
+            batch.clear();
+            advance();
+        }
+    }
+
+    private void evaluateBatch(List<Request> batch, int total) {
+        double[][] target = total <= MAX_BATCH_ROWS ? columns : new double[width][total];
+        int row = 0;
+        for (Request request : batch) {
+            for (int i = 0; i < request.count; i++, row++) {
+                for (int slot = 0; slot < width; slot++) {
+                    target[slot][row] = request.values[i * width + slot];
+                }
+            }
+        }
+        double[] out = new double[total];
+        int[] failed;
+        try {
+            failed = expression.evaluateBatch(target, out, RowErrorPolicy.WRITE_NAN).getFailedRows();
+        } catch (RuntimeException e) {
+            for (Request request : batch) {
+                request.error = e;
+                request.done.countDown();
+            }
+            return;
+        }
+        batches.increment();
+        rows.add(total);
+
+        int start = 0;
+        int nextFailure = 0;
+        for (Request request : batch) {
+            System.arraycopy(out, start, request.results, 0, request.count);
+            while (nextFailure < failed.length && failed[nextFailure] < start + request.count) {
+                request.failed[failed[nextFailure++] - start] = true;
+            }
+            start += request.count;
+            request.done.countDown();
+        }
+    }
+
+    /**
+     * Строки одного запроса и их результаты.
+     */
+    static final class Request {
+        final double[] values;
+        final int count;
+        final double[] results;
+        final boolean[] failed;
+        final CountDownLatch done = new CountDownLatch(1);
+        /** Непредвиденная ошибка вычисления пакета */
+        RuntimeException error;
+
+        Request(double[] values, int count) {
+            this.values = values;
+            this.count = count;
+            this.results = new double[count];
+            this.failed = new boolean[count];
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package org.example;
+
+/**
+ * Вычислитель набора выражений по значениям переменных в порядке слотов.
+ * Реализуется классами, которые {@link BytecodeCompiler} генерирует
+ * для часто вычисляемых программ с несколькими результатами.
+ */
+interface OutputEvaluator {
+
+    /**
+     * Вычисляет все выражения набора.
+     *
+     * @param slots значения переменных по номерам слотов
+     * @param out массив для результатов по номерам результатов
+     * @throws ArithmeticException при математических ошибках
+     */
+    void evaluate(double[] slots, double[] out);
+}
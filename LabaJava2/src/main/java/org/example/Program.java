@@ -0,0 +1,492 @@
+package org.example;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Постфиксная программа вычисления выражения.
+ * Коды операций хранятся в массиве {@code int[]}, константы разобраны заранее,
+ * а стек операндов - массив {@code double[]} заранее известной глубины,
+ * поэтому вычисление не создаёт объектов. Общие подвыражения вычисляются один раз
+ * и сохраняются во временных ячейках, расположенных в массиве стека сразу за операндами.
+ * Программа набора выражений ({@link ExpressionSet}) снимает результат каждого выражения
+ * операцией {@link #OUTPUT} в ячейки результатов, следующие за временными.
+ * После {@link BytecodeCompiler#THRESHOLD} вычислений программа компилируется
+ * в класс JVM, и дальнейшие вычисления выполняет сгенерированный код.
+ */
+final class Program {
+
+    /** Загрузить константу, операнд - индекс в таблице констант */
+    static final int CONST = 0;
+    /** Загрузить переменную, операнд - номер слота */
+    static final int LOAD = 1;
+    static final int NEG = 2;
+    static final int ADD = 3;
+    static final int SUB = 4;
+    static final int MUL = 5;
+    static final int DIV = 6;
+    static final int POW = 7;
+    static final int SIN = 8;
+    static final int COS = 9;
+    static final int TAN = 10;
+    static final int SQRT = 11;
+    static final int LOG = 12;
+    /** Сохранить вершину стека во временную ячейку, не снимая её; операнд - номер ячейки */
+    static final int STORE = 13;
+    /** Загрузить значение временной ячейки, операнд - номер ячейки */
+    static final int RECALL = 14;
+    /** Снять вершину стека в ячейку результата, операнд - номер результата */
+    static final int OUTPUT = 15;
+    /**
+     * Вызвать функцию из {@link FunctionRegistry}: аргументы снимаются со стека, результат кладётся на стек;
+     * операнд - индекс в таблице функций программы
+     */
+    static final int CALL = 16;
+
+    /** Стек операндов текущего потока, общий для всех программ */
+    private static final ThreadLocal<Stack> STACKS = ThreadLocal.withInitial(Stack::new);
+
+    final int[] code;
+    final double[] constants;
+    final int maxDepth;
+    final int temps;
+    /** Количество ячеек результатов; 0, если результат - вершина стека */
+    final int outputs;
+    /** Способ вычисления тригонометрических функций */
+    final TrigPrecision trigPrecision;
+    /** Функции, вызываемые операцией {@link #CALL} */
+    final FunctionRegistry.Definition[] functions;
+    /** Все вызываемые функции допускают вычисление блоков строк в нескольких потоках */
+    final boolean vectorizable;
+
+    /** Сгенерированный вычислитель, если программа уже скомпилирована */
+    private volatile ScalarEvaluator compiled;
+    /** Сгенерированный вычислитель программы с несколькими результатами */
+    private volatile OutputEvaluator compiledOutputs;
+    /** Приблизительное количество вычислений интерпретатором, обновляется без синхронизации */
+    private int executions;
+    private boolean compilationAttempted;
+
+    /**
+     * Конструктор программы.
+     *
+     * @param code коды операций вместе с операндами
+     * @param constants таблица констант
+     * @param maxDepth максимальная глубина стека операндов
+     * @param temps количество временных ячеек для общих подвыражений
+     * @param outputs количество ячеек результатов или 0, если результат - вершина стека
+     * @param trigPrecision способ вычисления тригонометрических функций
+     * @param functions функции, вызываемые операцией {@link #CALL}
+     */
+    Program(int[] code, double[] constants, int maxDepth, int temps, int outputs, TrigPrecision trigPrecision,
+            FunctionRegistry.Definition[] functions) {
+        this.code = code;
+        this.constants = constants;
+        this.maxDepth = maxDepth;
+        this.temps = temps;
+        this.outputs = outputs;
+        this.trigPrecision = trigPrecision;
+        this.functions = functions;
+        boolean vectorizable = true;
+        for (FunctionRegistry.Definition function : functions) {
+            vectorizable &= function.vectorizable;
+        }
+        this.vectorizable = vectorizable;
+    }
+
+    /**
+     * Возвращает размер массива стека, необходимый для выполнения программы.
+     * @return глубина стека вместе с временными ячейками и ячейками результатов
+     */
+    int frameSize() {
+        return maxDepth + temps + outputs;
+    }
+
+    /**
+     * Выполняет программу на стеке текущего потока.
+     *
+     * @param slots значения переменных по номерам слотов
+     * @return результат вычисления
+     * @throws ArithmeticException при математических ошибках
+     */
+    double execute(double[] slots) {
+        ScalarEvaluator evaluator = compiled;
+        if (evaluator != null) {
+            return evaluator.evaluate(slots);
+        }
+        countExecution();
+        Stack stack = STACKS.get();
+        int base = stack.acquire(frameSize());
+        try {
+            return interpret(slots, stack.data, base);
+        } finally {
+            stack.release(base);
+        }
+    }
+
+    /**
+     * Выполняет программу на заданном стеке.
+     *
+     * @param slots значения переменных по номерам слотов
+     * @param stack массив для стека операндов размером не меньше {@link #frameSize()}
+     * @param base первый используемый элемент массива стека
+     * @return результат вычисления
+     * @throws ArithmeticException при математических ошибках
+     */
+    double execute(double[] slots, double[] stack, int base) {
+        ScalarEvaluator evaluator = compiled;
+        if (evaluator != null) {
+            return evaluator.evaluate(slots);
+        }
+        countExecution();
+        return interpret(slots, stack, base);
+    }
+
+    /**
+     * Выполняет программу с несколькими результатами на стеке текущего потока.
+     *
+     * @param slots значения переменных по номерам слотов
+     * @param out массив для результатов длиной не меньше {@link #outputs}
+     * @throws ArithmeticException при математических ошибках
+     */
+    void executeAll(double[] slots, double[] out) {
+        OutputEvaluator evaluator = compiledOutputs;
+        if (evaluator != null) {
+            evaluator.evaluate(slots, out);
+            return;
+        }
+        countExecution();
+        Stack stack = STACKS.get();
+        int base = stack.acquire(frameSize());
+        try {
+            interpret(slots, stack.data, base);
+            System.arraycopy(stack.data, base + maxDepth + temps, out, 0, outputs);
+        } finally {
+            stack.release(base);
+        }
+    }
+
+    /**
+     * Компилирует программу в класс JVM, не дожидаясь порога вычислений.
+     * @return true если программа скомпилирована
+     */
+    synchronized boolean compileBytecode() {
+        if (!compilationAttempted) {
+            compilationAttempted = true;
+            if (outputs > 0) {
+                compiledOutputs = BytecodeCompiler.compileOutputs(this);
+            } else {
+                compiled = BytecodeCompiler.compile(this);
+            }
+        }
+        return isCompiled();
+    }
+
+    /**
+     * Проверяет, выполняется ли программа сгенерированным кодом.
+     * @return true если программа скомпилирована
+     */
+    boolean isCompiled() {
+        return compiled != null || compiledOutputs != null;
+    }
+
+    /**
+     * Засчитывает программе порог вычислений, чтобы она скомпилировалась при следующем вычислении.
+     * Используется для программ, которые были скомпилированы до сохранения в {@link ExpressionSnapshot}.
+     */
+    void markHot() {
+        executions = BytecodeCompiler.THRESHOLD;
+    }
+
+    private void countExecution() {
+        if (executions < BytecodeCompiler.THRESHOLD) {
+            executions++;
+        } else if (!compilationAttempted && BytecodeCompiler.THRESHOLD >= 0) {
+            compileBytecode();
+        }
+    }
+
+    /**
+     * Выполняет программу интерпретатором.
+     *
+     * @param slots значения переменных по номерам слотов
+     * @param stack массив для стека операндов
+     * @param base первый используемый элемент массива стека
+     * @return результат вычисления; для программы с несколькими результатами - NaN
+     * @throws ArithmeticException при математических ошибках
+     */
+    double interpret(double[] slots, double[] stack, int base) {
+        int[] code = this.code;
+        int top = base - 1;
+        int temps = base + maxDepth;
+        int results = temps + this.temps;
+        TrigPrecision trig = trigPrecision;
+
+        for (int pc = 0; pc < code.length; pc++) {
+            switch (code[pc]) {
+                case CONST: stack[++top] = constants[code[++pc]]; break;
+                case LOAD: stack[++top] = slots[code[++pc]]; break;
+                case NEG: stack[top] = -stack[top]; break;
+                case ADD: top--; stack[top] = stack[top] + stack[top + 1]; break;
+                case SUB: top--; stack[top] = stack[top] - stack[top + 1]; break;
+                case MUL: top--; stack[top] = stack[top] * stack[top + 1]; break;
+                case DIV:
+                    top--;
+                    if (stack[top + 1] == 0) throw new ArithmeticException("Деление на ноль");
+                    stack[top] = stack[top] / stack[top + 1];
+                    break;
+                case POW: top--; stack[top] = Math.pow(stack[top], stack[top + 1]); break;
+                case SIN: stack[top] = trig.sin(stack[top]); break;
+                case COS: stack[top] = trig.cos(stack[top]); break;
+                case TAN: stack[top] = trig.tan(stack[top]); break;
+                case SQRT: stack[top] = MathOperations.SQRT.calculate(stack[top]); break;
+                case LOG: stack[top] = MathOperations.LOG.calculate(stack[top]); break;
+                case STORE: stack[temps + code[++pc]] = stack[top]; break;
+                case RECALL: stack[++top] = stack[temps + code[++pc]]; break;
+                case OUTPUT: stack[results + code[++pc]] = stack[top--]; break;
+                case CALL: {
+                    FunctionRegistry.Definition function = functions[code[++pc]];
+                    top -= function.arity - 1;
+                    stack[top] = function.apply(stack, top);
+                    break;
+                }
+                default: throw new IllegalStateException("Неизвестный код операции " + code[pc]);
+            }
+        }
+        return top < base ? Double.NaN : stack[top];
+    }
+
+    /**
+     * Возвращает код бинарной операции.
+     *
+     * @param operation оператор (+, -, *, /, ^)
+     * @return код операции
+     * @throws IllegalArgumentException при неизвестном операторе
+     */
+    static int binaryOpcode(char operation) {
+        switch (operation) {
+            case '+': return ADD;
+            case '-': return SUB;
+            case '*': return MUL;
+            case '/': return DIV;
+            case '^': return POW;
+            default: throw new IllegalArgumentException("Неизвестный оператор");
+        }
+    }
+
+    /**
+     * Возвращает код операции для функции.
+     *
+     * @param function функция
+     * @return код операции
+     */
+    static int functionOpcode(MathOperations function) {
+        switch (function) {
+            case SIN: return SIN;
+            case COS: return COS;
+            case TAN: return TAN;
+            case SQRT: return SQRT;
+            case LOG: return LOG;
+            default: throw new IllegalArgumentException("Математическая операция не найдена");
+        }
+    }
+
+    /**
+     * Построитель программы: принимает операции в постфиксном порядке
+     * и отслеживает глубину стека. Узлы дерева, на которые ссылаются несколько
+     * родителей, вычисляются один раз и затем загружаются из временной ячейки.
+     */
+    static final class Builder {
+        private int[] code = new int[16];
+        private int length;
+        private double[] constants = new double[4];
+        private int constantCount;
+        private int depth;
+        private int maxDepth;
+        private int tempCount;
+        private int outputCount;
+        private final List<FunctionRegistry.Definition> functions = new ArrayList<>();
+        private final Map<ExpressionNode, Integer> uses = new IdentityHashMap<>();
+        private final Map<ExpressionNode, Integer> temps = new IdentityHashMap<>();
+
+        /**
+         * Добавляет операции вычисления выражения с корнем в заданном узле.
+         * @param root корень дерева выражения
+         */
+        void emitRoot(ExpressionNode root) {
+            countUses(root);
+            emit(root);
+        }
+
+        /**
+         * Добавляет операции вычисления нескольких выражений, каждое из которых
+         * снимается в свою ячейку результата. Узлы, общие для разных выражений,
+         * вычисляются один раз.
+         * @param roots корни выражений в порядке результатов
+         */
+        void emitOutputs(ExpressionNode[] roots) {
+            for (ExpressionNode root : roots) {
+                countUses(root);
+            }
+            for (ExpressionNode root : roots) {
+                emit(root);
+                append(OUTPUT, outputCount++);
+                depth--;
+            }
+        }
+
+        /**
+         * Добавляет операции вычисления узла в постфиксном порядке. Узлы обходятся
+         * с явным стеком, поэтому глубина дерева не ограничена размером стека потока.
+         * Повторно встреченный общий узел загружается из временной ячейки, а не вычисляется заново.
+         * @param root узел дерева выражения
+         */
+        void emit(ExpressionNode root) {
+            Deque<ExpressionNode> stack = new ArrayDeque<>();
+            Deque<Boolean> expanded = new ArrayDeque<>();
+            stack.push(root);
+            expanded.push(false);
+            while (!stack.isEmpty()) {
+                ExpressionNode node = stack.pop();
+                ExpressionNode[] children = node.children();
+                if (expanded.pop() || children.length == 0) {
+                    node.emit(this);
+                    if (children.length > 0 && uses.getOrDefault(node, 0) > 1) {
+                        temps.put(node, tempCount);
+                        append(STORE, tempCount++);
+                    }
+                    continue;
+                }
+                Integer temp = temps.get(node);
+                if (temp != null) {
+                    append(RECALL, temp);
+                    push();
+                    continue;
+                }
+                stack.push(node);
+                expanded.push(true);
+                for (int i = children.length - 1; i >= 0; i--) {
+                    stack.push(children[i]);
+                    expanded.push(false);
+                }
+            }
+        }
+
+        /**
+         * Добавляет загрузку константы.
+         * @param value значение константы
+         */
+        void constant(double value) {
+            if (constantCount == constants.length) {
+                constants = Arrays.copyOf(constants, constantCount * 2);
+            }
+            constants[constantCount] = value;
+            append(CONST, constantCount++);
+            push();
+        }
+
+        /**
+         * Добавляет загрузку переменной.
+         * @param slot номер слота переменной
+         */
+        void load(int slot) {
+            append(LOAD, slot);
+            push();
+        }
+
+        /**
+         * Добавляет унарную операцию.
+         * @param opcode код операции
+         */
+        void unary(int opcode) {
+            append(opcode);
+        }
+
+        /**
+         * Добавляет бинарную операцию.
+         * @param opcode код операции
+         */
+        void binary(int opcode) {
+            append(opcode);
+            depth--;
+        }
+
+        /**
+         * Добавляет вызов функции, аргументы которой уже на стеке.
+         * @param function вызываемая функция
+         */
+        void call(FunctionRegistry.Definition function) {
+            int index = functions.indexOf(function);
+            if (index < 0) {
+                index = functions.size();
+                functions.add(function);
+            }
+            append(CALL, index);
+            depth -= function.arity - 1;
+        }
+
+        /**
+         * Завершает построение программы.
+         * @param trigPrecision способ вычисления тригонометрических функций
+         * @return построенная программа
+         */
+        Program build(TrigPrecision trigPrecision) {
+            return new Program(Arrays.copyOf(code, length), Arrays.copyOf(constants, constantCount),
+                    maxDepth, tempCount, outputCount, trigPrecision,
+                    functions.toArray(new FunctionRegistry.Definition[0]));
+        }
+
+        private void countUses(ExpressionNode root) {
+            Deque<ExpressionNode> stack = new ArrayDeque<>();
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                ExpressionNode node = stack.pop();
+                if (uses.merge(node, 1, Integer::sum) == 1) {
+                    for (ExpressionNode child : node.children()) {
+                        stack.push(child);
+                    }
+                }
+            }
+        }
+
+        private void push() {
+            maxDepth = Math.max(maxDepth, ++depth);
+        }
+
+        private void append(int... words) {
+            if (length + words.length > code.length) {
+                code = Arrays.copyOf(code, Math.max(code.length * 2, length + words.length));
+            }
+            for (int word : words) {
+                code[length++] = word;
+            }
+        }
+    }
+
+    /**
+     * Стек операндов потока. Вложенные вычисления занимают
+     * следующие за текущими элементы массива.
+     */
+    private static final class Stack {
+        double[] data = new double[64];
+        int used;
+
+        int acquire(int size) {
+            int base = used;
+            if (base + size > data.length) {
+                data = new double[Math.max(data.length * 2, base + size)];
+            }
+            used = base + size;
+            return base;
+        }
+
+        void release(int base) {
+            used = base;
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Потоковое вычисление выражения для всех записей файла.
+ * Входной файл читается окнами, отображёнными в память ({@link FileChannel#map}),
+ * числа разбираются прямо из байтов, строки накапливаются в блоки столбцов
+ * и вычисляются пакетно с политикой {@link RowErrorPolicy#WRITE_NAN},
+ * а результаты пишутся через буфер в канал выходного файла.
+ * Используемая память не зависит от размера файла.
+ */
+public final class RecordFileEvaluator {
+
+    /**
+     * Формат входного и выходного файлов.
+     */
+    public enum Format {
+
+        /**
+         * Текст через запятую. Первая строка - имена столбцов; столбцы, имена которых
+         * совпадают с переменными выражения, задают их значения, остальные пропускаются.
+         * Выходной файл содержит заголовок {@code result} и по одному результату в строке.
+         */
+        CSV,
+
+        /**
+         * Записи из значений {@code double} в порядке little-endian, по одному значению
+         * на каждую переменную в порядке слотов выражения. Выходной файл содержит
+         * по одному значению {@code double} на запись в том же порядке байтов.
+         */
+        BINARY
+    }
+
+    /** Размер отображаемого окна по умолчанию */
+    private static final int WINDOW_SIZE = 1 << 26;
+
+    /** Количество строк, вычисляемых одним пакетом */
+    private static final int BLOCK_ROWS = 16 * BatchKernel.CHUNK;
+
+    private final CompiledExpression expression;
+    private final Format format;
+    private final int windowSize;
+
+    /**
+     * Конструктор вычислителя файлов.
+     *
+     * @param expression скомпилированное выражение
+     * @param format формат файлов
+     */
+    public RecordFileEvaluator(CompiledExpression expression, Format format) {
+        this(expression, format, WINDOW_SIZE);
+    }
+
+    /**
+     * Конструктор вычислителя файлов с заданным размером окна.
+     *
+     * @param expression скомпилированное выражение
+     * @param format формат файлов
+     * @param windowSize размер отображаемого окна в байтах
+     */
+    RecordFileEvaluator(CompiledExpression expression, Format format, int windowSize) {
+        this.expression = expression;
+        this.format = format;
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Вычисляет выражение для каждой записи входного файла и записывает результаты в выходной.
+     * Строки с математическими ошибками получают значение NaN.
+     *
+     * @param input входной файл
+     * @param output выходной файл, создаётся или перезаписывается
+     * @return количество обработанных записей и записей с ошибками
+     * @throws IOException при ошибке чтения или записи или если строка CSV длиннее {@link Integer#MAX_VALUE} байт
+     * @throws IllegalArgumentException при некорректной записи или отсутствии столбца переменной
+     */
+    public RecordFileResult evaluate(Path input, Path output) throws IOException {
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Pipeline pipeline = new Pipeline(out);
+            if (format == Format.CSV) {
+                pipeline.readCsv(in);
+            } else {
+                pipeline.readBinary(in);
+            }
+            pipeline.finish();
+            return new RecordFileResult(pipeline.rows, pipeline.errors);
+        }
+    }
+
+    /**
+     * Состояние одного прохода по файлу: блок столбцов, ещё не вычисленный,
+     * и буфер результатов, ещё не записанный в канал.
+     */
+    private final class Pipeline {
+        private final FileChannel output;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private final StringBuilder text = new StringBuilder(32);
+        private final int variables = expression.getVariableNames().size();
+        private final double[][] columns = new double[variables][BLOCK_ROWS];
+        private final double[] results = new double[BLOCK_ROWS];
+        /** Слот переменной для каждого столбца CSV или -1 */
+        private int[] columnSlots;
+        private int pending;
+        private long rows;
+        private long errors;
+        private long line;
+
+        Pipeline(FileChannel output) {
+            this.output = output;
+        }
+
+        void readBinary(FileChannel in) throws IOException {
+            if (variables == 0) {
+                throw new IllegalArgumentException("Двоичный формат требует хотя бы одну переменную");
+            }
+            int record = Double.BYTES * variables;
+            long size = in.size();
+            if (size % record != 0) {
+                throw new IllegalArgumentException("Размер файла не кратен размеру записи");
+            }
+            int window = Math.max(1, windowSize / record) * record;
+            for (long position = 0; position < size; position += window) {
+                int length = (int) Math.min(window, size - position);
+                MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+                mapped.order(ByteOrder.LITTLE_ENDIAN);
+                for (int offset = 0; offset < length; offset += record) {
+                    for (int slot = 0; slot < variables; slot++) {
+                        columns[slot][pending] = mapped.getDouble(offset + Double.BYTES * slot);
+                    }
+                    rowParsed();
+                }
+            }
+        }
+
+        void readCsv(FileChannel in) throws IOException {
+            long size = in.size();
+            long position = 0;
+            int window = windowSize;
+            boolean header = true;
+            while (position < size) {
+                int length = (int) Math.min(window, size - position);
+                MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int consumed = header ? readHeader(mapped, length, position + length == size)
+                        : readLines(mapped, length, position + length == size);
+                if (consumed == 0) {
+                    // строка не поместилась в окно
+                    if (length == Integer.MAX_VALUE) {
+                        throw new IOException("Строка " + (line + 1) + " длиннее " + Integer.MAX_VALUE + " байт");
+                    }
+                    window = (int) Math.min(Integer.MAX_VALUE, 2L * window);
+                    continue;
+                }
+                if (header && columnSlots != null) {
+                    header = false;
+                }
+                position += consumed;
+            }
+            if (columnSlots == null) {
+                throw new IllegalArgumentException("Отсутствует заголовок");
+            }
+        }
+
+        private int readHeader(ByteBuffer in, int length, boolean last) {
+            int end = lineEnd(in, 0, length);
+            if (end == length && !last) {
+                return 0;
+            }
+            line++;
+            byte[] bytes = new byte[trimCarriageReturn(in, 0, end)];
+            in.get(0, bytes);
+            String[] names = new String(bytes, StandardCharsets.UTF_8).split(",", -1);
+            columnSlots = new int[names.length];
+            boolean[] bound = new boolean[variables];
+            for (int column = 0; column < names.length; column++) {
+                int slot = expression.getSlot(names[column].trim());
+                if (slot >= 0) {
+                    if (bound[slot]) {
+                        throw new IllegalArgumentException("Повторное имя переменной: " + names[column].trim());
+                    }
+                    bound[slot] = true;
+                }
+                columnSlots[column] = slot;
+            }
+            for (int slot = 0; slot < variables; slot++) {
+                if (!bound[slot]) {
+                    throw new IllegalArgumentException("Переменная не найдена: " + expression.getVariableNames().get(slot));
+                }
+            }
+            return Math.min(end + 1, length);
+        }
+
+        /**
+         * Разбирает все полные строки окна.
+         * @return количество разобранных байтов
+         */
+        private int readLines(ByteBuffer in, int length, boolean last) throws IOException {
+            int start = 0;
+            while (start < length) {
+                int end = lineEnd(in, start, length);
+                if (end == length && !last) {
+                    return start;
+                }
+                line++;
+                readRecord(in, start, trimCarriageReturn(in, start, end));
+                start = end + 1;
+            }
+            return length;
+        }
+
+        private void readRecord(ByteBuffer in, int from, int to) throws IOException {
+            if (skipBlanks(in, from, to) == to) {
+                return;
+            }
+            int column = 0;
+            int start = from;
+            while (true) {
+                int end = start;
+                while (end < to && in.get(end) != ',') {
+                    end++;
+                }
+                if (column == columnSlots.length) {
+                    throw new IllegalArgumentException("Лишние поля в строке " + line);
+                }
+                int slot = columnSlots[column++];
+                if (slot >= 0) {
+                    columns[slot][pending] = parseNumber(in, start, end);
+                }
+                if (end == to) {
+                    break;
+                }
+                start = end + 1;
+            }
+            if (column != columnSlots.length) {
+                throw new IllegalArgumentException("Не хватает полей в строке " + line);
+            }
+            rowParsed();
+        }
+
+        /**
+         * Разбирает десятичное число из байтов без создания строки.
+         * Числа не длиннее 15 значащих цифр с порядком до 22 переводятся точно
+         * одним умножением или делением; остальные записи разбираются
+         * {@link Double#parseDouble(String)}.
+         */
+        private double parseNumber(ByteBuffer in, int from, int to) {
+            from = skipBlanks(in, from, to);
+            while (to > from && isBlank(in.get(to - 1))) {
+                to--;
+            }
+            int i = from;
+            boolean negative = false;
+            if (i < to && (in.get(i) == '-' || in.get(i) == '+')) {
+                negative = in.get(i++) == '-';
+            }
+            long mantissa = 0;
+            int digits = 0;
+            int exponent = 0;
+            boolean anyDigit = false;
+            boolean point = false;
+            for (; i < to; i++) {
+                byte symbol = in.get(i);
+                if (symbol >= '0' && symbol <= '9') {
+                    anyDigit = true;
+                    if (mantissa != 0 || symbol != '0') {
+                        if (++digits > 15) {
+                            return parseSlow(in, from, to);
+                        }
+                        mantissa = mantissa * 10 + (symbol - '0');
+                    }
+                    if (point) {
+                        exponent--;
+                    }
+                } else if (symbol == '.' && !point) {
+                    point = true;
+                } else {
+                    break;
+                }
+            }
+            if (i < to && anyDigit && (in.get(i) == 'e' || in.get(i) == 'E')) {
+                i++;
+                boolean negativeExponent = false;
+                if (i < to && (in.get(i) == '-' || in.get(i) == '+')) {
+                    negativeExponent = in.get(i++) == '-';
+                }
+                int value = 0;
+                int start = i;
+                for (; i < to && in.get(i) >= '0' && in.get(i) <= '9' && value < 10_000; i++) {
+                    value = value * 10 + (in.get(i) - '0');
+                }
+                if (i == start) {
+                    return parseSlow(in, from, to);
+                }
+                exponent += negativeExponent ? -value : value;
+            }
+            if (i != to || !anyDigit || exponent > 22 || exponent < -22) {
+                return parseSlow(in, from, to);
+            }
+            double[] powers = ExpressionParser.POWERS_OF_TEN;
+            double value = exponent >= 0 ? mantissa * powers[exponent] : mantissa / powers[-exponent];
+            return negative ? -value : value;
+        }
+
+        private double parseSlow(ByteBuffer in, int from, int to) {
+            byte[] bytes = new byte[to - from];
+            in.get(from, bytes);
+            try {
+                return Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Некорректное число в строке " + line);
+            }
+        }
+
+        private void rowParsed() throws IOException {
+            if (++pending == BLOCK_ROWS) {
+                evaluateBlock(results);
+            }
+        }
+
+        void finish() throws IOException {
+            if (pending > 0) {
+                evaluateBlock(new double[pending]);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                output.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void evaluateBlock(double[] out) throws IOException {
+            errors += expression.evaluateBatch(columns, out, RowErrorPolicy.WRITE_NAN).getErrorCount();
+            if (format == Format.CSV && rows == 0) {
+                writeText("result");
+            }
+            rows += out.length;
+            pending = 0;
+            for (double value : out) {
+                if (format == Format.BINARY) {
+                    reserve(Double.BYTES);
+                    buffer.putDouble(value);
+                } else {
+                    text.setLength(0);
+                    writeText(text.append(value));
+                }
+            }
+        }
+
+        private void writeText(CharSequence value) throws IOException {
+            reserve(value.length() + 1);
+            for (int i = 0; i < value.length(); i++) {
+                buffer.put((byte) value.charAt(i));
+            }
+            buffer.put((byte) '\n');
+        }
+
+        private void reserve(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    output.write(buffer);
+                }
+                buffer.clear();
+            }
+        }
+    }
+
+    private static int lineEnd(ByteBuffer in, int from, int length) {
+        int end = from;
+        while (end < length && in.get(end) != '\n') {
+            end++;
+        }
+        return end;
+    }
+
+    private static int trimCarriageReturn(ByteBuffer in, int from, int end) {
+        return end > from && in.get(end - 1) == '\r' ? end - 1 : end;
+    }
+
+    private static int skipBlanks(ByteBuffer in, int from, int to) {
+        while (from < to && isBlank(in.get(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    private static boolean isBlank(byte symbol) {
+        return symbol == ' ' || symbol == '\t';
+    }
+}
@@ -0,0 +1,39 @@
+package org.example;
+
+/**
+ * Итог вычисления выражения для файла записей.
+ * В отличие от {@link BatchResult} хранит только счётчики,
+ * так как количество записей в файле не ограничено.
+ */
+public final class RecordFileResult {
+
+    private final long rowCount;
+    private final long errorCount;
+
+    /**
+     * Конструктор итога.
+     *
+     * @param rowCount количество обработанных записей
+     * @param errorCount количество записей, вычисление которых завершилось ошибкой
+     */
+    RecordFileResult(long rowCount, long errorCount) {
+        this.rowCount = rowCount;
+        this.errorCount = errorCount;
+    }
+
+    /**
+     * Возвращает количество обработанных записей.
+     * @return количество записей
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Возвращает количество записей с ошибками, для которых записано NaN.
+     * @return количество записей
+     */
+    public long getErrorCount() {
+        return errorCount;
+    }
+}
@@ -0,0 +1,13 @@
+package org.example;
+
+/**
+ * Способ обработки математических ошибок в отдельных строках пакетного вычисления.
+ */
+public enum RowErrorPolicy {
+
+    /** Прервать вычисление и выбросить исключение первой ошибки */
+    FAIL_FAST,
+
+    /** Записать NaN в результат строки, запомнить её номер и продолжить */
+    WRITE_NAN
+}
@@ -0,0 +1,17 @@
+package org.example;
+
+/**
+ * Вычислитель выражения по значениям переменных в порядке слотов.
+ * Реализуется классами, которые {@link BytecodeCompiler} генерирует для часто вычисляемых программ.
+ */
+interface ScalarEvaluator {
+
+    /**
+     * Вычисляет выражение.
+     *
+     * @param slots значения переменных по номерам слотов
+     * @return результат вычисления
+     * @throws ArithmeticException при математических ошибках
+     */
+    double evaluate(double[] slots);
+}
@@ -0,0 +1,283 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Потоковое вычисление выражения: обработчик {@link Flow}, принимающий записи значений
+ * переменных в порядке слотов выражения и выдающий их результаты пакетами
+ * {@link EvaluatedBatch} в порядке поступления записей.
+ * <p>
+ * Записи накапливаются и вычисляются пакетами через
+ * {@link CompiledExpression#evaluateBatch(double[][], double[], RowErrorPolicy)}.
+ * Пакет вычисляется, когда накоплено {@code maxBatchRows} записей или когда первая
+ * запись пакета ждёт дольше {@code maxDelay}; при высокой нагрузке пакет забирает всё
+ * накопленное до {@code maxBatchRows}, поэтому размер пакетов растёт вместе с потоком записей.
+ * Вычисление выполняется задачами исполнителя, а не в потоке источника. Результаты пакета
+ * передаются подписчикам одним элементом: передача через {@link SubmissionPublisher}
+ * обходится дороже вычисления записи, поэтому поштучная выдача свела бы выигрыш на нет.
+ * <p>
+ * Источнику запрашивается не более {@code 2 * maxBatchRows} записей сверх обработанных,
+ * поэтому очередь записей ограничена. Пакеты передаются подписчикам
+ * {@link SubmissionPublisher#submit} с буфером на {@link #BUFFERED_BATCHES} пакетов:
+ * пока буфер подписчика полон, вычисление ждёт,
+ * новые записи не запрашиваются, и медленный подписчик замедляет источник.
+ * Математическая ошибка в записи не прерывает поток, а передаётся в пакете вместе
+ * с номером записи.
+ * После завершения источника вычисляются оставшиеся записи, и поток завершается;
+ * ошибка источника передаётся подписчикам через {@link #closeExceptionally(Throwable)},
+ * поэтому результаты, ещё не полученные подписчиком, при этом могут быть потеряны.
+ */
+public final class StreamingEvaluator extends SubmissionPublisher<EvaluatedBatch>
+        implements Flow.Processor<double[], EvaluatedBatch> {
+
+    /** Количество пакетов в буфере каждого подписчика */
+    static final int BUFFERED_BATCHES = 16;
+
+    private final CompiledExpression expression;
+    private final int width;
+    private final int maxBatchRows;
+    private final long maxDelayNanos;
+    private final Executor executor;
+    private final Executor delayed;
+
+    /**
+     * Кольцевой буфер полученных записей. Его размер равен наибольшему количеству
+     * запрошенных у источника записей, поэтому он не переполняется. Записи добавляет только
+     * {@link #onNext}, а забирает только задача вычисления; счётчик {@link #pendingCount}
+     * обеспечивает видимость записей между ними.
+     */
+    private final double[][] pending;
+    private int tail;
+    private int head;
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    /** Время поступления первой записи текущего пакета по {@link System#nanoTime()} */
+    private volatile long batchStart;
+    /** Задача вычисления запланирована или выполняется */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    /** Отложенная проверка неполного пакета запланирована */
+    private final AtomicBoolean timerArmed = new AtomicBoolean();
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private volatile Flow.Subscription subscription;
+    private volatile boolean completed;
+    private volatile Throwable failure;
+
+    /** Столбцы пакета, используются только выполняющейся задачей вычисления */
+    private final double[][] columns;
+
+    /**
+     * Конструктор с пакетами по {@link BatchKernel#CHUNK} записей, ожиданием не дольше
+     * миллисекунды и общим {@link ForkJoinPool}.
+     *
+     * @param expression вычисляемое выражение
+     */
+    public StreamingEvaluator(CompiledExpression expression) {
+        this(expression, ForkJoinPool.commonPool(), BatchKernel.CHUNK, Duration.ofMillis(1));
+    }
+
+    /**
+     * Конструктор обработчика.
+     *
+     * @param expression вычисляемое выражение
+     * @param executor исполнитель вычисления пакетов и передачи результатов подписчикам
+     * @param maxBatchRows наибольшее количество записей в пакете
+     * @param maxDelay наибольшее время ожидания первой записи пакета до его вычисления
+     * @throws IllegalArgumentException если размер пакета или время ожидания не положительны
+     */
+    public StreamingEvaluator(CompiledExpression expression, Executor executor, int maxBatchRows, Duration maxDelay) {
+        super(executor, BUFFERED_BATCHES);
+        if (maxBatchRows < 1) {
+            throw new IllegalArgumentException("Размер пакета должен быть положительным");
+        }
+        if (maxDelay.isNegative() || maxDelay.isZero()) {
+            throw new IllegalArgumentException("Время ожидания пакета должно быть положительным");
+        }
+        this.expression = expression;
+        this.width = expression.getVariableNames().size();
+        this.maxBatchRows = maxBatchRows;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.executor = executor;
+        this.delayed = CompletableFuture.delayedExecutor(maxDelayNanos, TimeUnit.NANOSECONDS, executor);
+        this.pending = new double[2 * maxBatchRows][];
+        this.columns = new double[width][maxBatchRows];
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (this.subscription != null) {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscription.request(pending.length);
+    }
+
+    @Override
+    public void onNext(double[] record) {
+        Objects.requireNonNull(record);
+        if (completed) {
+            return;
+        }
+        if (pendingCount.get() == pending.length) {
+            subscription.cancel();
+            onError(new IllegalStateException("Источник передал больше записей, чем было запрошено"));
+            return;
+        }
+        pending[tail] = record;
+        tail = tail + 1 == pending.length ? 0 : tail + 1;
+        int count = pendingCount.incrementAndGet();
+        if (count >= maxBatchRows) {
+            schedule();
+        } else if (count == 1) {
+            batchStart = System.nanoTime();
+            armTimer();
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        failure = throwable;
+        completed = true;
+        schedule();
+    }
+
+    @Override
+    public void onComplete() {
+        completed = true;
+        schedule();
+    }
+
+    /**
+     * Запускает задачу вычисления, если она ещё не запланирована.
+     */
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::process);
+            } catch (RuntimeException e) {
+                scheduled.set(false);
+                closeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Планирует проверку неполного пакета через {@code maxDelay}, если она ещё не запланирована.
+     */
+    private void armTimer() {
+        if (timerArmed.compareAndSet(false, true)) {
+            delayed.execute(() -> {
+                timerArmed.set(false);
+                schedule();
+            });
+        }
+    }
+
+    /**
+     * Вычисляет пакеты, пока есть готовые, затем завершает поток, если источник завершён,
+     * или откладывает проверку неполного пакета.
+     */
+    private void process() {
+        try {
+            int available;
+            while ((available = pendingCount.get()) > 0 && (available >= maxBatchRows || completed
+                    || System.nanoTime() - batchStart >= maxDelayNanos)) {
+                evaluate(Math.min(available, maxBatchRows));
+            }
+        } finally {
+            scheduled.set(false);
+        }
+        int available = pendingCount.get();
+        if (available >= maxBatchRows || available > 0 && completed) {
+            // записи или завершение поступили после последней проверки
+            schedule();
+        } else if (available > 0) {
+            armTimer();
+        } else if (completed && finished.compareAndSet(false, true)) {
+            if (failure != null) {
+                closeExceptionally(failure);
+            } else {
+                close();
+            }
+        }
+    }
+
+    /**
+     * Вычисляет пакет из первых записей очереди, передаёт его результаты подписчикам
+     * и запрашивает у источника столько же новых записей.
+     */
+    private void evaluate(int count) {
+        double[][] records = new double[count][];
+        for (int row = 0; row < count; row++) {
+            double[] record = pending[head];
+            pending[head] = null;
+            head = head + 1 == pending.length ? 0 : head + 1;
+            records[row] = record;
+            if (record.length >= width) {
+                for (int slot = 0; slot < width; slot++) {
+                    columns[slot][row] = record[slot];
+                }
+            } else {
+                for (int slot = 0; slot < width; slot++) {
+                    columns[slot][row] = 0;
+                }
+            }
+        }
+        if (pendingCount.addAndGet(-count) > 0) {
+            batchStart = System.nanoTime();
+        }
+
+        double[] out = new double[count];
+        RuntimeException batchError = null;
+        int[] failed = new int[0];
+        try {
+            failed = expression.evaluateBatch(columns, out, RowErrorPolicy.WRITE_NAN).getFailedRows();
+        } catch (RuntimeException e) {
+            batchError = e;
+        }
+        RuntimeException[] errors = null;
+        int nextFailure = 0;
+        for (int row = 0; row < count; row++) {
+            double[] record = records[row];
+            RuntimeException error = batchError;
+            if (record.length < width) {
+                error = new IllegalArgumentException("Переменная не найдена");
+            } else if (nextFailure < failed.length && failed[nextFailure] == row) {
+                nextFailure++;
+                error = recordError(record);
+            }
+            if (error != null) {
+                if (errors == null) {
+                    errors = new RuntimeException[count];
+                }
+                errors[row] = error;
+                out[row] = Double.NaN;
+            }
+        }
+        submit(new EvaluatedBatch(records, out, errors));
+        Flow.Subscription subscription = this.subscription;
+        if (subscription != null && !completed) {
+            subscription.request(count);
+        }
+    }
+
+    /**
+     * Вычисляет запись с ошибкой отдельно, чтобы получить её исключение.
+     */
+    private RuntimeException recordError(double[] record) {
+        try {
+            expression.getProgram().execute(record);
+            return new ArithmeticException("Ошибка вычисления");
+        } catch (ArithmeticException e) {
+            return e;
+        }
+    }
+}
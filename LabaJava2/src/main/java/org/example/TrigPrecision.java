@@ -0,0 +1,162 @@
+package org.example;
+
+/**
+ * Способ вычисления тригонометрических функций от угла в градусах.
+ * Выбирается для скомпилированного выражения ({@link MathExpression#compile(String, TrigPrecision)})
+ * или глобально ({@link MathExpression#setDefaultTrigPrecision(TrigPrecision)}).
+ */
+public enum TrigPrecision {
+
+    /** Перевод в радианы и {@link Math#sin}, {@link Math#cos}, {@link Math#tan}, как в {@link MathOperations} */
+    STRICT {
+        public double sin(double degrees) { return Math.sin(Math.toRadians(degrees)); }
+        public double cos(double degrees) { return Math.cos(Math.toRadians(degrees)); }
+        public double tan(double degrees) { return Math.tan(Math.toRadians(degrees)); }
+    },
+
+    /**
+     * Для углов, кратных 30 или 45 градусам, - точные значения, округлённые до double
+     * (например, sin(90) = 1, cos(60) = 0.5), для остальных углов - как {@link #STRICT}.
+     * Тангенс угла, кратного 90 градусам нечётное число раз, не определён.
+     */
+    EXACT_ANGLES {
+        public double sin(double degrees) {
+            double exact = canonicalSin(degrees, 0);
+            return Double.isNaN(exact) ? STRICT.sin(degrees) : exact;
+        }
+        public double cos(double degrees) {
+            double exact = canonicalSin(degrees, 6);
+            return Double.isNaN(exact) ? STRICT.cos(degrees) : exact;
+        }
+        public double tan(double degrees) {
+            double sin = canonicalSin(degrees, 0);
+            return Double.isNaN(sin) ? STRICT.tan(degrees) : canonicalTan(sin, canonicalSin(degrees, 6));
+        }
+    },
+
+    /**
+     * Линейная интерполяция по таблице синуса с шагом 1/16 градуса.
+     * Абсолютная погрешность синуса и косинуса не превышает 1.5e-7
+     * (h^2/8 при шаге h = pi/2880 радиан); в узлах таблицы, в том числе во всех целых градусах,
+     * значения совпадают с {@link #EXACT_ANGLES}. Тангенс вычисляется как отношение синуса
+     * к косинусу, поэтому его относительная погрешность растёт вблизи 90 градусов.
+     */
+    FAST {
+        public double sin(double degrees) { return interpolate(degrees); }
+        public double cos(double degrees) { return interpolate(degrees + 90); }
+        public double tan(double degrees) {
+            double sin = canonicalSin(degrees, 0);
+            if (!Double.isNaN(sin)) {
+                return canonicalTan(sin, canonicalSin(degrees, 6));
+            }
+            return interpolate(degrees) / interpolate(degrees + 90);
+        }
+    };
+
+    /** Количество узлов таблицы на градус */
+    private static final int STEPS_PER_DEGREE = 16;
+
+    /** Синусы углов, кратных 15 градусам; NaN для углов, не кратных 30 или 45 */
+    private static final double[] CANONICAL_SIN = new double[24];
+
+    /** Синусы с шагом 1/16 градуса на отрезке [0, 360] */
+    private static final double[] SIN_TABLE = new double[360 * STEPS_PER_DEGREE + 2];
+
+    static {
+        double half = 0.5;
+        double halfSqrt2 = Math.sqrt(0.5);
+        double halfSqrt3 = Math.sqrt(0.75);
+        double[] firstQuadrant = {0, Double.NaN, half, halfSqrt2, halfSqrt3, Double.NaN, 1};
+        for (int i = 0; i < CANONICAL_SIN.length; i++) {
+            int quadrant = i / 6;
+            int offset = i % 6;
+            double value = quadrant % 2 == 0 ? firstQuadrant[offset] : firstQuadrant[6 - offset];
+            CANONICAL_SIN[i] = quadrant < 2 ? value : 0 - value;
+        }
+        for (int i = 0; i < SIN_TABLE.length; i++) {
+            SIN_TABLE[i] = EXACT_ANGLES.sin((double) i / STEPS_PER_DEGREE);
+        }
+    }
+
+    /**
+     * Синус угла в градусах.
+     * @param degrees угол в градусах
+     * @return синус угла
+     */
+    public abstract double sin(double degrees);
+
+    /**
+     * Косинус угла в градусах.
+     * @param degrees угол в градусах
+     * @return косинус угла
+     */
+    public abstract double cos(double degrees);
+
+    /**
+     * Тангенс угла в градусах.
+     * @param degrees угол в градусах
+     * @return тангенс угла
+     * @throws ArithmeticException если тангенс точно заданного угла не определён
+     */
+    public abstract double tan(double degrees);
+
+    /**
+     * Вычисляет функцию {@link MathOperations}, используя этот способ для тригонометрических функций.
+     *
+     * @param function функция
+     * @param x аргумент
+     * @return результат вычисления
+     * @throws ArithmeticException при недопустимых входных значениях
+     */
+    double calculate(MathOperations function, double x) {
+        switch (function) {
+            case SIN: return sin(x);
+            case COS: return cos(x);
+            case TAN: return tan(x);
+            default: return function.calculate(x);
+        }
+    }
+
+    /**
+     * Возвращает точный синус угла, кратного 30 или 45 градусам, сдвинутого на {@code shift * 15} градусов.
+     * Ноль со знаком возвращается как есть.
+     *
+     * @return точное значение или NaN, если угол не канонический
+     */
+    private static double canonicalSin(double degrees, int shift) {
+        if (degrees == 0 && shift == 0) {
+            return degrees;
+        }
+        double reduced = degrees % 360;
+        if (reduced % 15 != 0) {
+            return Double.NaN;
+        }
+        int index = (int) (reduced / 15) + shift;
+        return CANONICAL_SIN[(index % 24 + 24) % 24];
+    }
+
+    private static double canonicalTan(double sin, double cos) {
+        if (cos == 0) throw new ArithmeticException("tan не определен");
+        if (sin == 0) return sin;
+        if (Math.abs(sin) == Math.abs(cos)) return sin == cos ? 1 : -1;
+        double tan30 = 0.57735026918962576;
+        double tan60 = Math.sqrt(3);
+        double value = Math.abs(sin) < Math.abs(cos) ? tan30 : tan60;
+        return (sin > 0) == (cos > 0) ? value : -value;
+    }
+
+    private static double interpolate(double degrees) {
+        if (!Double.isFinite(degrees)) {
+            return Double.NaN;
+        }
+        double reduced = degrees % 360;
+        if (reduced < 0) {
+            reduced += 360;
+        }
+        double position = reduced * STEPS_PER_DEGREE;
+        int index = (int) position;
+        double fraction = position - index;
+        double low = SIN_TABLE[index];
+        return fraction == 0 ? low : low + fraction * (SIN_TABLE[index + 1] - low);
+    }
+}
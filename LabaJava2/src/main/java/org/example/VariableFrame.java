@@ -0,0 +1,133 @@
+package org.example;
+
+/**
+ * Привязка позиционных значений к слотам переменных скомпилированного выражения.
+ * Имена переменных сопоставляются слотам один раз в {@link CompiledExpression#bind(String...)},
+ * после чего каждое вычисление получает строку значений в порядке привязанных имён
+ * и не выполняет поиска по именам.
+ * Фрейм хранит собственные буферы слотов и стека, поэтому не создаёт объектов при вычислении,
+ * но не должен использоваться из нескольких потоков одновременно.
+ */
+public final class VariableFrame {
+
+    private final CompiledExpression expression;
+    private final Program program;
+    private final int[] columnSlots;
+    private final boolean identity;
+    private final double[] slots;
+    private final double[] stack;
+
+    /**
+     * Конструктор фрейма.
+     *
+     * @param expression скомпилированное выражение
+     * @param columnSlots номер слота для каждой позиции строки, -1 если значение не используется
+     * @param slotCount количество слотов выражения
+     */
+    VariableFrame(CompiledExpression expression, int[] columnSlots, int slotCount) {
+        this.expression = expression;
+        this.program = expression.getProgram();
+        this.columnSlots = columnSlots;
+        this.slots = new double[slotCount];
+        this.stack = new double[program.frameSize()];
+
+        boolean identity = columnSlots.length == slotCount;
+        for (int column = 0; identity && column < columnSlots.length; column++) {
+            identity = columnSlots[column] == column;
+        }
+        this.identity = identity;
+    }
+
+    /**
+     * Возвращает количество значений в строке.
+     * @return количество привязанных имён
+     */
+    public int getWidth() {
+        return columnSlots.length;
+    }
+
+    /**
+     * Вычисляет выражение по строке значений в порядке привязанных имён.
+     *
+     * @param row значения переменных
+     * @return результат вычисления
+     * @throws IllegalArgumentException если длина строки не совпадает с количеством имён
+     * @throws ArithmeticException при математических ошибках (деление на ноль и т.д.)
+     */
+    public double evaluate(double... row) {
+        if (row.length != columnSlots.length) {
+            throw ExpressionMetrics.recordError(expression, new IllegalArgumentException("Неверное количество значений"));
+        }
+        if (identity) {
+            return execute(row);
+        }
+        for (int column = 0; column < row.length; column++) {
+            int slot = columnSlots[column];
+            if (slot >= 0) {
+                slots[slot] = row[column];
+            }
+        }
+        return execute(slots);
+    }
+
+    private double execute(double[] values) {
+        if (!ExpressionMetrics.enabled) {
+            return program.execute(values, stack, 0);
+        }
+        ExpressionStats stats = expression.stats();
+        long start = stats.startEvaluation();
+        try {
+            double result = program.execute(values, stack, 0);
+            ExpressionMetrics.endEvaluation(stats, start);
+            return result;
+        } catch (ArithmeticException e) {
+            throw ExpressionMetrics.recordError(expression, e);
+        }
+    }
+
+    /**
+     * Вычисляет выражение для каждой строки столбцов значений,
+     * следующих в порядке привязанных имён.
+     *
+     * @param columns столбцы значений
+     * @param out массив результатов, его длина задаёт количество строк
+     * @throws IllegalArgumentException если количество столбцов не совпадает с количеством имён
+     *                                  или столбец короче результата
+     * @throws ArithmeticException при математических ошибках в любой строке
+     * @see CompiledExpression#evaluateBatch(double[][], double[])
+     */
+    public void evaluateBatch(double[][] columns, double[] out) {
+        if (columns.length != columnSlots.length) {
+            throw new IllegalArgumentException("Неверное количество значений");
+        }
+        CompiledExpression.checkColumns(columns, columns.length, out.length);
+        if (!ExpressionMetrics.enabled) {
+            new BatchKernel(program).evaluate(slotColumns(columns), out, 0, out.length);
+            return;
+        }
+        expression.measureBatch(out.length, () -> {
+            new BatchKernel(program).evaluate(slotColumns(columns), out, 0, out.length);
+            return null;
+        });
+    }
+
+    /**
+     * Переупорядочивает столбцы в порядок слотов выражения.
+     *
+     * @param columns столбцы в порядке привязанных имён
+     * @return столбцы в порядке слотов
+     */
+    double[][] slotColumns(double[][] columns) {
+        if (identity) {
+            return columns;
+        }
+        double[][] result = new double[slots.length][];
+        for (int column = 0; column < columns.length; column++) {
+            int slot = columnSlots[column];
+            if (slot >= 0) {
+                result[slot] = columns[column];
+            }
+        }
+        return result;
+    }
+}
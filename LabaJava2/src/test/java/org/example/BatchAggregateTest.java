@@ -0,0 +1,182 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Класс для тестирования агрегатного вычисления выражений по столбцам значений.
+ * Агрегаты сравниваются с вычислением каждой строки по отдельности.
+ */
+class BatchAggregateTest {
+
+    private static final int ROWS = 3 * BatchJob.LEAF_ROWS + 17;
+
+    /**
+     * Тестирование совпадения агрегатов с вычислением каждой строки по отдельности.
+     */
+    @Test
+    void aggregateMatchesRowByRow() {
+        CompiledExpression expression = MathExpression.compile("sin(x) * y - x / 100");
+        double[][] columns = {TestColumns.column(ROWS, 1, -180, 180), TestColumns.column(ROWS, 2, 0, 10)};
+
+        BatchAggregate aggregate = expression.aggregate(columns, ROWS);
+
+        double sum = 0;
+        int minRow = 0;
+        int maxRow = 0;
+        double[] values = new double[ROWS];
+        for (int row = 0; row < ROWS; row++) {
+            values[row] = expression.evaluate(columns[0][row], columns[1][row]);
+            sum += values[row];
+            minRow = values[row] < values[minRow] ? row : minRow;
+            maxRow = values[row] > values[maxRow] ? row : maxRow;
+        }
+        assertEquals(ROWS, aggregate.getRowCount());
+        assertEquals(ROWS, aggregate.getCount());
+        assertEquals(sum, aggregate.getSum(), 1e-9);
+        assertEquals(sum / ROWS, aggregate.getMean(), 1e-12);
+        assertEquals(values[minRow], aggregate.getMin(), 0);
+        assertEquals(minRow, aggregate.getMinRow());
+        assertEquals(values[maxRow], aggregate.getMax(), 0);
+        assertEquals(maxRow, aggregate.getMaxRow());
+        assertEquals(0, aggregate.getNanCount());
+        assertEquals(0, aggregate.getErrorCount());
+        assertEquals(0, aggregate.getHistogram().length);
+    }
+
+    /**
+     * Тестирование компенсации погрешности: единицы, теряемые при простом сложении
+     * с большим числом, учитываются в сумме.
+     */
+    @Test
+    void compensatedSum() {
+        int rows = 10_001;
+        double[] x = new double[rows];
+        Arrays.fill(x, 1);
+        x[0] = 1e16;
+        double simple = 0;
+        for (double value : x) {
+            simple += value;
+        }
+        assertEquals(1e16, simple, 0);
+
+        CompiledExpression expression = MathExpression.compile("x");
+        assertEquals(1e16 + 10_000, expression.aggregate(new double[][] {x}, rows).getSum(), 0);
+        assertEquals(1e16 + 10_000,
+                expression.aggregateParallel(new double[][] {x}, rows, ForkJoinPool.commonPool()).getSum(), 0);
+    }
+
+    /**
+     * Тестирование подсчёта строк с ошибкой и значений NaN, которые не входят в агрегаты.
+     */
+    @Test
+    void errorsAndNans() {
+        double[] x = new double[ROWS];
+        for (int row = 0; row < ROWS; row++) {
+            x[row] = row % 1000 == 7 ? -1 : row % 1000 == 9 ? Double.NaN : row;
+        }
+        CompiledExpression expression = MathExpression.compile("sqrt(x) + 1");
+
+        BatchAggregate aggregate = expression.aggregate(new double[][] {x}, ROWS);
+
+        int errors = ROWS / 1000 + 1;
+        assertEquals(errors, aggregate.getErrorCount());
+        assertEquals(errors, aggregate.getNanCount());
+        assertEquals(ROWS - 2 * errors, aggregate.getCount());
+        assertEquals(1, aggregate.getMin(), 0);
+        assertEquals(0, aggregate.getMinRow());
+        assertEquals(Math.sqrt(ROWS - 1) + 1, aggregate.getMax(), 0);
+        assertEquals(ROWS - 1, aggregate.getMaxRow());
+        assertFalse(Double.isNaN(aggregate.getSum()));
+
+        BatchAggregate infinite = MathExpression.compile("1 / x").aggregate(new double[][] {{1, 1e-320, 2}}, 3);
+        assertEquals(Double.POSITIVE_INFINITY, infinite.getSum(), 0);
+        assertEquals(1, infinite.getMaxRow());
+    }
+
+    /**
+     * Тестирование совпадения параллельного и последовательного вычисления агрегатов
+     * и гистограммы в {@link ForkJoinPool} и в произвольном исполнителе.
+     */
+    @Test
+    void parallelMatchesSequential() {
+        int rows = 20 * BatchJob.LEAF_ROWS + 5;
+        double[][] columns = {TestColumns.column(rows, 3, -1, 1), TestColumns.column(rows, 4, -1, 1)};
+        CompiledExpression expression = MathExpression.compile("x * 3 + y");
+
+        BatchAggregate sequential = expression.aggregate(columns, rows, -2, 2, 8);
+        BatchAggregate forked;
+        BatchAggregate pooled;
+        ForkJoinPool pool = new ForkJoinPool(4);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            forked = expression.aggregateParallel(columns, rows, -2, 2, 8, pool);
+            pooled = expression.aggregateParallel(columns, rows, -2, 2, 8, executor);
+        } finally {
+            pool.shutdown();
+            executor.shutdown();
+        }
+        for (BatchAggregate parallel : new BatchAggregate[] {forked, pooled}) {
+            assertEquals(sequential.getSum(), parallel.getSum(), 0);
+            assertEquals(sequential.getMinRow(), parallel.getMinRow());
+            assertEquals(sequential.getMaxRow(), parallel.getMaxRow());
+            assertEquals(sequential.getCount(), parallel.getCount());
+            assertArrayEquals(sequential.getHistogram(), parallel.getHistogram());
+        }
+
+        // повторяющиеся экстремумы в каждом нечётном участке: выбирается первая строка
+        double[][] ties = {new double[rows], new double[rows]};
+        for (int row = BatchJob.LEAF_ROWS + 3; row < rows; row += 2 * BatchJob.LEAF_ROWS) {
+            ties[0][row] = -1;
+            ties[0][row + 1] = 1;
+        }
+        ForkJoinPool tiePool = new ForkJoinPool(8);
+        try {
+            for (int run = 0; run < 50; run++) {
+                BatchAggregate parallel = expression.aggregateParallel(ties, rows, tiePool);
+                assertEquals(BatchJob.LEAF_ROWS + 3, parallel.getMinRow());
+                assertEquals(BatchJob.LEAF_ROWS + 4, parallel.getMaxRow());
+            }
+        } finally {
+            tiePool.shutdown();
+        }
+        BatchAggregate tied = expression.aggregate(ties, rows);
+        assertEquals(BatchJob.LEAF_ROWS + 3, tied.getMinRow());
+        assertEquals(BatchJob.LEAF_ROWS + 4, tied.getMaxRow());
+
+        long[] expected = new long[8];
+        for (int row = 0; row < rows; row++) {
+            double value = columns[0][row] * 3 + columns[1][row];
+            expected[Math.max(0, Math.min(7, (int) Math.floor((value + 2) * 2)))]++;
+        }
+        assertArrayEquals(expected, sequential.getHistogram());
+        assertEquals(rows, Arrays.stream(sequential.getHistogram()).sum());
+    }
+
+    /**
+     * Тестирование пустого диапазона и некорректных параметров.
+     */
+    @Test
+    void emptyAndInvalid() {
+        CompiledExpression expression = MathExpression.compile("x + 1");
+        BatchAggregate empty = expression.aggregate(new double[][] {new double[0]}, 0);
+        assertEquals(0, empty.getCount());
+        assertEquals(0, empty.getSum(), 0);
+        assertTrue(Double.isNaN(empty.getMean()));
+        assertTrue(Double.isNaN(empty.getMin()));
+        assertEquals(-1, empty.getMaxRow());
+
+        double[][] columns = {new double[10]};
+        assertThrows(IllegalArgumentException.class, () -> expression.aggregate(columns, 11));
+        assertThrows(IllegalArgumentException.class, () -> expression.aggregate(columns, -1));
+        assertThrows(IllegalArgumentException.class, () -> expression.aggregate(new double[0][], 10));
+        assertThrows(IllegalArgumentException.class, () -> expression.aggregate(columns, 10, 1, 1, 4));
+        assertThrows(IllegalArgumentException.class, () -> expression.aggregate(columns, 10, 0, 1, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> expression.aggregate(columns, 10, 0, Double.POSITIVE_INFINITY, 4));
+    }
+}
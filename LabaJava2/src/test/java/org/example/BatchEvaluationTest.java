@@ -0,0 +1,133 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Класс для тестирования пакетного вычисления выражений по столбцам значений.
+ * Результаты сравниваются с вычислением каждой строки по отдельности.
+ */
+class BatchEvaluationTest {
+
+    private static final int ROWS = 3 * BatchKernel.CHUNK + 17;
+
+    /**
+     * Тестирование совпадения пакетного и построчного вычисления
+     * для всех операторов и функций, включая неполный последний блок.
+     */
+    @Test
+    void batchMatchesRowByRow() {
+        CompiledExpression expression = MathExpression.compile(
+                "(sin(x) * 12 + cos(y) - tan(x)) / (y ^ 2 + 1) - sqrt(y) * log(y) + -x");
+        double[][] columns = {TestColumns.column(ROWS, 1, -90, 90), TestColumns.column(ROWS, 2, 0.5, 10)};
+        double[] out = new double[ROWS];
+
+        expression.evaluateBatch(columns, out);
+
+        for (int row = 0; row < ROWS; row++) {
+            assertEquals(expression.evaluate(columns[0][row], columns[1][row]), out[row], 1e-12);
+        }
+    }
+
+    /**
+     * Тестирование пакетного вычисления по столбцам в порядке привязанных имён.
+     */
+    @Test
+    void batchThroughFrame() {
+        CompiledExpression expression = MathExpression.compile("a - 2 * b");
+        double[][] columns = {
+                TestColumns.column(ROWS, 3, 0, 1), TestColumns.column(ROWS, 4, 0, 1), TestColumns.column(ROWS, 5, 0, 1)};
+        double[] out = new double[ROWS];
+
+        expression.bind("b", "unused", "a").evaluateBatch(columns, out);
+
+        for (int row = 0; row < ROWS; row++) {
+            assertEquals(columns[2][row] - 2 * columns[0][row], out[row], 1e-12);
+        }
+    }
+
+    /**
+     * Тестирование ошибок пакетного вычисления.
+     */
+    @Test
+    void batchErrors() {
+        CompiledExpression expression = MathExpression.compile("1 / x");
+        double[] zeros = new double[ROWS];
+        assertThrows(ArithmeticException.class, () -> expression.evaluateBatch(new double[][] {zeros}, new double[ROWS]));
+        assertThrows(IllegalArgumentException.class, () -> expression.evaluateBatch(new double[0][], new double[ROWS]));
+        assertThrows(IllegalArgumentException.class,
+                () -> expression.evaluateBatch(new double[][] {new double[2]}, new double[ROWS]));
+    }
+
+    /**
+     * Тестирование выражения без переменных.
+     */
+    @Test
+    void batchOfConstants() {
+        double[] out = new double[ROWS];
+        MathExpression.compile("2 + 3 * 4").evaluateBatch(new double[0][], out);
+        for (double value : out) {
+            assertEquals(14, value, 0.001);
+        }
+    }
+
+    /**
+     * Тестирование параллельного вычисления в {@link java.util.concurrent.ForkJoinPool}
+     * и в произвольном исполнителе.
+     */
+    @Test
+    void parallelMatchesSequential() {
+        int rows = 20 * BatchJob.LEAF_ROWS + 5;
+        double[] x = new double[rows];
+        for (int row = 0; row < rows; row++) {
+            x[row] = row % 360;
+        }
+        CompiledExpression expression = MathExpression.compile("sin(x) * x + 1");
+        double[] expected = new double[rows];
+        double[] parallel = new double[rows];
+        double[] pooled = new double[rows];
+
+        expression.evaluateBatch(new double[][] {x}, expected);
+        assertTrue(expression.evaluateParallel(new double[][] {x}, parallel, RowErrorPolicy.FAIL_FAST).isSuccessful());
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            expression.evaluateParallel(new double[][] {x}, pooled, RowErrorPolicy.FAIL_FAST, executor);
+        } finally {
+            executor.shutdown();
+        }
+        assertArrayEquals(expected, parallel);
+        assertArrayEquals(expected, pooled);
+    }
+
+    /**
+     * Тестирование обработки ошибок в строках: запись NaN с номерами строк
+     * либо прерывание при первой ошибке.
+     */
+    @Test
+    void rowErrorPolicies() {
+        int rows = 5 * BatchJob.LEAF_ROWS;
+        double[] x = new double[rows];
+        for (int row = 0; row < rows; row++) {
+            x[row] = row % 1000 == 7 ? -1 : row;
+        }
+        CompiledExpression expression = MathExpression.compile("sqrt(x) + 1");
+        double[] out = new double[rows];
+
+        BatchResult result = expression.evaluateParallel(new double[][] {x}, out, RowErrorPolicy.WRITE_NAN);
+        assertEquals(rows / 1000 + 1, result.getErrorCount());
+        int[] failed = result.getFailedRows();
+        for (int i = 0; i < failed.length; i++) {
+            assertEquals(i * 1000 + 7, failed[i]);
+            assertTrue(Double.isNaN(out[failed[i]]));
+        }
+        assertEquals(Math.sqrt(8) + 1, out[8], 1e-12);
+
+        BatchResult sequential = expression.evaluateBatch(new double[][] {x}, new double[rows], RowErrorPolicy.WRITE_NAN);
+        assertArrayEquals(failed, sequential.getFailedRows());
+
+        assertThrows(ArithmeticException.class,
+                () -> expression.evaluateParallel(new double[][] {x}, new double[rows], RowErrorPolicy.FAIL_FAST));
+    }
+}
@@ -0,0 +1,92 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.lang.ref.WeakReference;
+
+/**
+ * Класс для тестирования компиляции программ в классы JVM.
+ * Результаты сгенерированного кода сравниваются с интерпретатором.
+ */
+class BytecodeCompilerTest {
+
+    /**
+     * Тестирование совпадения сгенерированного кода с интерпретатором
+     * для всех операторов и функций.
+     */
+    @Test
+    void generatedCodeMatchesInterpreter() {
+        Program program = MathExpression.compile(
+                "(sin(x) * 12 + cos(y) - tan(x)) / (y ^ 2 + 1) - sqrt(y) * log(y) + -x").getProgram();
+        ScalarEvaluator evaluator = BytecodeCompiler.compile(program);
+        assertNotNull(evaluator);
+
+        double[] stack = new double[program.maxDepth];
+        for (int i = 1; i < 100; i++) {
+            double[] slots = {i * 3.7 - 90, i * 0.25};
+            assertEquals(program.interpret(slots, stack, 0), evaluator.evaluate(slots));
+        }
+    }
+
+    /**
+     * Тестирование ошибок в сгенерированном коде.
+     */
+    @Test
+    void generatedCodeErrors() {
+        ScalarEvaluator division = BytecodeCompiler.compile(MathExpression.compile("x / (y - 1)").getProgram());
+        assertThrows(ArithmeticException.class, () -> division.evaluate(new double[] {1, 1}));
+        ScalarEvaluator root = BytecodeCompiler.compile(MathExpression.compile("sqrt(x)").getProgram());
+        assertThrows(ArithmeticException.class, () -> root.evaluate(new double[] {-1}));
+    }
+
+    /**
+     * Тестирование загрузки переменных с большими номерами слотов.
+     */
+    @Test
+    void manySlots() {
+        Program.Builder builder = new Program.Builder();
+        int[] slots = {0, 5, 6, 127, 128, 32767, 32768};
+        double[] values = new double[40_000];
+        double expected = 0;
+        builder.constant(0);
+        for (int slot : slots) {
+            values[slot] = slot + 0.5;
+            expected += slot + 0.5;
+            builder.load(slot);
+            builder.binary(Program.ADD);
+        }
+        ScalarEvaluator evaluator = BytecodeCompiler.compile(builder.build(TrigPrecision.STRICT));
+        assertEquals(expected, evaluator.evaluate(values));
+    }
+
+    /**
+     * Тестирование автоматического переключения на сгенерированный код после порога вычислений.
+     */
+    @Test
+    void switchesAfterThreshold() {
+        CompiledExpression expression = MathExpression.compile("x * 2 + 1");
+        assertFalse(expression.getProgram().isCompiled());
+        for (int i = 0; i <= BytecodeCompiler.THRESHOLD + 1; i++) {
+            assertEquals(i * 2 + 1, expression.evaluate((double) i));
+        }
+        assertTrue(expression.getProgram().isCompiled());
+        assertEquals(7, expression.bind("x").evaluate(3));
+    }
+
+    /**
+     * Тестирование выгрузки сгенерированного класса, когда на вычислитель не остаётся ссылок.
+     */
+    @Test
+    void generatedClassIsCollectable() throws InterruptedException {
+        ScalarEvaluator evaluator = BytecodeCompiler.compile(MathExpression.compile("x + 1").getProgram());
+        WeakReference<Class<?>> generatedClass = new WeakReference<>(evaluator.getClass());
+        assertTrue(evaluator.getClass().isHidden());
+        evaluator = null;
+
+        for (int i = 0; i < 50 && generatedClass.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(generatedClass.get());
+    }
+}
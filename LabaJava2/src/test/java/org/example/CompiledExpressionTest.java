@@ -0,0 +1,135 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Класс для тестирования скомпилированных выражений.
+ * Проверяет, что однократно разобранное выражение вычисляется так же,
+ * как {@link MathExpression#calculate(String, Map)}.
+ */
+class CompiledExpressionTest {
+
+    private final Map<String, Double> testVariables = new HashMap<>();
+
+    /**
+     * Тестирование повторного вычисления одного выражения
+     * с разными значениями переменных.
+     */
+    @Test
+    void reuseWithDifferentVariables() {
+        CompiledExpression expression = MathExpression.compile("x * 2 + y");
+        for (int i = 0; i < 10; i++) {
+            testVariables.put("x", (double) i);
+            testVariables.put("y", 1.0);
+            assertEquals(i * 2 + 1, expression.evaluate(testVariables), 0.001);
+        }
+    }
+
+    /**
+     * Тестирование назначения слотов переменным в порядке первого появления.
+     */
+    @Test
+    void variableSlotsOrder() {
+        CompiledExpression expression = MathExpression.compile("b + a * b + sin(c)");
+        assertEquals(List.of("b", "a", "c"), expression.getVariableNames());
+        assertEquals(List.of(), MathExpression.compile("2 + 2").getVariableNames());
+    }
+
+    /**
+     * Тестирование совпадения результата с прямым вычислением строки.
+     */
+    @Test
+    void sameResultAsCalculate() {
+        testVariables.put("base", 2.0);
+        testVariables.put("angle", 30.0);
+        String source = "(sin(angle) * 10 + cos(angle) * 5) / (base ^ 2) + sqrt(9)";
+        assertEquals(MathExpression.calculate(source, testVariables),
+                MathExpression.compile(source).evaluate(testVariables));
+        assertEquals(source, MathExpression.compile(source).getSource());
+    }
+
+    /**
+     * Тестирование ошибок: синтаксические ошибки выявляются при компиляции,
+     * отсутствие значения переменной - при вычислении.
+     */
+    @Test
+    void errorsAtCompileAndEvaluate() {
+        assertThrows(IllegalArgumentException.class, () -> MathExpression.compile("2 + * 3"));
+        assertThrows(IllegalArgumentException.class, () -> MathExpression.compile("tang(45)"));
+
+        CompiledExpression expression = MathExpression.compile("x / y");
+        testVariables.put("x", 1.0);
+        assertThrows(IllegalArgumentException.class, () -> expression.evaluate(testVariables));
+        testVariables.put("y", 0.0);
+        assertThrows(ArithmeticException.class, () -> expression.evaluate(testVariables));
+    }
+
+    /**
+     * Тестирование унарного минуса и его приоритета относительно степени.
+     */
+    @Test
+    void unaryMinusPriority() {
+        assertEquals(-4, MathExpression.calculate("-2 ^ 2", testVariables), 0.001);
+        assertEquals(0.5, MathExpression.calculate("2 ^ -1", testVariables), 0.001);
+        assertEquals(5, MathExpression.calculate("-(2 - 7)", testVariables), 0.001);
+    }
+
+    /**
+     * Тестирование привязки позиционных значений к слотам:
+     * порядок имён может отличаться от порядка слотов, лишние имена пропускаются,
+     * а отсутствующие переменные обнаруживаются при привязке.
+     */
+    @Test
+    void bindPositionalValues() {
+        CompiledExpression expression = MathExpression.compile("x - y * 2");
+        assertEquals(0, expression.getSlot("x"));
+        assertEquals(-1, expression.getSlot("z"));
+
+        VariableFrame frame = expression.bind("y", "unused", "x");
+        assertEquals(3, frame.getWidth());
+        assertEquals(4, frame.evaluate(3, 100, 10), 0.001);
+        assertEquals(-1, frame.evaluate(1, 100, 1), 0.001);
+        assertEquals(-6, expression.newFrame().evaluate(2, 4), 0.001);
+
+        assertThrows(IllegalArgumentException.class, () -> expression.bind("x"));
+        assertThrows(IllegalArgumentException.class, () -> expression.bind("x", "y", "x"));
+        assertThrows(IllegalArgumentException.class, () -> frame.evaluate(1, 2));
+    }
+
+    /**
+     * Тестирование одновременного вычисления одного выражения из нескольких потоков.
+     */
+    @Test
+    void concurrentEvaluation() throws Exception {
+        CompiledExpression expression = MathExpression.compile("x * x - 1");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final double x = t;
+                results.add(executor.submit(() -> {
+                    Map<String, Double> variables = Map.of("x", x);
+                    for (int i = 0; i < 10_000; i++) {
+                        if (expression.evaluate(variables) != x * x - 1) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
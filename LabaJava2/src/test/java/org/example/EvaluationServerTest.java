@@ -0,0 +1,185 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Класс для тестирования сервера вычисления выражений.
+ * Нагрузочный тест запускает несколько клиентов, одновременно отправляющих запросы.
+ */
+class EvaluationServerTest {
+
+    private EvaluationServer server;
+    private HttpClient client;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new EvaluationServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+        client = HttpClient.newHttpClient();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + path))
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Тестирование регистрации и вычисления одиночных и пакетных запросов.
+     */
+    @Test
+    void singleAndBatchedRequests() throws Exception {
+        HttpResponse<String> registered = send("PUT", "/formulas/ratio", "x / (y - 1) + 2");
+        assertEquals(200, registered.statusCode());
+        assertEquals("x,y", registered.body().trim());
+
+        HttpResponse<String> single = send("POST", "/evaluate/ratio", "6,4");
+        assertEquals(200, single.statusCode());
+        assertEquals("4.0", single.body().trim());
+
+        HttpResponse<String> batch = send("POST", "/evaluate/ratio", "6,4\n1,1\n\n-3,2\n");
+        assertEquals(200, batch.statusCode());
+        assertEquals(List.of("4.0", "error", "-1.0"), batch.body().lines().collect(Collectors.toList()));
+    }
+
+    /**
+     * Тестирование ответов на некорректные запросы.
+     */
+    @Test
+    void invalidRequests() throws Exception {
+        assertEquals(400, send("PUT", "/formulas/bad", "x +").statusCode());
+        assertEquals(404, send("POST", "/evaluate/missing", "1").statusCode());
+        assertEquals(405, send("GET", "/evaluate/missing", "").statusCode());
+
+        send("PUT", "/formulas/sum", "a + b");
+        assertEquals(400, send("POST", "/evaluate/sum", "1").statusCode());
+        assertEquals(400, send("POST", "/evaluate/sum", "1,abc").statusCode());
+        assertEquals(400, send("POST", "/evaluate/sum",
+                "1,2\n".repeat(EvaluationServer.MAX_BODY_SIZE / 4 + 1)).statusCode());
+    }
+
+    /**
+     * Нагрузочный тест: одновременные клиенты получают верные результаты,
+     * а строки одновременных запросов вычисляются общими пакетами.
+     */
+    @Test
+    void concurrentLoad() throws Exception {
+        send("PUT", "/formulas/load", "x * y + sin(x) - 1 / (y + 1)");
+        send("PUT", "/formulas/same", "x * y + sin(x) - 1 / (y + 1)");
+        CompiledExpression expected = MathExpression.compile("x * y + sin(x) - 1 / (y + 1)");
+
+        int clients = 16;
+        int requests = 100;
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int c = 0; c < clients; c++) {
+                int client = c;
+                results.add(pool.submit(() -> {
+                    int checked = 0;
+                    for (int r = 0; r < requests; r++) {
+                        double x = client + r * 0.5;
+                        double y = r % 7;
+                        String path = r % 2 == 0 ? "/evaluate/load" : "/evaluate/same";
+                        HttpResponse<String> response = send("POST", path, x + "," + y + "\n" + y + "," + x);
+                        assertEquals(200, response.statusCode());
+                        List<String> lines = response.body().lines().collect(Collectors.toList());
+                        assertEquals(expected.evaluate(x, y), Double.parseDouble(lines.get(0)));
+                        assertEquals(expected.evaluate(y, x), Double.parseDouble(lines.get(1)));
+                        checked += 2;
+                    }
+                    return checked;
+                }));
+            }
+            int total = 0;
+            for (Future<Integer> result : results) {
+                total += result.get();
+            }
+            assertEquals(clients * requests * 2, total);
+        } finally {
+            pool.shutdown();
+        }
+
+        MicroBatcher load = server.getBatcher("load");
+        MicroBatcher same = server.getBatcher("same");
+        assertNotSame(load, same);
+        assertEquals(clients * requests * 2, load.getRowCount() + same.getRowCount());
+        assertTrue(load.getBatchCount() + same.getBatchCount() <= clients * requests);
+    }
+
+    /**
+     * Тестирование повторной регистрации: то же выражение сохраняет объединитель,
+     * другое выражение заменяет его.
+     */
+    @Test
+    void reregistration() throws Exception {
+        send("PUT", "/formulas/f", "x + 1");
+        MicroBatcher first = server.getBatcher("f");
+        send("PUT", "/formulas/f", "x + 1");
+        assertSame(first, server.getBatcher("f"));
+
+        assertEquals("x,y", send("PUT", "/formulas/f", "x * y").body().trim());
+        MicroBatcher second = server.getBatcher("f");
+        assertNotSame(first, second);
+        assertEquals(2, second.getWidth());
+        assertEquals("6.0", send("POST", "/evaluate/f", "2,3").body().trim());
+    }
+
+    /**
+     * Тестирование объединения строк одновременных запросов в пакеты.
+     */
+    @Test
+    void microBatchesCombineConcurrentRequests() throws Exception {
+        MicroBatcher batcher = new MicroBatcher(MathExpression.compile("x / y"));
+        int threads = 8;
+        int requests = 500;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                results.add(pool.submit(() -> {
+                    for (int r = 0; r < requests; r++) {
+                        double y = (r + thread) % 5;
+                        MicroBatcher.Request request = batcher.evaluate(new double[] {r, y, thread, 2}, 2);
+                        assertEquals(y == 0, request.failed[0]);
+                        if (y != 0) {
+                            assertEquals(r / y, request.results[0]);
+                        }
+                        assertEquals(thread / 2.0, request.results[1]);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(threads * requests * 2, batcher.getRowCount());
+        assertTrue(batcher.getBatchCount() <= threads * requests);
+    }
+}
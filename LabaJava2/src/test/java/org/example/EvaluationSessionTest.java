@@ -0,0 +1,156 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Класс для тестирования инкрементального вычисления наборов выражений.
+ */
+class EvaluationSessionTest {
+
+    /**
+     * Возвращает имя переменной из букв по номеру.
+     */
+    private static String name(int index) {
+        return "v" + (char) ('a' + index / 26) + (char) ('a' + index % 26);
+    }
+
+    private static ExpressionSet set() {
+        Map<String, String> formulas = new LinkedHashMap<>();
+        formulas.put("radius", "x*x+y*y");
+        formulas.put("scaled", "(x*x+y*y) * k");
+        formulas.put("angle", "sin(k) + 1");
+        formulas.put("zero", "(x - x) * y");
+        formulas.put("quotient", "k / (x - 1)");
+        return MathExpression.compileSet(formulas);
+    }
+
+    /**
+     * Тестирование совпадения значений сеанса с полным вычислением после изменений.
+     */
+    @Test
+    void matchesFullEvaluation() {
+        ExpressionSet set = set();
+        EvaluationSession session = set.newSession(3, 4, 2);
+        double[][] updates = {{0, 5}, {2, 30}, {1, -1.5}, {0, 0.25}, {2, 2}};
+        double[] values = {3, 4, 2};
+        for (double[] update : updates) {
+            session.set((int) update[0], update[1]);
+            values[(int) update[0]] = update[1];
+            double[] expected = set.evaluate(values);
+            for (int output = 0; output < expected.length; output++) {
+                assertEquals(expected[output], session.get(output));
+            }
+        }
+        assertEquals(2, session.getVariable(2));
+    }
+
+    /**
+     * Тестирование того, что пересчитываются только зависящие от переменной узлы
+     * и сообщаются только изменившиеся результаты.
+     */
+    @Test
+    void recomputesOnlyDirtyPath() {
+        EvaluationSession session = set().newSession(3, 4, 2);
+
+        long before = session.recomputations;
+        assertArrayEquals(new int[] {1, 2, 4}, session.set("k", 90));
+        assertEquals(2.0, session.get("angle"));
+        // k, k*(...), sin(k), sin(k)+1, k/(x-1)
+        assertEquals(5, session.recomputations - before);
+
+        assertArrayEquals(new int[0], session.set("k", 90));
+        assertArrayEquals(new int[] {0, 1, 4}, session.set("x", 5));
+        assertEquals(0.0, session.get("zero"));
+
+        Map<String, Double> variables = new HashMap<>();
+        variables.put("x", 6.0);
+        variables.put("y", 1.0);
+        assertArrayEquals(new int[] {0, 1, 4}, session.set(variables));
+        assertEquals(37, session.get("radius"));
+        assertThrows(IllegalArgumentException.class, () -> session.set("z", 1));
+    }
+
+    /**
+     * Тестирование прекращения пересчёта, когда значение узла не изменилось.
+     */
+    @Test
+    void unchangedValuesStopPropagation() {
+        Map<String, String> formulas = new LinkedHashMap<>();
+        formulas.put("sign", "(x - x) * y + 1");
+        formulas.put("other", "y * 2");
+        EvaluationSession session = MathExpression.compileSet(formulas).newSession(1, 3);
+
+        long before = session.recomputations;
+        assertArrayEquals(new int[0], session.set("x", 2));
+        // x и x - x, но не их родители
+        assertEquals(2, session.recomputations - before);
+    }
+
+    /**
+     * Тестирование ошибок: результат с ошибкой не мешает остальным и восстанавливается.
+     */
+    @Test
+    void errorsPropagateToDependentOutputs() {
+        EvaluationSession session = set().newSession(1, 4, 2);
+        assertTrue(session.isFailed(4));
+        assertThrows(ArithmeticException.class, () -> session.get("quotient"));
+        assertEquals(17, session.get("radius"));
+
+        assertArrayEquals(new int[] {0, 1, 4}, session.set("x", 2));
+        assertFalse(session.isFailed(4));
+        assertEquals(2, session.get("quotient"));
+
+        assertArrayEquals(new int[] {0, 1, 4}, session.set("x", 1));
+        assertTrue(session.isFailed(4));
+        assertArrayEquals(new int[] {1, 2}, session.set("k", 3));
+        assertTrue(session.isFailed(4));
+    }
+
+    /**
+     * Тестирование стоимости обновления в большом наборе выражений.
+     */
+    @Test
+    void updateCostDoesNotDependOnSetSize() {
+        Map<String, String> formulas = new LinkedHashMap<>();
+        for (int i = 0; i < 200; i++) {
+            formulas.put("f" + i, "(" + name(i) + " * b + c) / (b + " + (i + 1) + ")");
+        }
+        ExpressionSet set = MathExpression.compileSet(formulas);
+        double[] values = new double[set.getVariableNames().size()];
+        values[set.getSlot("b")] = 1;
+        EvaluationSession session = set.newSession(values);
+
+        long before = session.recomputations;
+        int[] changed = session.set(name(17), 3);
+        assertArrayEquals(new int[] {17}, changed);
+        assertTrue(session.recomputations - before <= 4);
+        assertEquals(3.0 / 19, session.get("f17"), 1e-15);
+
+        assertArrayEquals(new int[] {17}, session.set("b", 2));
+        assertEquals(200, session.set("c", 1).length);
+        assertThrows(IllegalArgumentException.class, () -> set.newSession(1, 2));
+    }
+
+    /**
+     * Тестирование сеанса для длинной плоской суммы, глубина графа которой
+     * равна количеству слагаемых.
+     */
+    @Test
+    void longFlatFormula() {
+        StringBuilder formula = new StringBuilder("x");
+        for (int i = 1; i < 12_000; i++) {
+            formula.append(" + x * ").append(i % 100 + 1);
+        }
+        Map<String, String> formulas = new LinkedHashMap<>();
+        formulas.put("sum", formula.toString());
+        EvaluationSession session = MathExpression.compileSet(formulas).newSession(1);
+
+        double expected = MathExpression.compile(formula.toString()).evaluate(2.0);
+        session.set("x", 2);
+        assertEquals(expected, session.get("sum"), 0);
+    }
+}
@@ -0,0 +1,121 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.HashMap;
+
+/**
+ * Класс для тестирования кэша скомпилированных выражений.
+ * Проверяет нормализацию пробелов, счётчики обращений и ограничение размера.
+ */
+class ExpressionCacheTest {
+
+    /**
+     * Тестирование удаления незначащих пробелов.
+     */
+    @Test
+    void whitespaceNormalization() {
+        assertEquals("5+3", ExpressionCache.normalize("5 + 3"));
+        assertEquals("5+3", ExpressionCache.normalize("  5+3 "));
+        assertEquals("sin(x)*2", ExpressionCache.normalize("sin( x ) * 2"));
+        assertEquals("2 3", ExpressionCache.normalize("2   3"));
+        assertEquals("x (1)", ExpressionCache.normalize("x  (1)"));
+    }
+
+    /**
+     * Тестирование общей записи для выражений, отличающихся только пробелами.
+     */
+    @Test
+    void sharedEntryForEquivalentStrings() {
+        ExpressionCache cache = new ExpressionCache(16, ExpressionCache.Eviction.LRU);
+        CompiledExpression first = cache.get("5 + 3");
+        assertSame(first, cache.get("5+3"));
+        assertSame(first, cache.get(" 5 +  3"));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.size());
+        assertEquals(8, first.evaluate(new HashMap<>()), 0.001);
+    }
+
+    /**
+     * Тестирование вытеснения давно не использованных записей.
+     */
+    @Test
+    void lruEviction() {
+        ExpressionCache cache = new ExpressionCache(1, ExpressionCache.Eviction.LRU);
+        CompiledExpression first = cache.get("1 + 1");
+        cache.get("2 + 2");
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNotSame(first, cache.get("1 + 1"));
+    }
+
+    /**
+     * Тестирование того, что частые выражения не вытесняются потоком однократных,
+     * идущим вперемешку с ними.
+     */
+    @Test
+    void tinyLfuKeepsFrequentEntries() {
+        ExpressionCache cache = new ExpressionCache(64, ExpressionCache.Eviction.TINY_LFU);
+        String[] hot = new String[32];
+        for (int i = 0; i < hot.length; i++) {
+            hot[i] = "x + " + i;
+            for (int k = 0; k < 5; k++) {
+                cache.get(hot[i]);
+            }
+        }
+        for (int i = 0; i < 10_000; i++) {
+            cache.get("y * " + i);
+            if (i % 4 == 0) {
+                cache.get(hot[i / 4 % hot.length]);
+            }
+        }
+        assertTrue(cache.size() <= 64);
+
+        long misses = cache.getMissCount();
+        for (String expression : hot) {
+            cache.get(expression);
+        }
+        assertTrue(cache.getMissCount() - misses < hot.length / 2,
+                "Промахов: " + (cache.getMissCount() - misses));
+    }
+
+    /**
+     * Тестирование того, что некорректные выражения не сохраняются в кэше.
+     */
+    @Test
+    void invalidExpressionsAreNotCached() {
+        ExpressionCache cache = new ExpressionCache(16, ExpressionCache.Eviction.LRU);
+        assertThrows(IllegalArgumentException.class, () -> cache.get("2 + * 3"));
+        assertEquals(0, cache.size());
+        assertThrows(IllegalArgumentException.class, () -> new ExpressionCache(0, ExpressionCache.Eviction.LRU));
+    }
+
+    /**
+     * Тестирование смещения ошибки и исходной строки: компилируется строка вызывающего,
+     * а не ключ без пробелов.
+     */
+    @Test
+    void originalTextIsCompiled() {
+        ExpressionParseException error = assertThrows(ExpressionParseException.class,
+                () -> MathExpression.calculate("5    +    * 3", new HashMap<>()));
+        assertEquals(10, error.getOffset());
+
+        ExpressionCache cache = new ExpressionCache(16, ExpressionCache.Eviction.LRU);
+        CompiledExpression compiled = cache.get("x  *  2");
+        assertEquals("x  *  2", compiled.getSource());
+        assertSame(compiled, cache.get("x*2"));
+    }
+
+    /**
+     * Тестирование использования общего кэша методом calculate.
+     */
+    @Test
+    void calculateUsesSharedCache() {
+        ExpressionCache cache = MathExpression.getCache();
+        long hits = cache.getHitCount();
+        MathExpression.calculate("17 * 3 - 1", new HashMap<>());
+        MathExpression.calculate("17*3-1", new HashMap<>());
+        assertTrue(cache.getHitCount() > hits);
+    }
+}
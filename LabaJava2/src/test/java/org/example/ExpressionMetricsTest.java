@@ -0,0 +1,178 @@
+package org.example;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Класс для тестирования метрик разбора и вычисления выражений.
+ */
+class ExpressionMetricsTest {
+
+    private final ExpressionMetrics metrics = ExpressionMetrics.getInstance();
+
+    @BeforeEach
+    void enable() {
+        metrics.reset();
+        metrics.setEnabled(true);
+    }
+
+    @AfterEach
+    void disable() {
+        metrics.setEnabled(false);
+        metrics.reset();
+    }
+
+    /**
+     * Тестирование процентилей гистограммы и её погрешности.
+     */
+    @Test
+    void histogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500_500, histogram.getMean(), 1e-9);
+        assertEquals(1_000_000, histogram.getMax());
+        assertEquals(500_000, histogram.getPercentile(50), 500_000.0 / LatencyHistogram.SUB_BUCKETS);
+        assertEquals(990_000, histogram.getPercentile(99), 990_000.0 / LatencyHistogram.SUB_BUCKETS);
+        assertTrue(histogram.getPercentile(99) >= 990_000);
+        assertEquals(1_000_000, histogram.getPercentile(100));
+
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getMax());
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+
+        for (int i = 0; i < LatencyHistogram.index(1L << 40); i++) {
+            long upper = LatencyHistogram.upperBound(i);
+            assertEquals(i, LatencyHistogram.index(upper));
+            assertEquals(i + 1, LatencyHistogram.index(upper + 1));
+        }
+    }
+
+    /**
+     * Тестирование счётчиков разбора, одиночных и пакетных вычислений по выражению.
+     */
+    @Test
+    void countsPerExpressionAndPhase() {
+        CompiledExpression expression = MathExpression.compile("x / y");
+        VariableFrame frame = expression.bind("y", "x");
+        for (int i = 1; i <= 10; i++) {
+            expression.evaluate(i, 2);
+            frame.evaluate(2, i);
+        }
+        expression.evaluate(Map.of("x", 1.0, "y", 4.0));
+        assertThrows(ArithmeticException.class, () -> expression.evaluate(1, 0));
+        assertThrows(IllegalArgumentException.class, () -> expression.evaluate(Map.of("x", 1.0)));
+
+        double[] out = new double[5];
+        BatchResult result = expression.evaluateBatch(new double[][] {{1, 2, 3, 4, 5}, {1, 0, 1, 0, 1}}, out,
+                RowErrorPolicy.WRITE_NAN);
+        assertEquals(2, result.getErrorCount());
+        assertThrows(IllegalArgumentException.class, () -> MathExpression.compile("x +"));
+
+        assertEquals(2, metrics.getParseCount());
+        assertEquals(1, metrics.getParseErrorCount());
+        assertEquals(22 + 5, metrics.getEvaluationCount());
+        assertEquals(27, metrics.getEvaluationCount("x / y"));
+        assertEquals(2 + 2, metrics.getEvaluationErrorCount());
+        assertEquals(1, metrics.getErrorCount("ArithmeticException", "Деление на ноль"));
+        assertEquals(1, metrics.getErrorCount("IllegalArgumentException", "Переменная не найдена"));
+        assertTrue(metrics.getEvaluationP99Nanos() >= metrics.getEvaluationP50Nanos());
+
+        String dump = metrics.dump();
+        assertTrue(dump.contains("включены"), dump);
+        assertTrue(dump.contains("  x / y\n"), dump);
+        assertTrue(dump.contains("ArithmeticException: Деление на ноль = 1"), dump);
+        assertTrue(dump.contains("строк в пакетах: 5"), dump);
+
+        metrics.reset();
+        assertEquals(0, metrics.getEvaluationCount("x / y"));
+    }
+
+    /**
+     * Тестирование того, что выключенные метрики ничего не считают.
+     */
+    @Test
+    void disabledMetricsRecordNothing() {
+        metrics.setEnabled(false);
+        CompiledExpression expression = MathExpression.compile("a * 2");
+        expression.evaluate(3);
+        MathExpression.calculate("a * 3", Map.of("a", 1.0));
+        assertThrows(ArithmeticException.class, () -> MathExpression.calculate("1 / a", Map.of("a", 0.0)));
+        assertEquals(0, metrics.getParseCount());
+        assertEquals(0, metrics.getEvaluationCount());
+        assertEquals(0, metrics.getEvaluationErrorCount());
+    }
+
+    /**
+     * Тестирование записи событий JDK Flight Recorder.
+     */
+    @Test
+    void flightRecorderEvents(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("metrics.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("org.example.ExpressionParse");
+            recording.enable("org.example.ExpressionBatch");
+            recording.enable("org.example.ExpressionError");
+            recording.start();
+
+            CompiledExpression expression = MathExpression.compile("sqrt(z) + 1");
+            assertThrows(ArithmeticException.class, () -> expression.evaluate(-1));
+            expression.evaluateBatch(new double[][] {{1, 4, -9}}, new double[3], RowErrorPolicy.WRITE_NAN);
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        RecordedEvent parse = find(events, "org.example.ExpressionParse");
+        assertEquals("sqrt(z) + 1", parse.getString("expression"));
+        assertNull(parse.getString("error"));
+        RecordedEvent batch = find(events, "org.example.ExpressionBatch");
+        assertEquals(3, batch.getInt("rows"));
+        assertEquals(1, batch.getInt("failedRows"));
+        RecordedEvent failure = find(events, "org.example.ExpressionError");
+        assertEquals("ArithmeticException", failure.getString("exception"));
+        assertEquals("sqrt из отрицательного числа невозможен", failure.getString("message"));
+    }
+
+    private static RecordedEvent find(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("Нет события " + name));
+    }
+
+    /**
+     * Тестирование управления метриками через JMX.
+     */
+    @Test
+    void managementBean() throws Exception {
+        metrics.registerMBean();
+        metrics.registerMBean();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(ExpressionMetrics.OBJECT_NAME);
+
+        MathExpression.compile("q + 1").evaluate(1);
+        assertEquals(1L, server.getAttribute(name, "EvaluationCount"));
+        assertEquals(true, server.getAttribute(name, "Enabled"));
+        String dump = (String) server.invoke(name, "dump", null, null);
+        assertTrue(dump.contains("q + 1"), dump);
+    }
+}
@@ -0,0 +1,139 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.Arrays;
+
+/**
+ * Класс для тестирования оптимизации выражений: свёртки констант,
+ * алгебраических тождеств и устранения общих подвыражений.
+ */
+class ExpressionOptimizerTest {
+
+    /**
+     * Подсчитывает количество операций с заданным кодом в программе.
+     */
+    private static int count(Program program, int opcode) {
+        int count = 0;
+        for (int pc = 0; pc < program.code.length; pc++) {
+            int current = program.code[pc];
+            if (current == opcode) {
+                count++;
+            }
+            if (current == Program.CONST || current == Program.LOAD
+                    || current == Program.STORE || current == Program.RECALL) {
+                pc++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Тестирование свёртки выражения из одних констант, включая вызовы функций.
+     */
+    @Test
+    void constantFolding() {
+        Program program = MathExpression.compile("(sin(90)*12+12)*2-8*8^2").getProgram();
+        assertArrayEquals(new int[] {Program.CONST, 0}, program.code);
+        assertEquals(-464, program.constants[0], 1e-9);
+
+        Program partial = MathExpression.compile("x * (2 + 3) - -4").getProgram();
+        assertEquals(2, count(partial, Program.CONST));
+        assertEquals(0, count(partial, Program.NEG));
+        assertEquals(19, MathExpression.compile("x * (2 + 3) - -4").evaluate(3.0), 1e-12);
+    }
+
+    /**
+     * Тестирование того, что ошибки в константных поддеревьях возникают при вычислении.
+     */
+    @Test
+    void foldingKeepsErrorsForEvaluation() {
+        CompiledExpression division = MathExpression.compile("x + 1 / 0");
+        assertThrows(ArithmeticException.class, () -> division.evaluate(1.0));
+        CompiledExpression root = MathExpression.compile("sqrt(-1) * x");
+        assertThrows(ArithmeticException.class, () -> root.evaluate(1.0));
+    }
+
+    /**
+     * Тестирование тождеств, сохраняющих значения IEEE 754.
+     */
+    @Test
+    void safeIdentities() {
+        assertArrayEquals(new int[] {Program.LOAD, 0}, MathExpression.compile("x * 1").getProgram().code);
+        assertArrayEquals(new int[] {Program.LOAD, 0}, MathExpression.compile("1 * x / 1 - 0").getProgram().code);
+        assertArrayEquals(new int[] {Program.LOAD, 0}, MathExpression.compile("x ^ 1").getProgram().code);
+        assertArrayEquals(new int[] {Program.CONST, 0}, MathExpression.compile("x ^ 0").getProgram().code);
+        assertEquals(1, MathExpression.compile("x ^ 0").evaluate(Double.NaN));
+
+        Program square = MathExpression.compile("x ^ 2").getProgram();
+        assertEquals(0, count(square, Program.POW));
+        assertEquals(1, count(square, Program.MUL));
+        assertEquals(0.0, MathExpression.compile("x ^ 2").evaluate(-0.0));
+    }
+
+    /**
+     * Тестирование того, что тождества, неверные для -0 и NaN, не применяются.
+     */
+    @Test
+    void unsafeIdentitiesAreKept() {
+        CompiledExpression sum = MathExpression.compile("x + 0");
+        assertEquals(1, count(sum.getProgram(), Program.ADD));
+        assertEquals(Double.doubleToRawLongBits(0.0), Double.doubleToRawLongBits(sum.evaluate(-0.0)));
+
+        CompiledExpression product = MathExpression.compile("x * 0");
+        assertEquals(1, count(product.getProgram(), Program.MUL));
+        assertTrue(Double.isNaN(product.evaluate(Double.POSITIVE_INFINITY)));
+    }
+
+    /**
+     * Тестирование однократного вычисления повторяющихся подвыражений
+     * во всех способах вычисления.
+     */
+    @Test
+    void commonSubexpressions() {
+        CompiledExpression expression = MathExpression.compile("sin(x) * (x * y + 1) + sin(x) / (x * y + 1)");
+        Program program = expression.getProgram();
+        assertEquals(1, count(program, Program.SIN));
+        assertEquals(2, count(program, Program.MUL));
+        assertEquals(2, program.temps);
+
+        double x = 30, y = 2;
+        double expected = Math.sin(Math.toRadians(x)) * (x * y + 1) + Math.sin(Math.toRadians(x)) / (x * y + 1);
+        assertEquals(expected, expression.evaluate(x, y), 1e-12);
+        assertEquals(expected, expression.bind("x", "y").evaluate(x, y), 1e-12);
+        assertEquals(expected, BytecodeCompiler.compile(program).evaluate(new double[] {x, y}), 1e-12);
+
+        double[] out = new double[BatchKernel.CHUNK + 3];
+        double[] xs = new double[out.length];
+        double[] ys = new double[out.length];
+        Arrays.fill(xs, x);
+        Arrays.fill(ys, y);
+        expression.evaluateBatch(new double[][] {xs, ys}, out);
+        for (double value : out) {
+            assertEquals(expected, value, 1e-12);
+        }
+    }
+
+    /**
+     * Тестирование оптимизации и построения программы для длинной плоской суммы:
+     * глубина дерева равна количеству слагаемых, и обход не должен переполнять стек потока.
+     */
+    @Test
+    void longFlatFormula() {
+        int terms = 12_000;
+        StringBuilder formula = new StringBuilder("x");
+        double x = 0.5;
+        double expected = x;
+        for (int i = 1; i < terms; i++) {
+            formula.append(i % 2 == 0 ? " + x * " : " - (x + 1) / ").append(i % 100 + 1);
+            expected = i % 2 == 0 ? expected + x * (i % 100 + 1) : expected - (x + 1) / (i % 100 + 1);
+        }
+        CompiledExpression expression = MathExpression.compile(formula.toString());
+        assertTrue(expression.getProgram().temps > 0);
+        assertEquals(expected, expression.evaluate(x), 1e-9 * Math.abs(expected));
+
+        double[] out = new double[3];
+        expression.evaluateBatch(new double[][] {{x, x, x}}, out);
+        assertEquals(expected, out[2], 1e-9 * Math.abs(expected));
+    }
+}
@@ -0,0 +1,165 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Класс для тестирования однопроходного разбора выражений.
+ */
+class ExpressionParserTest {
+
+    private static double evaluate(String expression, double... values) {
+        return MathExpression.compile(expression, TrigPrecision.STRICT).evaluate(values);
+    }
+
+    /**
+     * Тестирование выражений в аргументах функций и вложенных вызовов.
+     */
+    @Test
+    void expressionArguments() {
+        assertEquals(1, evaluate("sin(x + 1)", 89), 1e-12);
+        assertEquals(5, evaluate("sqrt(x*x + y*y)", 3, 4), 1e-12);
+        assertEquals(Math.sqrt(2), evaluate("sqrt(sin(90) * 2)"), 1e-12);
+        assertEquals(2, evaluate("sqrt(sqrt(sqrt(256)))"), 1e-12);
+        assertEquals(1, evaluate("-cos(-(x - 180))", 0), 1e-12);
+        assertEquals(Math.log(10) * 3, evaluate("log((1 + 9)) * 3"), 1e-12);
+    }
+
+    /**
+     * Тестирование приоритетов и унарного минуса.
+     */
+    @ParameterizedTest
+    @CsvSource({
+            "-2 ^ 2, -4",
+            "2 ^ -1, 0.5",
+            "2 ^ 3 ^ 2, 64",
+            "--3, 3",
+            "2 * -3 + 1, -5",
+            "5 - -2, 7",
+            "-(2 + 3) * 2, -10",
+            "2 ^ -3 ^ 2, 0.001953125",
+            "8 / 4 / 2, 1",
+            "10 - 4 - 3, 3",
+            ".5 + 1.25, 1.75",
+            "5. * 2, 10"
+    })
+    void priorities(String expression, double expected) {
+        assertEquals(expected, evaluate(expression), 1e-15);
+    }
+
+    /**
+     * Тестирование смещения и причины ошибок.
+     */
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "2 + * 3       | 4  | ожидается число, переменная или '('",
+            "(1 + 2        | 6  | ожидается ')'",
+            "(1 + 2))      | 7  | лишняя ')'",
+            "2 x           | 2  | ожидается оператор",
+            "tang(45)      | 0  | неизвестная функция 'tang'",
+            "sin(x, y)     | 5  | функция sin принимает один аргумент",
+            "1 + 2 # 3     | 6  | недопустимый символ '#'",
+            "1.2.3         | 0  | некорректное число",
+            "sqrt()        | 5  | ожидается число, переменная или '('",
+            "x -           | 3  | ожидается число, переменная или '('",
+            "sin (x)       | 4  | ожидается оператор"
+    })
+    void positionedErrors(String expression, int offset, String reason) {
+        ExpressionParseException error = assertThrows(ExpressionParseException.class,
+                () -> MathExpression.compile(expression));
+        assertEquals(offset, error.getOffset());
+        assertEquals(reason, error.getReason());
+        assertTrue(error.getMessage().contains("символ " + (offset + 1)), error.getMessage());
+    }
+
+    /**
+     * Тестирование точности разбора чисел по сравнению с {@link Double#parseDouble(String)}.
+     */
+    @Test
+    void numbersMatchParseDouble() {
+        Random random = new Random(7);
+        for (int i = 0; i < 10_000; i++) {
+            String number = random.nextInt(1_000_000) + "." + Math.abs(random.nextLong() % 1_000_000_000_000L);
+            assertEquals(Double.parseDouble(number), evaluate(number), number);
+        }
+        for (String number : List.of("0.1", "0.30000000000000004", "123456789012345678901234567890",
+                "0.000000000000000000000000123", "9007199254740993", "1.7976931348623157")) {
+            assertEquals(Double.parseDouble(number), evaluate(number), number);
+        }
+    }
+
+    /**
+     * Тестирование слотов переменных, общих для нескольких разборов.
+     */
+    @Test
+    void sharedSlots() {
+        Map<String, Integer> slots = new LinkedHashMap<>();
+        slots.put("y", 0);
+        MathExpression.parse("x + y * xy", slots);
+        MathExpression.parse("xy - z + x", slots);
+        assertEquals(List.of("y", "x", "xy", "z"), List.copyOf(slots.keySet()));
+        assertEquals(List.of(0, 1, 2, 3), List.copyOf(slots.values()));
+    }
+
+    /**
+     * Тестирование разбора длинных сгенерированных выражений со множеством переменных.
+     */
+    @Test
+    void longGeneratedFormula() {
+        StringBuilder formula = new StringBuilder("0");
+        int variables = 2000;
+        double[] values = new double[variables];
+        double expected = 0;
+        for (int i = 0; i < variables; i++) {
+            String name = "v" + (char) ('a' + i / 26 / 26 % 26) + (char) ('a' + i / 26 % 26) + (char) ('a' + i % 26);
+            formula.append(i % 2 == 0 ? " + " : " - ").append(name).append(" * ").append(i % 7 + 1);
+            values[i] = i * 0.25;
+            expected += (i % 2 == 0 ? 1 : -1) * values[i] * (i % 7 + 1);
+        }
+        assertTrue(formula.length() > 20_000);
+        CompiledExpression expression = MathExpression.compile(formula.toString());
+        assertEquals(variables, expression.getVariableNames().size());
+        assertEquals(expected, expression.evaluate(values), 1e-6);
+
+        StringBuilder nested = new StringBuilder("x");
+        for (int i = 0; i < 500; i++) {
+            nested.insert(0, "(sqrt(-(").append(") * -1) ^ 2)");
+        }
+        assertEquals(16, evaluate(nested.toString(), 16), 1e-9);
+    }
+
+    /**
+     * Тестирование глубокой вложенности скобок, функций и унарных минусов: разбор не использует
+     * стек потока, а ошибка в глубоко вложенном выражении возвращается со смещением.
+     */
+    @Test
+    void deepNesting() {
+        int depth = 20_000;
+        String parentheses = "(".repeat(depth) + "x" + ")".repeat(depth);
+        assertEquals(3, evaluate(parentheses, 3), 0);
+
+        StringBuilder sum = new StringBuilder("x");
+        for (int i = 0; i < 5001; i++) {
+            sum.insert(0, "(1 + -").append(")");
+        }
+        assertEquals(-2, evaluate(sum.toString(), 3), 0);
+
+        String calls = "abs(-".repeat(depth) + "x" + ")".repeat(depth);
+        assertEquals(2, evaluate(calls, -2), 0);
+
+        ExpressionParseException unclosed = assertThrows(ExpressionParseException.class,
+                () -> evaluate("(".repeat(depth) + "x" + ")".repeat(depth - 1)));
+        assertEquals(2 * depth, unclosed.getOffset());
+        assertEquals("ожидается ')'", unclosed.getReason());
+
+        ExpressionParseException operator = assertThrows(ExpressionParseException.class,
+                () -> evaluate("(".repeat(depth) + "x y" + ")".repeat(depth)));
+        assertEquals(depth + 2, operator.getOffset());
+    }
+}
@@ -0,0 +1,147 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Класс для тестирования вычисления наборов выражений.
+ */
+class ExpressionSetTest {
+
+    private static Map<String, String> formulas() {
+        Map<String, String> formulas = new LinkedHashMap<>();
+        formulas.put("radius", "x*x+y*y");
+        formulas.put("scaled", "(x*x+y*y) * k");
+        formulas.put("ratio", "x / (x*x + y*y)");
+        formulas.put("angle", "sin(k) + 1");
+        formulas.put("y", "y");
+        return formulas;
+    }
+
+    /**
+     * Тестирование совпадения результатов набора с отдельными выражениями.
+     */
+    @Test
+    void matchesSeparateExpressions() {
+        ExpressionSet set = MathExpression.compileSet(formulas());
+        assertEquals(List.of("radius", "scaled", "ratio", "angle", "y"), set.getOutputNames());
+        assertEquals(List.of("x", "y", "k"), set.getVariableNames());
+        assertEquals(2, set.getOutputIndex("ratio"));
+        assertEquals(-1, set.getOutputIndex("z"));
+
+        double[] values = {3, 4, 2};
+        double[] results = set.evaluate(values);
+        int output = 0;
+        for (String formula : formulas().values()) {
+            CompiledExpression single = MathExpression.compile(formula);
+            double[] slots = new double[single.getVariableNames().size()];
+            for (int slot = 0; slot < slots.length; slot++) {
+                slots[slot] = values[set.getSlot(single.getVariableNames().get(slot))];
+            }
+            assertEquals(single.evaluate(slots), results[output++]);
+        }
+        assertEquals(25, results[0]);
+        assertEquals(50, results[1]);
+
+        Map<String, Double> variables = new HashMap<>();
+        variables.put("x", 3.0);
+        variables.put("y", 4.0);
+        variables.put("k", 2.0);
+        assertArrayEquals(results, set.evaluate(variables));
+        variables.remove("k");
+        assertThrows(IllegalArgumentException.class, () -> set.evaluate(variables));
+    }
+
+    /**
+     * Тестирование однократного вычисления подвыражений, общих для разных выражений.
+     */
+    @Test
+    void sharedSubexpressionsAreEvaluatedOnce() {
+        Program program = MathExpression.compileSet(formulas()).getProgram();
+        int products = 0;
+        int outputs = 0;
+        for (int pc = 0; pc < program.code.length; pc++) {
+            int opcode = program.code[pc];
+            if (opcode == Program.MUL) products++;
+            if (opcode == Program.OUTPUT) outputs++;
+            if (opcode == Program.CONST || opcode == Program.LOAD || opcode == Program.STORE
+                    || opcode == Program.RECALL || opcode == Program.OUTPUT) {
+                pc++;
+            }
+        }
+        assertEquals(3, products);
+        assertEquals(5, outputs);
+        assertEquals(5, program.outputs);
+    }
+
+    /**
+     * Тестирование пакетного вычисления набора.
+     */
+    @Test
+    void batchMatchesScalar() {
+        ExpressionSet set = MathExpression.compileSet(formulas());
+        int rows = BatchKernel.CHUNK * 2 + 7;
+        double[][] columns = new double[3][rows];
+        for (int i = 0; i < rows; i++) {
+            columns[0][i] = i * 0.5 + 1;
+            columns[1][i] = i % 17 - 8;
+            columns[2][i] = i * 1.5;
+        }
+        double[][] outs = new double[5][rows];
+        set.evaluateBatch(columns, outs);
+
+        double[] row = new double[5];
+        for (int i = 0; i < rows; i++) {
+            set.evaluate(new double[] {columns[0][i], columns[1][i], columns[2][i]}, row);
+            for (int output = 0; output < row.length; output++) {
+                assertEquals(row[output], outs[output][i]);
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> set.evaluateBatch(columns, new double[4][rows]));
+    }
+
+    /**
+     * Тестирование совпадения сгенерированного кода набора с интерпретатором.
+     */
+    @Test
+    void generatedCodeMatchesInterpreter() {
+        Map<String, String> formulas = formulas();
+        formulas.put("quotient", "k / (x - 1)");
+        ExpressionSet interpreted = MathExpression.compileSet(formulas);
+        ExpressionSet compiled = MathExpression.compileSet(formulas);
+        assertTrue(compiled.getProgram().compileBytecode());
+
+        for (int i = 0; i < 50; i++) {
+            double[] values = {i * 0.75 + 2, i - 25, i * 3.5};
+            assertArrayEquals(interpreted.evaluate(values), compiled.evaluate(values));
+        }
+        assertThrows(ArithmeticException.class, () -> compiled.evaluate(1, 2, 3));
+    }
+
+    /**
+     * Тестирование ошибок компиляции и вычисления набора.
+     */
+    @Test
+    void errors() {
+        assertThrows(IllegalArgumentException.class, () -> MathExpression.compileSet(new LinkedHashMap<>()));
+
+        Map<String, String> invalid = new LinkedHashMap<>();
+        invalid.put("ok", "x + 1");
+        invalid.put("bad", "x +");
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                () -> MathExpression.compileSet(invalid));
+        assertTrue(error.getMessage().contains("bad"));
+
+        Map<String, String> division = new LinkedHashMap<>();
+        division.put("sum", "x + y");
+        division.put("quotient", "x / y");
+        ExpressionSet set = MathExpression.compileSet(division);
+        assertArrayEquals(new double[] {3, 2}, set.evaluate(2, 1));
+        assertThrows(ArithmeticException.class, () -> set.evaluate(2, 0));
+        assertThrows(IllegalArgumentException.class, () -> set.evaluate(2));
+    }
+}
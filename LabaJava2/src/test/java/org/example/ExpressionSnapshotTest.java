@@ -0,0 +1,151 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Класс для тестирования сохранения и загрузки снимков выражений.
+ */
+class ExpressionSnapshotTest {
+
+    private static final double[] VALUES = {30, 2.5, 4};
+
+    private static List<CompiledExpression> expressions() {
+        return List.of(
+                MathExpression.compile("sin(x) * y + sqrt(z) / 2", TrigPrecision.EXACT_ANGLES),
+                MathExpression.compile("(x + y) * (x + y) - log(z) ^ 2", TrigPrecision.STRICT),
+                MathExpression.compile("(sin(90)*12+12)*2-8*8^2"),
+                MathExpression.compile("угол * 2 + cos(угол)", TrigPrecision.FAST));
+    }
+
+    private static void assertSameExpressions(List<CompiledExpression> expected, List<CompiledExpression> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getSource(), actual.get(i).getSource());
+            assertEquals(expected.get(i).getTrigPrecision(), actual.get(i).getTrigPrecision());
+            assertEquals(expected.get(i).getVariableNames(), actual.get(i).getVariableNames());
+            assertEquals(expected.get(i).evaluate(VALUES), actual.get(i).evaluate(VALUES), 0);
+        }
+    }
+
+    /**
+     * Переписывает версию формата в файле и пересчитывает контрольную сумму.
+     */
+    private static void rewriteVersion(Path file, int version) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(4, version);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), ExpressionSnapshot.HEADER_SIZE, buffer.capacity() - ExpressionSnapshot.HEADER_SIZE);
+        buffer.putInt(12, (int) crc.getValue());
+        Files.write(file, buffer.array());
+    }
+
+    /**
+     * Тестирование загрузки сохранённых выражений без повторного разбора.
+     */
+    @Test
+    void roundTrip(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("formulas.snapshot");
+        List<CompiledExpression> expected = expressions();
+        ExpressionSnapshot.write(file, expected);
+        List<CompiledExpression> loaded = ExpressionSnapshot.read(file);
+        assertSameExpressions(expected, loaded);
+        assertArrayEquals(expected.get(1).getProgram().code, loaded.get(1).getProgram().code);
+        assertFalse(Files.exists(directory.resolve("formulas.snapshot.tmp")));
+
+        ExpressionSnapshot.write(file, List.of());
+        assertEquals(List.of(), ExpressionSnapshot.read(file));
+    }
+
+    /**
+     * Тестирование компиляции в байт-код при первом вычислении программ,
+     * которые были скомпилированы до сохранения.
+     */
+    @Test
+    void compiledProgramsStayHot(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("formulas.snapshot");
+        CompiledExpression hot = MathExpression.compile("x * y + z");
+        hot.getProgram().compileBytecode();
+        CompiledExpression cold = MathExpression.compile("x - y - z");
+        ExpressionSnapshot.write(file, List.of(hot, cold));
+
+        List<CompiledExpression> loaded = ExpressionSnapshot.read(file);
+        assertFalse(loaded.get(0).getProgram().isCompiled());
+        assertEquals(79, loaded.get(0).evaluate(VALUES), 0);
+        assertEquals(79, loaded.get(0).evaluate(VALUES), 0);
+        assertTrue(loaded.get(0).getProgram().isCompiled());
+        loaded.get(1).evaluate(VALUES);
+        assertFalse(loaded.get(1).getProgram().isCompiled());
+    }
+
+    /**
+     * Тестирование связывания функций из {@link FunctionRegistry} по имени при загрузке.
+     */
+    @Test
+    void registeredFunctions(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("functions.snapshot");
+        CompiledExpression expression = MathExpression.compile("min(x, y) * abs(z - 10) + exp(x / 30)");
+        ExpressionSnapshot.write(file, List.of(expression));
+        CompiledExpression loaded = ExpressionSnapshot.read(file).get(0);
+        assertArrayEquals(expression.getProgram().functions, loaded.getProgram().functions);
+        assertEquals(expression.evaluate(VALUES), loaded.evaluate(VALUES), 0);
+    }
+
+    /**
+     * Тестирование повторного разбора выражений из снимка другой версии формата.
+     */
+    @Test
+    void otherVersionIsReparsed(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("formulas.snapshot");
+        List<CompiledExpression> expected = expressions();
+        ExpressionSnapshot.write(file, expected);
+        rewriteVersion(file, ExpressionSnapshot.VERSION + 1);
+        assertSameExpressions(expected, ExpressionSnapshot.read(file));
+    }
+
+    /**
+     * Тестирование обнаружения повреждённых и посторонних файлов.
+     */
+    @Test
+    void corruptedFiles(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("formulas.snapshot");
+        ExpressionSnapshot.write(file, expressions());
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 3] ^= 1;
+        Files.write(file, bytes);
+        IOException error = assertThrows(IOException.class, () -> ExpressionSnapshot.read(file));
+        assertTrue(error.getMessage().startsWith("Контрольная сумма снимка не совпадает"), error.getMessage());
+
+        Files.writeString(file, "x,y\n1,2\n3,4\n");
+        assertThrows(IOException.class, () -> ExpressionSnapshot.read(file));
+        Files.write(file, new byte[3]);
+        assertThrows(IOException.class, () -> ExpressionSnapshot.read(file));
+    }
+
+    /**
+     * Тестирование заполнения кэша выражениями из снимка.
+     */
+    @Test
+    void preloadCache(@TempDir Path directory) throws IOException {
+        ExpressionCache source = new ExpressionCache(16, ExpressionCache.Eviction.LRU);
+        source.get("x + y");
+        source.get("x * y");
+        Path file = directory.resolve("cache.snapshot");
+        ExpressionSnapshot.write(file, source.values());
+
+        ExpressionCache cache = new ExpressionCache(16, ExpressionCache.Eviction.LRU);
+        cache.putAll(ExpressionSnapshot.read(file));
+        assertEquals(2, cache.size());
+        assertEquals(12, cache.get("x * y").evaluate(3, 4), 0);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+    }
+}
@@ -0,0 +1,170 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Класс для тестирования пакетного вычисления выражений по столбцам {@code float}.
+ * Результаты сравниваются с пакетным вычислением в double тех же значений
+ * с погрешностью, описанной в {@link FloatPrecision}.
+ */
+class FloatBatchEvaluationTest {
+
+    private static final int ROWS = 3 * BatchKernel.CHUNK + 17;
+
+    /** Единица последнего разряда float, делённая пополам: 2^-24 */
+    private static final double UNIT = Math.ulp(1.0f) / 2;
+
+    /**
+     * Вычисляет выражение в double по столбцам float, расширенным до double.
+     */
+    private static double[] evaluateDouble(CompiledExpression expression, float[][] columns) {
+        double[][] wide = new double[columns.length][ROWS];
+        for (int column = 0; column < columns.length; column++) {
+            for (int row = 0; row < ROWS; row++) {
+                wide[column][row] = columns[column][row];
+            }
+        }
+        double[] out = new double[ROWS];
+        expression.evaluateBatch(wide, out);
+        return out;
+    }
+
+    /**
+     * Тестирование режима с вычислением в double: результат совпадает с округлённым
+     * до float результатом вычисления в double для всех операторов и функций.
+     */
+    @Test
+    void doubleAccumulateRoundsDoubleResult() {
+        CompiledExpression expression = MathExpression.compile(
+                "(sin(x) * 12 + cos(y) - tan(x)) / (y ^ 2 + 1) - sqrt(y) * log(y) + -x + max(x, y) + exp(y / 10)");
+        float[][] columns = {TestColumns.floatColumn(ROWS, 1, -80, 80), TestColumns.floatColumn(ROWS, 2, 0.5, 10)};
+        float[] out = new float[ROWS];
+
+        expression.evaluateBatch(columns, out, FloatPrecision.DOUBLE_ACCUMULATE);
+
+        double[] expected = evaluateDouble(expression, columns);
+        for (int row = 0; row < ROWS; row++) {
+            assertEquals((float) expected[row], out[row], 0);
+        }
+    }
+
+    /**
+     * Тестирование режима float: для выражения из положительных слагаемых и множителей
+     * относительная погрешность не превышает количества операций, умноженного на 2^-24,
+     * для синуса и косинуса абсолютная погрешность того же порядка.
+     */
+    @Test
+    void floatWithinBound() {
+        CompiledExpression expression = MathExpression.compile(
+                "(x * 12 + 12) * 2 + y * 8 ^ 2 / (x + y + 1) + sqrt(y) + log(y + 1) + abs(x)");
+        int operations = 16;
+        float[][] columns = {TestColumns.floatColumn(ROWS, 3, 0, 100), TestColumns.floatColumn(ROWS, 4, 1, 8)};
+        float[] out = new float[ROWS];
+
+        expression.evaluateBatch(columns, out, FloatPrecision.FLOAT);
+
+        double[] expected = evaluateDouble(expression, columns);
+        for (int row = 0; row < ROWS; row++) {
+            assertEquals(expected[row], out[row], operations * UNIT * expected[row]);
+        }
+
+        CompiledExpression trig = MathExpression.compile("sin(x) * cos(y) + sin(y)");
+        float[][] angles = {TestColumns.floatColumn(ROWS, 5, -720, 720), TestColumns.floatColumn(ROWS, 6, -360, 360)};
+        trig.evaluateBatch(angles, out, FloatPrecision.FLOAT);
+        expected = evaluateDouble(trig, angles);
+        for (int row = 0; row < ROWS; row++) {
+            assertEquals(expected[row], out[row], 8 * UNIT);
+        }
+    }
+
+    /**
+     * Тестирование обработки ошибок в строках: те же строки, что и при вычислении в double.
+     */
+    @Test
+    void rowErrors() {
+        CompiledExpression expression = MathExpression.compile("sqrt(x) / (y - 3)");
+        float[] x = TestColumns.floatColumn(ROWS, 7, 0, 10);
+        float[] y = new float[ROWS];
+        for (int row = 0; row < ROWS; row++) {
+            x[row] = row % 500 == 11 ? -1 : x[row];
+            y[row] = row % 7;
+        }
+        float[][] columns = {x, y};
+        double[] wide = new double[ROWS];
+        int[] expected = expression.evaluateBatch(new double[][] {toDouble(x), toDouble(y)}, wide,
+                RowErrorPolicy.WRITE_NAN).getFailedRows();
+
+        for (FloatPrecision precision : FloatPrecision.values()) {
+            float[] out = new float[ROWS];
+            BatchResult result = expression.evaluateBatch(columns, out, precision, RowErrorPolicy.WRITE_NAN);
+            assertArrayEquals(expected, result.getFailedRows());
+            for (int row = 0; row < ROWS; row++) {
+                assertEquals((float) wide[row], out[row], Float.isNaN(out[row]) ? 0 : 1e-6f * Math.abs(out[row]));
+            }
+            assertThrows(ArithmeticException.class, () -> expression.evaluateBatch(columns, out, precision));
+        }
+    }
+
+    /**
+     * Тестирование делителя, обращающегося в ноль только во float: блок пересчитывается
+     * в double, и результат совпадает с режимом вычисления в double.
+     */
+    @Test
+    void floatUnderflowFallsBackToDouble() {
+        CompiledExpression expression = MathExpression.compile("x / (y * y)");
+        float[] x = TestColumns.floatColumn(ROWS, 8, 1, 2);
+        float[] y = TestColumns.floatColumn(ROWS, 9, 1, 2);
+        x[BatchKernel.CHUNK + 5] = 1e-20f;
+        y[BatchKernel.CHUNK + 5] = 1e-23f;
+        float[][] columns = {x, y};
+        float[] out = new float[ROWS];
+        float[] expected = new float[ROWS];
+
+        expression.evaluateBatch(columns, out, FloatPrecision.FLOAT);
+        expression.evaluateBatch(columns, expected, FloatPrecision.DOUBLE_ACCUMULATE);
+        assertEquals(1e26f, out[BatchKernel.CHUNK + 5], 1e26f * 4 * UNIT);
+        for (int row = 0; row < ROWS; row++) {
+            assertEquals(expected[row], out[row], 4 * UNIT * expected[row]);
+        }
+    }
+
+    /**
+     * Тестирование ошибки, которую потеря значимости во float убирает: произведение
+     * обращается в -0.0, и корень вычисляется без ошибки, а в double строка ошибочна.
+     */
+    @Test
+    void floatUnderflowHidesError() {
+        CompiledExpression expression = MathExpression.compile("sqrt(x * y)");
+        float[][] columns = {{-1e-30f, 4}, {1e-30f, 4}};
+        float[] out = new float[2];
+
+        assertEquals(0, expression.evaluateBatch(columns, out, FloatPrecision.FLOAT, RowErrorPolicy.WRITE_NAN)
+                .getErrorCount());
+        assertEquals(-0.0f, out[0]);
+        assertEquals(4, out[1]);
+        assertThrows(ArithmeticException.class,
+                () -> expression.evaluateBatch(columns, out, FloatPrecision.DOUBLE_ACCUMULATE));
+    }
+
+    /**
+     * Тестирование некорректных столбцов.
+     */
+    @Test
+    void invalidColumns() {
+        CompiledExpression expression = MathExpression.compile("x + y");
+        float[] out = new float[10];
+        assertThrows(IllegalArgumentException.class,
+                () -> expression.evaluateBatch(new float[][] {new float[10]}, out, FloatPrecision.FLOAT));
+        assertThrows(IllegalArgumentException.class,
+                () -> expression.evaluateBatch(new float[][] {new float[10], new float[9]}, out, FloatPrecision.FLOAT));
+    }
+
+    private static double[] toDouble(float[] values) {
+        double[] result = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = values[i];
+        }
+        return result;
+    }
+}
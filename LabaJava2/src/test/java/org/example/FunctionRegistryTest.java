@@ -0,0 +1,221 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Класс для тестирования реестра функций и вызова зарегистрированных функций из выражений.
+ */
+class FunctionRegistryTest {
+
+    private static final AtomicInteger PURE_CALLS = new AtomicInteger();
+    private static final AtomicInteger IMPURE_CALLS = new AtomicInteger();
+    private static final Set<Thread> SERIAL_THREADS = ConcurrentHashMap.newKeySet();
+
+    static {
+        FunctionRegistry.register("clamp", 3, true, true,
+                (arguments, offset) -> Math.max(arguments[offset + 1], Math.min(arguments[offset + 2], arguments[offset])));
+        FunctionRegistry.register("twice", x -> {
+            PURE_CALLS.incrementAndGet();
+            return 2 * x;
+        });
+        FunctionRegistry.register("tick", 1, false, true, (arguments, offset) -> {
+            IMPURE_CALLS.incrementAndGet();
+            return arguments[offset];
+        });
+        FunctionRegistry.register("serial", 1, true, false, (arguments, offset) -> {
+            SERIAL_THREADS.add(Thread.currentThread());
+            return arguments[offset] + 1;
+        });
+        FunctionRegistry.register("cube", x -> x * x * x, x -> 3 * x * x);
+        FunctionRegistry.register("inverse", 1, true, true, (arguments, offset) -> {
+            if (arguments[offset] == 0) throw new ArithmeticException("Деление на ноль");
+            return 1 / arguments[offset];
+        });
+    }
+
+    /**
+     * Тестирование встроенных функций abs, exp, min, max и проверки имён без исключений.
+     */
+    @Test
+    void builtInFunctions() {
+        assertEquals(3, MathExpression.compile("abs(x - 5)").evaluate(2), 0);
+        assertEquals(Math.exp(1.5), MathExpression.compile("exp(x)").evaluate(1.5), 0);
+        assertEquals(-2, MathExpression.compile("min(x, y * 2)").evaluate(4, -1), 0);
+        assertEquals(4, MathExpression.compile("max(min(x, 10), -x)").evaluate(4), 0);
+
+        assertTrue(MathExpression.isFunction("sin"));
+        assertTrue(MathExpression.isFunction("max"));
+        assertTrue(MathExpression.isFunction("clamp"));
+        assertFalse(MathExpression.isFunction("maximum"));
+        assertFalse(MathExpression.isFunction("x"));
+        assertFalse(MathExpression.isFunction(""));
+        assertTrue(FunctionRegistry.getNames().containsAll(List.of("sin", "log", "abs", "exp", "min", "max")));
+
+        assertEquals(MathOperations.COS, MathOperations.getOperationByUserInput("cos"));
+        assertThrows(IllegalArgumentException.class, () -> MathOperations.getOperationByUserInput("abs"));
+    }
+
+    /**
+     * Тестирование свёртки констант и объединения одинаковых вызовов для чистых функций.
+     */
+    @Test
+    void pureAndImpureFunctions() {
+        CompiledExpression folded = MathExpression.compile("max(2, 3) * x + clamp(15, 0, 10)");
+        assertEquals(0, folded.getProgram().functions.length);
+        assertEquals(16, folded.evaluate(2), 0);
+
+        CompiledExpression shared = MathExpression.compile("twice(x) + twice(x) * 3");
+        PURE_CALLS.set(0);
+        assertEquals(16, shared.evaluate(2), 0);
+        assertEquals(1, PURE_CALLS.get());
+
+        CompiledExpression separate = MathExpression.compile("tick(1) + tick(1)");
+        IMPURE_CALLS.set(0);
+        assertEquals(2, separate.evaluate(), 0);
+        assertEquals(2, IMPURE_CALLS.get());
+    }
+
+    /**
+     * Тестирование функции трёх аргументов в интерпретаторе, байт-коде и пакетном вычислении.
+     */
+    @Test
+    void evaluationPaths() {
+        CompiledExpression clamp = MathExpression.compile("clamp(x * 2, 0, y) + min(x, y)");
+        CompiledExpression minimum = MathExpression.compile("min(x, y) - abs(x)");
+        double[][] columns = new double[2][3000];
+        for (int row = 0; row < 3000; row++) {
+            columns[0][row] = row * 0.01 - 5;
+            columns[1][row] = row % 7;
+        }
+        for (CompiledExpression expression : new CompiledExpression[] {clamp, minimum}) {
+            double[] expected = new double[3000];
+            for (int row = 0; row < 3000; row++) {
+                expected[row] = expression.evaluate(columns[0][row], columns[1][row]);
+            }
+            double[] out = new double[3000];
+            expression.evaluateBatch(columns, out);
+            assertArrayEquals(expected, out, 0);
+            expression.getProgram().compileBytecode();
+            for (int row = 0; row < 3000; row++) {
+                assertEquals(expected[row], expression.evaluate(columns[0][row], columns[1][row]), 0);
+            }
+        }
+        assertFalse(clamp.getProgram().isCompiled());
+        assertTrue(minimum.getProgram().isCompiled());
+
+        CompiledExpression failing = MathExpression.compile("inverse(x)");
+        assertThrows(ArithmeticException.class, () -> failing.evaluate(0));
+        BatchResult result = failing.evaluateBatch(new double[][] {{1, 0, 4}}, new double[3], RowErrorPolicy.WRITE_NAN);
+        assertEquals(1, result.getErrorCount());
+    }
+
+    /**
+     * Тестирование вычисления функции, не допускающей пакетного вычисления, в вызывающем потоке.
+     */
+    @Test
+    void serialFunctionStaysOnCallingThread() {
+        CompiledExpression expression = MathExpression.compile("serial(x) * 2");
+        int rows = 20 * BatchJob.LEAF_ROWS;
+        double[][] columns = {new double[rows]};
+        double[] out = new double[rows];
+        SERIAL_THREADS.clear();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            expression.evaluateParallel(columns, out, RowErrorPolicy.FAIL_FAST, pool);
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(Set.of(Thread.currentThread()), SERIAL_THREADS);
+        assertEquals(2, out[rows - 1], 0);
+    }
+
+    /**
+     * Тестирование функций в наборах выражений и сеансах инкрементального вычисления.
+     */
+    @Test
+    void expressionSetsAndSessions() {
+        Map<String, String> formulas = new LinkedHashMap<>();
+        formulas.put("low", "clamp(x, 0, y)");
+        formulas.put("high", "max(x, y) + inverse(x)");
+        ExpressionSet set = MathExpression.compileSet(formulas);
+        assertArrayEquals(new double[] {2, 3.5}, set.evaluate(new double[] {2, 3}), 0);
+
+        EvaluationSession session = set.newSession(2, 3);
+        assertArrayEquals(new int[] {0, 1}, session.set("y", 1));
+        assertEquals(1, session.get("low"), 0);
+        assertEquals(2.5, session.get("high"), 0);
+        session.set("x", 0);
+        assertEquals(0, session.get("low"), 0);
+        assertTrue(session.isFailed(1));
+    }
+
+    /**
+     * Тестирование ошибок количества аргументов.
+     */
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "min(x)          | 5  | функция min принимает 2 аргумента",
+            "min(x, y, z)    | 8  | функция min принимает 2 аргумента",
+            "clamp(x, 1)     | 10 | функция clamp принимает 3 аргумента",
+            "min(x y)        | 6  | ожидается ','",
+            "max(, y)        | 4  | ожидается число, переменная или '('",
+            "abs(x, y)       | 5  | функция abs принимает один аргумент"
+    })
+    void arityErrors(String expression, int offset, String reason) {
+        ExpressionParseException error = assertThrows(ExpressionParseException.class,
+                () -> MathExpression.compile(expression));
+        assertEquals(reason, error.getReason());
+        assertEquals(offset, error.getOffset());
+    }
+
+    /**
+     * Тестирование производных встроенных функций и функций, зарегистрированных с производной,
+     * и отказа для функций без производной.
+     */
+    @Test
+    void derivatives() {
+        double[] gradient = new double[2];
+        GradientEvaluator evaluator = MathExpression.compile("abs(x) + x").gradient();
+        assertEquals(0, evaluator.evaluate(new double[]{-2}, gradient), 0);
+        assertEquals(0, gradient[0], 0);
+        assertEquals(6, evaluator.evaluate(new double[]{3}, gradient), 0);
+        assertEquals(2, gradient[0], 0);
+
+        evaluator = MathExpression.compile("exp(x) * cube(y)").gradient();
+        assertEquals(8 * Math.E, evaluator.evaluate(new double[]{1, 2}, gradient), 1e-12);
+        assertArrayEquals(new double[]{8 * Math.E, 12 * Math.E}, gradient, 1e-12);
+
+        evaluator = MathExpression.compile("min(x, y) + 2 * max(x, y)").gradient();
+        evaluator.evaluate(new double[]{1, 5}, gradient);
+        assertArrayEquals(new double[]{1, 2}, gradient, 0);
+        evaluator.evaluate(new double[]{5, 1}, gradient);
+        assertArrayEquals(new double[]{2, 1}, gradient, 0);
+
+        assertThrows(IllegalArgumentException.class, () -> MathExpression.compile("twice(x) + x").gradient());
+        assertThrows(IllegalArgumentException.class, () -> MathExpression.compile("clamp(x, 0, 1)").gradient());
+    }
+
+    /**
+     * Тестирование некорректной регистрации.
+     */
+    @Test
+    void invalidRegistrations() {
+        assertThrows(IllegalArgumentException.class, () -> FunctionRegistry.register("sin", Math::sin));
+        assertThrows(IllegalArgumentException.class, () -> FunctionRegistry.register("min", Math::max));
+        assertThrows(IllegalArgumentException.class, () -> FunctionRegistry.register("f1", Math::sin));
+        assertThrows(IllegalArgumentException.class, () -> FunctionRegistry.register("", Math::sin));
+        assertThrows(IllegalArgumentException.class,
+                () -> FunctionRegistry.register("none", 0, true, true, (arguments, offset) -> 0));
+        assertFalse(MathExpression.isFunction("none"));
+    }
+}
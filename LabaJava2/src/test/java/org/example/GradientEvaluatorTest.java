@@ -0,0 +1,138 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.List;
+
+/**
+ * Класс для тестирования вычисления производных выражений.
+ */
+class GradientEvaluatorTest {
+
+    /**
+     * Сравнивает производные по всем переменным с центральными разностями.
+     */
+    private static void assertMatchesDifferences(String formula, double... values) {
+        CompiledExpression expression = MathExpression.compile(formula, TrigPrecision.STRICT);
+        GradientEvaluator evaluator = expression.gradient();
+        double[] gradient = new double[values.length];
+        assertEquals(expression.evaluate(values), evaluator.evaluate(values, gradient), 1e-12);
+        for (int i = 0; i < values.length; i++) {
+            double step = 1e-6 * Math.max(1, Math.abs(values[i]));
+            double[] shifted = values.clone();
+            shifted[i] = values[i] + step;
+            double upper = expression.evaluate(shifted);
+            shifted[i] = values[i] - step;
+            double lower = expression.evaluate(shifted);
+            double expected = (upper - lower) / (2 * step);
+            assertEquals(expected, gradient[i], 1e-5 * Math.max(1, Math.abs(expected)), formula + " по " + i);
+        }
+    }
+
+    /**
+     * Тестирование производных всех операций и функций по сравнению с конечными разностями.
+     */
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "x + y * 2 - x * y | 1.5 | -2",
+            "x / y             | 3   | 4",
+            "-x / (y - x)      | 2   | 7",
+            "x ^ 3 + y ^ 0.5   | 1.3 | 2",
+            "x ^ y             | 1.7 | 2.5",
+            "2 ^ (x * y)       | 0.3 | 1.1",
+            "sin(x) * cos(y)   | 30  | 60",
+            "tan(x * y)        | 5   | 7",
+            "sqrt(x * x + y)   | 2   | 5",
+            "log(x) / log(y)   | 5   | 3",
+            "(x + y) * sin(x + y) - (x + y) ^ 2 | 12 | 3",
+            "exp(x / y) * abs(y - x)            | 1.2 | -0.7",
+            "min(x, y) * x + max(x * y, y)      | 2.5 | 0.4"
+    })
+    void matchesFiniteDifferences(String formula, double x, double y) {
+        assertMatchesDifferences(formula, x, y);
+    }
+
+    /**
+     * Тестирование точных производных, включая множитель π/180 тригонометрических функций в градусах.
+     */
+    @Test
+    void analyticDerivatives() {
+        double[] gradient = new double[2];
+        GradientEvaluator evaluator = MathExpression.compile("sin(x) + x * y ^ 2", TrigPrecision.STRICT).gradient();
+        assertEquals(List.of("x", "y"), evaluator.getVariableNames());
+        assertEquals(1 + 90 * 9, evaluator.evaluate(new double[]{90, 3}, gradient), 1e-12);
+        assertEquals(9, gradient[0], 1e-12);
+        assertEquals(2 * 90 * 3, gradient[1], 1e-12);
+
+        evaluator = MathExpression.compile("cos(x)", TrigPrecision.STRICT).gradient();
+        evaluator.evaluate(new double[]{90}, gradient);
+        assertEquals(-Math.PI / 180, gradient[0], 1e-15);
+
+        evaluator = MathExpression.compile("tan(x)", TrigPrecision.STRICT).gradient();
+        evaluator.evaluate(new double[]{45}, gradient);
+        assertEquals(2 * Math.PI / 180, gradient[0], 1e-12);
+    }
+
+    /**
+     * Тестирование выбора переменных: порядок, отсутствующие в выражении и повторные имена.
+     */
+    @Test
+    void selectedVariables() {
+        CompiledExpression expression = MathExpression.compile("x * y + z");
+        GradientEvaluator evaluator = expression.gradient("z", "w", "x");
+        double[] gradient = {5, 5, 5};
+        assertEquals(7, evaluator.evaluate(new double[]{2, 3, 1}, gradient), 1e-12);
+        assertArrayEquals(new double[]{1, 0, 3}, gradient, 1e-12);
+        assertThrows(IllegalArgumentException.class, () -> expression.gradient("x", "x"));
+        assertThrows(IllegalArgumentException.class, () -> evaluator.evaluate(new double[]{1, 2}, gradient));
+        assertThrows(IllegalArgumentException.class, () -> evaluator.evaluate(new double[]{1, 2, 3}, new double[2]));
+    }
+
+    /**
+     * Тестирование математических ошибок и нулевой производной корня в нуле.
+     */
+    @Test
+    void edgeCases() {
+        double[] gradient = new double[2];
+        GradientEvaluator division = MathExpression.compile("x / y").gradient();
+        assertThrows(ArithmeticException.class, () -> division.evaluate(new double[]{1, 0}, gradient));
+
+        GradientEvaluator root = MathExpression.compile("sqrt(x) * y + x").gradient();
+        assertEquals(0, root.evaluate(new double[]{0, 0}, gradient), 0);
+        assertArrayEquals(new double[]{1, 0}, gradient, 0);
+        assertThrows(ArithmeticException.class, () -> root.evaluate(new double[]{-1, 1}, gradient));
+    }
+
+    /**
+     * Тестирование пакетного вычисления по сравнению с построчным.
+     */
+    @Test
+    void batchMatchesScalar() {
+        CompiledExpression expression = MathExpression.compile(
+                "x ^ y + sin(x * 10) / y - log(y) * x + max(x, y) * exp(-x)", TrigPrecision.STRICT);
+        GradientEvaluator evaluator = expression.gradient("y", "x");
+        int rows = GradientEvaluator.LANES * 3 + 17;
+        double[][] columns = new double[2][rows];
+        for (int i = 0; i < rows; i++) {
+            columns[0][i] = 0.5 + i * 0.01;
+            columns[1][i] = 1 + i * 0.003;
+        }
+        double[] out = new double[rows];
+        double[][] gradients = new double[2][rows];
+        evaluator.evaluateBatch(columns, out, gradients);
+
+        double[] gradient = new double[2];
+        for (int i = 0; i < rows; i++) {
+            double value = evaluator.evaluate(new double[]{columns[0][i], columns[1][i]}, gradient);
+            assertEquals(value, out[i], 0);
+            assertEquals(gradient[0], gradients[0][i], 0);
+            assertEquals(gradient[1], gradients[1][i], 0);
+        }
+
+        columns[1][rows - 1] = 0;
+        assertThrows(ArithmeticException.class, () -> evaluator.evaluateBatch(columns, out, gradients));
+        assertThrows(IllegalArgumentException.class, () -> evaluator.evaluateBatch(columns, out, new double[1][rows]));
+    }
+}
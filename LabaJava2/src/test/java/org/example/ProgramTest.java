@@ -0,0 +1,89 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Класс для тестирования постфиксной программы вычисления выражений.
+ * Проверяет глубину стека, вычисление по слотам и отсутствие
+ * выделения памяти при повторных вычислениях.
+ */
+class ProgramTest {
+
+    /**
+     * Тестирование глубины стека, вычисленной при построении программы.
+     */
+    @Test
+    void maxDepthFromExpression() {
+        Program.Builder builder = new Program.Builder();
+        builder.constant(1);
+        builder.constant(2);
+        builder.constant(3);
+        builder.binary(Program.MUL);
+        builder.binary(Program.ADD);
+        Program program = builder.build(TrigPrecision.STRICT);
+        assertEquals(3, program.maxDepth);
+        assertEquals(7, program.execute(new double[0]), 0.001);
+    }
+
+    /**
+     * Тестирование вычисления по значениям переменных в порядке слотов.
+     */
+    @Test
+    void evaluateBySlots() {
+        CompiledExpression expression = MathExpression.compile("(x - y) * sqrt(z) ^ 2");
+        assertEquals(-9, expression.evaluate(2, 5, 3), 0.001);
+        assertThrows(IllegalArgumentException.class, () -> expression.evaluate(2, 5));
+        assertThrows(ArithmeticException.class, () -> MathExpression.compile("x / (y - 1)").evaluate(2, 1));
+    }
+
+    /**
+     * Тестирование вложенного вычисления в одном потоке:
+     * внутреннее вычисление не портит стек внешнего.
+     */
+    @Test
+    void nestedExecutionKeepsStack() {
+        Program.Builder builder = new Program.Builder();
+        builder.load(0);
+        builder.load(1);
+        builder.binary(Program.ADD);
+        Program inner = builder.build(TrigPrecision.STRICT);
+
+        double[] stack = new double[4];
+        stack[0] = 42;
+        assertEquals(3, inner.execute(new double[] {1, 2}, stack, 1), 0.001);
+        assertEquals(42, stack[0]);
+    }
+
+    /**
+     * Тестирование отсутствия выделения памяти при повторных вычислениях.
+     * Использует счётчик выделенной потоком памяти из {@link com.sun.management.ThreadMXBean}.
+     */
+    @Test
+    void steadyStateEvaluationDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        CompiledExpression expression = MathExpression.compile("(sin(x) * 12 + 12) * 2 - y * 8 ^ 2 / sqrt(z)");
+        double[] values = {90, 8, 4};
+        double sum = 0;
+        for (int i = 0; i < 100_000; i++) {
+            sum += expression.evaluate(values);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1_000_000; i++) {
+            values[1] = i & 7;
+            sum += expression.evaluate(values);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(sum != 0);
+        assertTrue(allocated < 1024, "Выделено байт: " + allocated);
+    }
+}
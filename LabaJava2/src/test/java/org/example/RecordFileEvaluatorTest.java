@@ -0,0 +1,157 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Класс для тестирования вычисления выражений для файлов записей.
+ */
+class RecordFileEvaluatorTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Тестирование CSV: сопоставление столбцов по заголовку, лишние столбцы,
+     * разные записи чисел и строки, пересекающие границу окна.
+     */
+    @Test
+    void csvRecords() throws IOException {
+        Path input = directory.resolve("in.csv");
+        Files.writeString(input, "id, y ,x\r\n"
+                + "1,2,3\r\n"
+                + "2, -0.5 ,1e2\n"
+                + "\n"
+                + "3,0.30000000000000004,-1.5E-3\n"
+                + "4,0,1\n"
+                + "5,123456789012345678,.25");
+        Path output = directory.resolve("out.csv");
+        CompiledExpression expression = MathExpression.compile("x / y");
+
+        for (int window : new int[] {4, 16, 1 << 20}) {
+            RecordFileResult result = new RecordFileEvaluator(expression, RecordFileEvaluator.Format.CSV, window)
+                    .evaluate(input, output);
+            assertEquals(5, result.getRowCount());
+            assertEquals(1, result.getErrorCount());
+
+            List<String> lines = Files.readAllLines(output);
+            assertEquals("result", lines.get(0));
+            assertEquals(1.5, Double.parseDouble(lines.get(1)));
+            assertEquals(-200, Double.parseDouble(lines.get(2)));
+            assertEquals(-1.5e-3 / 0.30000000000000004, Double.parseDouble(lines.get(3)));
+            assertEquals("NaN", lines.get(4));
+            assertEquals(0.25 / 123456789012345678.0, Double.parseDouble(lines.get(5)));
+        }
+    }
+
+    /**
+     * Тестирование точности быстрого разбора чисел.
+     */
+    @Test
+    void csvNumbersMatchParseDouble() throws IOException {
+        String[] numbers = {"0", "-0", "7", "3.14159", "-2.5e10", "1e-22", "123456789012345",
+                "0.000001234", "9007199254740993", "1.7976931348623157E308", "4.9e-324", "NaN", "-Infinity"};
+        StringBuilder text = new StringBuilder("x\n");
+        for (String number : numbers) {
+            text.append(number).append('\n');
+        }
+        Path input = directory.resolve("numbers.csv");
+        Files.writeString(input, text);
+        Path output = directory.resolve("numbers.out");
+        new RecordFileEvaluator(MathExpression.compile("x"), RecordFileEvaluator.Format.CSV).evaluate(input, output);
+
+        List<String> lines = Files.readAllLines(output);
+        for (int i = 0; i < numbers.length; i++) {
+            assertEquals(Double.doubleToRawLongBits(Double.parseDouble(numbers[i])),
+                    Double.doubleToRawLongBits(Double.parseDouble(lines.get(i + 1))), numbers[i]);
+        }
+    }
+
+    /**
+     * Тестирование ошибок в CSV.
+     */
+    @Test
+    void csvErrors() throws IOException {
+        RecordFileEvaluator evaluator = new RecordFileEvaluator(MathExpression.compile("x + y"),
+                RecordFileEvaluator.Format.CSV);
+        Path output = directory.resolve("out.csv");
+
+        Path missing = directory.resolve("missing.csv");
+        Files.writeString(missing, "x,z\n1,2\n");
+        assertThrows(IllegalArgumentException.class, () -> evaluator.evaluate(missing, output));
+
+        Path malformed = directory.resolve("malformed.csv");
+        Files.writeString(malformed, "x,y\n1,2\n1,abc\n");
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                () -> evaluator.evaluate(malformed, output));
+        assertTrue(error.getMessage().contains("3"));
+
+        Path fields = directory.resolve("fields.csv");
+        Files.writeString(fields, "x,y\n1,2,3\n");
+        assertThrows(IllegalArgumentException.class, () -> evaluator.evaluate(fields, output));
+
+        Path empty = directory.resolve("empty.csv");
+        Files.writeString(empty, "");
+        assertThrows(IllegalArgumentException.class, () -> evaluator.evaluate(empty, output));
+    }
+
+    /**
+     * Тестирование двоичного формата на нескольких блоках и окнах.
+     */
+    @Test
+    void binaryRecords() throws IOException {
+        int rows = 40_000;
+        ByteBuffer bytes = ByteBuffer.allocate(rows * 2 * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < rows; i++) {
+            bytes.putDouble(i * 0.5);
+            bytes.putDouble(i % 1000 - 500);
+        }
+        Path input = directory.resolve("in.bin");
+        Files.write(input, bytes.array());
+        Path output = directory.resolve("out.bin");
+        CompiledExpression expression = MathExpression.compile("a / b + sin(a)");
+
+        RecordFileResult result = new RecordFileEvaluator(expression, RecordFileEvaluator.Format.BINARY, 1000)
+                .evaluate(input, output);
+        assertEquals(rows, result.getRowCount());
+        assertEquals(rows / 1000, result.getErrorCount());
+
+        ByteBuffer out = ByteBuffer.wrap(Files.readAllBytes(output)).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(rows * Double.BYTES, out.capacity());
+        for (int i = 0; i < rows; i++) {
+            double a = i * 0.5;
+            double b = i % 1000 - 500;
+            double value = out.getDouble();
+            if (b == 0) {
+                assertTrue(Double.isNaN(value));
+            } else {
+                assertEquals(expression.evaluate(a, b), value);
+            }
+        }
+
+        Path truncated = directory.resolve("truncated.bin");
+        Files.write(truncated, new byte[12]);
+        assertThrows(IllegalArgumentException.class, () -> new RecordFileEvaluator(expression,
+                RecordFileEvaluator.Format.BINARY).evaluate(truncated, output));
+    }
+
+    /**
+     * Тестирование пакетного режима приложения.
+     */
+    @Test
+    void appBatchMode() throws IOException {
+        Path input = directory.resolve("app.csv");
+        Files.write(input, "x\n1\n2\n".getBytes(StandardCharsets.US_ASCII));
+        Path output = directory.resolve("app.out");
+        App.main(new String[] {"--batch", "csv", "x * 10", input.toString(), output.toString()});
+        assertEquals(List.of("result", "10.0", "20.0"), Files.readAllLines(output));
+    }
+}
@@ -0,0 +1,201 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Класс для тестирования потокового вычисления выражений через {@link Flow}.
+ */
+class StreamingEvaluatorTest {
+
+    /**
+     * Подписчик, собирающий значения и ошибки записей из пакетов и запрашивающий пакеты
+     * по одному либо только по команде.
+     */
+    private static final class Collector implements Flow.Subscriber<EvaluatedBatch> {
+        final List<double[]> records = new CopyOnWriteArrayList<>();
+        final List<Double> values = new CopyOnWriteArrayList<>();
+        final List<RuntimeException> errors = new CopyOnWriteArrayList<>();
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        private final boolean requestEach;
+        volatile Flow.Subscription subscription;
+
+        Collector(boolean requestEach) {
+            this.requestEach = requestEach;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (requestEach) {
+                subscription.request(1);
+            }
+        }
+
+        @Override
+        public void onNext(EvaluatedBatch item) {
+            for (int i = 0; i < item.size(); i++) {
+                records.add(item.getRecord(i));
+                errors.add(item.isFailed(i) ? item.getError(i) : null);
+                values.add(item.getValue(i));
+            }
+            if (requestEach) {
+                subscription.request(1);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(null);
+        }
+    }
+
+    /**
+     * Тестирование порядка результатов и ошибок отдельных записей.
+     */
+    @Test
+    void resultsInOrderWithRecordErrors() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            CompiledExpression expression = MathExpression.compile("x / (y - 3)");
+            StreamingEvaluator evaluator = new StreamingEvaluator(expression, executor, 64, Duration.ofMillis(2));
+            Collector collector = new Collector(true);
+            evaluator.subscribe(collector);
+            SubmissionPublisher<double[]> source = new SubmissionPublisher<>(executor, 16);
+            source.subscribe(evaluator);
+
+            int records = 5000;
+            for (int i = 0; i < records; i++) {
+                source.submit(i % 1000 == 1 ? new double[] {i} : new double[] {i, i % 7});
+            }
+            source.close();
+            collector.done.get(10, TimeUnit.SECONDS);
+
+            assertEquals(records, collector.values.size());
+            for (int i = 0; i < records; i++) {
+                assertEquals(i, collector.records.get(i)[0], 0);
+                RuntimeException error = collector.errors.get(i);
+                if (i % 1000 == 1) {
+                    assertInstanceOf(IllegalArgumentException.class, error);
+                } else if (i % 7 == 3) {
+                    assertInstanceOf(ArithmeticException.class, error);
+                    assertTrue(Double.isNaN(collector.values.get(i)));
+                } else {
+                    assertNull(error);
+                    assertEquals(i / (i % 7 - 3.0), collector.values.get(i), 0);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Тестирование вычисления неполного пакета по истечении времени ожидания.
+     */
+    @Test
+    void partialBatchAfterDelay() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            StreamingEvaluator evaluator = new StreamingEvaluator(MathExpression.compile("x * 2"),
+                    executor, 1000, Duration.ofMillis(5));
+            Collector collector = new Collector(true);
+            evaluator.subscribe(collector);
+            SubmissionPublisher<double[]> source = new SubmissionPublisher<>(executor, 16);
+            source.subscribe(evaluator);
+
+            source.submit(new double[] {1});
+            source.submit(new double[] {2});
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (collector.values.size() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(2, collector.values.size());
+            assertEquals(4, collector.values.get(1), 0);
+            assertFalse(collector.done.isDone());
+            source.close();
+            collector.done.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Тестирование ограничения запросов к источнику, пока подписчик не запрашивает результаты,
+     * и передачи ошибки источника.
+     */
+    @Test
+    void backpressureAndSourceError() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            int batch = 32;
+            StreamingEvaluator evaluator = new StreamingEvaluator(MathExpression.compile("x + 1"),
+                    executor, batch, Duration.ofMillis(1));
+            Collector collector = new Collector(false);
+            evaluator.subscribe(collector);
+            AtomicLong requested = new AtomicLong();
+            evaluator.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    requested.addAndGet(n);
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+
+            long sent = 0;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(300);
+            while (System.nanoTime() < deadline) {
+                while (sent < requested.get()) {
+                    evaluator.onNext(new double[] {sent++});
+                }
+                Thread.sleep(1);
+            }
+            long bound = 2L * batch + StreamingEvaluator.BUFFERED_BATCHES * batch + batch;
+            assertTrue(sent <= bound, "отправлено " + sent);
+            assertTrue(sent >= 2L * batch);
+
+            evaluator.onError(new IllegalStateException("источник"));
+            collector.subscription.request(Long.MAX_VALUE);
+            ExecutionException error = assertThrows(ExecutionException.class,
+                    () -> collector.done.get(5, TimeUnit.SECONDS));
+            assertEquals("источник", error.getCause().getMessage());
+            assertTrue(collector.values.size() <= sent);
+            for (int i = 0; i < collector.values.size(); i++) {
+                assertEquals(i + 1, collector.values.get(i), 0);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Тестирование некорректных параметров.
+     */
+    @Test
+    void invalidParameters() {
+        CompiledExpression expression = MathExpression.compile("x");
+        assertThrows(IllegalArgumentException.class,
+                () -> new StreamingEvaluator(expression, Runnable::run, 0, Duration.ofMillis(1)));
+        assertThrows(IllegalArgumentException.class,
+                () -> new StreamingEvaluator(expression, Runnable::run, 10, Duration.ZERO));
+    }
+}
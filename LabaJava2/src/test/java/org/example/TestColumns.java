@@ -0,0 +1,48 @@
+package org.example;
+
+import java.util.Random;
+
+/**
+ * Столбцы значений для тестов пакетного вычисления.
+ */
+final class TestColumns {
+
+    private TestColumns() {
+    }
+
+    /**
+     * Заполняет столбец псевдослучайными значениями из диапазона.
+     *
+     * @param rows количество строк
+     * @param seed начальное значение генератора
+     * @param from нижняя граница диапазона
+     * @param to верхняя граница диапазона
+     * @return столбец значений
+     */
+    static double[] column(int rows, int seed, double from, double to) {
+        double[] values = new double[rows];
+        Random random = new Random(seed);
+        for (int i = 0; i < rows; i++) {
+            values[i] = from + random.nextDouble() * (to - from);
+        }
+        return values;
+    }
+
+    /**
+     * Заполняет столбец значениями {@link #column(int, int, double, double)}, округлёнными до float.
+     *
+     * @param rows количество строк
+     * @param seed начальное значение генератора
+     * @param from нижняя граница диапазона
+     * @param to верхняя граница диапазона
+     * @return столбец значений
+     */
+    static float[] floatColumn(int rows, int seed, double from, double to) {
+        double[] wide = column(rows, seed, from, to);
+        float[] values = new float[rows];
+        for (int i = 0; i < rows; i++) {
+            values[i] = (float) wide[i];
+        }
+        return values;
+    }
+}
@@ -0,0 +1,105 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.HashMap;
+
+/**
+ * Класс для тестирования способов вычисления тригонометрических функций.
+ */
+class TrigPrecisionTest {
+
+    /**
+     * Тестирование точных значений для углов, кратных 30 и 45 градусам.
+     */
+    @Test
+    void exactAngles() {
+        TrigPrecision exact = TrigPrecision.EXACT_ANGLES;
+        assertEquals(1.0, exact.sin(90));
+        assertEquals(0.5, exact.sin(30));
+        assertEquals(0.5, exact.cos(60));
+        assertEquals(0.0, exact.sin(180));
+        assertEquals(0.0, exact.cos(-270));
+        assertEquals(-1.0, exact.sin(-90));
+        assertEquals(-0.5, exact.sin(210 + 360 * 1000));
+        assertEquals(Math.sqrt(2) / 2, exact.cos(315), 0);
+        assertEquals(1.0, exact.tan(45));
+        assertEquals(-1.0, exact.tan(135));
+        assertEquals(Math.sqrt(3), exact.tan(240), 0);
+        assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(exact.sin(-0.0)));
+        assertThrows(ArithmeticException.class, () -> exact.tan(90));
+        assertThrows(ArithmeticException.class, () -> exact.tan(-270));
+
+        assertEquals(TrigPrecision.STRICT.sin(15), exact.sin(15));
+        assertEquals(TrigPrecision.STRICT.cos(37.5), exact.cos(37.5));
+        assertTrue(Double.isNaN(exact.sin(Double.POSITIVE_INFINITY)));
+    }
+
+    /**
+     * Тестирование погрешности табличного вычисления.
+     */
+    @Test
+    void fastErrorBound() {
+        TrigPrecision fast = TrigPrecision.FAST;
+        for (double degrees = -720; degrees <= 720; degrees += 0.0137) {
+            assertEquals(TrigPrecision.STRICT.sin(degrees), fast.sin(degrees), 1.5e-7);
+            assertEquals(TrigPrecision.STRICT.cos(degrees), fast.cos(degrees), 1.5e-7);
+        }
+        assertEquals(1.0, fast.sin(90));
+        assertEquals(0.5, fast.cos(60));
+        assertEquals(1.0, fast.tan(45));
+        assertThrows(ArithmeticException.class, () -> fast.tan(90));
+        assertTrue(Double.isNaN(fast.cos(Double.NaN)));
+    }
+
+    /**
+     * Тестирование совпадения результатов интерпретатора, пакетного вычисления,
+     * сгенерированного кода и свёртки констант.
+     */
+    @Test
+    void allEvaluationPathsUsePrecision() {
+        for (TrigPrecision precision : TrigPrecision.values()) {
+            CompiledExpression expression = MathExpression.compile("sin(x) + cos(x) * tan(x)", precision);
+            assertSame(precision, expression.getTrigPrecision());
+            Program program = expression.getProgram();
+            ScalarEvaluator evaluator = BytecodeCompiler.compile(program);
+
+            int rows = BatchKernel.CHUNK + 5;
+            double[] xs = new double[rows];
+            double[] out = new double[rows];
+            for (int i = 0; i < rows; i++) {
+                xs[i] = i * 0.731 - 300;
+            }
+            expression.evaluateBatch(new double[][] {xs}, out);
+            for (int i = 0; i < rows; i++) {
+                double x = xs[i];
+                double expected = precision.sin(x) + precision.cos(x) * precision.tan(x);
+                assertEquals(expected, expression.evaluate(x));
+                assertEquals(expected, out[i]);
+                assertEquals(expected, evaluator.evaluate(new double[] {x}));
+            }
+
+            Program folded = MathExpression.compile("cos(60) + x", precision).getProgram();
+            assertEquals(precision.cos(60), folded.constants[0]);
+        }
+    }
+
+    /**
+     * Тестирование того, что общий кэш учитывает глобальный способ вычисления.
+     */
+    @Test
+    void defaultPrecisionAndCache() {
+        TrigPrecision previous = MathExpression.getDefaultTrigPrecision();
+        try {
+            MathExpression.setDefaultTrigPrecision(TrigPrecision.STRICT);
+            assertNotEquals(0.5, MathExpression.calculate("cos(60)", new HashMap<>()));
+            MathExpression.setDefaultTrigPrecision(TrigPrecision.EXACT_ANGLES);
+            assertEquals(0.5, MathExpression.calculate("cos(60)", new HashMap<>()));
+            assertSame(TrigPrecision.EXACT_ANGLES, MathExpression.compile("sin(x)").getTrigPrecision());
+        } finally {
+            MathExpression.setDefaultTrigPrecision(previous);
+        }
+        assertThrows(IllegalArgumentException.class, () -> MathExpression.setDefaultTrigPrecision(null));
+        assertThrows(IllegalArgumentException.class, () -> MathExpression.compile("x", null));
+    }
+}